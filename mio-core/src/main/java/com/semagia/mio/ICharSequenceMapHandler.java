@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio;
+
+import java.io.Reader;
+
+/**
+ * Optional extension of {@link IMapHandler} which receives values without
+ * the creation of {@link String} instances.
+ * <p>
+ * Deserializers use these methods if the handler implements this interface;
+ * the {@link com.semagia.mio.helpers.CharSequenceMapHandlerAdapter} provides
+ * these methods for any {@link IMapHandler}.
+ * </p>
+ * <p>
+ * The provided {@link CharSequence}s and {@link Reader}s may be views upon
+ * internal buffers of the deserializer. They are only valid during the
+ * invocation of the method; implementations must copy the content if it
+ * is needed afterwards.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public interface ICharSequenceMapHandler extends IMapHandler {
+
+    /**
+     * Reports a name value.
+     *
+     * @param value The value of a name.
+     * @throws MIOException If an unrecoverable error occurs.
+     * @see IMapHandler#value(String)
+     */
+    public void valueChars(CharSequence value) throws MIOException;
+
+    /**
+     * Reports the value of an occurrence or variant.
+     *
+     * @param value The string representation of the value.
+     * @param datatype The datatype of the value.
+     * @throws MIOException If an unrecoverable error occurs.
+     * @see IMapHandler#value(String, String)
+     */
+    public void valueChars(CharSequence value, String datatype) throws MIOException;
+
+    /**
+     * Reports a large value of an occurrence or variant.
+     * <p>
+     * The reader must not be closed by the implementation.
+     * </p>
+     *
+     * @param value A reader which provides the string representation of the value.
+     * @param datatype The datatype of the value.
+     * @throws MIOException If an unrecoverable error occurs.
+     * @see IMapHandler#value(String, String)
+     */
+    public void valueReader(Reader value, String datatype) throws MIOException;
+
+}
@@ -21,18 +21,40 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The context provides information about IRIs which have been parsed already.
+ * <p>
+ * A context may have a parent context: The IRIs of the parent are known
+ * to the child context and the IRIs which are added to the child are added
+ * to the parent as well. The child reports which IRIs were known by the
+ * parent only, this information is used to decide if the events of a
+ * source which were recorded within the child context can be replayed
+ * within another context.
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  */
 public final class IRIContext {
 
     private final ConcurrentHashMap<String, Boolean> _iris;
+    private final IRIContext _parent;
+    private final Set<String> _inherited;
 
     /**
      * Creates a new context.
      */
     public IRIContext() {
+        this(null);
+    }
+
+    /**
+     * Creates a new context with the provided parent.
+     *
+     * @param parent The parent context or {@code null}.
+     */
+    public IRIContext(IRIContext parent) {
         _iris = new ConcurrentHashMap<String, Boolean>();
+        _parent = parent;
+        _inherited = parent != null ? Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()) 
+                                    : Collections.<String>emptySet();
     }
 
     /**
@@ -42,10 +64,16 @@ public final class IRIContext {
      */
     public void addIRI(String iri) {
         _iris.putIfAbsent(iri, Boolean.TRUE);
+        if (_parent != null) {
+            _parent.addIRI(iri);
+        }
     }
 
     /**
      * A collection of loaded IRIs.
+     * <p>
+     * The IRIs of the parent context are not part of the collection.
+     * </p>
      *
      * @return A (maybe empty) unmodifiable collection of loaded IRIs.
      */
@@ -53,6 +81,16 @@ public final class IRIContext {
         return Collections.unmodifiableSet(_iris.keySet());
     }
 
+    /**
+     * Returns the IRIs which were reported as known by {@link #containsIRI(String)}
+     * because the parent context knows them.
+     *
+     * @return A (maybe empty) unmodifiable collection of IRIs.
+     */
+    public Set<String> getInheritedIRIs() {
+        return Collections.unmodifiableSet(_inherited);
+    }
+
     /**
      * Returns if the provided IRI has been parsed.
      *
@@ -60,7 +98,14 @@ public final class IRIContext {
      * @return <tt>true</tt> if the IRI is known, otherwise <tt>false</tt>.
      */
     public boolean containsIRI(String iri) {
-        return _iris.contains(iri);
+        if (_iris.containsKey(iri)) {
+            return true;
+        }
+        if (_parent != null && _parent.containsIRI(iri)) {
+            _inherited.add(iri);
+            return true;
+        }
+        return false;
     }
 
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio;
+
+import java.io.IOException;
+
+/**
+ * Resolves the IRIs of external resources (i.e. included or merged topic 
+ * maps and RDF mappings) to sources, similar to SAX's 
+ * {@link org.xml.sax.EntityResolver}.
+ * <p>
+ * The resolver is passed to a deserializer via the 
+ * {@link Property#RESOURCE_RESOLVER} property. The deserializer consults the
+ * resolver before it reads a resource from its IRI and passes the resolver 
+ * to the deserializers of included and merged topic maps.
+ * </p>
+ * <p>
+ * Implementations must be thread-safe if they are shared between 
+ * deserializers which are used concurrently.
+ * </p>
+ *
+ * @see com.semagia.mio.helpers.ResourceCatalog
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public interface IResourceResolver {
+
+    /**
+     * Returns the source for the provided IRI.
+     * <p>
+     * The returned source must provide a byte or character stream which is
+     * closed by the deserializer. The base IRI of the source should be 
+     * the provided IRI, otherwise relative IRIs within the resource are 
+     * resolved against another base.
+     * </p>
+     *
+     * @param iri The absolute IRI of the resource.
+     * @return A source or {@code null} to read the resource from the IRI.
+     * @throws IOException In case of an I/O error.
+     */
+    public Source resolve(String iri) throws IOException;
+
+}
@@ -77,5 +77,68 @@ public final class Property {
      */
     public static final String LTM_LEGACY = _BASE + "ltm-legacy";
 
+    /**
+     * Indicates a precompiled {@code com.semagia.mio.stm.SnelloTemplateLib}
+     * whose templates are available to Snello documents.
+     */
+    public static final String SNELLO_TEMPLATE_LIB = _BASE + "snello-template-lib";
+
+    /**
+     * Indicates a precompiled {@code com.semagia.mio.ctm.CTMHeader} whose
+     * prefixes and templates are available to CTM documents.
+     */
+    public static final String CTM_HEADER = _BASE + "ctm-header";
+
+    /**
+     * Indicates a {@link com.semagia.mio.helpers.ConstructFilter} which
+     * excludes constructs from the events.
+     */
+    public static final String CONSTRUCT_FILTER = _BASE + "construct-filter";
+
+    /**
+     * Indicates the number of threads a deserializer may use to parse
+     * independent parts of the source concurrently. The value is an
+     * {@link Integer}, values less than {@code 2} disable concurrent parsing.
+     * Deserializers which do not support concurrent parsing ignore this
+     * property.
+     */
+    public static final String PARALLELISM = _BASE + "parallelism";
+
+    /**
+     * Indicates a {@link IResourceResolver} which provides the sources of
+     * included and merged topic maps and of other external resources like
+     * RDF mappings.
+     */
+    public static final String RESOURCE_RESOLVER = _BASE + "resource-resolver";
+
+    /**
+     * Indicates a {@link com.semagia.mio.helpers.IncludeCache} which keeps 
+     * the events of included and merged topic maps, so that these sources 
+     * are not parsed again if they are included by other sources.
+     */
+    public static final String INCLUDE_CACHE = _BASE + "include-cache";
+
+    /**
+     * Indicates the number of threads a deserializer may use to read and
+     * parse the included and merged topic maps of a source before the
+     * directives are processed. The value is an {@link Integer}, values less
+     * than {@code 1} disable prefetching. The events are reported in the 
+     * same order as if the topic maps were parsed sequentially.
+     * Deserializers which do not support prefetching ignore this property.
+     */
+    public static final String INCLUDE_PREFETCH = _BASE + "include-prefetch";
+
+    /**
+     * Indicates a {@code com.semagia.mio.tabella.CSVMapping} which maps the
+     * columns of CSV documents to topics and associations.
+     */
+    public static final String TABELLA_MAPPING = _BASE + "tabella-mapping";
+
+    /**
+     * Indicates an IRI to the mapping source for CSV documents
+     * (see {@link #TABELLA_MAPPING}).
+     */
+    public static final String TABELLA_MAPPING_IRI = _BASE + "tabella-mapping-iri";
+
 
 }
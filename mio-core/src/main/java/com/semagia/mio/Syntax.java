@@ -103,6 +103,14 @@ public final class Syntax {
                     "application/json"), 
             Arrays.asList("jtm", "jtm11"));
 
+    /**
+     * JTM Lines, one JSON Topic Maps item per line.
+     */
+    public static final Syntax JTM_LINES = new Syntax("JTM Lines", 
+            Arrays.asList("application/x-tm+jtm-lines",
+                    "application/x-ndjson"), 
+            Arrays.asList("jtml", "jsonl"));
+
     /**
      * Linear Topic Maps notation (LTM).
      */
@@ -220,7 +228,7 @@ public final class Syntax {
             Arrays.asList("html", "htm", "xhtml", "xhtm"));
 
     private static Syntax[] _SYNTAXES = new Syntax[] {
-        ASTMA, BTM, CTM, JTM, LTM, XTM, XTM_10, XTM_20, XTM_21, TMXML, XFML, 
+        ASTMA, BTM, CTM, JTM, JTM_LINES, LTM, XTM, XTM_10, XTM_20, XTM_21, TMXML, XFML, 
         SNELLO, RDFXML, N3, NTRIPLES, TURTLE, TRIX, TRIG, RDFA, CRTM
     };
 
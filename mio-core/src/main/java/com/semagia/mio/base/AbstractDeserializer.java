@@ -20,8 +20,12 @@ import java.io.IOException;
 import com.semagia.mio.IRIContext;
 import com.semagia.mio.IDeserializer;
 import com.semagia.mio.IMapHandler;
+import com.semagia.mio.IResourceResolver;
 import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
 import com.semagia.mio.Source;
+import com.semagia.mio.helpers.ConstructFilter;
+import com.semagia.mio.helpers.FilteringMapHandler;
 
 /**
  * Abstract deserializer which handles the common cases.
@@ -34,6 +38,11 @@ import com.semagia.mio.Source;
  * {@link IMapHandler#startTopicMap()} and {@link IMapHandler#endTopicMap()}. 
  * </p>
  * <p>
+ * If the source provides neither a byte stream nor a character stream and
+ * the {@link Property#RESOURCE_RESOLVER} property is set, the resolver is
+ * asked for the source of the IRI.
+ * </p>
+ * <p>
  * Derived classes have to implement the {@link #doParse(Source)} method which
  * does the parsing.
  * </p>
@@ -86,26 +95,54 @@ public abstract class AbstractDeserializer implements IDeserializer {
         if (src.getBaseIRI() == null) {
             throw new IllegalArgumentException("The base IRI must not be null");
         }
+        final Source resolved = _resolve(src);
+        final Source source = resolved != null ? resolved : src;
+        final Object filter = getProperty(Property.CONSTRUCT_FILTER);
+        if (filter instanceof ConstructFilter) {
+            _handler = FilteringMapHandler.create(_handler, (ConstructFilter) filter);
+        }
         if (!_isSubordinate) {
             _handler.startTopicMap();
         }
         try {
-            doParse(src);
+            doParse(source);
         }
         finally {
             if (!_isSubordinate) {
                 _handler.endTopicMap();
-                if (src.getByteStream() != null) {
-                    src.getByteStream().close();
+            }
+            // Streams of resolved sources are closed even in subordinate mode
+            if (!_isSubordinate || resolved != null) {
+                if (source.getByteStream() != null) {
+                    source.getByteStream().close();
                 }
-                if (src.getCharacterStream() != null) {
-                    src.getCharacterStream().close();
+                if (source.getCharacterStream() != null) {
+                    source.getCharacterStream().close();
                 }
             }
             _handler = null;
         }
     }
 
+    /**
+     * Returns the source provided by the {@link Property#RESOURCE_RESOLVER}
+     * if the provided source has no stream.
+     *
+     * @param src The source.
+     * @return The resolved source or {@code null}.
+     * @throws IOException In case of an I/O error.
+     */
+    private Source _resolve(final Source src) throws IOException {
+        if (src.getByteStream() != null || src.getCharacterStream() != null 
+                || src.getIRI() == null) {
+            return null;
+        }
+        final Object resolver = getProperty(Property.RESOURCE_RESOLVER);
+        return resolver instanceof IResourceResolver 
+                    ? ((IResourceResolver) resolver).resolve(src.getIRI()) 
+                    : null;
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.mio.IDeserializer#setMapHandler(com.semagia.mio.IMapHandler)
      */
@@ -0,0 +1,556 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.cxtm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.semagia.mio.utils.ExternalSorter.ICodec;
+
+/**
+ * Internal representation of the Topic Maps constructs which are written by
+ * the {@link CXTMHandler}.
+ * <p>
+ * Topic references are represented by <tt>int</tt>s. Before the topics are
+ * numbered, the <tt>int</tt>s represent internal topic identifiers,
+ * afterwards they represent the CXTM topic numbers. <tt>0</tt> indicates
+ * that no topic is referenced (i.e. no reifier).
+ * </p>
+ * <p>
+ * The comparators implement the CXTM ordering rules. Sets are compared by
+ * their cardinality first, equally sized sets are compared item by item.
+ * Topic references are compared by the topic numbers, so the comparators
+ * must not be used before the topics are numbered.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class CXTMConstructs {
+
+    private static final int[] _NO_TOPICS = new int[0];
+    private static final String[] _NO_IRIS = new String[0];
+
+    private CXTMConstructs() {
+        // noop.
+    }
+
+    static final class Identity {
+        int topic;
+        int type;
+        String iri;
+
+        Identity(final int topic, final int type, final String iri) {
+            this.topic = topic;
+            this.type = type;
+            this.iri = iri;
+        }
+    }
+
+    static final class Topic {
+        int id;
+        String[] sids;
+        String[] slos;
+        String[] iids;
+    }
+
+    static class Reifiable {
+        int reifier;
+        String[] iids = _NO_IRIS;
+    }
+
+    static final class Name extends Reifiable {
+        int parent;
+        int type;
+        String value;
+        int[] scope = _NO_TOPICS;
+        Variant[] variants;
+    }
+
+    static final class Variant extends Reifiable {
+        String value;
+        String datatype;
+        int[] scope = _NO_TOPICS;
+    }
+
+    static final class Occurrence extends Reifiable {
+        int parent;
+        int type;
+        String value;
+        String datatype;
+        int[] scope = _NO_TOPICS;
+    }
+
+    static final class Association extends Reifiable {
+        int type;
+        int[] scope = _NO_TOPICS;
+        Role[] roles;
+    }
+
+    static final class Role extends Reifiable {
+        int type;
+        int player;
+    }
+
+    static final class RolePlayed {
+        int player;
+        int association;
+        int role;
+
+        RolePlayed(final int player, final int association, final int role) {
+            this.player = player;
+            this.association = association;
+            this.role = role;
+        }
+    }
+
+
+    /*
+     * Comparators
+     */
+
+    static final Comparator<Identity> IDENTITY_COMPARATOR = new Comparator<Identity>() {
+        @Override
+        public int compare(final Identity a, final Identity b) {
+            int res = _compare(a.topic, b.topic);
+            if (res == 0) {
+                res = a.type - b.type;
+                if (res == 0) {
+                    res = a.iri.compareTo(b.iri);
+                }
+            }
+            return res;
+        }
+    };
+
+    static final Comparator<Topic> TOPIC_COMPARATOR = new Comparator<Topic>() {
+        @Override
+        public int compare(final Topic a, final Topic b) {
+            int res = compareIRIs(a.sids, b.sids);
+            if (res == 0) {
+                res = compareIRIs(a.slos, b.slos);
+                if (res == 0) {
+                    res = compareIRIs(a.iids, b.iids);
+                }
+            }
+            return res;
+        }
+    };
+
+    static final Comparator<Variant> VARIANT_COMPARATOR = new Comparator<Variant>() {
+        @Override
+        public int compare(final Variant a, final Variant b) {
+            int res = a.value.compareTo(b.value);
+            if (res == 0) {
+                res = a.datatype.compareTo(b.datatype);
+                if (res == 0) {
+                    res = compareTopics(a.scope, b.scope);
+                }
+            }
+            return res;
+        }
+    };
+
+    static final Comparator<Name> NAME_COMPARATOR = new Comparator<Name>() {
+        @Override
+        public int compare(final Name a, final Name b) {
+            int res = _compare(a.parent, b.parent);
+            if (res == 0) {
+                res = a.value.compareTo(b.value);
+                if (res == 0) {
+                    res = _compare(a.type, b.type);
+                    if (res == 0) {
+                        res = compareTopics(a.scope, b.scope);
+                    }
+                }
+            }
+            return res;
+        }
+    };
+
+    static final Comparator<Occurrence> OCCURRENCE_COMPARATOR = new Comparator<Occurrence>() {
+        @Override
+        public int compare(final Occurrence a, final Occurrence b) {
+            int res = _compare(a.parent, b.parent);
+            if (res == 0) {
+                res = a.value.compareTo(b.value);
+                if (res == 0) {
+                    res = a.datatype.compareTo(b.datatype);
+                    if (res == 0) {
+                        res = _compare(a.type, b.type);
+                        if (res == 0) {
+                            res = compareTopics(a.scope, b.scope);
+                        }
+                    }
+                }
+            }
+            return res;
+        }
+    };
+
+    static final Comparator<Role> ROLE_COMPARATOR = new Comparator<Role>() {
+        @Override
+        public int compare(final Role a, final Role b) {
+            final int res = _compare(a.player, b.player);
+            return res != 0 ? res : _compare(a.type, b.type);
+        }
+    };
+
+    static final Comparator<Association> ASSOCIATION_COMPARATOR = new Comparator<Association>() {
+        @Override
+        public int compare(final Association a, final Association b) {
+            int res = _compare(a.type, b.type);
+            if (res == 0) {
+                res = a.roles.length - b.roles.length;
+                for (int i=0; i<a.roles.length && res == 0; i++) {
+                    res = ROLE_COMPARATOR.compare(a.roles[i], b.roles[i]);
+                }
+                if (res == 0) {
+                    res = compareTopics(a.scope, b.scope);
+                }
+            }
+            return res;
+        }
+    };
+
+    static final Comparator<RolePlayed> ROLE_PLAYED_COMPARATOR = new Comparator<RolePlayed>() {
+        @Override
+        public int compare(final RolePlayed a, final RolePlayed b) {
+            int res = _compare(a.player, b.player);
+            if (res == 0) {
+                res = _compare(a.association, b.association);
+                if (res == 0) {
+                    res = _compare(a.role, b.role);
+                }
+            }
+            return res;
+        }
+    };
+
+    /**
+     * Compares two sorted sets of IRIs.
+     */
+    static int compareIRIs(final String[] a, final String[] b) {
+        int res = a.length - b.length;
+        for (int i=0; i<a.length && res == 0; i++) {
+            res = a[i].compareTo(b[i]);
+        }
+        return res;
+    }
+
+    /**
+     * Compares two sorted sets of topic numbers.
+     */
+    static int compareTopics(final int[] a, final int[] b) {
+        int res = a.length - b.length;
+        for (int i=0; i<a.length && res == 0; i++) {
+            res = _compare(a[i], b[i]);
+        }
+        return res;
+    }
+
+    private static int _compare(final int a, final int b) {
+        return a < b ? -1 : a == b ? 0 : 1;
+    }
+
+
+    /*
+     * Helpers to normalize sets.
+     */
+
+    /**
+     * Returns a sorted array of the unique values of the provided array.
+     */
+    static int[] toSet(final int[] topics) {
+        if (topics.length < 2) {
+            return topics;
+        }
+        final int[] sorted = topics.clone();
+        Arrays.sort(sorted);
+        int len = 1;
+        for (int i=1; i<sorted.length; i++) {
+            if (sorted[i] != sorted[len-1]) {
+                sorted[len++] = sorted[i];
+            }
+        }
+        return len == sorted.length ? sorted : Arrays.copyOf(sorted, len);
+    }
+
+    /**
+     * Returns a sorted array of the unique values of the provided array.
+     */
+    static String[] toSet(final String[] iris) {
+        if (iris.length < 2) {
+            return iris;
+        }
+        final String[] sorted = iris.clone();
+        Arrays.sort(sorted);
+        int len = 1;
+        for (int i=1; i<sorted.length; i++) {
+            if (!sorted[i].equals(sorted[len-1])) {
+                sorted[len++] = sorted[i];
+            }
+        }
+        return len == sorted.length ? sorted : Arrays.copyOf(sorted, len);
+    }
+
+    /**
+     * Returns the sorted union of two sets of IRIs.
+     */
+    static String[] union(final String[] a, final String[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        if (a.length == 0) {
+            return b;
+        }
+        final String[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return toSet(result);
+    }
+
+    /**
+     * Returns the sorted union of two sets of topics.
+     */
+    static int[] union(final int[] a, final int[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        if (a.length == 0) {
+            return b;
+        }
+        final int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return toSet(result);
+    }
+
+
+    /*
+     * Codecs
+     */
+
+    static final ICodec<Identity> IDENTITY_CODEC = new ICodec<Identity>() {
+        @Override
+        public void write(final DataOutput out, final Identity obj) throws IOException {
+            out.writeInt(obj.topic);
+            out.writeByte(obj.type);
+            writeString(out, obj.iri);
+        }
+
+        @Override
+        public Identity read(final DataInput in) throws IOException {
+            return new Identity(in.readInt(), in.readByte(), readString(in));
+        }
+    };
+
+    static final ICodec<Topic> TOPIC_CODEC = new ICodec<Topic>() {
+        @Override
+        public void write(final DataOutput out, final Topic obj) throws IOException {
+            out.writeInt(obj.id);
+            _writeIRIs(out, obj.sids);
+            _writeIRIs(out, obj.slos);
+            _writeIRIs(out, obj.iids);
+        }
+
+        @Override
+        public Topic read(final DataInput in) throws IOException {
+            final Topic topic = new Topic();
+            topic.id = in.readInt();
+            topic.sids = _readIRIs(in);
+            topic.slos = _readIRIs(in);
+            topic.iids = _readIRIs(in);
+            return topic;
+        }
+    };
+
+    static final ICodec<Name> NAME_CODEC = new ICodec<Name>() {
+        @Override
+        public void write(final DataOutput out, final Name obj) throws IOException {
+            out.writeInt(obj.parent);
+            out.writeInt(obj.type);
+            writeString(out, obj.value);
+            _writeTopics(out, obj.scope);
+            _writeReifiable(out, obj);
+            out.writeInt(obj.variants.length);
+            for (Variant variant: obj.variants) {
+                writeString(out, variant.value);
+                writeString(out, variant.datatype);
+                _writeTopics(out, variant.scope);
+                _writeReifiable(out, variant);
+            }
+        }
+
+        @Override
+        public Name read(final DataInput in) throws IOException {
+            final Name name = new Name();
+            name.parent = in.readInt();
+            name.type = in.readInt();
+            name.value = readString(in);
+            name.scope = _readTopics(in);
+            _readReifiable(in, name);
+            name.variants = new Variant[in.readInt()];
+            for (int i=0; i<name.variants.length; i++) {
+                final Variant variant = new Variant();
+                variant.value = readString(in);
+                variant.datatype = readString(in);
+                variant.scope = _readTopics(in);
+                _readReifiable(in, variant);
+                name.variants[i] = variant;
+            }
+            return name;
+        }
+    };
+
+    static final ICodec<Occurrence> OCCURRENCE_CODEC = new ICodec<Occurrence>() {
+        @Override
+        public void write(final DataOutput out, final Occurrence obj) throws IOException {
+            out.writeInt(obj.parent);
+            out.writeInt(obj.type);
+            writeString(out, obj.value);
+            writeString(out, obj.datatype);
+            _writeTopics(out, obj.scope);
+            _writeReifiable(out, obj);
+        }
+
+        @Override
+        public Occurrence read(final DataInput in) throws IOException {
+            final Occurrence occ = new Occurrence();
+            occ.parent = in.readInt();
+            occ.type = in.readInt();
+            occ.value = readString(in);
+            occ.datatype = readString(in);
+            occ.scope = _readTopics(in);
+            _readReifiable(in, occ);
+            return occ;
+        }
+    };
+
+    static final ICodec<Association> ASSOCIATION_CODEC = new ICodec<Association>() {
+        @Override
+        public void write(final DataOutput out, final Association obj) throws IOException {
+            out.writeInt(obj.type);
+            _writeTopics(out, obj.scope);
+            _writeReifiable(out, obj);
+            out.writeInt(obj.roles.length);
+            for (Role role: obj.roles) {
+                out.writeInt(role.type);
+                out.writeInt(role.player);
+                _writeReifiable(out, role);
+            }
+        }
+
+        @Override
+        public Association read(final DataInput in) throws IOException {
+            final Association assoc = new Association();
+            assoc.type = in.readInt();
+            assoc.scope = _readTopics(in);
+            _readReifiable(in, assoc);
+            assoc.roles = new Role[in.readInt()];
+            for (int i=0; i<assoc.roles.length; i++) {
+                final Role role = new Role();
+                role.type = in.readInt();
+                role.player = in.readInt();
+                _readReifiable(in, role);
+                assoc.roles[i] = role;
+            }
+            return assoc;
+        }
+    };
+
+    static final ICodec<RolePlayed> ROLE_PLAYED_CODEC = new ICodec<RolePlayed>() {
+        @Override
+        public void write(final DataOutput out, final RolePlayed obj) throws IOException {
+            out.writeInt(obj.player);
+            out.writeInt(obj.association);
+            out.writeInt(obj.role);
+        }
+
+        @Override
+        public RolePlayed read(final DataInput in) throws IOException {
+            return new RolePlayed(in.readInt(), in.readInt(), in.readInt());
+        }
+    };
+
+    /**
+     * Writes a string of arbitrary length.
+     * <p>
+     * {@link DataOutput#writeUTF(String)} cannot be used since it is limited
+     * to 64 KB.
+     * </p>
+     */
+    static void writeString(final DataOutput out, final String str) throws IOException {
+        final byte[] bytes = str.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(final DataInput in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void _writeIRIs(final DataOutput out, final String[] iris) throws IOException {
+        out.writeInt(iris.length);
+        for (String iri: iris) {
+            writeString(out, iri);
+        }
+    }
+
+    private static String[] _readIRIs(final DataInput in) throws IOException {
+        final int len = in.readInt();
+        if (len == 0) {
+            return _NO_IRIS;
+        }
+        final String[] iris = new String[len];
+        for (int i=0; i<len; i++) {
+            iris[i] = readString(in);
+        }
+        return iris;
+    }
+
+    private static void _writeTopics(final DataOutput out, final int[] topics) throws IOException {
+        out.writeInt(topics.length);
+        for (int topic: topics) {
+            out.writeInt(topic);
+        }
+    }
+
+    private static int[] _readTopics(final DataInput in) throws IOException {
+        final int len = in.readInt();
+        if (len == 0) {
+            return _NO_TOPICS;
+        }
+        final int[] topics = new int[len];
+        for (int i=0; i<len; i++) {
+            topics[i] = in.readInt();
+        }
+        return topics;
+    }
+
+    private static void _writeReifiable(final DataOutput out, final Reifiable obj) throws IOException {
+        out.writeInt(obj.reifier);
+        _writeIRIs(out, obj.iids);
+    }
+
+    private static void _readReifiable(final DataInput in, final Reifiable obj) throws IOException {
+        obj.reifier = in.readInt();
+        obj.iids = _readIRIs(in);
+    }
+
+}
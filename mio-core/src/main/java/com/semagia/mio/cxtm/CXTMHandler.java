@@ -0,0 +1,953 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.cxtm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.cxtm.CXTMConstructs.Association;
+import com.semagia.mio.cxtm.CXTMConstructs.Identity;
+import com.semagia.mio.cxtm.CXTMConstructs.Name;
+import com.semagia.mio.cxtm.CXTMConstructs.Occurrence;
+import com.semagia.mio.cxtm.CXTMConstructs.Reifiable;
+import com.semagia.mio.cxtm.CXTMConstructs.Role;
+import com.semagia.mio.cxtm.CXTMConstructs.RolePlayed;
+import com.semagia.mio.cxtm.CXTMConstructs.Topic;
+import com.semagia.mio.cxtm.CXTMConstructs.Variant;
+import com.semagia.mio.helpers.AbstractIndexedHamsterMapHandler;
+import com.semagia.mio.helpers.IdentityIndex;
+import com.semagia.mio.utils.ExternalSorter;
+import com.semagia.mio.utils.ExternalSorter.ICloseableIterator;
+import com.semagia.mio.utils.ExternalSorter.ICodec;
+import com.semagia.mio.voc.TMDM;
+import com.semagia.mio.voc.XSD;
+
+/**
+ * {@link IMapHandler} implementation that writes
+ * <a href="http://www.isotopicmaps.org/cxtm/">Canonical XTM (CXTM)</a>.
+ * <p>
+ * The handler merges topics and removes duplicates according to the TMDM.
+ * All constructs are written into temporary files while the topic map is
+ * read; the canonicalization happens after the {@link #endTopicMap()} event
+ * by sorting the constructs with an external merge sort. The amount of
+ * memory depends on {@link #setMaxInMemory(int)} and four bytes per topic.
+ * Sorted runs are created by several threads (see {@link #setThreads(int)}).
+ * </p>
+ * <p>
+ * Topics are ordered by their subject identifiers, subject locators and
+ * item identifiers.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class CXTMHandler extends AbstractIndexedHamsterMapHandler {
+
+    private static final int _DEFAULT_MAX_IN_MEMORY = 100000;
+
+    private static final byte
+        _IDENTITY = 1,
+        _NAME = 2,
+        _OCCURRENCE = 3,
+        _ASSOCIATION = 4,
+        _TM_IID = 5,
+        _TM_REIFIER = 6;
+
+    private final OutputStream _out;
+    private final String _iri;
+    private final String _base;
+    private File _directory;
+    private int _maxInMemory;
+    private int _threads;
+
+    private File _rawFile;
+    private DataOutputStream _raw;
+    private int[] _numbers;
+
+    /**
+     * Creates a CXTM writer.
+     *
+     * @param out The stream to write the CXTM to.
+     * @param baseIRI The base locator, used to normalize the locators.
+     */
+    public CXTMHandler(final OutputStream out, final String baseIRI) {
+        if (out == null) {
+            throw new IllegalArgumentException("The output stream must not be null");
+        }
+        if (baseIRI == null) {
+            throw new IllegalArgumentException("The base IRI must not be null");
+        }
+        _out = out;
+        final int idx = baseIRI.indexOf('#');
+        _iri = idx != -1 ? baseIRI.substring(0, idx) : baseIRI;
+        _base = _iri.substring(0, _iri.lastIndexOf('/') + 1);
+        _directory = new File(System.getProperty("java.io.tmpdir"));
+        _maxInMemory = _DEFAULT_MAX_IN_MEMORY;
+        _threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Sets the directory for the temporary files.
+     *
+     * @param directory The directory.
+     */
+    public void setTemporaryDirectory(final File directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("The directory must not be null");
+        }
+        _directory = directory;
+    }
+
+    /**
+     * Returns the directory for the temporary files.
+     *
+     * @return The directory.
+     */
+    public File getTemporaryDirectory() {
+        return _directory;
+    }
+
+    /**
+     * Sets the max. number of constructs which are sorted in memory.
+     *
+     * @param maxInMemory Max. number of in-memory constructs per sort run.
+     */
+    public void setMaxInMemory(final int maxInMemory) {
+        if (maxInMemory < 1) {
+            throw new IllegalArgumentException("The max. number of in-memory constructs must be greater than 0");
+        }
+        _maxInMemory = maxInMemory;
+    }
+
+    /**
+     * Returns the max. number of constructs which are sorted in memory.
+     *
+     * @return Max. number of in-memory constructs per sort run.
+     */
+    public int getMaxInMemory() {
+        return _maxInMemory;
+    }
+
+    /**
+     * Sets the number of threads which are used to sort the constructs.
+     *
+     * @param threads The number of threads.
+     */
+    public void setThreads(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be greater than 0");
+        }
+        _threads = threads;
+    }
+
+    /**
+     * Returns the number of threads which are used to sort the constructs.
+     *
+     * @return The number of threads.
+     */
+    public int getThreads() {
+        return _threads;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractIndexedHamsterMapHandler#startTopicMap()
+     */
+    @Override
+    public void startTopicMap() throws MIOException {
+        super.startTopicMap();
+        try {
+            _rawFile = File.createTempFile("mio-cxtm-", ".raw", _directory);
+            _raw = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_rawFile), 1 << 16));
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractIndexedHamsterMapHandler#endTopicMap()
+     */
+    @Override
+    public void endTopicMap() throws MIOException {
+        super.endTopicMap();
+        final ExecutorService executor = _threads > 1 ? Executors.newFixedThreadPool(_threads) : null;
+        try {
+            _raw.close();
+            _raw = null;
+            _serialize(executor);
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+        catch (IllegalStateException ex) {
+            // Thrown by the iterators if a run file cannot be read
+            throw new MIOException(ex.getMessage(), ex.getCause());
+        }
+        finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            _rawFile.delete();
+            _numbers = null;
+        }
+    }
+
+
+    /*
+     * Topic identities.
+     */
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractIndexedHamsterMapHandler#createIndex()
+     */
+    @Override
+    protected IdentityIndex createIndex() {
+        return new IdentityIndex(_directory, Math.max(2, _maxInMemory));
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractIndexedHamsterMapHandler#handleIdentity(int, int, java.lang.String)
+     */
+    @Override
+    protected void handleIdentity(final int topic, final int type, final String iri) throws MIOException {
+        try {
+            _raw.writeByte(_IDENTITY);
+            CXTMConstructs.IDENTITY_CODEC.write(_raw, new Identity(topic, type, iri));
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+
+    /*
+     * Constructs, written in the order of appearance with internal topic ids.
+     */
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleTopicMapItemIdentifier(java.lang.String)
+     */
+    @Override
+    protected void handleTopicMapItemIdentifier(final String iri) throws MIOException {
+        try {
+            _raw.writeByte(_TM_IID);
+            CXTMConstructs.writeString(_raw, iri);
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleTopicMapReifier(java.lang.Object)
+     */
+    @Override
+    protected void handleTopicMapReifier(final Integer reifier) throws MIOException {
+        try {
+            _raw.writeByte(_TM_REIFIER);
+            _raw.writeInt(reifier.intValue());
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleTypeInstance(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    protected void handleTypeInstance(final Integer instance, final Integer type) throws MIOException {
+        final Association assoc = new Association();
+        assoc.type = createTopicBySubjectIdentifier(TMDM.TYPE_INSTANCE).intValue();
+        final Role typeRole = new Role();
+        typeRole.type = createTopicBySubjectIdentifier(TMDM.TYPE).intValue();
+        typeRole.player = type.intValue();
+        final Role instanceRole = new Role();
+        instanceRole.type = createTopicBySubjectIdentifier(TMDM.INSTANCE).intValue();
+        instanceRole.player = instance.intValue();
+        assoc.roles = new Role[] {typeRole, instanceRole};
+        _write(_ASSOCIATION, assoc, CXTMConstructs.ASSOCIATION_CODEC);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createAssociation(java.lang.Object, java.util.Collection, java.lang.Object, java.util.Collection, java.util.Collection)
+     */
+    @Override
+    protected void createAssociation(final Integer type, final Collection<Integer> scope,
+            final Integer reifier, final Collection<String> iids,
+            final Collection<IRole<Integer>> roles) throws MIOException {
+        final Association assoc = new Association();
+        assoc.type = type.intValue();
+        _setScope(assoc, scope);
+        _setReifiable(assoc, reifier, iids);
+        assoc.roles = new Role[roles.size()];
+        int i = 0;
+        for (IRole<Integer> r: roles) {
+            final Role role = new Role();
+            role.type = r.getType().intValue();
+            role.player = r.getPlayer().intValue();
+            _setReifiable(role, r.getReifier(), r.getItemIdentifiers());
+            assoc.roles[i++] = role;
+        }
+        _write(_ASSOCIATION, assoc, CXTMConstructs.ASSOCIATION_CODEC);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createName(java.lang.Object, java.lang.Object, java.lang.String, java.util.Collection, java.lang.Object, java.util.Collection, java.util.Collection)
+     */
+    @Override
+    protected void createName(final Integer parent, final Integer type,
+            final String value, final Collection<Integer> scope,
+            final Integer reifier, final Collection<String> iids,
+            final Collection<IVariant<Integer>> variants) throws MIOException {
+        final Name name = new Name();
+        name.parent = parent.intValue();
+        name.type = type != null ? type.intValue()
+                                 : createTopicBySubjectIdentifier(TMDM.TOPIC_NAME).intValue();
+        name.value = value;
+        if (scope != null) {
+            name.scope = _toArray(scope);
+        }
+        _setReifiable(name, reifier, iids);
+        name.variants = new Variant[variants.size()];
+        int i = 0;
+        for (IVariant<Integer> v: variants) {
+            final Variant variant = new Variant();
+            variant.value = v.getValue();
+            variant.datatype = v.getDatatype();
+            variant.scope = _toArray(v.getScope());
+            _setReifiable(variant, v.getReifier(), v.getItemIdentifiers());
+            name.variants[i++] = variant;
+        }
+        _write(_NAME, name, CXTMConstructs.NAME_CODEC);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createOccurrence(java.lang.Object, java.lang.Object, java.lang.String, java.lang.String, java.util.Collection, java.lang.Object, java.util.Collection)
+     */
+    @Override
+    protected void createOccurrence(final Integer parent, final Integer type,
+            final String value, final String datatype,
+            final Collection<Integer> scope, final Integer reifier,
+            final Collection<String> iids) throws MIOException {
+        final Occurrence occ = new Occurrence();
+        occ.parent = parent.intValue();
+        occ.type = type.intValue();
+        occ.value = value;
+        occ.datatype = datatype;
+        _setScope(occ, scope);
+        _setReifiable(occ, reifier, iids);
+        _write(_OCCURRENCE, occ, CXTMConstructs.OCCURRENCE_CODEC);
+    }
+
+    private static void _setScope(final Occurrence occ, final Collection<Integer> scope) {
+        if (scope != null) {
+            occ.scope = _toArray(scope);
+        }
+    }
+
+    private static void _setScope(final Association assoc, final Collection<Integer> scope) {
+        if (scope != null) {
+            assoc.scope = _toArray(scope);
+        }
+    }
+
+    private static void _setReifiable(final Reifiable reifiable, final Integer reifier,
+            final Collection<String> iids) {
+        reifiable.reifier = reifier != null ? reifier.intValue() : 0;
+        if (!iids.isEmpty()) {
+            reifiable.iids = iids.toArray(new String[iids.size()]);
+        }
+    }
+
+    private static int[] _toArray(final Collection<Integer> topics) {
+        final int[] result = new int[topics.size()];
+        int i = 0;
+        for (Integer topic: topics) {
+            result[i++] = topic.intValue();
+        }
+        return result;
+    }
+
+    private <T> void _write(final byte kind, final T obj, final ICodec<T> codec) throws MIOException {
+        try {
+            _raw.writeByte(kind);
+            codec.write(_raw, obj);
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+
+    /*
+     * Canonicalization
+     */
+
+    private <T> ExternalSorter<T> _newSorter(final Comparator<? super T> comparator,
+            final ICodec<T> codec, final ExecutorService executor) {
+        return new ExternalSorter<T>(comparator, codec, _directory, _maxInMemory, executor, _threads);
+    }
+
+    private void _serialize(final ExecutorService executor) throws IOException {
+        final File topicFile = File.createTempFile("mio-cxtm-", ".topics", _directory);
+        final File assocFile = File.createTempFile("mio-cxtm-", ".assocs", _directory);
+        try {
+            final int topicCount = _numberTopics(topicFile, executor);
+            final ExternalSorter<Name> names = _newSorter(CXTMConstructs.NAME_COMPARATOR, CXTMConstructs.NAME_CODEC, executor);
+            final ExternalSorter<Occurrence> occs = _newSorter(CXTMConstructs.OCCURRENCE_COMPARATOR, CXTMConstructs.OCCURRENCE_CODEC, executor);
+            final ExternalSorter<Association> assocs = _newSorter(CXTMConstructs.ASSOCIATION_COMPARATOR, CXTMConstructs.ASSOCIATION_CODEC, executor);
+            final List<String> tmIids = new ArrayList<String>();
+            int tmReifier = 0;
+            final DataInputStream in = _openRaw();
+            try {
+                byte kind;
+                while ((kind = _readKind(in)) != -1) {
+                    switch (kind) {
+                        case _IDENTITY:
+                            CXTMConstructs.IDENTITY_CODEC.read(in);
+                            break;
+                        case _NAME:
+                            names.add(_canonicalize(CXTMConstructs.NAME_CODEC.read(in)));
+                            break;
+                        case _OCCURRENCE:
+                            occs.add(_canonicalize(CXTMConstructs.OCCURRENCE_CODEC.read(in)));
+                            break;
+                        case _ASSOCIATION:
+                            assocs.add(_canonicalize(CXTMConstructs.ASSOCIATION_CODEC.read(in)));
+                            break;
+                        case _TM_IID:
+                            tmIids.add(_normalizeLocator(CXTMConstructs.readString(in)));
+                            break;
+                        case _TM_REIFIER:
+                            tmReifier = _number(in.readInt());
+                            break;
+                        default:
+                            throw new IOException("Unknown record type: " + kind);
+                    }
+                }
+            }
+            finally {
+                in.close();
+            }
+            final ExternalSorter<RolePlayed> rolesPlayed = _newSorter(CXTMConstructs.ROLE_PLAYED_COMPARATOR, CXTMConstructs.ROLE_PLAYED_CODEC, executor);
+            _numberAssociations(assocs, assocFile, rolesPlayed);
+            _writeCXTM(topicCount, topicFile, names, occs, rolesPlayed, assocFile,
+                    tmReifier, CXTMConstructs.toSet(tmIids.toArray(new String[tmIids.size()])));
+        }
+        finally {
+            topicFile.delete();
+            assocFile.delete();
+        }
+    }
+
+    private DataInputStream _openRaw() throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(_rawFile), 1 << 16));
+    }
+
+    private static byte _readKind(final DataInputStream in) throws IOException {
+        final int kind = in.read();
+        return kind == -1 ? -1 : (byte) kind;
+    }
+
+    /**
+     * Sorts the topics, assigns the topic numbers and writes the topics in
+     * canonical order into the provided file.
+     *
+     * @return The number of topics.
+     */
+    private int _numberTopics(final File topicFile, final ExecutorService executor) throws IOException {
+        final ExternalSorter<Identity> identities = _newSorter(CXTMConstructs.IDENTITY_COMPARATOR, CXTMConstructs.IDENTITY_CODEC, executor);
+        final DataInputStream in = _openRaw();
+        try {
+            byte kind;
+            while ((kind = _readKind(in)) != -1) {
+                switch (kind) {
+                    case _IDENTITY:
+                        final Identity identity = CXTMConstructs.IDENTITY_CODEC.read(in);
+                        identity.topic = findTopic(identity.topic);
+                        identities.add(identity);
+                        break;
+                    case _NAME: CXTMConstructs.NAME_CODEC.read(in); break;
+                    case _OCCURRENCE: CXTMConstructs.OCCURRENCE_CODEC.read(in); break;
+                    case _ASSOCIATION: CXTMConstructs.ASSOCIATION_CODEC.read(in); break;
+                    case _TM_IID: CXTMConstructs.readString(in); break;
+                    case _TM_REIFIER: in.readInt(); break;
+                    default:
+                        throw new IOException("Unknown record type: " + kind);
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+        final ExternalSorter<Topic> topics = _newSorter(CXTMConstructs.TOPIC_COMPARATOR, CXTMConstructs.TOPIC_CODEC, executor);
+        final ICloseableIterator<Identity> iter = identities.sort();
+        try {
+            final List<String> sids = new ArrayList<String>();
+            final List<String> slos = new ArrayList<String>();
+            final List<String> iids = new ArrayList<String>();
+            int current = 0;
+            while (iter.hasNext()) {
+                final Identity identity = iter.next();
+                if (identity.topic != current) {
+                    if (current != 0) {
+                        topics.add(_createTopic(current, sids, slos, iids));
+                    }
+                    current = identity.topic;
+                }
+                final String iri = _normalizeLocator(identity.iri);
+                switch (identity.type) {
+                    case IRef.SUBJECT_IDENTIFIER: sids.add(iri); break;
+                    case IRef.SUBJECT_LOCATOR: slos.add(iri); break;
+                    default: iids.add(iri);
+                }
+            }
+            if (current != 0) {
+                topics.add(_createTopic(current, sids, slos, iids));
+            }
+        }
+        finally {
+            iter.close();
+        }
+        _numbers = new int[getTopicCount() + 1];
+        int number = 0;
+        final ICloseableIterator<Topic> topicIter = topics.sort();
+        final DataOutputStream out = _openOutput(topicFile);
+        try {
+            while (topicIter.hasNext()) {
+                final Topic topic = topicIter.next();
+                _numbers[topic.id] = ++number;
+                CXTMConstructs.TOPIC_CODEC.write(out, topic);
+            }
+        }
+        finally {
+            topicIter.close();
+            out.close();
+        }
+        return number;
+    }
+
+    private static DataOutputStream _openOutput(final File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    private static Topic _createTopic(final int id, final List<String> sids,
+            final List<String> slos, final List<String> iids) {
+        final Topic topic = new Topic();
+        topic.id = id;
+        topic.sids = CXTMConstructs.toSet(sids.toArray(new String[sids.size()]));
+        topic.slos = CXTMConstructs.toSet(slos.toArray(new String[slos.size()]));
+        topic.iids = CXTMConstructs.toSet(iids.toArray(new String[iids.size()]));
+        sids.clear();
+        slos.clear();
+        iids.clear();
+        return topic;
+    }
+
+    private int _number(final int topic) {
+        return topic == 0 ? 0 : _numbers[findTopic(topic)];
+    }
+
+    private int[] _numbers(final int[] topics) {
+        final int[] result = new int[topics.length];
+        for (int i=0; i<topics.length; i++) {
+            result[i] = _number(topics[i]);
+        }
+        return CXTMConstructs.toSet(result);
+    }
+
+    private void _canonicalizeReifiable(final Reifiable reifiable) {
+        reifiable.reifier = _number(reifiable.reifier);
+        final String[] iids = reifiable.iids;
+        for (int i=0; i<iids.length; i++) {
+            iids[i] = _normalizeLocator(iids[i]);
+        }
+        reifiable.iids = CXTMConstructs.toSet(iids);
+    }
+
+    private String _normalizeValue(final String value, final String datatype) {
+        return XSD.ANY_URI.equals(datatype) ? _normalizeLocator(value) : value;
+    }
+
+    private Name _canonicalize(final Name name) {
+        name.parent = _number(name.parent);
+        name.type = _number(name.type);
+        name.scope = _numbers(name.scope);
+        _canonicalizeReifiable(name);
+        for (Variant variant: name.variants) {
+            variant.value = _normalizeValue(variant.value, variant.datatype);
+            variant.scope = CXTMConstructs.union(name.scope, _numbers(variant.scope));
+            _canonicalizeReifiable(variant);
+        }
+        name.variants = _mergeVariants(name.variants);
+        return name;
+    }
+
+    private static Variant[] _mergeVariants(final Variant[] variants) {
+        if (variants.length < 2) {
+            return variants;
+        }
+        Arrays.sort(variants, CXTMConstructs.VARIANT_COMPARATOR);
+        final List<Variant> result = new ArrayList<Variant>(variants.length);
+        Variant last = null;
+        for (Variant variant: variants) {
+            if (last != null && CXTMConstructs.VARIANT_COMPARATOR.compare(last, variant) == 0) {
+                _mergeReifiable(last, variant);
+            }
+            else {
+                result.add(variant);
+                last = variant;
+            }
+        }
+        return result.toArray(new Variant[result.size()]);
+    }
+
+    private static void _mergeReifiable(final Reifiable target, final Reifiable source) {
+        target.iids = CXTMConstructs.union(target.iids, source.iids);
+        if (target.reifier == 0) {
+            target.reifier = source.reifier;
+        }
+    }
+
+    private Occurrence _canonicalize(final Occurrence occ) {
+        occ.parent = _number(occ.parent);
+        occ.type = _number(occ.type);
+        occ.value = _normalizeValue(occ.value, occ.datatype);
+        occ.scope = _numbers(occ.scope);
+        _canonicalizeReifiable(occ);
+        return occ;
+    }
+
+    private Association _canonicalize(final Association assoc) {
+        assoc.type = _number(assoc.type);
+        assoc.scope = _numbers(assoc.scope);
+        _canonicalizeReifiable(assoc);
+        for (Role role: assoc.roles) {
+            role.type = _number(role.type);
+            role.player = _number(role.player);
+            _canonicalizeReifiable(role);
+        }
+        Arrays.sort(assoc.roles, CXTMConstructs.ROLE_COMPARATOR);
+        final List<Role> roles = new ArrayList<Role>(assoc.roles.length);
+        Role last = null;
+        for (Role role: assoc.roles) {
+            if (last != null && CXTMConstructs.ROLE_COMPARATOR.compare(last, role) == 0) {
+                _mergeReifiable(last, role);
+            }
+            else {
+                roles.add(role);
+                last = role;
+            }
+        }
+        if (roles.size() != assoc.roles.length) {
+            assoc.roles = roles.toArray(new Role[roles.size()]);
+        }
+        return assoc;
+    }
+
+    /**
+     * Removes duplicate associations, writes the associations in canonical
+     * order into the provided file and collects the roles played by the topics.
+     */
+    private static void _numberAssociations(final ExternalSorter<Association> assocs,
+            final File assocFile, final ExternalSorter<RolePlayed> rolesPlayed) throws IOException {
+        final ICloseableIterator<Association> iter = assocs.sort();
+        final DataOutputStream out = _openOutput(assocFile);
+        try {
+            int number = 0;
+            Association last = null;
+            while (iter.hasNext()) {
+                final Association assoc = iter.next();
+                if (last != null && CXTMConstructs.ASSOCIATION_COMPARATOR.compare(last, assoc) == 0) {
+                    _mergeReifiable(last, assoc);
+                    for (int i=0; i<last.roles.length; i++) {
+                        _mergeReifiable(last.roles[i], assoc.roles[i]);
+                    }
+                    continue;
+                }
+                if (last != null) {
+                    _writeAssociation(out, ++number, last, rolesPlayed);
+                }
+                last = assoc;
+            }
+            if (last != null) {
+                _writeAssociation(out, ++number, last, rolesPlayed);
+            }
+            out.writeBoolean(false);
+        }
+        finally {
+            iter.close();
+            out.close();
+        }
+    }
+
+    private static void _writeAssociation(final DataOutputStream out, final int number,
+            final Association assoc, final ExternalSorter<RolePlayed> rolesPlayed) throws IOException {
+        out.writeBoolean(true);
+        CXTMConstructs.ASSOCIATION_CODEC.write(out, assoc);
+        for (int i=0; i<assoc.roles.length; i++) {
+            rolesPlayed.add(new RolePlayed(assoc.roles[i].player, number, i+1));
+        }
+    }
+
+
+    /*
+     * Output
+     */
+
+    private void _writeCXTM(final int topicCount, final File topicFile,
+            final ExternalSorter<Name> names, final ExternalSorter<Occurrence> occs,
+            final ExternalSorter<RolePlayed> rolesPlayed, final File assocFile,
+            final int tmReifier, final String[] tmIids) throws IOException {
+        final CXTMWriter out = new CXTMWriter(_out);
+        final PeekingIterator<Name> nameIter = new PeekingIterator<Name>(names.sort());
+        final PeekingIterator<Occurrence> occIter = new PeekingIterator<Occurrence>(occs.sort());
+        final PeekingIterator<RolePlayed> rolePlayedIter = new PeekingIterator<RolePlayed>(rolesPlayed.sort());
+        final DataInputStream topicsIn = new DataInputStream(new BufferedInputStream(new FileInputStream(topicFile), 1 << 16));
+        final DataInputStream assocsIn = new DataInputStream(new BufferedInputStream(new FileInputStream(assocFile), 1 << 16));
+        try {
+            if (tmReifier != 0) {
+                out.startElement("topicMap", "reifier", String.valueOf(tmReifier));
+            }
+            else {
+                out.startElement("topicMap");
+            }
+            for (int number=1; number<=topicCount; number++) {
+                final Topic topic = CXTMConstructs.TOPIC_CODEC.read(topicsIn);
+                out.startElement("topic", "number", String.valueOf(number));
+                _writeLocators(out, "subjectIdentifiers", topic.sids);
+                _writeLocators(out, "subjectLocators", topic.slos);
+                _writeLocators(out, "itemIdentifiers", topic.iids);
+                _writeNames(out, number, nameIter);
+                _writeOccurrences(out, number, occIter);
+                while (rolePlayedIter.hasNext() && rolePlayedIter.peek().player == number) {
+                    final RolePlayed rolePlayed = rolePlayedIter.next();
+                    out.emptyElement("rolePlayed", "ref", "association." + rolePlayed.association + ".role." + rolePlayed.role);
+                }
+                out.endElement("topic");
+            }
+            int number = 0;
+            while (assocsIn.readBoolean()) {
+                _writeAssociation(out, ++number, CXTMConstructs.ASSOCIATION_CODEC.read(assocsIn));
+            }
+            _writeLocators(out, "itemIdentifiers", tmIids);
+            out.endElement("topicMap");
+            out.flush();
+        }
+        finally {
+            nameIter.close();
+            occIter.close();
+            rolePlayedIter.close();
+            topicsIn.close();
+            assocsIn.close();
+        }
+    }
+
+    private static void _writeNames(final CXTMWriter out, final int parent,
+            final PeekingIterator<Name> iter) throws IOException {
+        int number = 0;
+        Name last = null;
+        while (iter.hasNext() && iter.peek().parent == parent) {
+            final Name name = iter.next();
+            if (last != null && CXTMConstructs.NAME_COMPARATOR.compare(last, name) == 0) {
+                _mergeReifiable(last, name);
+                final Variant[] variants = Arrays.copyOf(last.variants, last.variants.length + name.variants.length);
+                System.arraycopy(name.variants, 0, variants, last.variants.length, name.variants.length);
+                last.variants = _mergeVariants(variants);
+                continue;
+            }
+            if (last != null) {
+                _writeName(out, ++number, last);
+            }
+            last = name;
+        }
+        if (last != null) {
+            _writeName(out, ++number, last);
+        }
+    }
+
+    private static void _writeName(final CXTMWriter out, final int number,
+            final Name name) throws IOException {
+        _startElement(out, "name", number, name.reifier);
+        out.dataElement("value", name.value);
+        _writeType(out, name.type);
+        _writeScope(out, name.scope);
+        for (int i=0; i<name.variants.length; i++) {
+            final Variant variant = name.variants[i];
+            _startElement(out, "variant", i+1, variant.reifier);
+            out.dataElement("value", variant.value);
+            out.dataElement("datatype", variant.datatype);
+            _writeScope(out, variant.scope);
+            _writeLocators(out, "itemIdentifiers", variant.iids);
+            out.endElement("variant");
+        }
+        _writeLocators(out, "itemIdentifiers", name.iids);
+        out.endElement("name");
+    }
+
+    private static void _writeOccurrences(final CXTMWriter out, final int parent,
+            final PeekingIterator<Occurrence> iter) throws IOException {
+        int number = 0;
+        Occurrence last = null;
+        while (iter.hasNext() && iter.peek().parent == parent) {
+            final Occurrence occ = iter.next();
+            if (last != null && CXTMConstructs.OCCURRENCE_COMPARATOR.compare(last, occ) == 0) {
+                _mergeReifiable(last, occ);
+                continue;
+            }
+            if (last != null) {
+                _writeOccurrence(out, ++number, last);
+            }
+            last = occ;
+        }
+        if (last != null) {
+            _writeOccurrence(out, ++number, last);
+        }
+    }
+
+    private static void _writeOccurrence(final CXTMWriter out, final int number,
+            final Occurrence occ) throws IOException {
+        _startElement(out, "occurrence", number, occ.reifier);
+        out.dataElement("value", occ.value);
+        out.dataElement("datatype", occ.datatype);
+        _writeType(out, occ.type);
+        _writeScope(out, occ.scope);
+        _writeLocators(out, "itemIdentifiers", occ.iids);
+        out.endElement("occurrence");
+    }
+
+    private static void _writeAssociation(final CXTMWriter out, final int number,
+            final Association assoc) throws IOException {
+        _startElement(out, "association", number, assoc.reifier);
+        _writeType(out, assoc.type);
+        for (int i=0; i<assoc.roles.length; i++) {
+            final Role role = assoc.roles[i];
+            _startElement(out, "role", i+1, role.reifier);
+            out.emptyElement("player", "topicref", String.valueOf(role.player));
+            _writeType(out, role.type);
+            _writeLocators(out, "itemIdentifiers", role.iids);
+            out.endElement("role");
+        }
+        _writeScope(out, assoc.scope);
+        _writeLocators(out, "itemIdentifiers", assoc.iids);
+        out.endElement("association");
+    }
+
+    private static void _startElement(final CXTMWriter out, final String name,
+            final int number, final int reifier) throws IOException {
+        if (reifier != 0) {
+            out.startElement(name, "number", String.valueOf(number), "reifier", String.valueOf(reifier));
+        }
+        else {
+            out.startElement(name, "number", String.valueOf(number));
+        }
+    }
+
+    private static void _writeType(final CXTMWriter out, final int type) throws IOException {
+        out.emptyElement("type", "topicref", String.valueOf(type));
+    }
+
+    private static void _writeScope(final CXTMWriter out, final int[] scope) throws IOException {
+        if (scope.length == 0) {
+            return;
+        }
+        out.startElement("scope");
+        for (int theme: scope) {
+            out.emptyElement("scopingTopic", "topicref", String.valueOf(theme));
+        }
+        out.endElement("scope");
+    }
+
+    private static void _writeLocators(final CXTMWriter out, final String name,
+            final String[] locators) throws IOException {
+        if (locators.length == 0) {
+            return;
+        }
+        out.startElement(name);
+        for (String locator: locators) {
+            out.dataElement("locator", locator);
+        }
+        out.endElement(name);
+    }
+
+    /**
+     * Removes the base locator from the provided IRI.
+     * <p>
+     * Locators which point into the document itself are reduced to the
+     * fragment (<tt>#id</tt>), other locators are made relative to the
+     * directory of the document.
+     * </p>
+     */
+    private String _normalizeLocator(final String iri) {
+        if (iri.startsWith(_iri)) {
+            if (iri.length() == _iri.length()) {
+                return "";
+            }
+            if (iri.charAt(_iri.length()) == '#') {
+                return iri.substring(_iri.length());
+            }
+        }
+        return iri.startsWith(_base) ? iri.substring(_base.length()) : iri;
+    }
+
+
+    private static final class PeekingIterator<T> {
+
+        private final ICloseableIterator<T> _iter;
+        private T _next;
+
+        PeekingIterator(final ICloseableIterator<T> iter) {
+            _iter = iter;
+            _next = iter.hasNext() ? iter.next() : null;
+        }
+
+        boolean hasNext() {
+            return _next != null;
+        }
+
+        T peek() {
+            return _next;
+        }
+
+        T next() {
+            final T result = _next;
+            _next = _iter.hasNext() ? _iter.next() : null;
+            return result;
+        }
+
+        void close() {
+            _iter.close();
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.cxtm;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes Canonical XML.
+ * <p>
+ * Attributes must be provided in lexicographical order, empty elements are
+ * written as start tag followed by the end tag. Each element is followed by
+ * a line feed.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class CXTMWriter {
+
+    private final Writer _out;
+
+    CXTMWriter(final OutputStream out) throws IOException {
+        _out = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 1 << 16);
+    }
+
+    /**
+     * Writes a start tag.
+     *
+     * @param name The element name.
+     * @param attrs Attribute name / value pairs.
+     */
+    void startElement(final String name, final String... attrs) throws IOException {
+        _startTag(name, attrs);
+        _out.write('\n');
+    }
+
+    void endElement(final String name) throws IOException {
+        _endTag(name);
+        _out.write('\n');
+    }
+
+    void emptyElement(final String name, final String... attrs) throws IOException {
+        _startTag(name, attrs);
+        endElement(name);
+    }
+
+    void dataElement(final String name, final String data) throws IOException {
+        _startTag(name);
+        _escape(data, false);
+        endElement(name);
+    }
+
+    void flush() throws IOException {
+        _out.flush();
+    }
+
+    private void _startTag(final String name, final String... attrs) throws IOException {
+        _out.write('<');
+        _out.write(name);
+        for (int i=0; i<attrs.length; i+=2) {
+            _out.write(' ');
+            _out.write(attrs[i]);
+            _out.write("=\"");
+            _escape(attrs[i+1], true);
+            _out.write('"');
+        }
+        _out.write('>');
+    }
+
+    private void _endTag(final String name) throws IOException {
+        _out.write("</");
+        _out.write(name);
+        _out.write('>');
+    }
+
+    /**
+     * Escapes the provided string according to Canonical XML.
+     */
+    private void _escape(final String str, final boolean isAttribute) throws IOException {
+        final int len = str.length();
+        int start = 0;
+        for (int i=0; i<len; i++) {
+            final char c = str.charAt(i);
+            String replacement = null;
+            switch (c) {
+                case '&': replacement = "&amp;"; break;
+                case '<': replacement = "&lt;"; break;
+                case '>': if (!isAttribute) { replacement = "&gt;"; } break;
+                case '"': if (isAttribute) { replacement = "&quot;"; } break;
+                case '\t': if (isAttribute) { replacement = "&#x9;"; } break;
+                case '\n': if (isAttribute) { replacement = "&#xA;"; } break;
+                case '\r': replacement = "&#xD;"; break;
+            }
+            if (replacement != null) {
+                _out.write(str, start, i - start);
+                _out.write(replacement);
+                start = i + 1;
+            }
+        }
+        _out.write(str, start, len - start);
+    }
+
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.util.Arrays;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+
+/**
+ * {@link AbstractHamsterMapHandler} which represents topics by numbers and
+ * resolves the topic identities with an {@link IdentityIndex}.
+ * <p>
+ * Topics which share an identity (or an item identifier which is equal to
+ * a subject identifier) are merged. Merged topics are kept in a union-find
+ * structure, {@link #findTopic(int)} returns the number of the topic which
+ * survived the merge. The memory consumption is four bytes per topic, the
+ * identities are spilled to disk by the index.
+ * </p>
+ * <p>
+ * Subclasses are notified about each new identity via
+ * {@link #handleIdentity(int, int, String)}.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public abstract class AbstractIndexedHamsterMapHandler extends AbstractHamsterMapHandler<Integer> {
+
+    private IdentityIndex _index;
+    private int[] _parents;
+    private int _topicCount;
+
+    protected AbstractIndexedHamsterMapHandler() {
+        // noop.
+    }
+
+    /**
+     * Returns a new index which is used for one topic map.
+     * <p>
+     * The default implementation returns an index with the default capacity
+     * which stores the segment files into the temporary directory.
+     * </p>
+     *
+     * @return An index.
+     */
+    protected IdentityIndex createIndex() {
+        return new IdentityIndex();
+    }
+
+    /**
+     * Called if an identity has been added to a topic.
+     *
+     * @param topic The topic number.
+     * @param type The identity type, see {@link IRef}.
+     * @param iri The IRI of the identity.
+     * @throws MIOException In case of an error.
+     */
+    protected abstract void handleIdentity(final int topic, final int type, final String iri)
+            throws MIOException;
+
+    /**
+     * Returns the number of the topic into which the provided topic has been
+     * merged.
+     * <p>
+     * Topic numbers are valid until the next {@link #startTopicMap()} event.
+     * </p>
+     *
+     * @param topic The topic number.
+     * @return The number of the surviving topic, the provided topic number
+     *          if the topic has not been merged.
+     */
+    protected final int findTopic(final int topic) {
+        int root = topic;
+        while (_parents[root] != root) {
+            root = _parents[root];
+        }
+        int current = topic;
+        while (current != root) {
+            final int next = _parents[current];
+            _parents[current] = root;
+            current = next;
+        }
+        return root;
+    }
+
+    /**
+     * Returns the number of created topics, including merged topics.
+     * <p>
+     * Topics are numbered from <tt>1</tt> to the returned value.
+     * </p>
+     *
+     * @return The number of topics.
+     */
+    protected final int getTopicCount() {
+        return _topicCount;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#startTopicMap()
+     */
+    @Override
+    public void startTopicMap() throws MIOException {
+        super.startTopicMap();
+        _index = createIndex();
+        _parents = new int[1024];
+        _topicCount = 0;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#endTopicMap()
+     */
+    @Override
+    public void endTopicMap() throws MIOException {
+        try {
+            super.endTopicMap();
+        }
+        finally {
+            _index.close();
+            _index = null;
+        }
+    }
+
+    private int _newTopic() {
+        _topicCount++;
+        if (_topicCount >= _parents.length) {
+            _parents = Arrays.copyOf(_parents, _parents.length * 2);
+        }
+        _parents[_topicCount] = _topicCount;
+        return _topicCount;
+    }
+
+    private int _union(final int a, final int b) {
+        final int rootA = findTopic(a);
+        final int rootB = findTopic(b);
+        if (rootA == rootB) {
+            return rootA;
+        }
+        // The older topic survives
+        final int root = Math.min(rootA, rootB);
+        final int merged = Math.max(rootA, rootB);
+        _parents[merged] = root;
+        notifyMerge(Integer.valueOf(merged), Integer.valueOf(root));
+        return root;
+    }
+
+    private int _lookup(final int type, final String iri) throws MIOException {
+        final long id = _index.get(type, iri);
+        return id == IdentityIndex.NOT_FOUND ? 0 : findTopic((int) id);
+    }
+
+    /**
+     * Returns the identity type which causes a merge if it is equal to an
+     * identity of the provided type (item identifier vs. subject identifier).
+     */
+    private static int _counterpart(final int type) {
+        return type == IRef.ITEM_IDENTIFIER ? IRef.SUBJECT_IDENTIFIER
+                                            : type == IRef.SUBJECT_IDENTIFIER ? IRef.ITEM_IDENTIFIER
+                                                                              : 0;
+    }
+
+    private void _addIdentity(final int topic, final int type, final String iri) throws MIOException {
+        _index.put(type, iri, topic);
+        handleIdentity(topic, type, iri);
+    }
+
+    private Integer _createTopic(final int type, final String iri) throws MIOException {
+        int topic = _lookup(type, iri);
+        if (topic == 0) {
+            final int counterpart = _counterpart(type);
+            topic = counterpart != 0 ? _lookup(counterpart, iri) : 0;
+            if (topic == 0) {
+                topic = _newTopic();
+            }
+            _addIdentity(topic, type, iri);
+        }
+        return Integer.valueOf(topic);
+    }
+
+    private void _handleIdentity(final Integer topic, final int type, final String iri) throws MIOException {
+        int root = findTopic(topic.intValue());
+        final int existing = _lookup(type, iri);
+        if (existing != 0) {
+            _union(existing, root);
+            return;
+        }
+        final int counterpart = _counterpart(type);
+        final int other = counterpart != 0 ? _lookup(counterpart, iri) : 0;
+        if (other != 0) {
+            root = _union(other, root);
+        }
+        _addIdentity(root, type, iri);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createTopicByItemIdentifier(java.lang.String)
+     */
+    @Override
+    protected final Integer createTopicByItemIdentifier(final String iri) throws MIOException {
+        return _createTopic(IRef.ITEM_IDENTIFIER, iri);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createTopicBySubjectIdentifier(java.lang.String)
+     */
+    @Override
+    protected final Integer createTopicBySubjectIdentifier(final String iri) throws MIOException {
+        return _createTopic(IRef.SUBJECT_IDENTIFIER, iri);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createTopicBySubjectLocator(java.lang.String)
+     */
+    @Override
+    protected final Integer createTopicBySubjectLocator(final String iri) throws MIOException {
+        return _createTopic(IRef.SUBJECT_LOCATOR, iri);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleItemIdentifier(java.lang.Object, java.lang.String)
+     */
+    @Override
+    protected final void handleItemIdentifier(final Integer topic, final String iri) throws MIOException {
+        _handleIdentity(topic, IRef.ITEM_IDENTIFIER, iri);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleSubjectIdentifier(java.lang.Object, java.lang.String)
+     */
+    @Override
+    protected final void handleSubjectIdentifier(final Integer topic, final String iri) throws MIOException {
+        _handleIdentity(topic, IRef.SUBJECT_IDENTIFIER, iri);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleSubjectLocator(java.lang.Object, java.lang.String)
+     */
+    @Override
+    protected final void handleSubjectLocator(final Integer topic, final String iri) throws MIOException {
+        _handleIdentity(topic, IRef.SUBJECT_LOCATOR, iri);
+    }
+
+}
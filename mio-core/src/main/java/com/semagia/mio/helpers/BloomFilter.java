@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+/**
+ * Simple Bloom filter over byte array keys.
+ * <p>
+ * The filter uses ~10 bits per expected element and 7 hash functions
+ * (double hashing) which results in a false positive rate of about 1%.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class BloomFilter {
+
+    private static final int _BITS_PER_ELEMENT = 10;
+    private static final int _HASH_FUNCTIONS = 7;
+
+    private final long[] _bits;
+    private final long _size;
+
+    /**
+     * Creates a Bloom filter for the expected number of elements.
+     *
+     * @param expectedElements The number of expected elements.
+     */
+    public BloomFilter(final int expectedElements) {
+        final long bits = Math.max(64L, (long) expectedElements * _BITS_PER_ELEMENT);
+        _bits = new long[(int) Math.min(Integer.MAX_VALUE, (bits + 63) >>> 6)];
+        _size = _bits.length * 64L;
+    }
+
+    /**
+     * Adds the key to this filter.
+     *
+     * @param key The key to add.
+     */
+    public void add(final byte[] key) {
+        final int h1 = _hash(key, 0x9747b28c);
+        final int h2 = _hash(key, h1);
+        for (int i=0; i<_HASH_FUNCTIONS; i++) {
+            final long idx = index(h1, h2, i, _size);
+            _bits[(int) (idx >>> 6)] |= 1L << (idx & 63);
+        }
+    }
+
+    /**
+     * Returns if the key may be contained in this filter.
+     *
+     * @param key The key.
+     * @return {@code false} if the key is definitely not part of this filter,
+     *          {@code true} if the key may be part of the filter.
+     */
+    public boolean mightContain(final byte[] key) {
+        final int h1 = _hash(key, 0x9747b28c);
+        final int h2 = _hash(key, h1);
+        for (int i=0; i<_HASH_FUNCTIONS; i++) {
+            final long idx = index(h1, h2, i, _size);
+            if ((_bits[(int) (idx >>> 6)] & (1L << (idx & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the bit index of the i-th hash function.
+     * <p>
+     * The index is computed with <tt>long</tt> arithmetic since the number
+     * of bits may exceed the <tt>int</tt> range.
+     * </p>
+     */
+    static long index(final int h1, final int h2, final int i, final long size) {
+        final long base = ((long) h1 << 32) | (h2 & 0xFFFFFFFFL);
+        return ((base + (long) i * h2) & Long.MAX_VALUE) % size;
+    }
+
+    /**
+     * MurmurHash2 variant.
+     */
+    private static int _hash(final byte[] data, final int seed) {
+        final int m = 0x5bd1e995;
+        final int len = data.length;
+        int h = seed ^ len;
+        int i = 0;
+        for (; i + 4 <= len; i += 4) {
+            int k = (data[i] & 0xff)
+                    | ((data[i+1] & 0xff) << 8)
+                    | ((data[i+2] & 0xff) << 16)
+                    | ((data[i+3] & 0xff) << 24);
+            k *= m;
+            k ^= k >>> 24;
+            k *= m;
+            h *= m;
+            h ^= k;
+        }
+        final int rest = len - i;
+        if (rest > 0) {
+            if (rest == 3) {
+                h ^= (data[i+2] & 0xff) << 16;
+            }
+            if (rest >= 2) {
+                h ^= (data[i+1] & 0xff) << 8;
+            }
+            h ^= (data[i] & 0xff);
+            h *= m;
+        }
+        h ^= h >>> 13;
+        h *= m;
+        h ^= h >>> 15;
+        return h;
+    }
+
+}
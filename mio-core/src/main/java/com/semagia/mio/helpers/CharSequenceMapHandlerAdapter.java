@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.semagia.mio.ICharSequenceMapHandler;
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.MIOException;
+
+/**
+ * Adapter which provides the {@link ICharSequenceMapHandler} methods for
+ * any {@link IMapHandler}.
+ * <p>
+ * If the underlying handler does not implement {@link ICharSequenceMapHandler},
+ * the values are converted into {@link String}s.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class CharSequenceMapHandlerAdapter extends DelegatingMapHandler {
+
+    private CharSequenceMapHandlerAdapter(final IMapHandler handler) {
+        super(handler);
+    }
+
+    /**
+     * Returns the provided handler if it implements {@link ICharSequenceMapHandler},
+     * otherwise an adapter which wraps the handler.
+     *
+     * @param handler The handler to wrap.
+     * @return An {@link ICharSequenceMapHandler} instance.
+     */
+    public static ICharSequenceMapHandler create(final IMapHandler handler) {
+        return handler instanceof ICharSequenceMapHandler
+                ? (ICharSequenceMapHandler) handler
+                : new CharSequenceMapHandlerAdapter(handler);
+    }
+
+    /**
+     * Returns if the handler at the end of the delegation chain of the
+     * provided handler implements {@link ICharSequenceMapHandler}.
+     * <p>
+     * If not, values which are reported as {@link CharSequence} or
+     * {@link Reader} are converted into strings by the delegating handlers,
+     * so deserializers should report strings right away.
+     * </p>
+     *
+     * @param handler The handler.
+     * @return {@code true} if the values are not converted into strings,
+     *          otherwise {@code false}.
+     */
+    public static boolean isCharSequenceMapHandler(final IMapHandler handler) {
+        IMapHandler current = handler;
+        while (true) {
+            // Subclasses of DelegatingMapHandler may handle the values on their own
+            if (DelegatingMapHandler.isPassThrough(current)) {
+                current = ((DelegatingMapHandler) current).getMapHandler();
+            }
+            else if (current instanceof FilteringMapHandler) {
+                current = ((FilteringMapHandler) current).getMapHandler();
+            }
+            else {
+                return current instanceof ICharSequenceMapHandler;
+            }
+        }
+    }
+
+    /**
+     * Reports a name value to the provided handler.
+     *
+     * @param handler The handler which should receive the value.
+     * @param value The value.
+     * @throws MIOException If the handler reports an error.
+     */
+    public static void valueChars(final IMapHandler handler, final CharSequence value) throws MIOException {
+        if (handler instanceof ICharSequenceMapHandler) {
+            ((ICharSequenceMapHandler) handler).valueChars(value);
+        }
+        else {
+            handler.value(value.toString());
+        }
+    }
+
+    /**
+     * Reports an occurrence or variant value to the provided handler.
+     *
+     * @param handler The handler which should receive the value.
+     * @param value The value.
+     * @param datatype The datatype of the value.
+     * @throws MIOException If the handler reports an error.
+     */
+    public static void valueChars(final IMapHandler handler, final CharSequence value, final String datatype) throws MIOException {
+        if (handler instanceof ICharSequenceMapHandler) {
+            ((ICharSequenceMapHandler) handler).valueChars(value, datatype);
+        }
+        else {
+            handler.value(value.toString(), datatype);
+        }
+    }
+
+    /**
+     * Reports an occurrence or variant value to the provided handler.
+     *
+     * @param handler The handler which should receive the value.
+     * @param value A reader which provides the value.
+     * @param datatype The datatype of the value.
+     * @throws MIOException If the handler reports an error or in case of an
+     *          I/O error.
+     */
+    public static void valueReader(final IMapHandler handler, final Reader value, final String datatype) throws MIOException {
+        if (handler instanceof ICharSequenceMapHandler) {
+            ((ICharSequenceMapHandler) handler).valueReader(value, datatype);
+        }
+        else {
+            handler.value(read(value), datatype);
+        }
+    }
+
+    /**
+     * Reads the content of the provided reader into a string. The reader is
+     * not closed.
+     *
+     * @param reader The reader to read from.
+     * @return The content of the reader.
+     * @throws MIOException In case of an I/O error.
+     */
+    public static String read(final Reader reader) throws MIOException {
+        final StringBuilder sb = new StringBuilder();
+        final char[] buffer = new char[8192];
+        try {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, read);
+            }
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+        return sb.toString();
+    }
+
+}
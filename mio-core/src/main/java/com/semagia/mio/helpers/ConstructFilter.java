@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.semagia.mio.IRef;
+
+/**
+ * Declarative filter which excludes Topic Maps constructs by their kind and
+ * optionally by their type.
+ * <p>
+ * The filter is passed to a deserializer via the
+ * {@link com.semagia.mio.Property#CONSTRUCT_FILTER} property. The deserializer
+ * wraps the map handler into a {@link FilteringMapHandler} and may query
+ * {@link FilteringMapHandler#isSkipping()} to avoid the creation of values
+ * and events for excluded constructs.
+ * </p>
+ * <p>
+ * Excluding a name excludes its variants as well. Variants have no type,
+ * therefore they can only be excluded by their kind.
+ * </p>
+ * <p>
+ * Instances of this class must not be modified while a deserializer uses them.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class ConstructFilter {
+
+    /**
+     * Constant for topic names.
+     */
+    public static final int NAME = 0;
+
+    /**
+     * Constant for variants.
+     */
+    public static final int VARIANT = 1;
+
+    /**
+     * Constant for occurrences.
+     */
+    public static final int OCCURRENCE = 2;
+
+    /**
+     * Constant for associations.
+     */
+    public static final int ASSOCIATION = 3;
+
+    private static final int _KINDS = 4;
+
+    private final boolean[] _excluded;
+    private final List<Set<String>> _excludedTypes;
+
+    public ConstructFilter() {
+        _excluded = new boolean[_KINDS];
+        _excludedTypes = new ArrayList<Set<String>>(Collections.<Set<String>>nCopies(_KINDS, null));
+    }
+
+    /**
+     * Excludes all constructs of the provided kind.
+     *
+     * @param kind The construct kind, i.e. {@link #OCCURRENCE}.
+     * @return This filter.
+     */
+    public ConstructFilter exclude(final int kind) {
+        _checkKind(kind);
+        _excluded[kind] = true;
+        return this;
+    }
+
+    /**
+     * Excludes all constructs of the provided kind which are typed by the
+     * provided type.
+     *
+     * @param kind The construct kind, i.e. {@link #OCCURRENCE}.
+     * @param type A reference to the type.
+     * @return This filter.
+     */
+    public ConstructFilter exclude(final int kind, final IRef type) {
+        _checkKind(kind);
+        if (kind == VARIANT) {
+            throw new IllegalArgumentException("Variants cannot be excluded by their type");
+        }
+        if (type == null) {
+            throw new IllegalArgumentException("The type must not be null");
+        }
+        Set<String> types = _excludedTypes.get(kind);
+        if (types == null) {
+            types = new HashSet<String>();
+            _excludedTypes.set(kind, types);
+        }
+        types.add(_key(type));
+        return this;
+    }
+
+    /**
+     * Returns if all constructs of the provided kind are excluded.
+     *
+     * @param kind The construct kind.
+     * @return {@code true} if all constructs of the kind are excluded,
+     *          otherwise {@code false}.
+     */
+    public boolean isExcluded(final int kind) {
+        return _excluded[kind];
+    }
+
+    /**
+     * Returns if a construct of the provided kind and type is excluded.
+     *
+     * @param kind The construct kind.
+     * @param type The type of the construct or {@code null} if the type is
+     *          unknown.
+     * @return {@code true} if the construct is excluded, otherwise {@code false}.
+     */
+    public boolean isExcluded(final int kind, final IRef type) {
+        if (_excluded[kind]) {
+            return true;
+        }
+        if (type == null) {
+            return false;
+        }
+        final Set<String> types = _excludedTypes.get(kind);
+        return types != null && types.contains(_key(type));
+    }
+
+    /**
+     * Returns if the decision to exclude a construct of the provided kind
+     * depends on its type.
+     *
+     * @param kind The construct kind.
+     * @return {@code true} if the type has to be known to decide if the
+     *          construct is excluded, otherwise {@code false}.
+     */
+    public boolean dependsOnType(final int kind) {
+        return !_excluded[kind] && _excludedTypes.get(kind) != null;
+    }
+
+    private static void _checkKind(final int kind) {
+        if (kind < 0 || kind >= _KINDS) {
+            throw new IllegalArgumentException("Unknown construct kind: " + kind);
+        }
+    }
+
+    private static String _key(final IRef ref) {
+        return (char) ('0' + ref.getType()) + ref.getIRI();
+    }
+
+}
@@ -15,6 +15,9 @@
  */
 package com.semagia.mio.helpers;
 
+import java.io.Reader;
+
+import com.semagia.mio.ICharSequenceMapHandler;
 import com.semagia.mio.IMapHandler;
 import com.semagia.mio.IRef;
 import com.semagia.mio.MIOException;
@@ -22,11 +25,19 @@ import com.semagia.mio.MIOException;
 /**
  * {@link IMapHandler} implementation that does nothing but delegates the
  * events to an underlying {@link IMapHandler}.
+ * <p>
+ * The {@link ICharSequenceMapHandler} methods of this class and of the
+ * pass-through subclasses of this package are forwarded as they are if the
+ * underlying handler supports them, otherwise the values are converted into
+ * strings. Other subclasses receive the values via {@link #value(String)}
+ * and {@link #value(String, String)}, so overriding these methods is
+ * sufficient to handle all values.
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev: 607 $ - $Date: 2011-01-20 02:28:15 +0100 (Do, 20 Jan 2011) $
  */
-public class DelegatingMapHandler implements IMapHandler {
+public class DelegatingMapHandler implements ICharSequenceMapHandler {
 
     private IMapHandler _handler;
 
@@ -43,6 +54,31 @@ public class DelegatingMapHandler implements IMapHandler {
         _handler = mapHandler;
     }
 
+    /**
+     * Returns the handler which receives the events.
+     *
+     * @return The underlying handler.
+     */
+    IMapHandler getMapHandler() {
+        return _handler;
+    }
+
+    /**
+     * Returns if the provided handler is a {@link DelegatingMapHandler} which
+     * forwards all values as they are, i.e. an instance of this class or of
+     * a subclass of this package which does not handle the values on its own.
+     *
+     * @param handler The handler.
+     * @return {@code true} if the values are forwarded, otherwise {@code false}.
+     */
+    static boolean isPassThrough(final IMapHandler handler) {
+        final Class<?> klass = handler.getClass();
+        return klass == DelegatingMapHandler.class
+                || klass == SimpleMapHandler.class
+                || klass == LoggingMapHandler.class
+                || klass == CharSequenceMapHandlerAdapter.class;
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.mio.IMapHandler#endAssociation()
      */
@@ -299,4 +335,43 @@ public class DelegatingMapHandler implements IMapHandler {
         _handler.value(value, datatype);
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ICharSequenceMapHandler#valueChars(java.lang.CharSequence)
+     */
+    @Override
+    public void valueChars(final CharSequence value) throws MIOException {
+        if (isPassThrough(this)) {
+            CharSequenceMapHandlerAdapter.valueChars(_handler, value);
+        }
+        else {
+            value(value.toString());
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ICharSequenceMapHandler#valueChars(java.lang.CharSequence, java.lang.String)
+     */
+    @Override
+    public void valueChars(final CharSequence value, final String datatype) throws MIOException {
+        if (isPassThrough(this)) {
+            CharSequenceMapHandlerAdapter.valueChars(_handler, value, datatype);
+        }
+        else {
+            value(value.toString(), datatype);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ICharSequenceMapHandler#valueReader(java.io.Reader, java.lang.String)
+     */
+    @Override
+    public void valueReader(final Reader value, final String datatype) throws MIOException {
+        if (isPassThrough(this)) {
+            CharSequenceMapHandlerAdapter.valueReader(_handler, value, datatype);
+        }
+        else {
+            value(CharSequenceMapHandlerAdapter.read(value), datatype);
+        }
+    }
+
 }
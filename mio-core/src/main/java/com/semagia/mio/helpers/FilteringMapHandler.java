@@ -0,0 +1,540 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.io.Reader;
+
+import com.semagia.mio.ICharSequenceMapHandler;
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+
+/**
+ * {@link IMapHandler} implementation that discards the events of constructs
+ * which are excluded by a {@link ConstructFilter}.
+ * <p>
+ * If the decision depends on the type of a construct, the events are held
+ * back until the type is known. Once a construct is excluded,
+ * {@link #isSkipping()} returns {@code true} until the construct ends;
+ * deserializers should use this information to avoid building values for
+ * discarded content.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class FilteringMapHandler implements ICharSequenceMapHandler {
+
+    private final IMapHandler _handler;
+    private final ConstructFilter _filter;
+    private final RecordingMapHandler _pending;
+    /**
+     * The nesting level of start/end events.
+     */
+    private int _depth;
+    /**
+     * The level of the excluded construct or -1.
+     */
+    private int _skipDepth;
+    /**
+     * The level of the construct which waits for its type or -1.
+     */
+    private int _pendingDepth;
+    private int _pendingKind;
+    private boolean _inPendingType;
+
+    private FilteringMapHandler(final IMapHandler handler, final ConstructFilter filter) {
+        if (handler == null) {
+            throw new IllegalArgumentException("The map handler must not be null");
+        }
+        if (filter == null) {
+            throw new IllegalArgumentException("The filter must not be null");
+        }
+        _handler = handler;
+        _filter = filter;
+        _pending = new RecordingMapHandler();
+        _skipDepth = -1;
+        _pendingDepth = -1;
+    }
+
+    /**
+     * Returns a {@link FilteringMapHandler} which applies the provided filter.
+     * <p>
+     * If the provided handler is already a {@link FilteringMapHandler} which
+     * uses the same filter, it is returned as it is.
+     * </p>
+     *
+     * @param handler The handler which should receive the events.
+     * @param filter The filter.
+     * @return A {@link FilteringMapHandler} instance.
+     */
+    public static FilteringMapHandler create(final IMapHandler handler, final ConstructFilter filter) {
+        if (handler instanceof FilteringMapHandler
+                && ((FilteringMapHandler) handler)._filter == filter) {
+            return (FilteringMapHandler) handler;
+        }
+        return new FilteringMapHandler(handler, filter);
+    }
+
+    /**
+     * Returns if the current events are discarded.
+     *
+     * @return {@code true} if the events are discarded, otherwise {@code false}.
+     */
+    public boolean isSkipping() {
+        return _skipDepth != -1;
+    }
+
+    /**
+     * Returns the handler which receives the events which are not excluded.
+     *
+     * @return The underlying handler.
+     */
+    IMapHandler getMapHandler() {
+        return _handler;
+    }
+
+    /**
+     * Returns the handler which should receive the current events.
+     */
+    private IMapHandler _target() {
+        return _pendingDepth != -1 ? _pending : _handler;
+    }
+
+    /**
+     * Handles the start of a construct which may be excluded.
+     *
+     * @return {@code true} if the event should be forwarded, otherwise {@code false}.
+     */
+    private boolean _startFiltered(final int kind) {
+        if (_skipDepth != -1) {
+            _depth++;
+            return false;
+        }
+        if (_filter.isExcluded(kind)) {
+            _skipDepth = _depth++;
+            return false;
+        }
+        if (_pendingDepth == -1 && _filter.dependsOnType(kind)) {
+            _pendingDepth = _depth;
+            _pendingKind = kind;
+        }
+        _depth++;
+        return true;
+    }
+
+    /**
+     * Handles the start of any other construct.
+     *
+     * @return {@code true} if the event should be forwarded, otherwise {@code false}.
+     */
+    private boolean _start() {
+        _depth++;
+        return _skipDepth == -1;
+    }
+
+    /**
+     * Handles the end of a construct.
+     *
+     * @return {@code true} if the event should be forwarded, otherwise {@code false}.
+     */
+    private boolean _end() throws MIOException {
+        _depth--;
+        if (_skipDepth != -1) {
+            if (_depth == _skipDepth) {
+                _skipDepth = -1;
+            }
+            return false;
+        }
+        if (_depth == _pendingDepth) {
+            // The construct ends without a type, it is not excluded
+            _decide(null);
+        }
+        return true;
+    }
+
+    /**
+     * Decides if the construct which waits for its type is excluded.
+     */
+    private void _decide(final IRef type) throws MIOException {
+        if (_filter.isExcluded(_pendingKind, type)) {
+            _skipDepth = _pendingDepth;
+        }
+        else {
+            _pending.replay(_handler);
+        }
+        _pending.clear();
+        _pendingDepth = -1;
+        _inPendingType = false;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startTopicMap()
+     */
+    @Override
+    public void startTopicMap() throws MIOException {
+        _handler.startTopicMap();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endTopicMap()
+     */
+    @Override
+    public void endTopicMap() throws MIOException {
+        _handler.endTopicMap();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startTopic(com.semagia.mio.IRef)
+     */
+    @Override
+    public void startTopic(final IRef identity) throws MIOException {
+        if (_start()) {
+            _target().startTopic(identity);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endTopic()
+     */
+    @Override
+    public void endTopic() throws MIOException {
+        if (_end()) {
+            _target().endTopic();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startAssociation()
+     */
+    @Override
+    public void startAssociation() throws MIOException {
+        if (_startFiltered(ConstructFilter.ASSOCIATION)) {
+            _target().startAssociation();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endAssociation()
+     */
+    @Override
+    public void endAssociation() throws MIOException {
+        if (_end()) {
+            _target().endAssociation();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startRole()
+     */
+    @Override
+    public void startRole() throws MIOException {
+        if (_start()) {
+            _target().startRole();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endRole()
+     */
+    @Override
+    public void endRole() throws MIOException {
+        if (_end()) {
+            _target().endRole();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startPlayer()
+     */
+    @Override
+    public void startPlayer() throws MIOException {
+        if (_start()) {
+            _target().startPlayer();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endPlayer()
+     */
+    @Override
+    public void endPlayer() throws MIOException {
+        if (_end()) {
+            _target().endPlayer();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startOccurrence()
+     */
+    @Override
+    public void startOccurrence() throws MIOException {
+        if (_startFiltered(ConstructFilter.OCCURRENCE)) {
+            _target().startOccurrence();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endOccurrence()
+     */
+    @Override
+    public void endOccurrence() throws MIOException {
+        if (_end()) {
+            _target().endOccurrence();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startName()
+     */
+    @Override
+    public void startName() throws MIOException {
+        if (_startFiltered(ConstructFilter.NAME)) {
+            _target().startName();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endName()
+     */
+    @Override
+    public void endName() throws MIOException {
+        if (_end()) {
+            _target().endName();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startVariant()
+     */
+    @Override
+    public void startVariant() throws MIOException {
+        if (_startFiltered(ConstructFilter.VARIANT)) {
+            _target().startVariant();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endVariant()
+     */
+    @Override
+    public void endVariant() throws MIOException {
+        if (_end()) {
+            _target().endVariant();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startType()
+     */
+    @Override
+    public void startType() throws MIOException {
+        if (_pendingDepth != -1 && _depth == _pendingDepth + 1) {
+            _inPendingType = true;
+        }
+        if (_start()) {
+            _target().startType();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endType()
+     */
+    @Override
+    public void endType() throws MIOException {
+        _inPendingType = false;
+        if (_end()) {
+            _target().endType();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#topicRef(com.semagia.mio.IRef)
+     */
+    @Override
+    public void topicRef(final IRef identity) throws MIOException {
+        if (_skipDepth != -1) {
+            return;
+        }
+        if (_inPendingType) {
+            _decide(identity);
+            if (_skipDepth != -1) {
+                return;
+            }
+        }
+        _target().topicRef(identity);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startScope()
+     */
+    @Override
+    public void startScope() throws MIOException {
+        if (_start()) {
+            _target().startScope();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endScope()
+     */
+    @Override
+    public void endScope() throws MIOException {
+        if (_end()) {
+            _target().endScope();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startTheme()
+     */
+    @Override
+    public void startTheme() throws MIOException {
+        if (_start()) {
+            _target().startTheme();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endTheme()
+     */
+    @Override
+    public void endTheme() throws MIOException {
+        if (_end()) {
+            _target().endTheme();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startReifier()
+     */
+    @Override
+    public void startReifier() throws MIOException {
+        if (_start()) {
+            _target().startReifier();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endReifier()
+     */
+    @Override
+    public void endReifier() throws MIOException {
+        if (_end()) {
+            _target().endReifier();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startIsa()
+     */
+    @Override
+    public void startIsa() throws MIOException {
+        if (_start()) {
+            _target().startIsa();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endIsa()
+     */
+    @Override
+    public void endIsa() throws MIOException {
+        if (_end()) {
+            _target().endIsa();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#value(java.lang.String)
+     */
+    @Override
+    public void value(final String value) throws MIOException {
+        if (_skipDepth == -1) {
+            _target().value(value);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#value(java.lang.String, java.lang.String)
+     */
+    @Override
+    public void value(final String value, final String datatype) throws MIOException {
+        if (_skipDepth == -1) {
+            _target().value(value, datatype);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ICharSequenceMapHandler#valueChars(java.lang.CharSequence)
+     */
+    @Override
+    public void valueChars(final CharSequence value) throws MIOException {
+        if (_skipDepth == -1) {
+            CharSequenceMapHandlerAdapter.valueChars(_target(), value);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ICharSequenceMapHandler#valueChars(java.lang.CharSequence, java.lang.String)
+     */
+    @Override
+    public void valueChars(final CharSequence value, final String datatype) throws MIOException {
+        if (_skipDepth == -1) {
+            CharSequenceMapHandlerAdapter.valueChars(_target(), value, datatype);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ICharSequenceMapHandler#valueReader(java.io.Reader, java.lang.String)
+     */
+    @Override
+    public void valueReader(final Reader value, final String datatype) throws MIOException {
+        if (_skipDepth == -1) {
+            CharSequenceMapHandlerAdapter.valueReader(_target(), value, datatype);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#itemIdentifier(java.lang.String)
+     */
+    @Override
+    public void itemIdentifier(final String iid) throws MIOException {
+        if (_skipDepth == -1) {
+            _target().itemIdentifier(iid);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#subjectIdentifier(java.lang.String)
+     */
+    @Override
+    public void subjectIdentifier(final String sid) throws MIOException {
+        if (_skipDepth == -1) {
+            _target().subjectIdentifier(sid);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#subjectLocator(java.lang.String)
+     */
+    @Override
+    public void subjectLocator(final String slo) throws MIOException {
+        if (_skipDepth == -1) {
+            _target().subjectLocator(slo);
+        }
+    }
+
+}
@@ -0,0 +1,700 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+
+/**
+ * Index which maps topic identities (item identifiers, subject identifiers
+ * and subject locators) to topic identifiers.
+ * <p>
+ * This index is meant to be used by map handlers which have to process
+ * topic maps with more identities than fit into the heap. The
+ * implementation maps each identity to a <tt>long</tt> (i.e. a row id or
+ * an offset) which represents the topic.
+ * {@link AbstractIndexedHamsterMapHandler} uses this index to resolve the
+ * topic identities of the Hamster handlers.
+ * </p>
+ * <p>
+ * The index keeps the recently used entries in memory. If the number of
+ * in-memory entries exceeds the capacity, the least recently used half is
+ * written into a sorted run of memory-mapped segment files. Each segment
+ * file is limited in size and guarded by a Bloom filter, so lookups of
+ * unknown identities do not touch the segment files in the common case.
+ * </p>
+ * <p>
+ * Runs are organized in tiers: If a tier contains too many runs, they are
+ * merged into one run of the next tier. Each entry is therefore rewritten
+ * once per tier, i.e. logarithmic in the number of entries.
+ * </p>
+ * <p>
+ * Instances of this class are not thread-safe. The index must be closed
+ * to delete the segment files.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class IdentityIndex {
+
+    /**
+     * Value returned by {@link #get(IRef)} if the identity is unknown.
+     */
+    public static final long NOT_FOUND = -1;
+
+    private static final int _DEFAULT_CAPACITY = 1 << 20;
+    /**
+     * Max. number of runs per tier.
+     */
+    private static final int _MAX_RUNS = 8;
+    /**
+     * Max. size of a segment file in bytes; segments are addressed by
+     * <tt>int</tt> offsets.
+     */
+    private static final int _MAX_SEGMENT_SIZE = 1 << 30;
+
+    private static final Comparator<byte[]> _KEY_COMPARATOR = new Comparator<byte[]>() {
+        @Override
+        public int compare(final byte[] a, final byte[] b) {
+            return _compare(a, b);
+        }
+    };
+
+    private final File _directory;
+    private final int _capacity;
+    private final int _maxSegmentSize;
+    private final LinkedHashMap<String, Long> _hot;
+    /**
+     * The tiers, the first tier contains the most recent runs. Within a
+     * tier, the last run is the most recent one.
+     */
+    private final List<List<Run>> _tiers;
+    private int _segmentCounter;
+    private boolean _closed;
+
+    /**
+     * Creates an index with the default capacity which stores the segment
+     * files into the temporary directory.
+     */
+    public IdentityIndex() {
+        this(new File(System.getProperty("java.io.tmpdir")), _DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an index.
+     *
+     * @param directory The directory where the segment files should be stored.
+     * @param capacity The max. number of identities which are kept in memory.
+     */
+    public IdentityIndex(final File directory, final int capacity) {
+        this(directory, capacity, _MAX_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates an index.
+     *
+     * @param directory The directory where the segment files should be stored.
+     * @param capacity The max. number of identities which are kept in memory.
+     * @param maxSegmentSize The max. size of a segment file in bytes.
+     */
+    IdentityIndex(final File directory, final int capacity, final int maxSegmentSize) {
+        if (directory == null) {
+            throw new IllegalArgumentException("The directory must not be null");
+        }
+        if (capacity < 2) {
+            throw new IllegalArgumentException("The capacity must be greater than 1");
+        }
+        _directory = directory;
+        _capacity = capacity;
+        _maxSegmentSize = maxSegmentSize;
+        _hot = new LinkedHashMap<String, Long>(Math.min(capacity, 1 << 16), 0.75f, true);
+        _tiers = new ArrayList<List<Run>>();
+    }
+
+    /**
+     * Returns the topic identifier for the provided identity.
+     *
+     * @param identity The identity.
+     * @return The topic identifier or {@link #NOT_FOUND}.
+     * @throws MIOException In case of an I/O error.
+     */
+    public long get(final IRef identity) throws MIOException {
+        return get(identity.getType(), identity.getIRI());
+    }
+
+    /**
+     * Returns the topic identifier for the provided identity.
+     *
+     * @param type The identity type, i.e. {@link IRef#SUBJECT_IDENTIFIER}.
+     * @param iri The IRI.
+     * @return The topic identifier or {@link #NOT_FOUND}.
+     * @throws MIOException In case of an I/O error.
+     */
+    public long get(final int type, final String iri) throws MIOException {
+        _checkOpen();
+        final String key = _key(type, iri);
+        final Long id = _hot.get(key);
+        if (id != null) {
+            return id.longValue();
+        }
+        if (_tiers.isEmpty()) {
+            return NOT_FOUND;
+        }
+        final byte[] keyBytes = _toBytes(key);
+        for (List<Run> tier: _tiers) {
+            for (int i=tier.size()-1; i>=0; i--) {
+                final long value = tier.get(i).get(keyBytes);
+                if (value != NOT_FOUND) {
+                    return value;
+                }
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Returns if the provided identity is known.
+     *
+     * @param identity The identity.
+     * @return {@code true} if the identity is known, otherwise {@code false}.
+     * @throws MIOException In case of an I/O error.
+     */
+    public boolean contains(final IRef identity) throws MIOException {
+        return get(identity) != NOT_FOUND;
+    }
+
+    /**
+     * Associates the identity with the provided topic identifier.
+     * <p>
+     * A previous association is replaced.
+     * </p>
+     *
+     * @param identity The identity.
+     * @param topicId The topic identifier, must not be negative.
+     * @throws MIOException In case of an I/O error.
+     */
+    public void put(final IRef identity, final long topicId) throws MIOException {
+        put(identity.getType(), identity.getIRI(), topicId);
+    }
+
+    /**
+     * Associates the identity with the provided topic identifier.
+     * <p>
+     * A previous association is replaced.
+     * </p>
+     *
+     * @param type The identity type, i.e. {@link IRef#SUBJECT_IDENTIFIER}.
+     * @param iri The IRI.
+     * @param topicId The topic identifier, must not be negative.
+     * @throws MIOException In case of an I/O error.
+     */
+    public void put(final int type, final String iri, final long topicId) throws MIOException {
+        _checkOpen();
+        if (topicId < 0) {
+            throw new IllegalArgumentException("The topic identifier must not be negative");
+        }
+        _hot.put(_key(type, iri), Long.valueOf(topicId));
+        if (_hot.size() > _capacity) {
+            _spill();
+        }
+    }
+
+    /**
+     * Returns the number of segment files.
+     *
+     * @return The number of segment files.
+     */
+    public int getSegmentCount() {
+        int count = 0;
+        for (List<Run> tier: _tiers) {
+            for (Run run: tier) {
+                count += run.segmentCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of tiers.
+     *
+     * @return The number of tiers.
+     */
+    int getTierCount() {
+        return _tiers.size();
+    }
+
+    /**
+     * Closes this index and removes all segment files.
+     */
+    public void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        _hot.clear();
+        for (List<Run> tier: _tiers) {
+            for (Run run: tier) {
+                run.delete();
+            }
+        }
+        _tiers.clear();
+    }
+
+    private void _checkOpen() {
+        if (_closed) {
+            throw new IllegalStateException("The index is closed");
+        }
+    }
+
+    /**
+     * Writes the least recently used half of the in-memory entries into a
+     * new run of the first tier.
+     */
+    private void _spill() throws MIOException {
+        final int count = _hot.size() / 2;
+        final byte[][] keys = new byte[count][];
+        final Map<byte[], Long> values = new IdentityHashMap<byte[], Long>(count);
+        final Iterator<Map.Entry<String, Long>> iter = _hot.entrySet().iterator();
+        for (int i=0; i<count; i++) {
+            final Map.Entry<String, Long> entry = iter.next();
+            keys[i] = _toBytes(entry.getKey());
+            values.put(keys[i], entry.getValue());
+            iter.remove();
+        }
+        Arrays.sort(keys, _KEY_COMPARATOR);
+        final RunWriter writer = new RunWriter();
+        try {
+            for (byte[] key: keys) {
+                writer.write(key, values.get(key).longValue());
+            }
+            _addRun(0, writer.close());
+        }
+        catch (IOException ex) {
+            writer.delete();
+            throw new MIOException("Cannot write the segment file", ex);
+        }
+        _compact();
+    }
+
+    /**
+     * Merges the runs of each tier which contains too many runs into one
+     * run of the next tier.
+     * <p>
+     * If a key occurs in several runs, the value of the most recent
+     * run wins.
+     * </p>
+     */
+    private void _compact() throws MIOException {
+        for (int level=0; level<_tiers.size(); level++) {
+            final List<Run> tier = _tiers.get(level);
+            if (tier.size() <= _MAX_RUNS) {
+                return;
+            }
+            final PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(tier.size());
+            for (int i=0; i<tier.size(); i++) {
+                final Cursor cursor = new Cursor(tier.get(i), i);
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+            final RunWriter writer = new RunWriter();
+            try {
+                byte[] lastKey = null;
+                while (!queue.isEmpty()) {
+                    final Cursor cursor = queue.poll();
+                    if (lastKey == null || _compare(lastKey, cursor.key) != 0) {
+                        lastKey = cursor.key;
+                        writer.write(cursor.key, cursor.value);
+                    }
+                    if (cursor.next()) {
+                        queue.add(cursor);
+                    }
+                }
+                final Run run = writer.close();
+                for (Run merged: tier) {
+                    merged.delete();
+                }
+                tier.clear();
+                _addRun(level + 1, run);
+            }
+            catch (IOException ex) {
+                writer.delete();
+                throw new MIOException("Cannot write the segment file", ex);
+            }
+        }
+    }
+
+    /**
+     * Adds the run as the most recent run of the provided tier.
+     */
+    private void _addRun(final int level, final Run run) {
+        if (level == _tiers.size()) {
+            _tiers.add(new ArrayList<Run>(_MAX_RUNS + 1));
+        }
+        _tiers.get(level).add(run);
+    }
+
+    private File _newSegmentFile() {
+        return new File(_directory, "mio-identities-" + System.identityHashCode(this)
+                                    + "-" + (_segmentCounter++) + ".idx");
+    }
+
+    private static String _key(final int type, final String iri) {
+        if (iri == null) {
+            throw new IllegalArgumentException("The IRI must not be null");
+        }
+        return (char) ('0' + type) + iri;
+    }
+
+    private static byte[] _toBytes(final String key) {
+        try {
+            return key.getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException ex) {
+            // Cannot happen
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Compares two byte arrays lexicographically, the bytes are treated as
+     * unsigned values.
+     */
+    private static int _compare(final byte[] a, final byte[] b) {
+        final int len = Math.min(a.length, b.length);
+        for (int i=0; i<len; i++) {
+            final int res = (a[i] & 0xff) - (b[i] & 0xff);
+            if (res != 0) {
+                return res;
+            }
+        }
+        return a.length - b.length;
+    }
+
+
+    /**
+     * Writes sorted entries into a run and starts a new segment file if
+     * the current one would exceed the max. segment size.
+     */
+    private final class RunWriter {
+
+        private final List<Segment> _segments;
+        private SegmentWriter _writer;
+
+        RunWriter() {
+            _segments = new ArrayList<Segment>();
+        }
+
+        void write(final byte[] key, final long value) throws IOException {
+            if (_writer != null && !_writer.fits(key, _maxSegmentSize)) {
+                _segments.add(_writer.close());
+                _writer = null;
+            }
+            if (_writer == null) {
+                _writer = new SegmentWriter(_newSegmentFile());
+            }
+            _writer.write(key, value);
+        }
+
+        Run close() throws IOException {
+            if (_writer != null) {
+                _segments.add(_writer.close());
+                _writer = null;
+            }
+            return new Run(_segments);
+        }
+
+        /**
+         * Deletes the files which were written so far.
+         */
+        void delete() {
+            if (_writer != null) {
+                _writer.delete();
+            }
+            for (Segment segment: _segments) {
+                segment.delete();
+            }
+        }
+    }
+
+
+    /**
+     * Writes a segment file.
+     * <p>
+     * Layout: <tt>(int keyLength, byte[] key, long value)*, int[count] offsets, int count</tt>
+     * </p>
+     */
+    private static final class SegmentWriter {
+
+        private final File _file;
+        private final DataOutputStream _out;
+        private int[] _offsets;
+        private int _count;
+        private int _position;
+
+        SegmentWriter(final File file) throws IOException {
+            _file = file;
+            _offsets = new int[1024];
+            _out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        }
+
+        /**
+         * Returns if the entry fits into a segment of the provided size.
+         */
+        boolean fits(final byte[] key, final int maxSize) {
+            return (long) _position + 4 + key.length + 8 + 4L * (_count + 1) + 4 <= maxSize;
+        }
+
+        void write(final byte[] key, final long value) throws IOException {
+            if (_count == _offsets.length) {
+                _offsets = Arrays.copyOf(_offsets, _count + (_count >> 1));
+            }
+            _offsets[_count++] = _position;
+            _out.writeInt(key.length);
+            _out.write(key);
+            _out.writeLong(value);
+            _position += 4 + key.length + 8;
+        }
+
+        Segment close() throws IOException {
+            for (int i=0; i<_count; i++) {
+                _out.writeInt(_offsets[i]);
+            }
+            _out.writeInt(_count);
+            _out.close();
+            return new Segment(_file);
+        }
+
+        void delete() {
+            try {
+                _out.close();
+            }
+            catch (IOException ex) {
+                // noop.
+            }
+            _file.delete();
+        }
+    }
+
+
+    /**
+     * Sorted sequence of segments with disjoint key ranges.
+     */
+    private static final class Run {
+
+        private final List<Segment> _segments;
+
+        Run(final List<Segment> segments) {
+            _segments = segments;
+        }
+
+        int segmentCount() {
+            return _segments.size();
+        }
+
+        Segment segment(final int idx) {
+            return _segments.get(idx);
+        }
+
+        long get(final byte[] key) {
+            // Find the last segment which starts with a key <= key
+            int low = 0;
+            int high = _segments.size() - 1;
+            int idx = -1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (_compare(_segments.get(mid).firstKey(), key) <= 0) {
+                    idx = mid;
+                    low = mid + 1;
+                }
+                else {
+                    high = mid - 1;
+                }
+            }
+            return idx == -1 ? NOT_FOUND : _segments.get(idx).get(key);
+        }
+
+        void delete() {
+            for (Segment segment: _segments) {
+                segment.delete();
+            }
+        }
+    }
+
+
+    /**
+     * Read-only, memory-mapped segment.
+     */
+    private static final class Segment {
+
+        private final File _file;
+        private final BloomFilter _bloom;
+        private final MappedByteBuffer _buffer;
+        private final int _count;
+        private final int _index;
+        private final byte[] _firstKey;
+
+        Segment(final File file) throws IOException {
+            _file = file;
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                final FileChannel channel = raf.getChannel();
+                _buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            finally {
+                raf.close();
+            }
+            final int size = _buffer.capacity();
+            _count = _buffer.getInt(size - 4);
+            _index = size - 4 - _count * 4;
+            _bloom = new BloomFilter(_count);
+            for (int i=0; i<_count; i++) {
+                _bloom.add(keyAt(i));
+            }
+            _firstKey = keyAt(0);
+        }
+
+        int size() {
+            return _count;
+        }
+
+        byte[] firstKey() {
+            return _firstKey;
+        }
+
+        long get(final byte[] key) {
+            if (!_bloom.mightContain(key)) {
+                return NOT_FOUND;
+            }
+            int low = 0;
+            int high = _count - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final int offset = _offset(mid);
+                final int cmp = _compareAt(offset, key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                }
+                else if (cmp > 0) {
+                    high = mid - 1;
+                }
+                else {
+                    return _buffer.getLong(offset + 4 + key.length);
+                }
+            }
+            return NOT_FOUND;
+        }
+
+        int _offset(final int idx) {
+            return _buffer.getInt(_index + idx * 4);
+        }
+
+        byte[] keyAt(final int idx) {
+            final int offset = _offset(idx);
+            final byte[] key = new byte[_buffer.getInt(offset)];
+            for (int i=0; i<key.length; i++) {
+                key[i] = _buffer.get(offset + 4 + i);
+            }
+            return key;
+        }
+
+        long valueAt(final int idx) {
+            final int offset = _offset(idx);
+            return _buffer.getLong(offset + 4 + _buffer.getInt(offset));
+        }
+
+        private int _compareAt(final int offset, final byte[] key) {
+            final int len = _buffer.getInt(offset);
+            final int min = Math.min(len, key.length);
+            final int start = offset + 4;
+            for (int i=0; i<min; i++) {
+                final int res = (_buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+                if (res != 0) {
+                    return res;
+                }
+            }
+            return len - key.length;
+        }
+
+        void delete() {
+            if (!_file.delete()) {
+                // Mapped files cannot be deleted on some platforms
+                _file.deleteOnExit();
+            }
+        }
+    }
+
+
+    /**
+     * Iterates over the entries of a run, used to merge runs.
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+
+        private final Run _run;
+        private final int _age;
+        private int _segmentIdx;
+        private int _idx = -1;
+        byte[] key;
+        long value;
+
+        Cursor(final Run run, final int age) {
+            _run = run;
+            _age = age;
+        }
+
+        boolean next() {
+            _idx++;
+            while (_segmentIdx < _run.segmentCount() && _idx >= _run.segment(_segmentIdx).size()) {
+                _segmentIdx++;
+                _idx = 0;
+            }
+            if (_segmentIdx == _run.segmentCount()) {
+                return false;
+            }
+            final Segment segment = _run.segment(_segmentIdx);
+            key = segment.keyAt(_idx);
+            value = segment.valueAt(_idx);
+            return true;
+        }
+
+        @Override
+        public int compareTo(final Cursor other) {
+            final int res = _compare(key, other.key);
+            // Newer runs first
+            return res != 0 ? res : other._age - _age;
+        }
+    }
+
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.semagia.mio.IRIContext;
+import com.semagia.mio.IResourceResolver;
+import com.semagia.mio.Source;
+
+/**
+ * Cache which keeps the events of included and merged topic maps.
+ * <p>
+ * Deserializers which support this cache (set via
+ * {@link com.semagia.mio.Property#INCLUDE_CACHE}) read the bytes of an
+ * included source and compare the fingerprint of the bytes with the
+ * fingerprint of the cached entry. If the fingerprints are equal, the
+ * recorded events are replayed, otherwise the source is parsed and the
+ * events are recorded for later use. An entry keeps the fingerprints of the
+ * sources which were included by the source as well, the entry is outdated
+ * if any of these sources has been changed.
+ * </p>
+ * <p>
+ * Sources whose events depend on the including source (i.e. CTM sources
+ * which use wildcards within an included source) are not cached. An entry
+ * keeps the IRIs of the sources which were loaded or skipped while the
+ * source was parsed, see {@link Entry#isApplicable(IRIContext)}.
+ * </p>
+ * <p>
+ * This class is thread-safe, a cache can be shared between deserializers
+ * which are used concurrently. The cache is not bounded, entries are kept
+ * until they are removed or until the cache is cleared.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class IncludeCache {
+
+    private static final char[] _HEX = "0123456789abcdef".toCharArray();
+
+    private final ConcurrentMap<String, Entry> _entries;
+
+    public IncludeCache() {
+        _entries = new ConcurrentHashMap<String, Entry>();
+    }
+
+    /**
+     * Returns the entry with the provided key iff the fingerprint of the
+     * entry is equal to the provided fingerprint and iff none of the sources
+     * which were loaded by the source has been changed.
+     * <p>
+     * Outdated entries are removed.
+     * </p>
+     *
+     * @param key The key, usually the IRI of the source.
+     * @param fingerprint The fingerprint of the current content of the source.
+     * @param resolver The resolver to read the loaded sources or {@code null}.
+     * @return An entry or {@code null} if no entry is available or if the
+     *          entry is outdated.
+     */
+    public Entry get(final String key, final String fingerprint, final IResourceResolver resolver) {
+        final Entry entry = _entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.getFingerprint().equals(fingerprint) 
+                || !entry.getFingerprints().equals(fingerprints(entry.getIRIs(), resolver))) {
+            _entries.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Adds an entry, an existing entry with the same key is replaced.
+     *
+     * @param key The key, usually the IRI of the source.
+     * @param entry The entry.
+     */
+    public void put(final String key, final Entry entry) {
+        if (key == null) {
+            throw new IllegalArgumentException("The key must not be null");
+        }
+        if (entry == null) {
+            throw new IllegalArgumentException("The entry must not be null");
+        }
+        _entries.put(key, entry);
+    }
+
+    /**
+     * Removes the entry with the provided key.
+     *
+     * @param key The key.
+     */
+    public void remove(final String key) {
+        _entries.remove(key);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        _entries.clear();
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return _entries.size();
+    }
+
+    /**
+     * Returns the fingerprint of the provided bytes.
+     *
+     * @param data The content of a source.
+     * @return The fingerprint.
+     */
+    public static String fingerprint(final byte[] data) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException ex) {
+            // Cannot happen, every Java platform supports SHA-1
+            throw new IllegalStateException(ex);
+        }
+        final byte[] hash = digest.digest(data);
+        final char[] chars = new char[hash.length * 2];
+        for (int i=0; i<hash.length; i++) {
+            chars[i*2] = _HEX[(hash[i] >> 4) & 0xF];
+            chars[i*2+1] = _HEX[hash[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns the fingerprints of the resources with the provided IRIs.
+     *
+     * @param iris The IRIs of the resources.
+     * @param resolver The resolver or {@code null}.
+     * @return A map of IRIs to fingerprints or {@code null} if a resource
+     *          cannot be read or if it provides a character stream.
+     */
+    public static Map<String, String> fingerprints(final Collection<String> iris, 
+            final IResourceResolver resolver) {
+        final Map<String, String> fingerprints = new HashMap<String, String>(iris.size());
+        for (String iri: iris) {
+            final byte[] data;
+            try {
+                data = load(iri, resolver);
+            }
+            catch (IOException ex) {
+                return null;
+            }
+            if (data == null) {
+                return null;
+            }
+            fingerprints.put(iri, fingerprint(data));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Reads the bytes of the resource with the provided IRI.
+     * <p>
+     * The resource is read via the resolver (if any) or from the IRI.
+     * </p>
+     *
+     * @param iri The IRI of the resource.
+     * @param resolver The resolver or {@code null}.
+     * @return The bytes of the resource or {@code null} if the resolver
+     *          provides a character stream.
+     * @throws IOException In case of an I/O error.
+     */
+    public static byte[] load(final String iri, final IResourceResolver resolver) throws IOException {
+        final Source src = resolver != null ? resolver.resolve(iri) : null;
+        final InputStream in;
+        if (src == null) {
+            in = new URL(iri).openStream();
+        }
+        else if (src.getByteStream() != null) {
+            in = src.getByteStream();
+        }
+        else {
+            if (src.getCharacterStream() != null) {
+                src.getCharacterStream().close();
+            }
+            return null;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+
+    /**
+     * The recorded events of a source.
+     * <p>
+     * Entries are immutable, the events may be replayed concurrently.
+     * </p>
+     */
+    public static final class Entry {
+
+        private final String _fingerprint;
+        private final RecordingMapHandler _events;
+        private final Map<String, String> _fingerprints;
+        private final Set<String> _requiredIRIs;
+        private final Object _state;
+
+        /**
+         * Creates an entry.
+         *
+         * @param fingerprint The fingerprint of the source.
+         * @param events The events of the source, the handler must not
+         *          record further events.
+         * @param fingerprints The IRIs and fingerprints of the sources which
+         *          were loaded while the source was parsed (i.e. sources 
+         *          which were included by the source), 
+         *          see {@link IncludeCache#fingerprints(Collection, IResourceResolver)}.
+         * @param requiredIRIs The IRIs of the sources which were not loaded 
+         *          since they were loaded before the source was parsed.
+         * @param state Syntax-specific state which is applied to the
+         *          including parser if the events are replayed, may be
+         *          {@code null}.
+         */
+        public Entry(final String fingerprint, final RecordingMapHandler events,
+                final Map<String, String> fingerprints, final Collection<String> requiredIRIs, 
+                final Object state) {
+            if (fingerprint == null) {
+                throw new IllegalArgumentException("The fingerprint must not be null");
+            }
+            if (events == null) {
+                throw new IllegalArgumentException("The events must not be null");
+            }
+            _fingerprint = fingerprint;
+            _events = events;
+            _fingerprints = fingerprints == null || fingerprints.isEmpty() ? Collections.<String, String>emptyMap()
+                                    : Collections.unmodifiableMap(new HashMap<String, String>(fingerprints));
+            _requiredIRIs = _unmodifiableSet(requiredIRIs);
+            _state = state;
+        }
+
+        private static Set<String> _unmodifiableSet(final Collection<String> iris) {
+            return iris == null || iris.isEmpty() ? Collections.<String>emptySet()
+                                                  : Collections.unmodifiableSet(new HashSet<String>(iris));
+        }
+
+        /**
+         * Returns if the events can be replayed within the provided context.
+         * <p>
+         * The events can be replayed if none of the sources which were 
+         * loaded by the source is known to the context and if all sources
+         * which were not loaded are known to the context.
+         * </p>
+         *
+         * @param ctx The IRI context of the including source.
+         * @return {@code true} if the events can be replayed, otherwise {@code false}.
+         */
+        public boolean isApplicable(final IRIContext ctx) {
+            for (String iri: _fingerprints.keySet()) {
+                if (ctx.containsIRI(iri)) {
+                    return false;
+                }
+            }
+            for (String iri: _requiredIRIs) {
+                if (!ctx.containsIRI(iri)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public String getFingerprint() {
+            return _fingerprint;
+        }
+
+        public RecordingMapHandler getEvents() {
+            return _events;
+        }
+
+        public Set<String> getIRIs() {
+            return _fingerprints.keySet();
+        }
+
+        public Map<String, String> getFingerprints() {
+            return _fingerprints;
+        }
+
+        public Set<String> getRequiredIRIs() {
+            return _requiredIRIs;
+        }
+
+        public Object getState() {
+            return _state;
+        }
+
+    }
+
+}
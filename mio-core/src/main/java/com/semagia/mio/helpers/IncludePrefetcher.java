@@ -0,0 +1,285 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.semagia.mio.IResourceResolver;
+import com.semagia.mio.MIOException;
+
+/**
+ * Reads and parses included and merged sources on a pool of worker threads
+ * before the including source reaches the directive.
+ * <p>
+ * A deserializer announces the sources in document order via
+ * {@link #prefetch(String, String, IParser)} and takes the results in the
+ * same order via {@link #take(String)} when it processes the directive.
+ * Announced sources which are not taken (i.e. because the source was
+ * loaded already) are discarded when a later source is taken. The number
+ * of results which are kept in memory is limited.
+ * </p>
+ * <p>
+ * The events of a prefetched source are recorded, the deserializer
+ * replays them at the position of the directive, so the events are
+ * reported in the same order as if the sources were parsed sequentially.
+ * </p>
+ * <p>
+ * Instances of this class are not thread-safe, they must be used by the
+ * thread which parses the including source.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class IncludePrefetcher {
+
+    /**
+     * Parses the content of a prefetched source.
+     */
+    public static interface IParser {
+
+        /**
+         * Parses the provided data and returns the recorded events.
+         * <p>
+         * This method is called by a worker thread.
+         * </p>
+         *
+         * @param iri The IRI of the source.
+         * @param data The content of the source.
+         * @param fingerprint The fingerprint of the content.
+         * @return The recorded events or {@code null} if the events
+         *          depend on the including source.
+         * @throws IOException In case of an I/O error.
+         * @throws MIOException In case of an error.
+         */
+        public IncludeCache.Entry parse(String iri, byte[] data, String fingerprint) throws IOException, MIOException;
+
+    }
+
+    private final ExecutorService _executor;
+    private final IResourceResolver _resolver;
+    private final IncludeCache _cache;
+    private final int _maxPending;
+    private final Map<String, Task> _tasks;
+    private int _submitted;
+
+    /**
+     * Creates a prefetcher.
+     *
+     * @param parallelism The number of worker threads.
+     * @param resolver The resolver to read the sources or {@code null}.
+     * @param cache The cache to read and store the events or {@code null}.
+     */
+    public IncludePrefetcher(final int parallelism, final IResourceResolver resolver,
+            final IncludeCache cache) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than zero");
+        }
+        _executor = Executors.newFixedThreadPool(parallelism);
+        _resolver = resolver;
+        _cache = cache;
+        _maxPending = parallelism * 2;
+        _tasks = new LinkedHashMap<String, Task>();
+    }
+
+    /**
+     * Announces a source.
+     * <p>
+     * Sources with a key which was announced already are ignored.
+     * </p>
+     *
+     * @param key The key of the source, see {@link IncludeCache}.
+     * @param iri The IRI of the source.
+     * @param parser The parser for the content of the source.
+     */
+    public void prefetch(final String key, final String iri, final IParser parser) {
+        if (!_tasks.containsKey(key)) {
+            _tasks.put(key, new Task(key, iri, parser));
+            _fill();
+        }
+    }
+
+    /**
+     * Returns the result of the source with the provided key.
+     * <p>
+     * All sources which were announced before the provided source and which
+     * have not been taken are discarded.
+     * </p>
+     *
+     * @param key The key of the source.
+     * @return The result or {@code null} if the source was not announced.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    public Result take(final String key) throws IOException, MIOException {
+        if (!_tasks.containsKey(key)) {
+            return null;
+        }
+        Task task = null;
+        for (Iterator<Task> iter = _tasks.values().iterator(); task == null && iter.hasNext();) {
+            final Task candidate = iter.next();
+            iter.remove();
+            if (candidate._future != null) {
+                _submitted--;
+            }
+            if (candidate._key.equals(key)) {
+                task = candidate;
+            }
+            else if (candidate._future != null) {
+                candidate._future.cancel(true);
+            }
+        }
+        _fill();
+        if (task._future == null) {
+            try {
+                return task.call();
+            }
+            catch (IOException ex) {
+                throw ex;
+            }
+            catch (MIOException ex) {
+                throw ex;
+            }
+            catch (Exception ex) {
+                throw new MIOException(ex);
+            }
+        }
+        try {
+            return task._future.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MIOException(ex);
+        }
+        catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof MIOException) {
+                throw (MIOException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new MIOException(cause);
+        }
+    }
+
+    /**
+     * Stops the worker threads and discards all results.
+     */
+    public void close() {
+        _tasks.clear();
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Submits announced sources until the max. number of pending sources
+     * is reached.
+     */
+    private void _fill() {
+        for (Iterator<Task> iter = _tasks.values().iterator(); _submitted < _maxPending && iter.hasNext();) {
+            final Task task = iter.next();
+            if (task._future == null) {
+                task._future = _executor.submit(task);
+                _submitted++;
+            }
+        }
+    }
+
+
+    /**
+     * The prefetched content of a source.
+     */
+    public static final class Result {
+
+        private final byte[] _data;
+        private final String _fingerprint;
+        private final IncludeCache.Entry _entry;
+
+        Result(final byte[] data, final String fingerprint, final IncludeCache.Entry entry) {
+            _data = data;
+            _fingerprint = fingerprint;
+            _entry = entry;
+        }
+
+        /**
+         * Returns the content of the source.
+         *
+         * @return The content or {@code null} if the source provides
+         *          characters and not bytes.
+         */
+        public byte[] getData() {
+            return _data;
+        }
+
+        public String getFingerprint() {
+            return _fingerprint;
+        }
+
+        /**
+         * Returns the recorded events.
+         *
+         * @return The events or {@code null} if the source has to be parsed
+         *          by the including deserializer.
+         */
+        public IncludeCache.Entry getEntry() {
+            return _entry;
+        }
+
+    }
+
+    private final class Task implements Callable<Result> {
+
+        final String _key;
+        final String _iri;
+        final IParser _parser;
+        Future<Result> _future;
+
+        Task(final String key, final String iri, final IParser parser) {
+            _key = key;
+            _iri = iri;
+            _parser = parser;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public Result call() throws Exception {
+            final byte[] data = IncludeCache.load(_iri, _resolver);
+            if (data == null) {
+                return new Result(null, null, null);
+            }
+            final String fingerprint = IncludeCache.fingerprint(data);
+            IncludeCache.Entry entry = _cache != null ? _cache.get(_key, fingerprint, _resolver) : null;
+            if (entry == null) {
+                entry = _parser.parse(_iri, data, fingerprint);
+                if (entry != null && _cache != null) {
+                    _cache.put(_key, entry);
+                }
+            }
+            return new Result(data, fingerprint, entry);
+        }
+
+    }
+
+}
@@ -0,0 +1,583 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+
+/**
+ * {@link IMapHandler} implementation that partitions the events into several
+ * {@link IMapHandler}s.
+ * <p>
+ * Each top-level topic is sent to the partition which is determined by a
+ * stable hash of the IRI of the first identity of the topic (the identity
+ * reported by {@link #startTopic(IRef)}). Associations are either routed
+ * by their type ({@link #ROUTE_BY_TYPE}) or by the player of the first role
+ * ({@link #ROUTE_BY_FIRST_PLAYER}). Topic map item identifiers and the topic
+ * map reifier are sent to the first partition. Each partition receives
+ * {@link #startTopicMap()} and {@link #endTopicMap()} events.
+ * </p>
+ * <p>
+ * The events are collected per partition and are forwarded in batches. If
+ * the handler works in threaded mode, each partition is processed by its own
+ * thread, so the partition handlers do not need to be thread-safe. The order
+ * of the events per partition is kept.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class PartitioningMapHandler implements IMapHandler {
+
+    /**
+     * Routes associations by the IRI of the association type.
+     */
+    public static final int ROUTE_BY_TYPE = 1;
+
+    /**
+     * Routes associations by the IRI of the player of the first role.
+     */
+    public static final int ROUTE_BY_FIRST_PLAYER = 2;
+
+    private static final int _DEFAULT_BATCH_SIZE = 10000;
+
+    private static final byte
+        _TOPIC = 1,
+        _ASSOCIATION = 2,
+        _ROLE = 3,
+        _PLAYER = 4,
+        _TYPE = 5,
+        _OTHER = 6;
+
+    private final IMapHandler[] _handlers;
+    private final RecordingMapHandler[] _buffers;
+    private final int _associationRouting;
+    private final boolean _threaded;
+    private int _batchSize;
+    private ExecutorService[] _executors;
+    private Future<?>[] _pending;
+
+    private final RecordingMapHandler _association;
+    private IMapHandler _target;
+    private IRef _routingRef;
+    private byte[] _states;
+    private int _stateSize;
+
+    /**
+     * Creates a partitioning handler which forwards the events by the
+     * calling thread.
+     *
+     * @param handlers The partition handlers.
+     * @param associationRouting Either {@link #ROUTE_BY_TYPE} or
+     *          {@link #ROUTE_BY_FIRST_PLAYER}.
+     */
+    public PartitioningMapHandler(final IMapHandler[] handlers, final int associationRouting) {
+        this(handlers, associationRouting, false);
+    }
+
+    /**
+     * Creates a partitioning handler.
+     *
+     * @param handlers The partition handlers.
+     * @param associationRouting Either {@link #ROUTE_BY_TYPE} or
+     *          {@link #ROUTE_BY_FIRST_PLAYER}.
+     * @param threaded {@code true} to process each partition by its own
+     *          thread, otherwise {@code false}.
+     */
+    public PartitioningMapHandler(final IMapHandler[] handlers, final int associationRouting,
+            final boolean threaded) {
+        if (handlers == null || handlers.length == 0) {
+            throw new IllegalArgumentException("At least one partition handler is required");
+        }
+        if (associationRouting != ROUTE_BY_TYPE && associationRouting != ROUTE_BY_FIRST_PLAYER) {
+            throw new IllegalArgumentException("Unknown association routing: " + associationRouting);
+        }
+        _handlers = handlers.clone();
+        _buffers = new RecordingMapHandler[handlers.length];
+        for (int i=0; i<_buffers.length; i++) {
+            _buffers[i] = new RecordingMapHandler();
+        }
+        _associationRouting = associationRouting;
+        _threaded = threaded;
+        _batchSize = _DEFAULT_BATCH_SIZE;
+        _association = new RecordingMapHandler();
+        _states = new byte[16];
+    }
+
+    /**
+     * Sets the number of events which are collected per partition before
+     * they are forwarded to the partition handler.
+     *
+     * @param batchSize The number of events.
+     */
+    public void setBatchSize(final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be greater than 0");
+        }
+        _batchSize = batchSize;
+    }
+
+    /**
+     * Returns the number of events which are collected per partition.
+     *
+     * @return The number of events.
+     */
+    public int getBatchSize() {
+        return _batchSize;
+    }
+
+    /**
+     * Returns the partition for the provided topic identity.
+     *
+     * @param identity The topic identity.
+     * @param partitions The number of partitions.
+     * @return The partition index.
+     */
+    public static int partition(final IRef identity, final int partitions) {
+        return (identity.getIRI().hashCode() & Integer.MAX_VALUE) % partitions;
+    }
+
+    private int _partition(final IRef identity) {
+        return identity == null ? 0 : partition(identity, _handlers.length);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startTopicMap()
+     */
+    @Override
+    public void startTopicMap() throws MIOException {
+        _stateSize = 0;
+        _target = _buffers[0];
+        if (_threaded) {
+            _executors = new ExecutorService[_handlers.length];
+            _pending = new Future<?>[_handlers.length];
+            for (int i=0; i<_executors.length; i++) {
+                _executors[i] = Executors.newSingleThreadExecutor();
+            }
+        }
+        for (RecordingMapHandler buffer: _buffers) {
+            buffer.startTopicMap();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endTopicMap()
+     */
+    @Override
+    public void endTopicMap() throws MIOException {
+        try {
+            for (int i=0; i<_buffers.length; i++) {
+                _buffers[i].endTopicMap();
+                _flush(i);
+            }
+            if (_threaded) {
+                for (int i=0; i<_pending.length; i++) {
+                    _await(i);
+                }
+            }
+        }
+        finally {
+            if (_threaded) {
+                for (ExecutorService executor: _executors) {
+                    executor.shutdownNow();
+                }
+                _executors = null;
+                _pending = null;
+            }
+        }
+    }
+
+    /**
+     * Forwards the collected events of the provided partition.
+     */
+    private void _flush(final int partition) throws MIOException {
+        final RecordingMapHandler buffer = _buffers[partition];
+        if (buffer.isEmpty()) {
+            return;
+        }
+        final IMapHandler handler = _handlers[partition];
+        if (!_threaded) {
+            buffer.replay(handler);
+            buffer.clear();
+            return;
+        }
+        // At most one batch per partition is in flight
+        _await(partition);
+        _buffers[partition] = new RecordingMapHandler();
+        _pending[partition] = _executors[partition].submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                buffer.replay(handler);
+                return null;
+            }
+        });
+    }
+
+    private void _await(final int partition) throws MIOException {
+        final Future<?> pending = _pending[partition];
+        if (pending == null) {
+            return;
+        }
+        _pending[partition] = null;
+        try {
+            pending.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MIOException("Interrupted while waiting for partition " + partition, ex);
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof MIOException) {
+                throw (MIOException) ex.getCause();
+            }
+            throw new MIOException(ex.getCause());
+        }
+    }
+
+    private void _enter(final byte state) {
+        if (_stateSize == _states.length) {
+            final byte[] states = new byte[_states.length * 2];
+            System.arraycopy(_states, 0, states, 0, _stateSize);
+            _states = states;
+        }
+        _states[_stateSize++] = state;
+    }
+
+    private void _leave() {
+        _stateSize--;
+    }
+
+    /**
+     * Remembers the provided topic reference if it determines the partition
+     * of the current association.
+     */
+    private void _routingCandidate(final IRef ref) {
+        if (_routingRef != null || _stateSize < 2 || _states[0] != _ASSOCIATION) {
+            return;
+        }
+        if (_associationRouting == ROUTE_BY_TYPE) {
+            if (_stateSize == 2 && _states[1] == _TYPE) {
+                _routingRef = ref;
+            }
+        }
+        else if (_stateSize == 3 && _states[1] == _ROLE && _states[2] == _PLAYER) {
+            _routingRef = ref;
+        }
+    }
+
+    /**
+     * Called after a top-level construct has been finished.
+     */
+    private void _endTopLevel(final int partition) throws MIOException {
+        if (_buffers[partition].size() >= _batchSize) {
+            _flush(partition);
+        }
+        // Read the buffer after flushing, the flush replaces it in threaded mode
+        _target = _buffers[0];
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startTopic(com.semagia.mio.IRef)
+     */
+    @Override
+    public void startTopic(final IRef identity) throws MIOException {
+        if (_stateSize == 0) {
+            _target = _buffers[_partition(identity)];
+        }
+        else {
+            _routingCandidate(identity);
+        }
+        _enter(_TOPIC);
+        _target.startTopic(identity);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endTopic()
+     */
+    @Override
+    public void endTopic() throws MIOException {
+        _target.endTopic();
+        _leave();
+        if (_stateSize == 0) {
+            int partition = 0;
+            while (_buffers[partition] != _target) {
+                partition++;
+            }
+            _endTopLevel(partition);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startAssociation()
+     */
+    @Override
+    public void startAssociation() throws MIOException {
+        _enter(_ASSOCIATION);
+        _routingRef = null;
+        _target = _association;
+        _target.startAssociation();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endAssociation()
+     */
+    @Override
+    public void endAssociation() throws MIOException {
+        _target.endAssociation();
+        _leave();
+        final int partition = _partition(_routingRef);
+        _association.replay(_buffers[partition]);
+        _association.clear();
+        _routingRef = null;
+        _endTopLevel(partition);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startRole()
+     */
+    @Override
+    public void startRole() throws MIOException {
+        _enter(_ROLE);
+        _target.startRole();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endRole()
+     */
+    @Override
+    public void endRole() throws MIOException {
+        _target.endRole();
+        _leave();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startPlayer()
+     */
+    @Override
+    public void startPlayer() throws MIOException {
+        _enter(_PLAYER);
+        _target.startPlayer();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endPlayer()
+     */
+    @Override
+    public void endPlayer() throws MIOException {
+        _target.endPlayer();
+        _leave();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startType()
+     */
+    @Override
+    public void startType() throws MIOException {
+        _enter(_TYPE);
+        _target.startType();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endType()
+     */
+    @Override
+    public void endType() throws MIOException {
+        _target.endType();
+        _leave();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#topicRef(com.semagia.mio.IRef)
+     */
+    @Override
+    public void topicRef(final IRef identity) throws MIOException {
+        _routingCandidate(identity);
+        _target.topicRef(identity);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startOccurrence()
+     */
+    @Override
+    public void startOccurrence() throws MIOException {
+        _enter(_OTHER);
+        _target.startOccurrence();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endOccurrence()
+     */
+    @Override
+    public void endOccurrence() throws MIOException {
+        _target.endOccurrence();
+        _leave();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startName()
+     */
+    @Override
+    public void startName() throws MIOException {
+        _enter(_OTHER);
+        _target.startName();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endName()
+     */
+    @Override
+    public void endName() throws MIOException {
+        _target.endName();
+        _leave();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startVariant()
+     */
+    @Override
+    public void startVariant() throws MIOException {
+        _enter(_OTHER);
+        _target.startVariant();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endVariant()
+     */
+    @Override
+    public void endVariant() throws MIOException {
+        _target.endVariant();
+        _leave();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startScope()
+     */
+    @Override
+    public void startScope() throws MIOException {
+        _enter(_OTHER);
+        _target.startScope();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endScope()
+     */
+    @Override
+    public void endScope() throws MIOException {
+        _target.endScope();
+        _leave();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startTheme()
+     */
+    @Override
+    public void startTheme() throws MIOException {
+        _enter(_OTHER);
+        _target.startTheme();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endTheme()
+     */
+    @Override
+    public void endTheme() throws MIOException {
+        _target.endTheme();
+        _leave();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startReifier()
+     */
+    @Override
+    public void startReifier() throws MIOException {
+        _enter(_OTHER);
+        _target.startReifier();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endReifier()
+     */
+    @Override
+    public void endReifier() throws MIOException {
+        _target.endReifier();
+        _leave();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startIsa()
+     */
+    @Override
+    public void startIsa() throws MIOException {
+        _enter(_OTHER);
+        _target.startIsa();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endIsa()
+     */
+    @Override
+    public void endIsa() throws MIOException {
+        _target.endIsa();
+        _leave();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#value(java.lang.String)
+     */
+    @Override
+    public void value(final String value) throws MIOException {
+        _target.value(value);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#value(java.lang.String, java.lang.String)
+     */
+    @Override
+    public void value(final String value, final String datatype) throws MIOException {
+        _target.value(value, datatype);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#itemIdentifier(java.lang.String)
+     */
+    @Override
+    public void itemIdentifier(final String iid) throws MIOException {
+        _target.itemIdentifier(iid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#subjectIdentifier(java.lang.String)
+     */
+    @Override
+    public void subjectIdentifier(final String sid) throws MIOException {
+        _target.subjectIdentifier(sid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#subjectLocator(java.lang.String)
+     */
+    @Override
+    public void subjectLocator(final String slo) throws MIOException {
+        _target.subjectLocator(slo);
+    }
+
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+
+/**
+ * {@link IMapHandler} implementation that records all events, the events
+ * can be replayed to another {@link IMapHandler}.
+ * <p>
+ * The events are stored compactly as an array of opcodes and an array of
+ * arguments.
+ * </p>
+ * <p>
+ * Instances of this class are not thread-safe.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class RecordingMapHandler implements IMapHandler {
+
+    private static final byte
+        _START_TOPIC_MAP = 1,
+        _END_TOPIC_MAP = 2,
+        _START_TOPIC = 3,
+        _END_TOPIC = 4,
+        _START_ASSOCIATION = 5,
+        _END_ASSOCIATION = 6,
+        _START_ROLE = 7,
+        _END_ROLE = 8,
+        _START_OCCURRENCE = 9,
+        _END_OCCURRENCE = 10,
+        _START_NAME = 11,
+        _END_NAME = 12,
+        _START_VARIANT = 13,
+        _END_VARIANT = 14,
+        _START_SCOPE = 15,
+        _END_SCOPE = 16,
+        _START_THEME = 17,
+        _END_THEME = 18,
+        _VALUE = 19,
+        _VALUE_DATATYPE = 20,
+        _SUBJECT_IDENTIFIER = 21,
+        _SUBJECT_LOCATOR = 22,
+        _ITEM_IDENTIFIER = 23,
+        _START_PLAYER = 24,
+        _END_PLAYER = 25,
+        _START_TYPE = 26,
+        _END_TYPE = 27,
+        _START_REIFIER = 28,
+        _END_REIFIER = 29,
+        _TOPIC_REF = 30,
+        _START_ISA = 31,
+        _END_ISA = 32;
+
+    private static final int _INITIAL_SIZE = 64;
+
+    private byte[] _ops;
+    private int _opCount;
+    private Object[] _args;
+    private int _argCount;
+
+    public RecordingMapHandler() {
+        _ops = new byte[_INITIAL_SIZE];
+        _args = new Object[_INITIAL_SIZE];
+    }
+
+    /**
+     * Replays all recorded events to the provided handler.
+     * <p>
+     * The recorded events are kept, the events can be replayed several times.
+     * </p>
+     *
+     * @param handler The handler which should receive the events.
+     * @throws MIOException In case the handler reports an error.
+     */
+    public void replay(final IMapHandler handler) throws MIOException {
+        int arg = 0;
+        for (int i=0; i<_opCount; i++) {
+            switch (_ops[i]) {
+                case _START_TOPIC_MAP: handler.startTopicMap(); break;
+                case _END_TOPIC_MAP: handler.endTopicMap(); break;
+                case _START_TOPIC: handler.startTopic((IRef) _args[arg++]); break;
+                case _END_TOPIC: handler.endTopic(); break;
+                case _START_ASSOCIATION: handler.startAssociation(); break;
+                case _END_ASSOCIATION: handler.endAssociation(); break;
+                case _START_ROLE: handler.startRole(); break;
+                case _END_ROLE: handler.endRole(); break;
+                case _START_OCCURRENCE: handler.startOccurrence(); break;
+                case _END_OCCURRENCE: handler.endOccurrence(); break;
+                case _START_NAME: handler.startName(); break;
+                case _END_NAME: handler.endName(); break;
+                case _START_VARIANT: handler.startVariant(); break;
+                case _END_VARIANT: handler.endVariant(); break;
+                case _START_SCOPE: handler.startScope(); break;
+                case _END_SCOPE: handler.endScope(); break;
+                case _START_THEME: handler.startTheme(); break;
+                case _END_THEME: handler.endTheme(); break;
+                case _VALUE: handler.value((String) _args[arg++]); break;
+                case _VALUE_DATATYPE: handler.value((String) _args[arg++], (String) _args[arg++]); break;
+                case _SUBJECT_IDENTIFIER: handler.subjectIdentifier((String) _args[arg++]); break;
+                case _SUBJECT_LOCATOR: handler.subjectLocator((String) _args[arg++]); break;
+                case _ITEM_IDENTIFIER: handler.itemIdentifier((String) _args[arg++]); break;
+                case _START_PLAYER: handler.startPlayer(); break;
+                case _END_PLAYER: handler.endPlayer(); break;
+                case _START_TYPE: handler.startType(); break;
+                case _END_TYPE: handler.endType(); break;
+                case _START_REIFIER: handler.startReifier(); break;
+                case _END_REIFIER: handler.endReifier(); break;
+                case _TOPIC_REF: handler.topicRef((IRef) _args[arg++]); break;
+                case _START_ISA: handler.startIsa(); break;
+                case _END_ISA: handler.endIsa(); break;
+                default:
+                    throw new MIOException("Internal error: Unknown event " + _ops[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of recorded events.
+     *
+     * @return The number of events.
+     */
+    public int size() {
+        return _opCount;
+    }
+
+    /**
+     * Returns if no event was recorded.
+     *
+     * @return {@code true} if no event was recorded, otherwise {@code false}.
+     */
+    public boolean isEmpty() {
+        return _opCount == 0;
+    }
+
+    /**
+     * Removes all recorded events.
+     */
+    public void clear() {
+        for (int i=0; i<_argCount; i++) {
+            _args[i] = null;
+        }
+        _opCount = 0;
+        _argCount = 0;
+    }
+
+    private void _add(final byte op) {
+        if (_opCount == _ops.length) {
+            final byte[] ops = new byte[_ops.length * 2];
+            System.arraycopy(_ops, 0, ops, 0, _opCount);
+            _ops = ops;
+        }
+        _ops[_opCount++] = op;
+    }
+
+    private void _add(final byte op, final Object arg) {
+        _add(op);
+        _addArg(arg);
+    }
+
+    private void _addArg(final Object arg) {
+        if (_argCount == _args.length) {
+            final Object[] args = new Object[_args.length * 2];
+            System.arraycopy(_args, 0, args, 0, _argCount);
+            _args = args;
+        }
+        _args[_argCount++] = arg;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startTopicMap()
+     */
+    @Override
+    public void startTopicMap() throws MIOException {
+        _add(_START_TOPIC_MAP);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endTopicMap()
+     */
+    @Override
+    public void endTopicMap() throws MIOException {
+        _add(_END_TOPIC_MAP);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startTopic(com.semagia.mio.IRef)
+     */
+    @Override
+    public void startTopic(final IRef identity) throws MIOException {
+        _add(_START_TOPIC, identity);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endTopic()
+     */
+    @Override
+    public void endTopic() throws MIOException {
+        _add(_END_TOPIC);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startAssociation()
+     */
+    @Override
+    public void startAssociation() throws MIOException {
+        _add(_START_ASSOCIATION);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endAssociation()
+     */
+    @Override
+    public void endAssociation() throws MIOException {
+        _add(_END_ASSOCIATION);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startRole()
+     */
+    @Override
+    public void startRole() throws MIOException {
+        _add(_START_ROLE);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endRole()
+     */
+    @Override
+    public void endRole() throws MIOException {
+        _add(_END_ROLE);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startOccurrence()
+     */
+    @Override
+    public void startOccurrence() throws MIOException {
+        _add(_START_OCCURRENCE);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endOccurrence()
+     */
+    @Override
+    public void endOccurrence() throws MIOException {
+        _add(_END_OCCURRENCE);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startName()
+     */
+    @Override
+    public void startName() throws MIOException {
+        _add(_START_NAME);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endName()
+     */
+    @Override
+    public void endName() throws MIOException {
+        _add(_END_NAME);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startVariant()
+     */
+    @Override
+    public void startVariant() throws MIOException {
+        _add(_START_VARIANT);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endVariant()
+     */
+    @Override
+    public void endVariant() throws MIOException {
+        _add(_END_VARIANT);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startScope()
+     */
+    @Override
+    public void startScope() throws MIOException {
+        _add(_START_SCOPE);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endScope()
+     */
+    @Override
+    public void endScope() throws MIOException {
+        _add(_END_SCOPE);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startTheme()
+     */
+    @Override
+    public void startTheme() throws MIOException {
+        _add(_START_THEME);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endTheme()
+     */
+    @Override
+    public void endTheme() throws MIOException {
+        _add(_END_THEME);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#value(java.lang.String)
+     */
+    @Override
+    public void value(final String value) throws MIOException {
+        _add(_VALUE, value);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#value(java.lang.String, java.lang.String)
+     */
+    @Override
+    public void value(final String value, final String datatype) throws MIOException {
+        _add(_VALUE_DATATYPE, value);
+        _addArg(datatype);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#subjectIdentifier(java.lang.String)
+     */
+    @Override
+    public void subjectIdentifier(final String sid) throws MIOException {
+        _add(_SUBJECT_IDENTIFIER, sid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#subjectLocator(java.lang.String)
+     */
+    @Override
+    public void subjectLocator(final String slo) throws MIOException {
+        _add(_SUBJECT_LOCATOR, slo);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#itemIdentifier(java.lang.String)
+     */
+    @Override
+    public void itemIdentifier(final String iid) throws MIOException {
+        _add(_ITEM_IDENTIFIER, iid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startPlayer()
+     */
+    @Override
+    public void startPlayer() throws MIOException {
+        _add(_START_PLAYER);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endPlayer()
+     */
+    @Override
+    public void endPlayer() throws MIOException {
+        _add(_END_PLAYER);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startType()
+     */
+    @Override
+    public void startType() throws MIOException {
+        _add(_START_TYPE);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endType()
+     */
+    @Override
+    public void endType() throws MIOException {
+        _add(_END_TYPE);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startReifier()
+     */
+    @Override
+    public void startReifier() throws MIOException {
+        _add(_START_REIFIER);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endReifier()
+     */
+    @Override
+    public void endReifier() throws MIOException {
+        _add(_END_REIFIER);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#topicRef(com.semagia.mio.IRef)
+     */
+    @Override
+    public void topicRef(final IRef identity) throws MIOException {
+        _add(_TOPIC_REF, identity);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#startIsa()
+     */
+    @Override
+    public void startIsa() throws MIOException {
+        _add(_START_ISA);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IMapHandler#endIsa()
+     */
+    @Override
+    public void endIsa() throws MIOException {
+        _add(_END_ISA);
+    }
+
+}
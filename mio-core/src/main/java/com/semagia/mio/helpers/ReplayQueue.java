@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.MIOException;
+
+/**
+ * Executes tasks which record events on a pool of worker threads and
+ * replays the recorded events in the order in which the tasks were
+ * submitted.
+ * <p>
+ * The number of pending tasks is limited to twice the number of worker
+ * threads; {@link #submit(Callable)} replays the oldest tasks (and waits
+ * for them if necessary) if the limit is exceeded. This limits the number
+ * of recorded events which are kept in memory.
+ * </p>
+ * <p>
+ * Instances of this class are not thread-safe, they must be used by the
+ * thread which submits the tasks. The queue must be closed to stop the
+ * worker threads.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class ReplayQueue {
+
+    private final IMapHandler _handler;
+    private final ExecutorService _executor;
+    private final LinkedList<Future<RecordingMapHandler>> _pending;
+    private final int _maxPending;
+
+    /**
+     * Creates a queue.
+     *
+     * @param handler The handler which receives the recorded events.
+     * @param parallelism The number of worker threads.
+     */
+    public ReplayQueue(final IMapHandler handler, final int parallelism) {
+        if (handler == null) {
+            throw new IllegalArgumentException("The handler must not be null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than zero");
+        }
+        _handler = handler;
+        _executor = Executors.newFixedThreadPool(parallelism);
+        _pending = new LinkedList<Future<RecordingMapHandler>>();
+        _maxPending = parallelism * 2;
+    }
+
+    /**
+     * Submits a task and replays the oldest tasks until the number of
+     * pending tasks does not exceed the limit.
+     *
+     * @param task The task which returns the recorded events.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    public void submit(final Callable<RecordingMapHandler> task) throws IOException, MIOException {
+        _pending.add(_executor.submit(task));
+        _replay(_maxPending);
+    }
+
+    /**
+     * Replays all pending tasks.
+     * <p>
+     * This method is called before the events of the calling thread are
+     * reported to the handler and after the last task was submitted.
+     * </p>
+     *
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    public void flush() throws IOException, MIOException {
+        _replay(0);
+    }
+
+    /**
+     * Stops the worker threads and discards all pending tasks.
+     */
+    public void close() {
+        _pending.clear();
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Replays the oldest tasks until no more than <code>max</code> tasks
+     * are pending.
+     *
+     * @param max The max. number of pending tasks.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    private void _replay(final int max) throws IOException, MIOException {
+        while (_pending.size() > max) {
+            try {
+                _pending.removeFirst().get().replay(_handler);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new MIOException(ex);
+            }
+            catch (ExecutionException ex) {
+                final Throwable cause = ex.getCause();
+                if (cause instanceof MIOException) {
+                    throw (MIOException) cause;
+                }
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new MIOException(cause);
+            }
+        }
+    }
+
+}
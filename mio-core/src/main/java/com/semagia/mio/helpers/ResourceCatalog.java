@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.semagia.mio.IResourceResolver;
+import com.semagia.mio.Source;
+
+/**
+ * {@link IResourceResolver} which maps IRIs to local files or to in-memory
+ * byte arrays.
+ * <p>
+ * Besides exact IRIs, the catalog supports IRI prefixes which are mapped to
+ * directories: The remaining part of the IRI is interpreted as path
+ * relative to the directory. If several prefixes match, the longest prefix
+ * wins. IRIs which are unknown to the catalog are read from the IRI.
+ * </p>
+ * <p>
+ * This class is thread-safe, a catalog can be shared between deserializers
+ * which are used concurrently.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class ResourceCatalog implements IResourceResolver {
+
+    /**
+     * Maps IRIs to {@link File}s or <tt>byte[]</tt>.
+     */
+    private final Map<String, Object> _entries;
+    private final Map<String, File> _directories;
+
+    public ResourceCatalog() {
+        _entries = new ConcurrentHashMap<String, Object>();
+        _directories = new ConcurrentHashMap<String, File>();
+    }
+
+    /**
+     * Maps the IRI to a local file.
+     *
+     * @param iri The IRI.
+     * @param file The file which provides the resource.
+     */
+    public void addFile(final String iri, final File file) {
+        if (iri == null) {
+            throw new IllegalArgumentException("The IRI must not be null");
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("The file must not be null");
+        }
+        _entries.put(iri, file);
+    }
+
+    /**
+     * Maps the IRI to the provided bytes.
+     * <p>
+     * The array is shared by all sources which are created for the IRI, it
+     * must not be modified afterwards.
+     * </p>
+     *
+     * @param iri The IRI.
+     * @param data The resource.
+     */
+    public void addBytes(final String iri, final byte[] data) {
+        if (iri == null) {
+            throw new IllegalArgumentException("The IRI must not be null");
+        }
+        if (data == null) {
+            throw new IllegalArgumentException("The data must not be null");
+        }
+        _entries.put(iri, data);
+    }
+
+    /**
+     * Reads the stream and maps the IRI to the bytes of the stream.
+     * <p>
+     * The stream is closed by this method.
+     * </p>
+     *
+     * @param iri The IRI.
+     * @param in The stream to read the resource from.
+     * @throws IOException In case of an I/O error.
+     */
+    public void addBytes(final String iri, final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        finally {
+            in.close();
+        }
+        addBytes(iri, out.toByteArray());
+    }
+
+    /**
+     * Maps all IRIs which start with the provided prefix to files within
+     * the directory.
+     * <p>
+     * I.e. if the prefix <tt>http://www.example.org/onto/</tt> is mapped
+     * to the directory <tt>/data/onto</tt>, the IRI
+     * <tt>http://www.example.org/onto/types.ctm</tt> is resolved to the
+     * file <tt>/data/onto/types.ctm</tt>.
+     * </p>
+     *
+     * @param prefix The IRI prefix.
+     * @param directory The directory.
+     */
+    public void addDirectory(final String prefix, final File directory) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("The prefix must not be null");
+        }
+        if (directory == null) {
+            throw new IllegalArgumentException("The directory must not be null");
+        }
+        _directories.put(prefix, directory);
+    }
+
+    /**
+     * Removes the mapping of the provided IRI or IRI prefix.
+     *
+     * @param iri The IRI or IRI prefix.
+     */
+    public void remove(final String iri) {
+        _entries.remove(iri);
+        _directories.remove(iri);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.IResourceResolver#resolve(java.lang.String)
+     */
+    @Override
+    public Source resolve(final String iri) throws IOException {
+        final Object entry = _entries.get(iri);
+        if (entry instanceof byte[]) {
+            return new Source(new ByteArrayInputStream((byte[]) entry), iri);
+        }
+        File file = (File) entry;
+        if (file == null) {
+            file = _findFile(iri);
+        }
+        return file != null ? new Source(new BufferedInputStream(new FileInputStream(file)), iri)
+                            : null;
+    }
+
+    /**
+     * Returns the file within the directory of the longest matching prefix.
+     *
+     * @param iri The IRI.
+     * @return A file or {@code null} if no prefix matches.
+     */
+    private File _findFile(final String iri) {
+        String prefix = null;
+        for (String candidate: _directories.keySet()) {
+            if (iri.startsWith(candidate)
+                    && (prefix == null || candidate.length() > prefix.length())) {
+                prefix = candidate;
+            }
+        }
+        if (prefix == null) {
+            return null;
+        }
+        final String path = iri.substring(prefix.length());
+        // Do not leave the directory
+        if (path.length() == 0 || path.contains("..")
+                || path.indexOf('?') != -1 || path.indexOf('#') != -1) {
+            return null;
+        }
+        final File directory = _directories.get(prefix);
+        return directory != null ? new File(directory, path) : null;
+    }
+
+}
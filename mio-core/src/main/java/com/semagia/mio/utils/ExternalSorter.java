@@ -0,0 +1,491 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Sorts an arbitrary number of objects with a bounded amount of memory.
+ * <p>
+ * The objects are collected in memory until the max. number of in-memory
+ * objects is reached. The collected objects are sorted and written into a
+ * run file by an {@link ExecutorService}, so several runs may be sorted in
+ * parallel. {@link #sort()} merges the run files. At most 64 run files
+ * are merged at once; if there are more runs, they are merged into
+ * intermediate runs first.
+ * </p>
+ * <p>
+ * Instances of this class are not thread-safe.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class ExternalSorter<T> {
+
+    /**
+     * Max. number of run files which are read concurrently.
+     */
+    private static final int _MAX_FAN_IN = 64;
+
+    private final Comparator<? super T> _comparator;
+    private final ICodec<T> _codec;
+    private final File _directory;
+    private final int _maxInMemory;
+    private final ExecutorService _executor;
+    private final Semaphore _pendingRuns;
+    private final List<Future<File>> _runs;
+    private List<T> _buffer;
+    private boolean _sorted;
+
+    /**
+     * Creates an external sorter.
+     *
+     * @param comparator The comparator which defines the order.
+     * @param codec The codec to read / write the objects from / into run files.
+     * @param directory The directory for the run files.
+     * @param maxInMemory Max. number of objects kept in memory per run.
+     * @param executor The executor which sorts the runs; if it is
+     *          <tt>null</tt> the runs are sorted by the calling thread.
+     * @param parallelism Max. number of runs which are sorted concurrently.
+     */
+    public ExternalSorter(final Comparator<? super T> comparator, final ICodec<T> codec,
+            final File directory, final int maxInMemory,
+            final ExecutorService executor, final int parallelism) {
+        if (maxInMemory < 1) {
+            throw new IllegalArgumentException("The max. number of in-memory objects must be greater than 0");
+        }
+        _comparator = comparator;
+        _codec = codec;
+        _directory = directory;
+        _maxInMemory = maxInMemory;
+        _executor = executor;
+        _pendingRuns = new Semaphore(Math.max(1, parallelism));
+        _runs = new ArrayList<Future<File>>();
+        _buffer = new ArrayList<T>();
+    }
+
+    /**
+     * Adds an object.
+     *
+     * @param obj The object to add.
+     * @throws IOException In case of an error.
+     */
+    public void add(final T obj) throws IOException {
+        if (_sorted) {
+            throw new IllegalStateException("The sorter has been used already");
+        }
+        _buffer.add(obj);
+        if (_buffer.size() >= _maxInMemory) {
+            _flush();
+        }
+    }
+
+    /**
+     * Returns an iterator over all added objects in sorted order.
+     * <p>
+     * This method can be called once. The returned iterator must be closed.
+     * </p>
+     *
+     * @return An iterator over the sorted objects.
+     * @throws IOException In case of an error.
+     */
+    public ICloseableIterator<T> sort() throws IOException {
+        if (_sorted) {
+            throw new IllegalStateException("The sorter has been used already");
+        }
+        _sorted = true;
+        if (_runs.isEmpty()) {
+            final List<T> buffer = _buffer;
+            _buffer = null;
+            Collections.sort(buffer, _comparator);
+            return new InMemoryIterator<T>(buffer.iterator());
+        }
+        _flush();
+        _buffer = null;
+        final List<File> files = new ArrayList<File>(_runs.size());
+        IOException error = null;
+        for (Future<File> run: _runs) {
+            try {
+                files.add(run.get());
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                error = new IOException("Interrupted while sorting");
+            }
+            catch (ExecutionException ex) {
+                error = ex.getCause() instanceof IOException ? (IOException) ex.getCause()
+                                                             : new IOException(ex.getCause().getMessage());
+            }
+        }
+        if (error != null) {
+            for (File file: files) {
+                file.delete();
+            }
+            throw error;
+        }
+        return new MergingIterator<T>(_reduce(files), _comparator, _codec);
+    }
+
+    /**
+     * Discards all collected objects.
+     */
+    public void discard() {
+        _sorted = true;
+        _buffer = null;
+        for (Future<File> run: _runs) {
+            try {
+                run.get().delete();
+            }
+            catch (Exception ex) {
+                // noop.
+            }
+        }
+    }
+
+    private void _flush() throws IOException {
+        if (_buffer.isEmpty()) {
+            return;
+        }
+        final List<T> buffer = _buffer;
+        _buffer = new ArrayList<T>();
+        final Callable<File> task = new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                try {
+                    return _writeRun(buffer);
+                }
+                finally {
+                    _pendingRuns.release();
+                }
+            }
+        };
+        try {
+            _pendingRuns.acquire();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sorting");
+        }
+        if (_executor != null) {
+            _runs.add(_executor.submit(task));
+        }
+        else {
+            final FutureTask<File> future = new FutureTask<File>(task);
+            future.run();
+            _runs.add(future);
+        }
+    }
+
+    /**
+     * Merges groups of {@link #_MAX_FAN_IN} runs into intermediate runs until
+     * at most {@link #_MAX_FAN_IN} runs are left.
+     * <p>
+     * The groups consist of consecutive runs, so the order of equal objects
+     * is kept.
+     * </p>
+     */
+    private List<File> _reduce(List<File> files) throws IOException {
+        while (files.size() > _MAX_FAN_IN) {
+            final List<File> merged = new ArrayList<File>(files.size() / _MAX_FAN_IN + 1);
+            int i = 0;
+            try {
+                for (; i<files.size(); i+=_MAX_FAN_IN) {
+                    merged.add(_mergeRuns(files.subList(i, Math.min(i + _MAX_FAN_IN, files.size()))));
+                }
+            }
+            catch (IOException ex) {
+                for (File file: files.subList(Math.min(i, files.size()), files.size())) {
+                    file.delete();
+                }
+                for (File file: merged) {
+                    file.delete();
+                }
+                throw ex;
+            }
+            files = merged;
+        }
+        return files;
+    }
+
+    /**
+     * Merges the provided runs into one run, the provided run files are
+     * deleted.
+     */
+    private File _mergeRuns(final List<File> files) throws IOException {
+        if (files.size() == 1) {
+            return files.get(0);
+        }
+        final MergingIterator<T> iter = new MergingIterator<T>(files, _comparator, _codec);
+        File file = null;
+        try {
+            file = File.createTempFile("mio-sort-", ".run", _directory);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            try {
+                while (iter.hasNext()) {
+                    out.writeBoolean(true);
+                    _codec.write(out, iter.read());
+                }
+                out.writeBoolean(false);
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch (IOException ex) {
+            if (file != null) {
+                file.delete();
+            }
+            throw ex;
+        }
+        finally {
+            // Deletes the merged run files
+            iter.close();
+        }
+        return file;
+    }
+
+    private File _writeRun(final List<T> buffer) throws IOException {
+        Collections.sort(buffer, _comparator);
+        final File file = File.createTempFile("mio-sort-", ".run", _directory);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            for (T obj: buffer) {
+                out.writeBoolean(true);
+                _codec.write(out, obj);
+            }
+            out.writeBoolean(false);
+        }
+        catch (IOException ex) {
+            out.close();
+            file.delete();
+            throw ex;
+        }
+        out.close();
+        return file;
+    }
+
+
+    /**
+     * Reads and writes objects from / into run files.
+     */
+    public interface ICodec<T> {
+
+        /**
+         * Writes the object.
+         *
+         * @param out The output to write the object to.
+         * @param obj The object to write.
+         * @throws IOException In case of an error.
+         */
+        public void write(DataOutput out, T obj) throws IOException;
+
+        /**
+         * Reads an object.
+         *
+         * @param in The input to read the object from.
+         * @return The object.
+         * @throws IOException In case of an error.
+         */
+        public T read(DataInput in) throws IOException;
+    }
+
+
+    /**
+     * Iterator which must be closed to free resources.
+     */
+    public interface ICloseableIterator<T> extends Iterator<T> {
+
+        /**
+         * Closes the iterator.
+         */
+        public void close();
+    }
+
+
+    private static final class InMemoryIterator<T> implements ICloseableIterator<T> {
+
+        private final Iterator<T> _iter;
+
+        InMemoryIterator(final Iterator<T> iter) {
+            _iter = iter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _iter.hasNext();
+        }
+
+        @Override
+        public T next() {
+            return _iter.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            // noop.
+        }
+    }
+
+
+    private static final class MergingIterator<T> implements ICloseableIterator<T> {
+
+        private final PriorityQueue<Run<T>> _queue;
+        private final List<Run<T>> _runs;
+
+        MergingIterator(final List<File> files, final Comparator<? super T> comparator,
+                final ICodec<T> codec) throws IOException {
+            _runs = new ArrayList<Run<T>>(files.size());
+            _queue = new PriorityQueue<Run<T>>(files.size(), new Comparator<Run<T>>() {
+                @Override
+                public int compare(final Run<T> a, final Run<T> b) {
+                    final int res = comparator.compare(a.head, b.head);
+                    // Keep the order of equal elements stable
+                    return res != 0 ? res : a.index - b.index;
+                }
+            });
+            try {
+                for (File file: files) {
+                    final Run<T> run = new Run<T>(file, codec, _runs.size());
+                    _runs.add(run);
+                    if (run.advance()) {
+                        _queue.add(run);
+                    }
+                }
+            }
+            catch (IOException ex) {
+                close();
+                throw ex;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !_queue.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            try {
+                return read();
+            }
+            catch (IOException ex) {
+                throw new IllegalStateException("Cannot read the run file", ex);
+            }
+        }
+
+        /**
+         * Returns the next object.
+         *
+         * @return The next object.
+         * @throws IOException If the next object cannot be read.
+         */
+        T read() throws IOException {
+            final Run<T> run = _queue.poll();
+            if (run == null) {
+                throw new NoSuchElementException();
+            }
+            final T result = run.head;
+            if (run.advance()) {
+                _queue.add(run);
+            }
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            _queue.clear();
+            for (Run<T> run: _runs) {
+                run.close();
+            }
+        }
+    }
+
+
+    private static final class Run<T> {
+
+        private final File _file;
+        private final ICodec<T> _codec;
+        private final DataInputStream _in;
+        final int index;
+        T head;
+
+        Run(final File file, final ICodec<T> codec, final int index) throws IOException {
+            _file = file;
+            _codec = codec;
+            this.index = index;
+            _in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        }
+
+        boolean advance() throws IOException {
+            try {
+                if (_in.readBoolean()) {
+                    head = _codec.read(_in);
+                    return true;
+                }
+            }
+            catch (EOFException ex) {
+                throw new IOException("Unexpected end of the run file " + _file);
+            }
+            head = null;
+            close();
+            return false;
+        }
+
+        void close() {
+            try {
+                _in.close();
+            }
+            catch (IOException ex) {
+                // noop.
+            }
+            _file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.utils;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * {@link Reader} which computes the line and column of a character offset
+ * on demand.
+ * <p>
+ * Lexers which do not track the line and column of the tokens use this
+ * reader to report the position of an erroneous token. The reader keeps
+ * a window of the characters which were read since the last
+ * {@link #release(int) released} offset and the line and column at the
+ * start of that window. Released characters are counted and discarded
+ * once the window is full, so the memory usage is bounded by the lexer's
+ * look-back and not by the size of the input.
+ * </p>
+ * <p>
+ * Lines and columns are counted like JFlex does: CR LF, CR, LF, VT, FF,
+ * NEL, LS and PS terminate a line and columns are counted in UTF-16
+ * chars.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class PositionReader extends FilterReader {
+
+    private char[] _window;
+    private int _length;
+    /**
+     * The offset of the first character in the window.
+     */
+    private long _start;
+    /**
+     * Characters before this offset are not queried anymore.
+     */
+    private long _released;
+    /**
+     * Line, column and if the last character was a <tt>\r</tt> at
+     * {@link #_start}.
+     */
+    private int _line;
+    private int _column;
+    private boolean _cr;
+    /**
+     * The offset whose position was computed.
+     */
+    private long _positionOffset = -1;
+    private int _positionLine;
+    private int _positionColumn;
+    /**
+     * Result of {@link #_scan(int)}.
+     */
+    private int _scanLine;
+    private int _scanColumn;
+    private boolean _scanCR;
+
+    /**
+     * Creates a reader which reads from the provided reader.
+     *
+     * @param reader The reader to read from.
+     */
+    public PositionReader(final Reader reader) {
+        super(reader);
+        _window = new char[16384];
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterReader#read()
+     */
+    @Override
+    public int read() throws IOException {
+        final int c = super.read();
+        if (c != -1) {
+            _ensureCapacity(1);
+            _window[_length] = (char) c;
+            _length++;
+        }
+        return c;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterReader#read(char[], int, int)
+     */
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        final int read = super.read(cbuf, off, len);
+        if (read > 0) {
+            _ensureCapacity(read);
+            System.arraycopy(cbuf, off, _window, _length, read);
+            _length += read;
+        }
+        return read;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterReader#skip(long)
+     */
+    @Override
+    public long skip(final long n) throws IOException {
+        // Skipped characters must be counted as well
+        final char[] buf = new char[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            final int read = read(buf, 0, (int) Math.min(n - skipped, buf.length));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterReader#markSupported()
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterReader#mark(int)
+     */
+    @Override
+    public void mark(final int readAheadLimit) throws IOException {
+        throw new IOException("mark() is not supported");
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterReader#reset()
+     */
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() is not supported");
+    }
+
+    /**
+     * Returns the number of characters which were read so far.
+     *
+     * @return The number of characters.
+     */
+    public long size() {
+        return _start + _length;
+    }
+
+    /**
+     * Indicates that the positions of characters before the provided
+     * offset won't be queried anymore.
+     * <p>
+     * The offset is the (possibly overflowed) <tt>int</tt> character
+     * offset which is maintained by the lexer, i.e. <tt>yychar</tt>.
+     * </p>
+     *
+     * @param offset The character offset.
+     */
+    public void release(final int offset) {
+        _released = Math.max(_released, _offset(offset));
+    }
+
+    /**
+     * Returns the zero-based line of the provided character offset.
+     *
+     * @param offset The character offset.
+     * @return The line.
+     */
+    public int getLine(final int offset) {
+        _computePosition(offset);
+        return _positionLine;
+    }
+
+    /**
+     * Returns the zero-based column of the provided character offset.
+     *
+     * @param offset The character offset.
+     * @return The column.
+     */
+    public int getColumn(final int offset) {
+        _computePosition(offset);
+        return _positionColumn;
+    }
+
+    /**
+     * Returns the absolute offset of the provided lexer offset.
+     * <p>
+     * The lexer offset is an <tt>int</tt> which overflows after 2G chars,
+     * but the offset lies within the window, so its lower 32 bits
+     * identify the absolute offset.
+     * </p>
+     */
+    private long _offset(final int offset) {
+        final long end = _start + _length;
+        final long pos = end - (((int) end - offset) & 0xFFFFFFFFL);
+        if (pos < _start) {
+            throw new IllegalArgumentException("The offset " + offset + " is not available");
+        }
+        return pos;
+    }
+
+    private void _computePosition(final int offset) {
+        final long pos = _offset(offset);
+        if (pos == _positionOffset) {
+            return;
+        }
+        final int end = (int) (pos - _start);
+        _scan(end);
+        if (_scanCR && end < _length && _window[end] == '\n') {
+            // JFlex counts the \r\n line terminator at the \n if a token
+            // starts with it
+            _scanLine--;
+        }
+        _positionLine = _scanLine;
+        _positionColumn = _scanColumn;
+        _positionOffset = pos;
+    }
+
+    /**
+     * Discards the released characters from the window and moves the
+     * line and column to the start of the window.
+     */
+    private void _discard() {
+        final int n = (int) (_released - _start);
+        _scan(n);
+        _line = _scanLine;
+        _column = _scanColumn;
+        _cr = _scanCR;
+        _length -= n;
+        System.arraycopy(_window, n, _window, 0, _length);
+        _start = _released;
+    }
+
+    /**
+     * Counts the lines and columns from the start of the window up to
+     * the provided window index.
+     */
+    private void _scan(final int end) {
+        int line = _line;
+        int column = _column;
+        boolean cr = _cr;
+        for (int i=0; i<end; i++) {
+            switch (_window[i]) {
+                case '\u000B':
+                case '\u000C':
+                case '\u0085':
+                case '\u2028':
+                case '\u2029':
+                    line++;
+                    column = 0;
+                    cr = false;
+                    break;
+                case '\r':
+                    line++;
+                    column = 0;
+                    cr = true;
+                    break;
+                case '\n':
+                    if (cr) {
+                        cr = false;
+                    }
+                    else {
+                        line++;
+                        column = 0;
+                    }
+                    break;
+                default:
+                    cr = false;
+                    column++;
+            }
+        }
+        _scanLine = line;
+        _scanColumn = column;
+        _scanCR = cr;
+    }
+
+    private void _ensureCapacity(final int n) {
+        if (_window.length - _length >= n) {
+            return;
+        }
+        if (_released > _start) {
+            _discard();
+        }
+        final int required = _length + n;
+        if (_window.length - required < 0) {
+            if (required < 0) {
+                throw new OutOfMemoryError("The window exceeds the maximum array size");
+            }
+            int capacity = _window.length + (_window.length >> 1);
+            if (capacity - required < 0) {
+                capacity = required;
+            }
+            final char[] window = new char[capacity];
+            System.arraycopy(_window, 0, window, 0, _length);
+            _window = window;
+        }
+    }
+
+}
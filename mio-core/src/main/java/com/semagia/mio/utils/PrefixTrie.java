@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.utils;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Trie which maps strings (i.e. namespace IRIs) to values (i.e. prefixes) and
+ * finds the longest key which is a prefix of a string in <tt>O(length)</tt>
+ * of the string.
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class PrefixTrie<V> {
+
+    private final Node<V> _root;
+    private int _size;
+
+    public PrefixTrie() {
+        _root = new Node<V>();
+    }
+
+    /**
+     * Associates the key with the provided value. An existing value is
+     * replaced.
+     *
+     * @param key The key.
+     * @param value The value, must not be {@code null}.
+     */
+    public void put(final String key, final V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("The value must not be null");
+        }
+        Node<V> node = _root;
+        for (int i=0; i < key.length(); i++) {
+            node = node.getOrCreateChild(key.charAt(i));
+        }
+        if (node.entry == null) {
+            _size++;
+        }
+        node.entry = new AbstractMap.SimpleImmutableEntry<String, V>(key, value);
+    }
+
+    /**
+     * Returns the value of the provided key.
+     *
+     * @param key The key.
+     * @return The value or {@code null} if the key is unknown.
+     */
+    public V get(final String key) {
+        Node<V> node = _root;
+        for (int i=0; i < key.length() && node != null; i++) {
+            node = node.getChild(key.charAt(i));
+        }
+        return node == null || node.entry == null ? null : node.entry.getValue();
+    }
+
+    /**
+     * Removes the key.
+     * <p>
+     * The nodes of the key are kept.
+     * </p>
+     *
+     * @param key The key to remove.
+     */
+    public void remove(final String key) {
+        Node<V> node = _root;
+        for (int i=0; i < key.length() && node != null; i++) {
+            node = node.getChild(key.charAt(i));
+        }
+        if (node != null && node.entry != null) {
+            node.entry = null;
+            _size--;
+        }
+    }
+
+    /**
+     * Returns the number of keys.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Returns the longest key which is a prefix of {@code s}.
+     *
+     * @param s The string.
+     * @return The key / value pair or {@code null} if no key matches.
+     */
+    public Map.Entry<String, V> longestMatch(final CharSequence s) {
+        return longestMatch(s, s.length());
+    }
+
+    /**
+     * Returns the longest key which is a prefix of {@code s} and not longer
+     * than {@code maxLength}.
+     * <p>
+     * Callers which reject a match may ask for the next shorter match by
+     * passing the length of the rejected key minus one.
+     * </p>
+     *
+     * @param s The string.
+     * @param maxLength The max. length of the key.
+     * @return The key / value pair or {@code null} if no key matches.
+     */
+    public Map.Entry<String, V> longestMatch(final CharSequence s, final int maxLength) {
+        final int end = Math.min(maxLength, s.length());
+        Node<V> node = _root;
+        Map.Entry<String, V> match = node.entry;
+        for (int i=0; i < end; i++) {
+            node = node.getChild(s.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.entry != null) {
+                match = node.entry;
+            }
+        }
+        return match;
+    }
+
+
+    private static final class Node<V> {
+
+        /**
+         * The characters of the children (sorted).
+         */
+        private char[] _chars;
+        private Node<V>[] _children;
+        private int _childCount;
+        Map.Entry<String, V> entry;
+
+        Node<V> getChild(final char c) {
+            if (_childCount == 0) {
+                return null;
+            }
+            final int idx = Arrays.binarySearch(_chars, 0, _childCount, c);
+            return idx < 0 ? null : _children[idx];
+        }
+
+        Node<V> getOrCreateChild(final char c) {
+            if (_chars == null) {
+                _chars = new char[2];
+                _children = _newNodes(2);
+            }
+            int idx = Arrays.binarySearch(_chars, 0, _childCount, c);
+            if (idx >= 0) {
+                return _children[idx];
+            }
+            idx = -(idx + 1);
+            if (_childCount == _chars.length) {
+                _chars = Arrays.copyOf(_chars, _childCount * 2);
+                _children = Arrays.copyOf(_children, _childCount * 2);
+            }
+            System.arraycopy(_chars, idx, _chars, idx + 1, _childCount - idx);
+            System.arraycopy(_children, idx, _children, idx + 1, _childCount - idx);
+            final Node<V> child = new Node<V>();
+            _chars[idx] = c;
+            _children[idx] = child;
+            _childCount++;
+            return child;
+        }
+
+        /**
+         * Creates an array of nodes (generic arrays cannot be created).
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static <V> Node<V>[] _newNodes(final int size) {
+            return new Node[size];
+        }
+    }
+
+}
@@ -16,6 +16,8 @@
 package com.semagia.mio.utils.xml;
 
 import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
@@ -38,6 +40,11 @@ import com.thaiopensource.xml.sax.DraconianErrorHandler;
  */
 public final class RelaxNGValidatingContentHandler {
 
+    /**
+     * Compiled schemas (which are immutable and thread-safe) by their URL.
+     */
+    private static final Map<String, Schema> _SCHEMAS = new ConcurrentHashMap<String, Schema>();
+
     /**
      * Creates a content handler which validates the input against the specified
      * <tt>schemaSource</tt>.
@@ -53,15 +60,19 @@ public final class RelaxNGValidatingContentHandler {
      */
     public static ContentHandler create(final ContentHandler contentHandler, 
             final URL schemaSource) throws MIOException {
-        final SchemaFactory factory = new SchemaFactory();
-        factory.setErrorHandler(new DraconianErrorHandler());
-        factory.setCompactSyntax(schemaSource.getFile().endsWith(".rnc"));
-        Schema schema = null;
-        try {
-            schema = factory.createSchema(new InputSource(schemaSource.openStream()));
-        }
-        catch (Exception ex) {
-            throw new MIOException(ex);
+        final String key = schemaSource.toExternalForm();
+        Schema schema = _SCHEMAS.get(key);
+        if (schema == null) {
+            final SchemaFactory factory = new SchemaFactory();
+            factory.setErrorHandler(new DraconianErrorHandler());
+            factory.setCompactSyntax(schemaSource.getFile().endsWith(".rnc"));
+            try {
+                schema = factory.createSchema(new InputSource(schemaSource.openStream()));
+            }
+            catch (Exception ex) {
+                throw new MIOException(ex);
+            }
+            _SCHEMAS.put(key, schema);
         }
         final ContentHandler validator = schema.createValidator(new SinglePropertyMap(ValidateProperty.ERROR_HANDLER, new DraconianErrorHandler())).getContentHandler();
         return new TeeContentHandler(validator, contentHandler);
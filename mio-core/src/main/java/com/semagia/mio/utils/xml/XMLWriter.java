@@ -18,7 +18,10 @@ package com.semagia.mio.utils.xml;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.util.Arrays;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.helpers.AttributesImpl;
@@ -26,6 +29,13 @@ import org.xml.sax.helpers.AttributesImpl;
 
 /**
  * Simple SAX-alike XML writer.
+ * <p>
+ * The writer encodes the characters itself into an internal byte buffer if
+ * the encoding is UTF-8, ISO-8859-1 or US-ASCII. Characters are escaped by
+ * lookup tables; runs of characters which need no escaping are copied
+ * without further checks. The byte representation of element and attribute
+ * names is cached. Other encodings are supported by transcoding the buffer.
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev: 607 $ - $Date: 2011-01-20 02:28:15 +0100 (Do, 20 Jan 2011) $
@@ -34,37 +44,122 @@ public final class XMLWriter {
 
     public static final Attributes EMPTY_ATTRS = new AttributesImpl(); 
 
-    private static final char _NL = '\n';
+    private static final Charset _UTF_8 = Charset.forName("UTF-8");
 
-    private OutputStreamWriter _out;
+    private static final byte _NL = '\n';
+
+    private static final byte[] _HEX = _ascii("0123456789ABCDEF");
+
+    /**
+     * Replacement sequences for ASCII characters; <tt>null</tt> if the
+     * character is written as it is.
+     */
+    private static final byte[][] 
+        _NO_ESCAPES = new byte[128][],
+        _TEXT_ESCAPES = new byte[128][],
+        _ATTRIBUTE_ESCAPES = new byte[128][];
+
+    static {
+        _TEXT_ESCAPES['&'] = _ascii("&amp;");
+        _TEXT_ESCAPES['<'] = _ascii("&lt;");
+        _TEXT_ESCAPES['>'] = _ascii("&gt;");
+        System.arraycopy(_TEXT_ESCAPES, 0, _ATTRIBUTE_ESCAPES, 0, 128);
+        _ATTRIBUTE_ESCAPES['"'] = _ascii("&quot;");
+    }
+
+    private static final byte[]
+        _XML_DECL_START = _ascii("<?xml version=\"1.0\" encoding=\""),
+        _XML_DECL_END = _ascii("\" standalone=\"yes\"?>"),
+        _COMMENT_START = _ascii("<!-- "),
+        _COMMENT_END = _ascii(" -->"),
+        _COMMENT_DASH = _ascii("- "),
+        _PI_START = _ascii("<?"),
+        _PI_END = _ascii("?>"),
+        _END_TAG_START = _ascii("</"),
+        _EMPTY_TAG_END = _ascii("/>"),
+        _ATTRIBUTE_START = _ascii("=\"");
+
+    /**
+     * Max. number of bytes which are written for a single character
+     * (a character reference, i.e. <tt>&amp;#x10FFFF;</tt>).
+     */
+    private static final int _MAX_CHAR_BYTES = 10;
+
+    /**
+     * Max. number of cached element / attribute names.
+     */
+    private static final int _MAX_NAMES = 256;
+
+    private OutputStream _out;
+
+    private final Writer _transcoder;
 
     private final String _encoding;
 
+    private final byte[] _buff;
+
+    private int _pos;
+
+    private final char[] _chars;
+
+    private final Map<String, byte[]> _names;
+
+    /**
+     * Indicates if characters &gt; 0x7F are UTF-8 encoded, otherwise they are 
+     * written as single bytes.
+     */
+    private final boolean _utf8;
+
+    /**
+     * Characters greater than this code point are written as character references.
+     */
+    private final int _maxCodePoint;
+
     private int _depth;
 
     private boolean _prettify;
 
-    private int _bits = -1;
-
     public XMLWriter(final OutputStream out) throws IOException {
         this(out, "UTF-8");
     }
 
     public XMLWriter(final OutputStream out, final String encoding) throws IOException {
-        _out = new OutputStreamWriter(out, encoding);
         _encoding = encoding;
-        if ("UTF-8".equalsIgnoreCase(encoding) 
-                || "UTF-16".equalsIgnoreCase(encoding)) {
-            _bits = 16;
+        _out = out;
+        _buff = new byte[1 << 14];
+        _chars = new char[1 << 10];
+        _names = new HashMap<String, byte[]>();
+        Writer transcoder = null;
+        if ("UTF-8".equalsIgnoreCase(encoding)) {
+            _utf8 = true;
+            _maxCodePoint = Character.MAX_CODE_POINT;
         }
         else if ("ISO-8859-1".equalsIgnoreCase(encoding) 
                     || "Latin1".equalsIgnoreCase(encoding)) {
-            _bits = 8;
+            _utf8 = false;
+            _maxCodePoint = 0xFF;
         }
         else if ("US-ASCII".equalsIgnoreCase(encoding) 
                     || "ASCII".equalsIgnoreCase(encoding)) {
-            _bits = 7;
+            _utf8 = false;
+            _maxCodePoint = 0x7F;
         }
+        else {
+            // The buffer holds UTF-8 which is transcoded into the target encoding
+            transcoder = new OutputStreamWriter(out, encoding);
+            _utf8 = true;
+            _maxCodePoint = "UTF-16".equalsIgnoreCase(encoding) ? Character.MAX_CODE_POINT 
+                                                                 : Character.MAX_VALUE;
+        }
+        _transcoder = transcoder;
+    }
+
+    private static byte[] _ascii(final String s) {
+        final byte[] bytes = new byte[s.length()];
+        for (int i=0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
     }
 
     /**
@@ -107,27 +202,28 @@ public final class XMLWriter {
      * @throws IOException In case of an error.
      */
     public void comment(final char[] ch, final int start, final int length) throws IOException {
-        _out.write("<!-- ");
+        _write(_COMMENT_START);
         final int len = start + length;
+        int runStart = start;
         for (int i=start; i < len; i++) {
             // -- is converted into - - 
             if (ch[i] == '-' && i+1 < len && ch[i+1] == '-') {
-                _out.write("- ");
-            }
-            else {
-                _out.write(ch[i]);
+                _writeEscapedCharacters(ch, runStart, i - runStart, _NO_ESCAPES);
+                _write(_COMMENT_DASH);
+                runStart = i + 1;
             }
         }
-        _out.write(" -->");
+        _writeEscapedCharacters(ch, runStart, len - runStart, _NO_ESCAPES);
+        _write(_COMMENT_END);
     }
 
     /**
      * @see org.xml.sax.DocumentHandler#startDocument()
      */
     public void startDocument() throws IOException {
-        _out.write("<?xml version=\"1.0\" encoding=\"");
-        _out.write(_encoding);
-        _out.write("\" standalone=\"yes\"?>");
+        _write(_XML_DECL_START);
+        _writeString(_encoding, _NO_ESCAPES);
+        _write(_XML_DECL_END);
         if (!_prettify) {
             _newline();
         }
@@ -140,7 +236,13 @@ public final class XMLWriter {
     public void endDocument() throws IOException {
         _newline();
         try {
-            _out.flush();
+            _flushBuffer();
+            if (_transcoder != null) {
+                _transcoder.flush();
+            }
+            else {
+                _out.flush();
+            }
         }
         finally {
             _out = null;
@@ -157,11 +259,11 @@ public final class XMLWriter {
      * @param data The data.
      */
     public void processingInstruction(final String target, final String data) throws IOException {
-        _out.write("<?");
-        _out.write(target);
-        _out.write(' ');
-        _out.write(data);
-        _out.write("?>");
+        _write(_PI_START);
+        _writeString(target, _NO_ESCAPES);
+        _write(' ');
+        _writeString(data, _NO_ESCAPES);
+        _write(_PI_END);
     }
 
     /**
@@ -176,10 +278,10 @@ public final class XMLWriter {
      */
     public void startElement(final String name, final Attributes attrs) throws IOException {
         _indent();
-        _out.write('<');
-        _out.write(name);
+        _write('<');
+        _writeName(name);
         _writeAttributes(attrs);
-        _out.write('>');
+        _write('>');
         _depth++;
     }
 
@@ -195,9 +297,9 @@ public final class XMLWriter {
         if (indent) {
             _indent();
         }
-        _out.write("</");
-        _out.write(name);
-        _out.write('>');
+        _write(_END_TAG_START);
+        _writeName(name);
+        _write('>');
     }
 
     public void emptyElement(final String name) throws IOException {
@@ -206,10 +308,10 @@ public final class XMLWriter {
 
     public void emptyElement(final String name, final Attributes attrs) throws IOException {
         _indent();
-        _out.write('<');
-        _out.write(name);
+        _write('<');
+        _writeName(name);
         _writeAttributes(attrs);
-        _out.write("/>");
+        _write(_EMPTY_TAG_END);
     }
 
     public void dataElement(final String name, final String data) throws IOException {
@@ -223,15 +325,37 @@ public final class XMLWriter {
     }
 
     private void _writeAttributes(final Attributes attrs) throws IOException {
-        char[] chars;
         for (int i=0; i < attrs.getLength(); i++) {
-            _out.write(' ');
-            _out.write(attrs.getLocalName(i));
-            _out.write("=\"");
-            chars = attrs.getValue(i).toCharArray();
-            _writeEscapedCharacters(chars, 0, chars.length, true);
-            _out.write('"');
+            _write(' ');
+            _writeName(attrs.getLocalName(i));
+            _write(_ATTRIBUTE_START);
+            _writeString(attrs.getValue(i), _ATTRIBUTE_ESCAPES);
+            _write('"');
+        }
+    }
+
+    /**
+     * Writes an element or attribute name. The byte representation of 
+     * ASCII names is cached.
+     *
+     * @param name The name to write.
+     * @throws IOException If an error occurs.
+     */
+    private void _writeName(final String name) throws IOException {
+        byte[] bytes = _names.get(name);
+        if (bytes == null) {
+            for (int i=0; i < name.length(); i++) {
+                if (name.charAt(i) >= 0x80) {
+                    _writeString(name, _NO_ESCAPES);
+                    return;
+                }
+            }
+            bytes = _ascii(name);
+            if (_names.size() < _MAX_NAMES) {
+                _names.put(name, bytes);
+            }
         }
+        _write(bytes);
     }
 
     /**
@@ -240,7 +364,7 @@ public final class XMLWriter {
      * @throws IOException If an error occurs.
      */
     private void _newline() throws IOException {
-        _out.write(_NL);
+        _write(_NL);
     }
 
     private void _indent() throws IOException {
@@ -248,9 +372,10 @@ public final class XMLWriter {
             return;
         }
         _newline();
-        final char[] chars = new char[_depth*2];
-        Arrays.fill(chars, ' ');
-        _out.write(chars);
+        for (int i=0; i < _depth; i++) {
+            _write(' ');
+            _write(' ');
+        }
     }
 
     /**
@@ -260,97 +385,163 @@ public final class XMLWriter {
      * @throws IOException If an error occurs.
      */
     public void characters(final String data) throws IOException {
-        final char[] chars = data.toCharArray();
-        characters(chars, 0, chars.length);
+        _writeString(data, _TEXT_ESCAPES);
     }
 
     /**
      * @see org.xml.sax.DocumentHandler#characters(char[], int, int)
      */
     public void characters(final char[] chars, final int start, final int length) throws IOException {
-        _writeEscapedCharacters(chars, start, length, false);
-    }
-    
-    private static boolean _isHighSurrogate(final char c) {
-        return c >= 0xD800 && c <= 0xDBFF;
+        _writeEscapedCharacters(chars, start, length, _TEXT_ESCAPES);
     }
 
-    private static boolean _isLowSurrogate(final char c) {
-        return c >= 0xDC00 && c <= 0xDFFF;
+    /**
+     * Writes the string in chunks through the internal character buffer.
+     *
+     * @param data The string to write.
+     * @param escapes The escape table.
+     * @throws IOException If an error occurs.
+     */
+    private void _writeString(final String data, final byte[][] escapes) throws IOException {
+        final char[] chars = _chars;
+        final int len = data.length();
+        int offset = 0;
+        while (offset < len) {
+            int end = Math.min(len, offset + chars.length);
+            // Don't split surrogate pairs
+            if (end < len && Character.isHighSurrogate(data.charAt(end - 1))) {
+                end--;
+            }
+            data.getChars(offset, end, chars, 0);
+            _writeEscapedCharacters(chars, 0, end - offset, escapes);
+            offset = end;
+        }
     }
-    
-    private boolean _shouldEscape(final char c) {
-        if (_bits == 16) {
-            return false;//return _isHighSurrogate(c);
+
+    private void _writeEscapedCharacters(final char[] ch, final int start, final int length,
+            final byte[][] escapes) throws IOException {
+        final byte[] buff = _buff;
+        final int end = start + length;
+        int pos = _pos;
+        int i = start;
+        while (i < end) {
+            if (pos + _MAX_CHAR_BYTES > buff.length) {
+                _pos = pos;
+                _flushBuffer();
+                pos = 0;
+            }
+            char c = ch[i];
+            if (c < 0x80) {
+                final byte[] escape = escapes[c];
+                if (escape == null) {
+                    // Copy the run of characters which need no escaping
+                    final int limit = Math.min(end, i + buff.length - pos);
+                    do {
+                        buff[pos++] = (byte) c;
+                        i++;
+                    } while (i < limit && (c = ch[i]) < 0x80 && escapes[c] == null);
+                }
+                else {
+                    System.arraycopy(escape, 0, buff, pos, escape.length);
+                    pos += escape.length;
+                    i++;
+                }
+                continue;
+            }
+            i++;
+            int cp = c;
+            if (Character.isHighSurrogate(c)) {
+                if (i == end) {
+                    throw new IOException("Surrogate pair 0x" + Integer.toHexString(c) + " truncated");
+                }
+                final char low = ch[i++];
+                if (!Character.isLowSurrogate(low)) {
+                    throw new IOException("Could not decode surrogate pair 0x" + Integer.toHexString(c) + " / 0x" + Integer.toHexString(low));
+                }
+                cp = Character.toCodePoint(c, low);
+            }
+            if (cp > _maxCodePoint) {
+                pos = _writeCharacterReference(buff, pos, cp);
+            }
+            else if (!_utf8) {
+                buff[pos++] = (byte) cp;
+            }
+            else if (cp < 0x800) {
+                buff[pos++] = (byte) (0xC0 | (cp >> 6));
+                buff[pos++] = (byte) (0x80 | (cp & 0x3F));
+            }
+            else if (cp < 0x10000) {
+                buff[pos++] = (byte) (0xE0 | (cp >> 12));
+                buff[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buff[pos++] = (byte) (0x80 | (cp & 0x3F));
+            }
+            else {
+                buff[pos++] = (byte) (0xF0 | (cp >> 18));
+                buff[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buff[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buff[pos++] = (byte) (0x80 | (cp & 0x3F));
+            }
         }
-        if (_bits == 8) {
-            return ((int) c > 255);
+        _pos = pos;
+    }
+
+    /**
+     * Writes <tt>&amp;#xHEX;</tt> into the buffer.
+     *
+     * @return The new position.
+     */
+    private static int _writeCharacterReference(final byte[] buff, int pos, final int cp) {
+        buff[pos++] = '&';
+        buff[pos++] = '#';
+        buff[pos++] = 'x';
+        int shift = 20;
+        while (shift > 0 && (cp >> shift) == 0) {
+            shift -= 4;
         }
-        if (_bits == 7) {
-            return ((int) c > 127);
+        for (; shift >= 0; shift -= 4) {
+            buff[pos++] = _HEX[(cp >> shift) & 0xF];
         }
-        else {
-            return _isHighSurrogate(c);
+        buff[pos++] = ';';
+        return pos;
+    }
+
+    private void _write(final byte b) throws IOException {
+        if (_pos == _buff.length) {
+            _flushBuffer();
         }
+        _buff[_pos++] = b;
     }
 
-    private static int _combineSurrogatePair(final char highSurrogate, final char lowSurrogate) {
-        int high = highSurrogate & 0x7FF;
-        int low  = lowSurrogate - 0xDC00;
-        int highShifted = high << 10;
-        int combined = highShifted | low; 
-        int codePoint = combined + 0x10000;
-        return codePoint;
+    private void _write(final char c) throws IOException {
+        _write((byte) c);
     }
 
-    private void _writeEscapedCharacters(final char[] ch, final int start, final int length,
-            final boolean attributeValue) throws IOException {
-        final int len = start + length;
-        for (int i=start; i < len; i++) {
-            switch (ch[i]) {
-            case '&':
-                _out.write("&amp;");
-                break;
-            case '<':
-                _out.write("&lt;");
-                break;
-            case '>':
-                _out.write("&gt;");
-                break;
-            case '\"':
-                if (attributeValue) {
-                    _out.write("&quot;");
-                }
-                else {
-                    _out.write('\"');
-                }
-                break;
-            default:
-                if (_shouldEscape(ch[i])) {
-                    char c = ch[i];
-                    int uc = c;
-                    if (_isHighSurrogate((char)c)) {
-                        i++;
-                        if (i < len) {
-                            char low = ch[i];
-                            if (!_isLowSurrogate(low)) {
-                                throw new IOException("Could not decode surrogate pair 0x" + Integer.toHexString(c) + " / 0x" + Integer.toHexString(low));
-                            }
-                            else {
-                                uc = _combineSurrogatePair((char)c, low);
-                            }
-                        }
-                        else {
-                            throw new IOException("Surrogate pair 0x" + Integer.toHexString(c) + " truncated");
-                        }
-                    }
-                    String s = "&#x" + Integer.toHexString(uc).toUpperCase() + ';';
-                    _out.write(s);
-                }
-                else {
-                    _out.write(ch[i]);
+    private void _write(final byte[] bytes) throws IOException {
+        if (_pos + bytes.length > _buff.length) {
+            _flushBuffer();
+            if (bytes.length > _buff.length) {
+                for (byte b: bytes) {
+                    _write(b);
                 }
+                return;
             }
         }
+        System.arraycopy(bytes, 0, _buff, _pos, bytes.length);
+        _pos += bytes.length;
+    }
+
+    private void _flushBuffer() throws IOException {
+        if (_pos == 0) {
+            return;
+        }
+        if (_transcoder != null) {
+            // The buffer is flushed at character boundaries only
+            _transcoder.write(new String(_buff, 0, _pos, _UTF_8));
+        }
+        else {
+            _out.write(_buff, 0, _pos);
+        }
+        _pos = 0;
     }
+
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.cxtm;
+
+import java.io.ByteArrayOutputStream;
+
+import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.voc.XSD;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link CXTMHandler}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestCXTMHandler extends TestCase {
+
+    private static final String _BASE = "http://www.semagia.com/map.xtm";
+
+    private ByteArrayOutputStream _out;
+    private CXTMHandler _handler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _out = new ByteArrayOutputStream();
+        _handler = new CXTMHandler(_out, _BASE);
+        // Force several sort runs
+        _handler.setMaxInMemory(2);
+        _handler.setThreads(2);
+    }
+
+    private String _result() throws Exception {
+        return _out.toString("UTF-8");
+    }
+
+    public void testMergeAndDuplicateRemoval() throws Exception {
+        _handler.startTopicMap();
+        _handler.startTopic(Ref.createSubjectIdentifier("http://www.example.org/a"));
+        _handler.startOccurrence();
+        _handler.startType();
+        _handler.topicRef(Ref.createItemIdentifier(_BASE + "#occ"));
+        _handler.endType();
+        _handler.value("value", XSD.STRING);
+        _handler.endOccurrence();
+        _handler.endTopic();
+        _handler.startTopic(Ref.createItemIdentifier(_BASE + "#b"));
+        _handler.subjectIdentifier("http://www.example.org/a");
+        _handler.startOccurrence();
+        _handler.startType();
+        _handler.topicRef(Ref.createItemIdentifier(_BASE + "#occ"));
+        _handler.endType();
+        _handler.value("value", XSD.STRING);
+        _handler.endOccurrence();
+        _handler.endTopic();
+        _handler.endTopicMap();
+        assertEquals("<topicMap>\n"
+                + "<topic number=\"1\">\n"
+                + "<itemIdentifiers>\n"
+                + "<locator>#occ</locator>\n"
+                + "</itemIdentifiers>\n"
+                + "</topic>\n"
+                + "<topic number=\"2\">\n"
+                + "<subjectIdentifiers>\n"
+                + "<locator>http://www.example.org/a</locator>\n"
+                + "</subjectIdentifiers>\n"
+                + "<itemIdentifiers>\n"
+                + "<locator>#b</locator>\n"
+                + "</itemIdentifiers>\n"
+                + "<occurrence number=\"1\">\n"
+                + "<value>value</value>\n"
+                + "<datatype>" + XSD.STRING + "</datatype>\n"
+                + "<type topicref=\"1\"></type>\n"
+                + "</occurrence>\n"
+                + "</topic>\n"
+                + "</topicMap>\n", _result());
+    }
+
+    public void testTypeInstance() throws Exception {
+        _handler.startTopicMap();
+        _handler.startTopic(Ref.createSubjectIdentifier("http://www.example.org/a"));
+        _handler.startIsa();
+        _handler.topicRef(Ref.createSubjectIdentifier("http://www.example.org/b"));
+        _handler.endIsa();
+        _handler.endTopic();
+        _handler.endTopicMap();
+        final String result = _result();
+        assertTrue(result.contains("<topic number=\"4\">\n"
+                + "<subjectIdentifiers>\n"
+                + "<locator>http://www.example.org/a</locator>\n"
+                + "</subjectIdentifiers>\n"
+                + "<rolePlayed ref=\"association.1.role.1\"></rolePlayed>\n"
+                + "</topic>\n"));
+        assertTrue(result.contains("<association number=\"1\">\n"
+                + "<type topicref=\"3\"></type>\n"
+                + "<role number=\"1\">\n"
+                + "<player topicref=\"4\"></player>\n"
+                + "<type topicref=\"1\"></type>\n"
+                + "</role>\n"
+                + "<role number=\"2\">\n"
+                + "<player topicref=\"5\"></player>\n"
+                + "<type topicref=\"2\"></type>\n"
+                + "</role>\n"
+                + "</association>\n"));
+    }
+
+    public void testEscaping() throws Exception {
+        _handler.startTopicMap();
+        _handler.startTopic(Ref.createSubjectIdentifier("http://www.example.org/a"));
+        _handler.startName();
+        _handler.value("<a & b>\r");
+        _handler.endName();
+        _handler.endTopic();
+        _handler.endTopicMap();
+        assertTrue(_result().contains("<value>&lt;a &amp; b&gt;&#xD;</value>\n"));
+    }
+
+    public void testLocatorNormalization() throws Exception {
+        _handler.startTopicMap();
+        _handler.startTopic(Ref.createItemIdentifier(_BASE + "#a"));
+        _handler.itemIdentifier("http://www.semagia.com/other.xtm#a");
+        _handler.itemIdentifier("http://www.semagia.com/map.xtm2#a");
+        _handler.itemIdentifier("http://www.example.org/map.xtm#a");
+        _handler.endTopic();
+        _handler.endTopicMap();
+        assertEquals("<topicMap>\n"
+                + "<topic number=\"1\">\n"
+                + "<itemIdentifiers>\n"
+                + "<locator>#a</locator>\n"
+                + "<locator>http://www.example.org/map.xtm#a</locator>\n"
+                + "<locator>map.xtm2#a</locator>\n"
+                + "<locator>other.xtm#a</locator>\n"
+                + "</itemIdentifiers>\n"
+                + "</topic>\n"
+                + "</topicMap>\n", _result());
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link AbstractIndexedHamsterMapHandler}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestAbstractIndexedHamsterMapHandler extends TestCase {
+
+    private static final String _BASE = "http://www.example.org/";
+
+    private static final class TopicCollector extends AbstractIndexedHamsterMapHandler {
+        final List<Integer> topics = new ArrayList<Integer>();
+        int identities;
+        int reifier;
+
+        @Override
+        protected IdentityIndex createIndex() {
+            // Forces spilling the identities to disk
+            return new IdentityIndex(new File(System.getProperty("java.io.tmpdir")), 2);
+        }
+
+        @Override
+        protected void handleIdentity(int topic, int type, String iri) throws MIOException {
+            identities++;
+        }
+
+        @Override
+        protected void handleTypeInstance(Integer instance, Integer type) throws MIOException {
+            topics.add(instance);
+        }
+
+        @Override
+        protected void handleTopicMapItemIdentifier(String iri) throws MIOException {
+            // noop.
+        }
+
+        @Override
+        protected void handleTopicMapReifier(Integer reifier) throws MIOException {
+            this.reifier = reifier.intValue();
+        }
+
+        @Override
+        protected void createAssociation(Integer type, Collection<Integer> scope, Integer reifier,
+                Collection<String> iids, Collection<IRole<Integer>> roles) throws MIOException {
+            // noop.
+        }
+
+        @Override
+        protected void createOccurrence(Integer parent, Integer type, String value, String datatype,
+                Collection<Integer> scope, Integer reifier, Collection<String> iids) throws MIOException {
+            // noop.
+        }
+
+        @Override
+        protected void createName(Integer parent, Integer type, String value, Collection<Integer> scope,
+                Integer reifier, Collection<String> iids, Collection<IVariant<Integer>> variants) throws MIOException {
+            // noop.
+        }
+
+        int find(final int topic) {
+            return findTopic(topic);
+        }
+
+        int count() {
+            return getTopicCount();
+        }
+    }
+
+    private static void _topic(final TopicCollector handler, final IRef identity, final String sid) throws Exception {
+        handler.startTopic(identity);
+        if (sid != null) {
+            handler.subjectIdentifier(sid);
+        }
+        handler.startIsa();
+        handler.topicRef(Ref.createSubjectIdentifier(_BASE + "type"));
+        handler.endIsa();
+        handler.endTopic();
+    }
+
+    public void testMerge() throws Exception {
+        final TopicCollector handler = new TopicCollector();
+        handler.startTopicMap();
+        for (int i=0; i<100; i++) {
+            _topic(handler, Ref.createSubjectIdentifier(_BASE + i), null);
+        }
+        // Merges topic 0 and topic 99
+        _topic(handler, Ref.createItemIdentifier(_BASE + "x"), _BASE + "99");
+        _topic(handler, Ref.createSubjectIdentifier(_BASE + "0"), _BASE + "x");
+        handler.startReifier();
+        handler.topicRef(Ref.createSubjectIdentifier(_BASE + "99"));
+        handler.endReifier();
+        handler.endTopicMap();
+        // 100 topics, the type and the topic with the item identifier
+        assertEquals(102, handler.count());
+        final int first = handler.find(handler.topics.get(0).intValue());
+        assertEquals(first, handler.find(handler.topics.get(99).intValue()));
+        assertEquals(first, handler.find(handler.topics.get(100).intValue()));
+        assertEquals(first, handler.find(handler.reifier));
+        assertTrue(first != handler.find(handler.topics.get(1).intValue()));
+        // 100 subject identifiers, the type, the item identifier and the added subject identifier
+        assertEquals(103, handler.identities);
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.io.StringReader;
+
+import com.semagia.mio.ICharSequenceMapHandler;
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.MIOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link CharSequenceMapHandlerAdapter}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestCharSequenceMapHandlerAdapter extends TestCase {
+
+    private static final class StringHandler extends DefaultMapHandler {
+        String value;
+        String datatype;
+
+        @Override
+        public void value(String value) throws MIOException {
+            this.value = value;
+        }
+
+        @Override
+        public void value(String value, String datatype) throws MIOException {
+            this.value = value;
+            this.datatype = datatype;
+        }
+    }
+
+    public void testConversion() throws Exception {
+        final StringHandler handler = new StringHandler();
+        final ICharSequenceMapHandler adapter = CharSequenceMapHandlerAdapter.create(handler);
+        final StringBuilder buffer = new StringBuilder("name");
+        adapter.valueChars(buffer);
+        buffer.setLength(0);
+        assertEquals("name", handler.value);
+        adapter.valueChars(new StringBuilder("occ"), "http://www.example.org/dt");
+        assertEquals("occ", handler.value);
+        assertEquals("http://www.example.org/dt", handler.datatype);
+        adapter.valueReader(new StringReader("<a/>"), "http://www.example.org/xml");
+        assertEquals("<a/>", handler.value);
+        assertEquals("http://www.example.org/xml", handler.datatype);
+    }
+
+    public void testCreateReturnsSameInstance() {
+        final ICharSequenceMapHandler handler = new DelegatingMapHandler(new DefaultMapHandler());
+        assertSame(handler, CharSequenceMapHandlerAdapter.create(handler));
+    }
+
+    public void testOverridingSubclass() throws Exception {
+        final StringHandler handler = new StringHandler();
+        final DelegatingMapHandler upperCase = new DelegatingMapHandler(handler) {
+            @Override
+            public void value(final String value) throws MIOException {
+                super.value(value.toUpperCase());
+            }
+            @Override
+            public void value(final String value, final String datatype) throws MIOException {
+                super.value(value.toUpperCase(), datatype);
+            }
+        };
+        // Parsers report the values to the SimpleMapHandler which wraps the handler
+        final SimpleMapHandler simpleHandler = SimpleMapHandler.create(upperCase);
+        simpleHandler.valueChars(new StringBuilder("hello"));
+        assertEquals("HELLO", handler.value);
+        upperCase.valueChars(new StringBuilder("occ"), "http://www.example.org/dt");
+        assertEquals("OCC", handler.value);
+        assertEquals("http://www.example.org/dt", handler.datatype);
+        simpleHandler.valueReader(new StringReader("<a/>"), "http://www.example.org/xml");
+        assertEquals("<A/>", handler.value);
+        assertEquals("http://www.example.org/xml", handler.datatype);
+    }
+
+    public void testIsCharSequenceMapHandler() {
+        final IMapHandler handler = new StringHandler();
+        assertFalse(CharSequenceMapHandlerAdapter.isCharSequenceMapHandler(handler));
+        // Delegating handlers convert the values for the handler at the end of the chain
+        assertFalse(CharSequenceMapHandlerAdapter.isCharSequenceMapHandler(SimpleMapHandler.create(handler)));
+        assertFalse(CharSequenceMapHandlerAdapter.isCharSequenceMapHandler(
+                SimpleMapHandler.create(FilteringMapHandler.create(handler, new ConstructFilter()))));
+        final IMapHandler charHandler = new DelegatingMapHandler(handler) {
+            @Override
+            public void valueChars(final CharSequence value) throws MIOException {
+                // noop.
+            }
+        };
+        assertTrue(CharSequenceMapHandlerAdapter.isCharSequenceMapHandler(charHandler));
+        assertTrue(CharSequenceMapHandlerAdapter.isCharSequenceMapHandler(SimpleMapHandler.create(charHandler)));
+    }
+
+}
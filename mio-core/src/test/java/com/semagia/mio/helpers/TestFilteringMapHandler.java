@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link FilteringMapHandler}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestFilteringMapHandler extends TestCase {
+
+    private static final IRef _TOPIC = Ref.createSubjectIdentifier("http://www.example.org/topic");
+    private static final IRef _DESCRIPTION = Ref.createSubjectIdentifier("http://www.example.org/description");
+    private static final IRef _HOMEPAGE = Ref.createSubjectIdentifier("http://www.example.org/homepage");
+
+    private static final class ValueCollector extends DefaultMapHandler {
+        final List<String> values = new ArrayList<String>();
+        int depth;
+
+        @Override
+        public void startTopic(IRef identity) throws MIOException {
+            depth++;
+        }
+
+        @Override
+        public void endTopic() throws MIOException {
+            depth--;
+        }
+
+        @Override
+        public void value(String value) throws MIOException {
+            values.add(value);
+        }
+
+        @Override
+        public void value(String value, String datatype) throws MIOException {
+            values.add(value);
+        }
+    }
+
+    private void _occurrence(final SimpleMapHandler handler, final IRef type, final String value) throws MIOException {
+        handler.startOccurrence(type);
+        handler.value(value, "http://www.w3.org/2001/XMLSchema#string");
+        handler.endOccurrence();
+    }
+
+    public void testExcludeByKind() throws Exception {
+        final ValueCollector collector = new ValueCollector();
+        final FilteringMapHandler filter = FilteringMapHandler.create(collector, new ConstructFilter().exclude(ConstructFilter.VARIANT));
+        final SimpleMapHandler handler = SimpleMapHandler.create(filter);
+        handler.startTopicMap();
+        handler.startTopic(_TOPIC);
+        handler.startName();
+        handler.value("name");
+        handler.startVariant();
+        assertTrue(filter.isSkipping());
+        handler.value("variant");
+        handler.endVariant();
+        assertFalse(filter.isSkipping());
+        handler.endName();
+        handler.endTopic();
+        handler.endTopicMap();
+        assertEquals(1, collector.values.size());
+        assertEquals("name", collector.values.get(0));
+        assertEquals(0, collector.depth);
+    }
+
+    public void testExcludeByType() throws Exception {
+        final ValueCollector collector = new ValueCollector();
+        final FilteringMapHandler filter = FilteringMapHandler.create(collector, new ConstructFilter().exclude(ConstructFilter.OCCURRENCE, _DESCRIPTION));
+        final SimpleMapHandler handler = SimpleMapHandler.create(filter);
+        handler.startTopicMap();
+        handler.startTopic(_TOPIC);
+        _occurrence(handler, _DESCRIPTION, "description");
+        _occurrence(handler, _HOMEPAGE, "homepage");
+        handler.startOccurrence();
+        handler.value("late type", "http://www.w3.org/2001/XMLSchema#string");
+        handler.type(_DESCRIPTION);
+        handler.endOccurrence();
+        handler.endTopic();
+        handler.endTopicMap();
+        assertEquals(1, collector.values.size());
+        assertEquals("homepage", collector.values.get(0));
+    }
+
+    public void testCreateReturnsSameInstance() {
+        final ConstructFilter constructFilter = new ConstructFilter().exclude(ConstructFilter.NAME);
+        final FilteringMapHandler filter = FilteringMapHandler.create(new DefaultMapHandler(), constructFilter);
+        assertSame(filter, FilteringMapHandler.create(filter, constructFilter));
+        assertNotSame(filter, FilteringMapHandler.create(filter, new ConstructFilter()));
+    }
+
+}
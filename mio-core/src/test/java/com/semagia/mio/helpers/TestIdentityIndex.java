@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.io.File;
+
+import com.semagia.mio.IRef;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link IdentityIndex}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestIdentityIndex extends TestCase {
+
+    private IdentityIndex _index;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _index = new IdentityIndex(new File(System.getProperty("java.io.tmpdir")), 10);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        _index.close();
+    }
+
+    public void testInMemory() throws Exception {
+        final IRef sid = Ref.createSubjectIdentifier("http://www.semagia.com/");
+        final IRef slo = Ref.createSubjectLocator("http://www.semagia.com/");
+        assertEquals(IdentityIndex.NOT_FOUND, _index.get(sid));
+        _index.put(sid, 1);
+        assertEquals(1, _index.get(sid));
+        assertEquals(IdentityIndex.NOT_FOUND, _index.get(slo));
+        _index.put(slo, 2);
+        assertEquals(2, _index.get(slo));
+        assertEquals(0, _index.getSegmentCount());
+    }
+
+    public void testSpill() throws Exception {
+        for (int i=0; i<1000; i++) {
+            _index.put(IRef.SUBJECT_IDENTIFIER, "http://www.semagia.com/" + i, i);
+        }
+        assertTrue(_index.getSegmentCount() > 0);
+        for (int i=0; i<1000; i++) {
+            assertEquals(i, _index.get(IRef.SUBJECT_IDENTIFIER, "http://www.semagia.com/" + i));
+            assertEquals(IdentityIndex.NOT_FOUND, _index.get(IRef.ITEM_IDENTIFIER, "http://www.semagia.com/" + i));
+        }
+        assertEquals(IdentityIndex.NOT_FOUND, _index.get(IRef.SUBJECT_IDENTIFIER, "http://www.semagia.com/x"));
+    }
+
+    public void testReplace() throws Exception {
+        for (int i=0; i<1000; i++) {
+            _index.put(IRef.ITEM_IDENTIFIER, "http://www.semagia.com/" + i, i);
+        }
+        for (int i=0; i<1000; i+=2) {
+            _index.put(IRef.ITEM_IDENTIFIER, "http://www.semagia.com/" + i, i + 1);
+        }
+        for (int i=0; i<1000; i++) {
+            final long expected = i % 2 == 0 ? i + 1 : i;
+            assertEquals(expected, _index.get(IRef.ITEM_IDENTIFIER, "http://www.semagia.com/" + i));
+        }
+    }
+
+    public void testTiers() throws Exception {
+        final IdentityIndex index = new IdentityIndex(new File(System.getProperty("java.io.tmpdir")), 10, 256);
+        try {
+            for (int i=0; i<5000; i++) {
+                index.put(IRef.SUBJECT_LOCATOR, "http://www.semagia.com/" + i, i);
+            }
+            for (int i=0; i<5000; i+=3) {
+                index.put(IRef.SUBJECT_LOCATOR, "http://www.semagia.com/" + i, i + 1);
+            }
+            assertTrue(index.getTierCount() > 2);
+            for (int i=0; i<5000; i++) {
+                final long expected = i % 3 == 0 ? i + 1 : i;
+                assertEquals(expected, index.get(IRef.SUBJECT_LOCATOR, "http://www.semagia.com/" + i));
+            }
+            assertEquals(IdentityIndex.NOT_FOUND, index.get(IRef.SUBJECT_LOCATOR, "http://www.semagia.com/"));
+            assertEquals(IdentityIndex.NOT_FOUND, index.get(IRef.SUBJECT_LOCATOR, "http://www.semagia.com/99999"));
+        }
+        finally {
+            index.close();
+        }
+    }
+
+    public void testBloomFilterIndexRange() throws Exception {
+        // More bits than the int range
+        final long size = 1L << 34;
+        final int[] hashes = {0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 0x9747b28c};
+        long max = 0;
+        for (int h1: hashes) {
+            for (int h2: hashes) {
+                for (int i=0; i<7; i++) {
+                    final long idx = BloomFilter.index(h1, h2, i, size);
+                    assertTrue(idx >= 0);
+                    assertTrue(idx < size);
+                    max = Math.max(max, idx);
+                }
+            }
+        }
+        assertTrue(max > Integer.MAX_VALUE);
+    }
+
+}
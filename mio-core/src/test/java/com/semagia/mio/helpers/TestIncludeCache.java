@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.semagia.mio.IRIContext;
+import com.semagia.mio.IResourceResolver;
+import com.semagia.mio.Source;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link IncludeCache}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestIncludeCache extends TestCase {
+
+    private static final String _IRI = "http://www.example.org/onto.ctm";
+
+    private static final IResourceResolver _NESTED = new IResourceResolver() {
+        @Override
+        public Source resolve(final String iri) throws IOException {
+            return new Source(new ByteArrayInputStream("nested".getBytes("utf-8")), iri);
+        }
+    };
+
+    private static IncludeCache.Entry _entry(final String fingerprint) throws Exception {
+        final RecordingMapHandler events = new RecordingMapHandler();
+        events.startTopic(Ref.createSubjectIdentifier("http://www.example.org/a"));
+        events.endTopic();
+        final String nested = IncludeCache.fingerprint("nested".getBytes("utf-8"));
+        return new IncludeCache.Entry(fingerprint, events, 
+                Collections.singletonMap("http://www.example.org/nested.ctm", nested), 
+                Arrays.asList("http://www.example.org/master.ctm"), null);
+    }
+
+    public void testFingerprint() throws Exception {
+        final String fp = IncludeCache.fingerprint("abc".getBytes("utf-8"));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", fp);
+        assertFalse(fp.equals(IncludeCache.fingerprint("abd".getBytes("utf-8"))));
+    }
+
+    public void testGet() throws Exception {
+        final IncludeCache cache = new IncludeCache();
+        assertNull(cache.get(_IRI, "x", _NESTED));
+        final IncludeCache.Entry entry = _entry("x");
+        cache.put(_IRI, entry);
+        assertEquals(1, cache.size());
+        assertSame(entry, cache.get(_IRI, "x", _NESTED));
+        assertEquals(Collections.singleton("http://www.example.org/nested.ctm"), entry.getIRIs());
+        assertEquals(2, entry.getEvents().size());
+    }
+
+    public void testOutdated() throws Exception {
+        final IncludeCache cache = new IncludeCache();
+        cache.put(_IRI, _entry("x"));
+        assertNull(cache.get(_IRI, "y", _NESTED));
+        cache.put(_IRI, _entry("y"));
+        assertNotNull(cache.get(_IRI, "y", _NESTED));
+        assertEquals(1, cache.size());
+    }
+
+    public void testOutdatedNestedSource() throws Exception {
+        final String nested = "http://www.example.org/nested.ctm";
+        final ResourceCatalog catalog = new ResourceCatalog();
+        catalog.addBytes(nested, "nested".getBytes("utf-8"));
+        final IncludeCache cache = new IncludeCache();
+        cache.put(_IRI, _entry("x"));
+        assertNotNull(cache.get(_IRI, "x", catalog));
+        assertEquals(IncludeCache.fingerprints(Collections.singleton(nested), catalog), 
+                cache.get(_IRI, "x", catalog).getFingerprints());
+        catalog.addBytes(nested, "changed".getBytes("utf-8"));
+        assertNull(cache.get(_IRI, "x", catalog));
+        // Outdated entries are removed
+        assertEquals(0, cache.size());
+    }
+
+    public void testFingerprintsCharacterStream() throws Exception {
+        final IResourceResolver resolver = new IResourceResolver() {
+            @Override
+            public Source resolve(final String iri) {
+                return new Source(new StringReader("abc"), iri);
+            }
+        };
+        assertNull(IncludeCache.fingerprints(Collections.singleton(_IRI), resolver));
+    }
+
+    public void testRemove() throws Exception {
+        final IncludeCache cache = new IncludeCache();
+        cache.put(_IRI, _entry("x"));
+        cache.remove(_IRI);
+        assertNull(cache.get(_IRI, "x", _NESTED));
+        cache.put(_IRI, _entry("x"));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    public void testIsApplicable() throws Exception {
+        final IncludeCache.Entry entry = _entry("x");
+        final IRIContext ctx = new IRIContext();
+        assertFalse(entry.isApplicable(ctx));
+        ctx.addIRI("http://www.example.org/master.ctm");
+        assertTrue(entry.isApplicable(ctx));
+        ctx.addIRI("http://www.example.org/nested.ctm");
+        assertFalse(entry.isApplicable(ctx));
+    }
+
+    public void testIRIContextParent() throws Exception {
+        final IRIContext parent = new IRIContext();
+        parent.addIRI("http://www.example.org/master.ctm");
+        final IRIContext child = new IRIContext(parent);
+        assertTrue(child.containsIRI("http://www.example.org/master.ctm"));
+        assertFalse(child.containsIRI("http://www.example.org/nested.ctm"));
+        child.addIRI("http://www.example.org/nested.ctm");
+        assertTrue(parent.containsIRI("http://www.example.org/nested.ctm"));
+        assertEquals(Collections.singleton("http://www.example.org/nested.ctm"), child.getIRIs());
+        assertEquals(Collections.singleton("http://www.example.org/master.ctm"), child.getInheritedIRIs());
+        assertTrue(parent.getInheritedIRIs().isEmpty());
+    }
+
+    public void testLoad() throws Exception {
+        final ResourceCatalog catalog = new ResourceCatalog();
+        catalog.addBytes(_IRI, "abc".getBytes("utf-8"));
+        assertEquals("abc", new String(IncludeCache.load(_IRI, catalog), "utf-8"));
+    }
+
+    public void testLoadCharacterStream() throws Exception {
+        final IResourceResolver resolver = new IResourceResolver() {
+            @Override
+            public Source resolve(final String iri) {
+                return new Source(new StringReader("abc"), iri);
+            }
+        };
+        assertNull(IncludeCache.load(_IRI, resolver));
+    }
+
+}
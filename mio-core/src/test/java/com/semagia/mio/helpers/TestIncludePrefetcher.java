@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.semagia.mio.MIOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link IncludePrefetcher}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestIncludePrefetcher extends TestCase {
+
+    private static final String _BASE = "http://www.example.org/";
+
+    private ResourceCatalog _catalog;
+    private AtomicInteger _parsed;
+    private IncludePrefetcher.IParser _parser;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _catalog = new ResourceCatalog();
+        for (int i=0; i<10; i++) {
+            _catalog.addBytes(_BASE + i, String.valueOf(i).getBytes("utf-8"));
+        }
+        _parsed = new AtomicInteger();
+        _parser = new IncludePrefetcher.IParser() {
+            @Override
+            public IncludeCache.Entry parse(String iri, byte[] data, String fingerprint) throws MIOException {
+                if (iri.endsWith("error")) {
+                    throw new MIOException("Error in " + iri);
+                }
+                _parsed.incrementAndGet();
+                final RecordingMapHandler events = new RecordingMapHandler();
+                events.startTopic(Ref.createSubjectIdentifier(iri));
+                events.endTopic();
+                return new IncludeCache.Entry(fingerprint, events, null, null, null);
+            }
+        };
+    }
+
+    public void testTake() throws Exception {
+        final IncludePrefetcher prefetcher = new IncludePrefetcher(2, _catalog, null);
+        try {
+            for (int i=0; i<10; i++) {
+                prefetcher.prefetch("k" + i, _BASE + i, _parser);
+            }
+            for (int i=0; i<10; i++) {
+                final IncludePrefetcher.Result result = prefetcher.take("k" + i);
+                assertEquals(String.valueOf(i), new String(result.getData(), "utf-8"));
+                assertEquals(IncludeCache.fingerprint(result.getData()), result.getFingerprint());
+                assertEquals(2, result.getEntry().getEvents().size());
+            }
+        }
+        finally {
+            prefetcher.close();
+        }
+    }
+
+    public void testTakeUnknown() throws Exception {
+        final IncludePrefetcher prefetcher = new IncludePrefetcher(1, _catalog, null);
+        try {
+            prefetcher.prefetch("k0", _BASE + 0, _parser);
+            assertNull(prefetcher.take("k1"));
+            assertNotNull(prefetcher.take("k0"));
+            // Taken results are removed
+            assertNull(prefetcher.take("k0"));
+        }
+        finally {
+            prefetcher.close();
+        }
+    }
+
+    public void testSkip() throws Exception {
+        final IncludePrefetcher prefetcher = new IncludePrefetcher(1, _catalog, null);
+        try {
+            for (int i=0; i<5; i++) {
+                prefetcher.prefetch("k" + i, _BASE + i, _parser);
+            }
+            assertNotNull(prefetcher.take("k3"));
+            // Skipped sources are discarded
+            assertNull(prefetcher.take("k1"));
+            assertNotNull(prefetcher.take("k4"));
+        }
+        finally {
+            prefetcher.close();
+        }
+    }
+
+    public void testCache() throws Exception {
+        final IncludeCache cache = new IncludeCache();
+        for (int round=0; round<2; round++) {
+            final IncludePrefetcher prefetcher = new IncludePrefetcher(2, _catalog, cache);
+            try {
+                for (int i=0; i<3; i++) {
+                    prefetcher.prefetch("k" + i, _BASE + i, _parser);
+                }
+                for (int i=0; i<3; i++) {
+                    assertNotNull(prefetcher.take("k" + i).getEntry());
+                }
+            }
+            finally {
+                prefetcher.close();
+            }
+        }
+        assertEquals(3, _parsed.get());
+        assertEquals(3, cache.size());
+    }
+
+    public void testError() throws Exception {
+        _catalog.addBytes(_BASE + "error", new byte[0]);
+        final IncludePrefetcher prefetcher = new IncludePrefetcher(2, _catalog, null);
+        try {
+            prefetcher.prefetch("error", _BASE + "error", _parser);
+            prefetcher.take("error");
+            fail("Expected an exception");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+        finally {
+            prefetcher.close();
+        }
+    }
+
+    public void testIllegalParallelism() {
+        try {
+            new IncludePrefetcher(0, _catalog, null);
+            fail("Expected an exception");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    public void testEntryWithoutIRIs() throws Exception {
+        final IncludePrefetcher prefetcher = new IncludePrefetcher(1, _catalog, null);
+        try {
+            prefetcher.prefetch("k0", _BASE + 0, _parser);
+            assertEquals(Collections.emptySet(), prefetcher.take("k0").getEntry().getIRIs());
+        }
+        finally {
+            prefetcher.close();
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link PartitioningMapHandler}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestPartitioningMapHandler extends TestCase {
+
+    private static final int _PARTITIONS = 4;
+
+    private static class CollectingHandler extends DefaultMapHandler {
+        final List<String> topics = new ArrayList<String>();
+        final List<String> itemIdentifiers = new ArrayList<String>();
+        int associations;
+        int reifiers;
+        int topicMaps;
+        int depth;
+
+        @Override
+        public void startTopicMap() throws MIOException {
+            topicMaps++;
+        }
+
+        @Override
+        public void startTopic(final IRef identity) throws MIOException {
+            if (depth++ == 0) {
+                topics.add(identity.getIRI());
+            }
+        }
+
+        @Override
+        public void endTopic() throws MIOException {
+            depth--;
+        }
+
+        @Override
+        public void startAssociation() throws MIOException {
+            associations++;
+        }
+
+        @Override
+        public void itemIdentifier(final String iid) throws MIOException {
+            itemIdentifiers.add(iid);
+        }
+
+        @Override
+        public void startReifier() throws MIOException {
+            reifiers++;
+        }
+    }
+
+    private CollectingHandler[] _collectors;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _collectors = new CollectingHandler[_PARTITIONS];
+        for (int i=0; i<_PARTITIONS; i++) {
+            _collectors[i] = new CollectingHandler();
+        }
+    }
+
+    private void _feed(final IMapHandler handler) throws Exception {
+        handler.startTopicMap();
+        for (int i=0; i<100; i++) {
+            final IRef ref = Ref.createSubjectIdentifier("http://www.example.org/t" + i);
+            handler.startTopic(ref);
+            handler.startIsa();
+            handler.startTopic(Ref.createSubjectIdentifier("http://www.example.org/type"));
+            handler.endTopic();
+            handler.endIsa();
+            handler.endTopic();
+            handler.startAssociation();
+            handler.startType();
+            handler.topicRef(Ref.createSubjectIdentifier("http://www.example.org/assoc" + (i % 3)));
+            handler.endType();
+            handler.startRole();
+            handler.startType();
+            handler.topicRef(Ref.createSubjectIdentifier("http://www.example.org/role"));
+            handler.endType();
+            handler.startPlayer();
+            handler.topicRef(ref);
+            handler.endPlayer();
+            handler.endRole();
+            handler.endAssociation();
+        }
+        handler.endTopicMap();
+    }
+
+    private void _assertTopicsPartitioned() {
+        int total = 0;
+        for (int i=0; i<_PARTITIONS; i++) {
+            assertEquals(1, _collectors[i].topicMaps);
+            for (String iri: _collectors[i].topics) {
+                assertEquals(i, PartitioningMapHandler.partition(Ref.createSubjectIdentifier(iri), _PARTITIONS));
+            }
+            total += _collectors[i].topics.size();
+        }
+        assertEquals(100, total);
+    }
+
+    public void testRouteByFirstPlayer() throws Exception {
+        final PartitioningMapHandler handler = new PartitioningMapHandler(_collectors, PartitioningMapHandler.ROUTE_BY_FIRST_PLAYER);
+        handler.setBatchSize(7);
+        _feed(handler);
+        _assertTopicsPartitioned();
+        for (int i=0; i<_PARTITIONS; i++) {
+            // Each association is routed to the partition of its player
+            assertEquals(_collectors[i].topics.size(), _collectors[i].associations);
+        }
+    }
+
+    public void testRouteByTypeThreaded() throws Exception {
+        final PartitioningMapHandler handler = new PartitioningMapHandler(_collectors, PartitioningMapHandler.ROUTE_BY_TYPE, true);
+        handler.setBatchSize(5);
+        _feed(handler);
+        _assertTopicsPartitioned();
+        final int[] expected = new int[_PARTITIONS];
+        for (int i=0; i<100; i++) {
+            expected[PartitioningMapHandler.partition(Ref.createSubjectIdentifier("http://www.example.org/assoc" + (i % 3)), _PARTITIONS)]++;
+        }
+        for (int i=0; i<_PARTITIONS; i++) {
+            assertEquals(expected[i], _collectors[i].associations);
+        }
+    }
+
+    public void testTopicMapEventsAfterFlushThreaded() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(3);
+        final CollectingHandler collector = new CollectingHandler() {
+            @Override
+            public void endTopic() throws MIOException {
+                super.endTopic();
+                delivered.countDown();
+            }
+        };
+        final PartitioningMapHandler handler = new PartitioningMapHandler(new IMapHandler[] {collector}, PartitioningMapHandler.ROUTE_BY_TYPE, true);
+        handler.setBatchSize(1);
+        handler.startTopicMap();
+        for (int i=0; i<3; i++) {
+            handler.startTopic(Ref.createSubjectIdentifier("http://www.example.org/t" + i));
+            handler.endTopic();
+        }
+        // Let the last batch be replayed before the topic map events arrive
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        handler.itemIdentifier("http://www.example.org/map");
+        handler.startReifier();
+        handler.topicRef(Ref.createSubjectIdentifier("http://www.example.org/t0"));
+        handler.endReifier();
+        handler.endTopicMap();
+        assertEquals(3, collector.topics.size());
+        assertEquals(1, collector.itemIdentifiers.size());
+        assertEquals("http://www.example.org/map", collector.itemIdentifiers.get(0));
+        assertEquals(1, collector.reifiers);
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link ReplayQueue}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestReplayQueue extends TestCase {
+
+    private static class CollectingHandler extends DefaultMapHandler {
+        final List<String> topics = new ArrayList<String>();
+
+        @Override
+        public void startTopic(final IRef identity) throws MIOException {
+            topics.add(identity.getIRI());
+        }
+    }
+
+    private static Callable<RecordingMapHandler> _task(final String iri, final long delay) {
+        return new Callable<RecordingMapHandler>() {
+            @Override
+            public RecordingMapHandler call() throws Exception {
+                Thread.sleep(delay);
+                final RecordingMapHandler handler = new RecordingMapHandler();
+                handler.startTopic(Ref.createSubjectIdentifier(iri));
+                handler.endTopic();
+                return handler;
+            }
+        };
+    }
+
+    private static Callable<RecordingMapHandler> _failingTask(final Exception ex) {
+        return new Callable<RecordingMapHandler>() {
+            @Override
+            public RecordingMapHandler call() throws Exception {
+                throw ex;
+            }
+        };
+    }
+
+    public void testOrder() throws Exception {
+        final CollectingHandler handler = new CollectingHandler();
+        final ReplayQueue queue = new ReplayQueue(handler, 4);
+        final List<String> expected = new ArrayList<String>();
+        try {
+            for (int i = 0; i < 20; i++) {
+                final String iri = "http://www.example.org/" + i;
+                expected.add(iri);
+                // Later tasks finish first
+                queue.submit(_task(iri, 20 - i));
+            }
+            queue.flush();
+        }
+        finally {
+            queue.close();
+        }
+        assertEquals(expected, handler.topics);
+    }
+
+    public void testMaxPending() throws Exception {
+        final CollectingHandler handler = new CollectingHandler();
+        final ReplayQueue queue = new ReplayQueue(handler, 1);
+        try {
+            queue.submit(_task("http://www.example.org/a", 0));
+            queue.submit(_task("http://www.example.org/b", 0));
+            assertTrue(handler.topics.isEmpty());
+            queue.submit(_task("http://www.example.org/c", 0));
+            assertEquals(1, handler.topics.size());
+            assertEquals("http://www.example.org/a", handler.topics.get(0));
+            queue.flush();
+            assertEquals(3, handler.topics.size());
+        }
+        finally {
+            queue.close();
+        }
+    }
+
+    public void testMIOException() throws Exception {
+        final MIOException ex = new MIOException("error");
+        final ReplayQueue queue = new ReplayQueue(new CollectingHandler(), 2);
+        try {
+            queue.submit(_failingTask(ex));
+            queue.flush();
+            fail("Expected an exception");
+        }
+        catch (MIOException e) {
+            assertSame(ex, e);
+        }
+        finally {
+            queue.close();
+        }
+    }
+
+    public void testIOException() throws Exception {
+        final IOException ex = new IOException("error");
+        final ReplayQueue queue = new ReplayQueue(new CollectingHandler(), 2);
+        try {
+            queue.submit(_failingTask(ex));
+            queue.flush();
+            fail("Expected an exception");
+        }
+        catch (IOException e) {
+            assertSame(ex, e);
+        }
+        finally {
+            queue.close();
+        }
+    }
+
+    public void testOtherException() throws Exception {
+        final IllegalStateException ex = new IllegalStateException();
+        final ReplayQueue queue = new ReplayQueue(new CollectingHandler(), 2);
+        try {
+            queue.submit(_failingTask(ex));
+            queue.flush();
+            fail("Expected an exception");
+        }
+        catch (MIOException e) {
+            assertSame(ex, e.getCause());
+        }
+        finally {
+            queue.close();
+        }
+    }
+
+}
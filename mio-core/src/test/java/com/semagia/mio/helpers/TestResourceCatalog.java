@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.semagia.mio.Source;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link ResourceCatalog}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestResourceCatalog extends TestCase {
+
+    private static final String _IRI = "http://www.example.org/onto/types.ctm";
+
+    private File _dir;
+    private File _file;
+
+    /* (non-Javadoc)
+     * @see junit.framework.TestCase#setUp()
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _file = File.createTempFile("mio-catalog", ".ctm");
+        _dir = _file.getParentFile();
+        final OutputStream out = new FileOutputStream(_file);
+        out.write("file".getBytes("utf-8"));
+        out.close();
+    }
+
+    /* (non-Javadoc)
+     * @see junit.framework.TestCase#tearDown()
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        _file.delete();
+        super.tearDown();
+    }
+
+    private static String _read(final Source src) throws Exception {
+        final InputStream in = src.getByteStream();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        in.close();
+        return out.toString("utf-8");
+    }
+
+    public void testUnknownIRI() throws Exception {
+        final ResourceCatalog catalog = new ResourceCatalog();
+        assertNull(catalog.resolve(_IRI));
+    }
+
+    public void testBytes() throws Exception {
+        final ResourceCatalog catalog = new ResourceCatalog();
+        catalog.addBytes(_IRI, "bytes".getBytes("utf-8"));
+        for (int i=0; i<2; i++) {
+            final Source src = catalog.resolve(_IRI);
+            assertEquals(_IRI, src.getBaseIRI());
+            assertEquals("bytes", _read(src));
+        }
+        catalog.addBytes(_IRI, new ByteArrayInputStream("stream".getBytes("utf-8")));
+        assertEquals("stream", _read(catalog.resolve(_IRI)));
+        catalog.remove(_IRI);
+        assertNull(catalog.resolve(_IRI));
+    }
+
+    public void testFile() throws Exception {
+        final ResourceCatalog catalog = new ResourceCatalog();
+        catalog.addFile(_IRI, _file);
+        final Source src = catalog.resolve(_IRI);
+        assertEquals(_IRI, src.getBaseIRI());
+        assertEquals("file", _read(src));
+    }
+
+    public void testDirectory() throws Exception {
+        final ResourceCatalog catalog = new ResourceCatalog();
+        catalog.addDirectory("http://www.example.org/", new File("/nonexistent"));
+        catalog.addDirectory("http://www.example.org/onto/", _dir);
+        assertEquals("file", _read(catalog.resolve("http://www.example.org/onto/" + _file.getName())));
+        assertNull(catalog.resolve("http://www.example.org/onto/../" + _file.getName()));
+        assertNull(catalog.resolve("http://www.example.com/onto/" + _file.getName()));
+    }
+
+    public void testExactIRIWins() throws Exception {
+        final ResourceCatalog catalog = new ResourceCatalog();
+        catalog.addDirectory("http://www.example.org/onto/", new File("/nonexistent"));
+        catalog.addBytes(_IRI, "bytes".getBytes("utf-8"));
+        assertEquals("bytes", _read(catalog.resolve(_IRI)));
+    }
+
+}
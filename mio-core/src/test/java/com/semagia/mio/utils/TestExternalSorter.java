@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+
+import com.semagia.mio.utils.ExternalSorter.ICloseableIterator;
+import com.semagia.mio.utils.ExternalSorter.ICodec;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link ExternalSorter}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestExternalSorter extends TestCase {
+
+    /**
+     * Compares the values modulo 100, so many values are equal.
+     */
+    private static final Comparator<Integer> _COMPARATOR = new Comparator<Integer>() {
+        @Override
+        public int compare(final Integer a, final Integer b) {
+            return (a.intValue() % 100) - (b.intValue() % 100);
+        }
+    };
+
+    private static final ICodec<Integer> _CODEC = new ICodec<Integer>() {
+        @Override
+        public void write(final DataOutput out, final Integer obj) throws IOException {
+            out.writeInt(obj.intValue());
+        }
+
+        @Override
+        public Integer read(final DataInput in) throws IOException {
+            return Integer.valueOf(in.readInt());
+        }
+    };
+
+    private File _dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _dir = File.createTempFile("mio-sort-test", "");
+        _dir.delete();
+        _dir.mkdir();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file: _dir.listFiles()) {
+            file.delete();
+        }
+        _dir.delete();
+        super.tearDown();
+    }
+
+    private void _testSort(final int count, final int maxInMemory) throws Exception {
+        final ExternalSorter<Integer> sorter = new ExternalSorter<Integer>(_COMPARATOR, _CODEC, _dir, maxInMemory, null, 1);
+        for (int i=count-1; i>=0; i--) {
+            sorter.add(Integer.valueOf(i));
+        }
+        final ICloseableIterator<Integer> iter = sorter.sort();
+        int previous = -1;
+        int n = 0;
+        while (iter.hasNext()) {
+            final int value = iter.next().intValue();
+            if (previous != -1) {
+                final int cmp = (previous % 100) - (value % 100);
+                assertTrue(cmp < 0 || cmp == 0 && previous > value);
+            }
+            previous = value;
+            n++;
+        }
+        iter.close();
+        assertEquals(count, n);
+        assertEquals(0, _dir.listFiles().length);
+    }
+
+    public void testInMemory() throws Exception {
+        _testSort(1000, 5000);
+    }
+
+    public void testSingleMerge() throws Exception {
+        _testSort(1000, 100);
+    }
+
+    public void testMultiLevelMerge() throws Exception {
+        // 5000 runs need two levels of intermediate runs
+        _testSort(10000, 2);
+    }
+
+}
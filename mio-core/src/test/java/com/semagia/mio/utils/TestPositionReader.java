@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.utils;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link PositionReader}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestPositionReader extends TestCase {
+
+    private static void _readAll(final PositionReader reader) throws Exception {
+        final char[] buf = new char[1000];
+        while (reader.read(buf, 0, buf.length) != -1) {
+            // noop.
+        }
+    }
+
+    public void testPosition() throws Exception {
+        final String input = "ab\ncd\r\nef\rg\u2028h\u000C\ud83d\ude00i\r\n";
+        final PositionReader reader = new PositionReader(new StringReader(input));
+        _readAll(reader);
+        assertEquals(input.length(), reader.size());
+        assertEquals(0, reader.getLine(0));
+        assertEquals(0, reader.getColumn(0));
+        assertEquals(0, reader.getLine(2));
+        assertEquals(2, reader.getColumn(2));
+        assertEquals(1, reader.getLine(4));
+        assertEquals(1, reader.getColumn(4));
+        // \r\n is one line terminator
+        assertEquals(2, reader.getLine(7));
+        assertEquals(0, reader.getColumn(7));
+        assertEquals(3, reader.getLine(10));
+        assertEquals(4, reader.getLine(12));
+        assertEquals(0, reader.getColumn(12));
+        assertEquals(5, reader.getLine(14));
+        // Columns are counted in UTF-16 chars
+        assertEquals(2, reader.getColumn(16));
+    }
+
+    public void testCRLFTokenBoundary() throws Exception {
+        final PositionReader reader = new PositionReader(new StringReader("a\r\nb"));
+        _readAll(reader);
+        // JFlex counts the line terminator at the \n if a token starts with it
+        assertEquals(0, reader.getLine(2));
+        assertEquals(0, reader.getColumn(2));
+        assertEquals(1, reader.getLine(3));
+    }
+
+    public void testRelease() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        for (int i=0; i<100000; i++) {
+            sb.append(i).append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        final PositionReader reader = new PositionReader(new StringReader(sb.toString()));
+        final char[] buf = new char[1000];
+        int offset = 0;
+        int line = 0;
+        while (reader.read(buf, 0, buf.length) != -1) {
+            while (offset + 20 < reader.size()) {
+                assertEquals(line, reader.getLine(offset));
+                assertEquals(0, reader.getColumn(offset));
+                reader.release(offset);
+                offset += String.valueOf(line).length() + (line % 2 == 0 ? 2 : 1);
+                line++;
+            }
+        }
+        assertEquals(line, reader.getLine(offset));
+        try {
+            reader.getLine(0);
+            fail("Expected an exception for a released offset");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+    public void testIllegalOffset() throws Exception {
+        final PositionReader reader = new PositionReader(new StringReader("abc"));
+        reader.read();
+        try {
+            reader.getLine(2);
+            fail("Expected an exception for an offset which was not read");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+}
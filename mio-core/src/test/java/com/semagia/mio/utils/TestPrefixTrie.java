@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.utils;
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link PrefixTrie}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestPrefixTrie extends TestCase {
+
+    public void testLongestMatch() {
+        final PrefixTrie<String> trie = new PrefixTrie<String>();
+        trie.put("http://psi.example.org/", "ex");
+        trie.put("http://psi.example.org/person/", "person");
+        trie.put("http://www.example.org/", "www");
+        assertEquals(3, trie.size());
+        Map.Entry<String, String> match = trie.longestMatch("http://psi.example.org/person/lars");
+        assertEquals("http://psi.example.org/person/", match.getKey());
+        assertEquals("person", match.getValue());
+        match = trie.longestMatch("http://psi.example.org/person/lars", match.getKey().length() - 1);
+        assertEquals("ex", match.getValue());
+        assertEquals("ex", trie.longestMatch("http://psi.example.org/per").getValue());
+        assertNull(trie.longestMatch("http://psi.example.com/"));
+        assertNull(trie.longestMatch("http://psi.example.org/person/lars", 10));
+    }
+
+    public void testPutRemove() {
+        final PrefixTrie<String> trie = new PrefixTrie<String>();
+        trie.put("http://psi.example.org/", "ex");
+        trie.put("http://psi.example.org/", "ex2");
+        assertEquals(1, trie.size());
+        assertEquals("ex2", trie.get("http://psi.example.org/"));
+        assertNull(trie.get("http://psi.example.org"));
+        trie.remove("http://psi.example.org/");
+        assertEquals(0, trie.size());
+        assertNull(trie.get("http://psi.example.org/"));
+        assertNull(trie.longestMatch("http://psi.example.org/a"));
+    }
+
+}
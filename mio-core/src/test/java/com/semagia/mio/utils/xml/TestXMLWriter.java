@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.utils.xml;
+
+import java.io.ByteArrayOutputStream;
+
+import org.xml.sax.helpers.AttributesImpl;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link XMLWriter}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestXMLWriter extends TestCase {
+
+    private static final String _DATA = "a<b>&\"c\" \u00e4\u20ac\ud834\udd1e";
+
+    private static String _write(final String encoding) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final XMLWriter writer = new XMLWriter(out, encoding);
+        final AttributesImpl attrs = new AttributesImpl();
+        attrs.addAttribute("", "href", "", "CDATA", _DATA);
+        writer.startDocument();
+        writer.startElement("topicMap");
+        writer.comment("a--b");
+        writer.emptyElement("resourceRef", attrs);
+        writer.dataElement("resourceData", _DATA);
+        writer.endElement("topicMap");
+        writer.endDocument();
+        return new String(out.toByteArray(), encoding);
+    }
+
+    public void testUTF8() throws Exception {
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<topicMap><!-- a- -b -->"
+                + "<resourceRef href=\"a&lt;b&gt;&amp;&quot;c&quot; \u00e4\u20ac\ud834\udd1e\"/>"
+                + "<resourceData>a&lt;b&gt;&amp;\"c\" \u00e4\u20ac\ud834\udd1e</resourceData>"
+                + "</topicMap>\n", _write("UTF-8"));
+    }
+
+    public void testLatin1() throws Exception {
+        assertTrue(_write("ISO-8859-1").contains("<resourceData>a&lt;b&gt;&amp;\"c\" \u00e4&#x20AC;&#x1D11E;</resourceData>"));
+    }
+
+    public void testASCII() throws Exception {
+        assertTrue(_write("US-ASCII").contains("<resourceData>a&lt;b&gt;&amp;\"c\" &#xE4;&#x20AC;&#x1D11E;</resourceData>"));
+    }
+
+    public void testTranscoding() throws Exception {
+        assertTrue(_write("UTF-16").contains("<resourceData>a&lt;b&gt;&amp;\"c\" \u00e4\u20ac\ud834\udd1e</resourceData>"));
+    }
+
+    public void testLargeContent() throws Exception {
+        final StringBuilder buff = new StringBuilder();
+        for (int i=0; i < 20000; i++) {
+            buff.append("x&\u00e4\ud834\udd1e");
+        }
+        final String data = buff.toString();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final XMLWriter writer = new XMLWriter(out);
+        writer.startDocument();
+        writer.dataElement("value", data);
+        writer.endDocument();
+        final String xml = new String(out.toByteArray(), "UTF-8");
+        assertTrue(xml.endsWith("<value>" + data.replace("&", "&amp;") + "</value>\n"));
+    }
+
+}
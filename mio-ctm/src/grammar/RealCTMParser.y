@@ -456,7 +456,7 @@ literal     : literal_no_qname              { $$=$1; }
             | variable                      { $$=$1; }
             ;
 
-string      : STRING                        { $$=Reference.createString(super.unescapeString($1)); }
+string      : STRING                        { $$=super.isSkipping() ? Reference.SKIPPED_STRING : Reference.createString(super.unescapeString($1)); }
             ;
 
 tpl_call_or_assoc_start
@@ -15,8 +15,10 @@
  */
 package com.semagia.mio.ctm;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import com.semagia.mio.DeserializerRegistry;
@@ -24,11 +26,17 @@ import com.semagia.mio.IDeserializer;
 import com.semagia.mio.IRIContext;
 import com.semagia.mio.IMapHandler;
 import com.semagia.mio.IRef;
+import com.semagia.mio.IResourceResolver;
 import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
 import com.semagia.mio.Source;
 import com.semagia.mio.Syntax;
 import com.semagia.mio.ctm.api.IPrefixListener;
+import com.semagia.mio.helpers.FilteringMapHandler;
+import com.semagia.mio.helpers.IncludeCache;
+import com.semagia.mio.helpers.IncludePrefetcher;
 import com.semagia.mio.helpers.Locator;
+import com.semagia.mio.helpers.RecordingMapHandler;
 
 /**
  * Abstract CTM parser which provides some logic but no grammar.
@@ -37,13 +45,17 @@ import com.semagia.mio.helpers.Locator;
  */
 abstract class AbstractCTMParser {
 
-    private static final String 
-        _SYNTAX_CTM = "http://psi.topicmaps.org/iso13250/ctm",
-        _SYNTAX_XTM = "http://psi.topicmaps.org/iso13250/xtm";
+    static final String 
+        SYNTAX_CTM = "http://psi.topicmaps.org/iso13250/ctm",
+        SYNTAX_XTM = "http://psi.topicmaps.org/iso13250/xtm";
 
     protected boolean _isSubordinate;
     protected final IContentHandler _contentHandler;
     private IRIContext _iris;
+    private FilteringMapHandler _filter;
+    private IResourceResolver _resolver;
+    private IncludeCache _cache;
+    private IncludePrefetcher _prefetcher;
 
     protected AbstractCTMParser(final IParseContext ctx) {
         this(new MainContentHandler(ctx));
@@ -67,6 +79,17 @@ abstract class AbstractCTMParser {
      */
     public void setMapHandler(final IMapHandler handler) {
         _contentHandler.getParseContext().setMapHandler(handler);
+        _filter = handler instanceof FilteringMapHandler ? (FilteringMapHandler) handler : null;
+    }
+
+    /**
+     * Returns if the events of the current construct are discarded, so
+     * literals need not to be built.
+     *
+     * @return {@code true} if the current content is discarded, otherwise {@code false}.
+     */
+    protected final boolean isSkipping() {
+        return _filter != null && _filter.isSkipping();
     }
 
     /**
@@ -86,6 +109,36 @@ abstract class AbstractCTMParser {
         return _iris;
     }
 
+    /**
+     * Sets the resolver which is passed to the deserializers of included and
+     * merged topic maps.
+     *
+     * @param resolver The resolver or {@code null}.
+     */
+    void setResourceResolver(final IResourceResolver resolver) {
+        _resolver = resolver;
+    }
+
+    /**
+     * Sets the cache which provides the events of included and merged 
+     * topic maps.
+     *
+     * @param cache The cache or {@code null}.
+     */
+    void setIncludeCache(final IncludeCache cache) {
+        _cache = cache;
+    }
+
+    /**
+     * Sets the prefetcher which provides the included and merged topic maps
+     * of the document.
+     *
+     * @param prefetcher The prefetcher or {@code null}.
+     */
+    void setIncludePrefetcher(final IncludePrefetcher prefetcher) {
+        _prefetcher = prefetcher;
+    }
+
     void setIncludedBy(final Set<Locator> includedBy) {
         ((MainContentHandler ) _contentHandler).setIncludedBy(includedBy);
     }
@@ -139,10 +192,10 @@ abstract class AbstractCTMParser {
      */
     protected void mergeIn(final String iri, final String syntaxIRI) throws IOException, MIOException {
         final IParseContext ctx = _contentHandler.getParseContext();
-        if (_SYNTAX_CTM == syntaxIRI) {
+        if (SYNTAX_CTM == syntaxIRI) {
             _mergeInCTM(null, iri, null);
         }
-        else if (_SYNTAX_XTM == syntaxIRI){
+        else if (SYNTAX_XTM == syntaxIRI){
             final Locator docIRI = ctx.resolveLocator(iri);
             if (_iris.containsIRI(docIRI.toExternalForm())) {
                 return;
@@ -152,10 +205,9 @@ abstract class AbstractCTMParser {
             if (deser == null) {
                 throw new MIOException("Unknown syntax '" + syntaxIRI + "'");
             }
-            deser.setMapHandler(ctx.getMapHandler());
             deser.setSubordinate(true);
-            deser.setIRIContext(_iris);
-            deser.parse(new Source(docIRI.toExternalForm()));
+            deser.setProperty(Property.RESOURCE_RESOLVER, _resolver);
+            _parse(deser, null, "xtm " + docIRI.toExternalForm(), docIRI.toExternalForm());
         }
         else {
             throw new MIOException("Unknown syntax '" + syntaxIRI + "'");
@@ -167,6 +219,10 @@ abstract class AbstractCTMParser {
         final Locator loc =  _contentHandler.getParseContext().resolveLocator(iri);
         final Set<Locator> includedBy = ((MainContentHandler) _contentHandler).getIncludedBy();
         if (includedBy != null && includedBy.contains(loc)) {
+            if (ctx instanceof IncludeParseContext) {
+                // The events depend on the sources which include this source
+                ((IncludeParseContext) ctx).setContextDependent();
+            }
             return;
         }
         final Set<Locator> newIncludedBy = includedBy != null ? new HashSet<Locator>(includedBy) : new HashSet<Locator>(2);
@@ -182,7 +238,7 @@ abstract class AbstractCTMParser {
      * @throws IOException
      * @throws MIOException
      */
-    private final void _mergeInCTM(IParseContext ctx, final String iri, final Set<Locator> included) throws IOException, MIOException {
+    private final void _mergeInCTM(IncludeParseContext ctx, final String iri, final Set<Locator> included) throws IOException, MIOException {
         final Locator docIRI = _contentHandler.getParseContext().resolveLocator(iri);
         if (_iris.containsIRI(docIRI.toExternalForm())) {
             return;
@@ -191,15 +247,86 @@ abstract class AbstractCTMParser {
         final CTMDeserializer deser = new CTMDeserializer();
         //deser.setProperty("http://psi.semagia.com/mio/property/ctm/prefix-listener", _listener);
         deser.setParseContext(ctx);
-        deser.setMapHandler(_contentHandler.getParseContext().getMapHandler());
         deser.setSubordinate(true);
-        deser.setIRIContext(_iris);
         if (included != null) {
             deser.setIncludedBy(included);
         }
-        deser.parse(new Source(docIRI.toExternalForm()));
+        deser.setProperty(Property.RESOURCE_RESOLVER, _resolver);
+        deser.setProperty(Property.INCLUDE_CACHE, _cache);
+        _parse(deser, ctx, (ctx != null ? "ctm-include " : "ctm ") + docIRI.toExternalForm(), 
+                docIRI.toExternalForm());
     }
 
+    /**
+     * Parses an included or merged source.
+     * <p>
+     * The events of the source are taken from the {@link IncludePrefetcher}
+     * or from the {@link IncludeCache} if the source has not been changed
+     * and if the events are applicable to the current {@link IRIContext}.
+     * Otherwise the source is parsed and the events are added to the cache 
+     * unless they depend on the including source.
+     * </p>
+     *
+     * @param deser The deserializer to parse the source.
+     * @param ctx The include context or {@code null} if the source is merged.
+     * @param key The cache key.
+     * @param docIRI The IRI of the source.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    private void _parse(final IDeserializer deser, final IncludeParseContext ctx, 
+            final String key, final String docIRI) throws IOException, MIOException {
+        final IMapHandler handler = _contentHandler.getParseContext().getMapHandler();
+        byte[] data = null;
+        String fingerprint = null;
+        IncludeCache.Entry entry = null;
+        final IncludePrefetcher.Result prefetched = _prefetcher != null ? _prefetcher.take(key) : null;
+        if (prefetched != null) {
+            data = prefetched.getData();
+            fingerprint = prefetched.getFingerprint();
+            entry = prefetched.getEntry();
+        }
+        else if (_cache != null) {
+            data = IncludeCache.load(docIRI, _resolver);
+            if (data != null) {
+                fingerprint = IncludeCache.fingerprint(data);
+                entry = _cache.get(key, fingerprint, _resolver);
+            }
+        }
+        if (data == null) {
+            deser.setIRIContext(_iris);
+            deser.setMapHandler(handler);
+            deser.parse(new Source(docIRI));
+            return;
+        }
+        if (entry != null && entry.isApplicable(_iris)) {
+            entry.getEvents().replay(handler);
+            for (String iri: entry.getIRIs()) {
+                _iris.addIRI(iri);
+            }
+            if (ctx != null) {
+                ((IncludeParseContext.State) entry.getState()).apply(ctx);
+            }
+            return;
+        }
+        final IRIContext iris = new IRIContext(_iris);
+        final RecordingMapHandler events = new RecordingMapHandler();
+        deser.setIRIContext(iris);
+        deser.setMapHandler(events);
+        deser.parse(new Source(new ByteArrayInputStream(data), docIRI));
+        events.replay(handler);
+        if (_cache != null && (ctx == null || !ctx.isContextDependent())) {
+            final Set<String> loaded = new HashSet<String>(iris.getIRIs());
+            final Set<String> required = new HashSet<String>(iris.getInheritedIRIs());
+            loaded.remove(docIRI);
+            required.remove(docIRI);
+            final Map<String, String> fingerprints = IncludeCache.fingerprints(loaded, _resolver);
+            if (fingerprints != null) {
+                _cache.put(key, new IncludeCache.Entry(fingerprint, events, fingerprints, 
+                        required, ctx != null ? ctx.getState() : null));
+            }
+        }
+    }
 
     protected final IReference createTopic(final String name) throws MIOException {
         final IReference ref = name == null ? _contentHandler.startTopic() : _contentHandler.startTopic(name);
@@ -35,10 +35,10 @@ abstract class AbstractParseContext implements IParseContext {
     private IPrefixListener _listener;
     private SimpleMapHandler _handler;
     private final Map<String, ITemplate> _templates;
-    private TemplateContext _tplCtx;
     private Locator _baseIRI;
     private final Map<String, String> _prefixes;
     private final Map<String, IReference> _wc2Identity;
+    private CTMHeader _header;
 
     AbstractParseContext() {
         _templates = new HashMap<String, ITemplate>();
@@ -46,6 +46,58 @@ abstract class AbstractParseContext implements IParseContext {
         _wc2Identity = new HashMap<String, IReference>();
     }
 
+    /**
+     * Creates a context which starts with the prefixes, the templates and
+     * the document IRI of the provided context.
+     *
+     * @param ctx The context to copy.
+     */
+    AbstractParseContext(final AbstractParseContext ctx) {
+        _templates = new HashMap<String, ITemplate>(ctx._templates);
+        _prefixes = new HashMap<String, String>(ctx._prefixes);
+        _wc2Identity = new HashMap<String, IReference>();
+        _baseIRI = ctx._baseIRI;
+        _header = ctx._header;
+    }
+
+    /**
+     * Makes the prefixes and templates of the provided header available to
+     * this context.
+     * <p>
+     * The header is not copied, the prefixes and templates of this context
+     * are looked up before the header is consulted. The prefix listener
+     * (if any) is informed about the prefixes of the header.
+     * </p>
+     *
+     * @param header The header.
+     */
+    void setHeader(final CTMHeader header) {
+        _header = header;
+        if (_listener != null) {
+            for (Map.Entry<String, String> prefix: header.getPrefixes().entrySet()) {
+                _listener.handleNamespace(prefix.getKey(), prefix.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the prefixes which were registered at this context.
+     *
+     * @return A (modifiable) map of prefixes.
+     */
+    Map<String, String> getPrefixes() {
+        return _prefixes;
+    }
+
+    /**
+     * Returns the templates which were registered at this context.
+     *
+     * @return A (modifiable) map of <tt>name/arity</tt> keys to templates.
+     */
+    Map<String, ITemplate> getTemplates() {
+        return _templates;
+    }
+
     @Override
     public IReference resolveWildcardIdentifier(String name) {
         return resolveTopicIdentifier(name);
@@ -111,7 +163,10 @@ abstract class AbstractParseContext implements IParseContext {
     @Override
     public IReference resolveQName(String qName) throws MIOException {
         final QName qn = QName.create(qName);
-        final String iri = _prefixes.get(qn.getPrefix());
+        String iri = _prefixes.get(qn.getPrefix());
+        if (iri == null && _header != null) {
+            iri = _header.getPrefixes().get(qn.getPrefix());
+        }
         if (iri == null) {
             throw new MIOException("The prefix '" + qn.getPrefix() + "' is unknown");
         }
@@ -120,6 +175,13 @@ abstract class AbstractParseContext implements IParseContext {
 
     @Override
     public void registerPrefix(String prefix, String iri) throws MIOException {
+        final String headerIRI = _header != null ? _header.getPrefixes().get(prefix) : null;
+        if (headerIRI != null) {
+            if (!headerIRI.equals(iri)) {
+                throw new MIOException("The prefix '" + prefix + "' is already bound to <" + headerIRI + ">");
+            }
+            return;
+        }
         final String existing = _prefixes.put(prefix, iri);
         if (existing != null) {
             if (!existing.equals(iri)) {
@@ -133,41 +195,6 @@ abstract class AbstractParseContext implements IParseContext {
         }
     }
 
-    /* (non-Javadoc)
-     * @see com.semagia.mio.ctm.IParseContext#createTemplateContext(com.semagia.mio.ctm.IReference[], com.semagia.mio.ctm.IReference[])
-     */
-    @Override
-    public ITemplateContext createTemplateContext(final IReference[] tplParams, final IReference[] values) throws MIOException {
-        Map<IReference, IReference> bindings = new HashMap<IReference, IReference>();
-        for (int i=0; i<tplParams.length; i++) {
-            IReference val = values[i];
-            if (val.isWildcard() || val.isNamedWildcard()) {
-                val = _tplCtx != null ? _tplCtx.getTopicReference(val)
-                                      : getTopicByWildcard(val.isWildcard() ? null : (String)val.getValue());
-            }
-            bindings.put(tplParams[i], val);
-        }
-        return new TemplateContext(this, _tplCtx, bindings);
-    }
-
-    /* (non-Javadoc)
-     * @see com.semagia.mio.ctm.IParseContext#pushTemplateContext(com.semagia.mio.ctm.ITemplateContext)
-     */
-    @Override
-    public void pushTemplateContext(ITemplateContext tplContext) throws MIOException {
-        _tplCtx = (TemplateContext) tplContext;
-    }
-
-    /* (non-Javadoc)
-     * @see com.semagia.mio.ctm.IParseContext#popTemplateContext()
-     */
-    @Override
-    public void popTemplateContext() throws MIOException {
-        final TemplateContext currentCtx = _tplCtx;
-        _tplCtx = currentCtx._parent;
-        currentCtx.close();
-    }
-
     @Override
     public void setMapHandler(IMapHandler handler) {
         _handler = SimpleMapHandler.create(handler);
@@ -186,7 +213,10 @@ abstract class AbstractParseContext implements IParseContext {
     @Override
     public ITemplate getTemplate(final String name, int arity) throws MIOException {
         final String key = name + "/" + arity;
-        final ITemplate tpl = _templates.get(key);
+        ITemplate tpl = _templates.get(key);
+        if (tpl == null && _header != null) {
+            tpl = _header.getTemplate(key);
+        }
         if (tpl == null) {
             throw new MIOException("The template '" + key + "' does not exist");
         }
@@ -196,6 +226,9 @@ abstract class AbstractParseContext implements IParseContext {
     @Override
     public void registerTemplate(final ITemplate template) throws MIOException {
         final String key = template.getName() + "/" + template.getArity();
+        if (_header != null && _header.getTemplate(key) != null) {
+            throw new MIOException("A template '" + key + "' is already registered");
+        }
         final ITemplate existing = _templates.put(key, template);
         if (existing != null) {
             throw new MIOException("A template '" + key + "' is already registered");
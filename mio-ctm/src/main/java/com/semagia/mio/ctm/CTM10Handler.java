@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -35,6 +36,7 @@ import com.semagia.mio.IRef;
 import com.semagia.mio.MIOException;
 import com.semagia.mio.helpers.AbstractHamsterMapHandler;
 import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.utils.PrefixTrie;
 import com.semagia.mio.voc.TMDM;
 import com.semagia.mio.voc.XSD;
 
@@ -56,6 +58,7 @@ public final class CTM10Handler extends AbstractHamsterMapHandler<IRef> {
     private char[] _indent;
     private static final char[] _END_OF_STATEMENT = new char[] {';', '\n'};
     private final Map<String, String> _prefixes;
+    private final PrefixTrie<String> _prefixTrie;
     private boolean _headerWritten;
     private final String _encoding;
     
@@ -64,6 +67,24 @@ public final class CTM10Handler extends AbstractHamsterMapHandler<IRef> {
     private String _license;
     private String _comment;
 
+    /**
+     * Max. number of namespaces which are tracked by the prefix discovery.
+     */
+    private static final int _MAX_NAMESPACES = 1024;
+
+    /**
+     * Assumed length of a discovered prefix and the number of characters of a
+     * prefix directive without the prefix and the IRI.
+     */
+    private static final int 
+        _ESTIMATED_PREFIX_LENGTH = 4,
+        _PREFIX_DIRECTIVE_LENGTH = 12;
+
+    private boolean _discoverPrefixes;
+    private final Map<String, int[]> _namespaceUsage;
+    private final List<String> _discoveredNamespaces;
+    private int _prefixCounter;
+
     /**
      * Creates a new CTM handler.
      *
@@ -82,6 +103,9 @@ public final class CTM10Handler extends AbstractHamsterMapHandler<IRef> {
         _out = out;
         _encoding = encoding;
         _prefixes = new LinkedHashMap<String, String>();
+        _prefixTrie = new PrefixTrie<String>();
+        _namespaceUsage = new HashMap<String, int[]>();
+        _discoveredNamespaces = new ArrayList<String>();
         setIndentation(4);
     }
 
@@ -209,6 +233,11 @@ public final class CTM10Handler extends AbstractHamsterMapHandler<IRef> {
         if (!CTMUtils.isValidIRI(reference)) {
             throw new IllegalArgumentException("The reference is an invalid CTM IRI: " + reference);
         }
+        final String previous = _prefixes.put(prefix, reference);
+        if (previous != null && !previous.equals(reference)) {
+            _unbindReference(prefix, previous);
+        }
+        _prefixTrie.put(reference, prefix);
         if (_headerWritten) {
             try {
                 _finishPendingTopic();
@@ -230,7 +259,31 @@ public final class CTM10Handler extends AbstractHamsterMapHandler<IRef> {
         if (_somethingWritten) {
             throw new IllegalStateException("The prefix '" + prefix + "' cannot be removed since it was serialized already");
         }
-        _prefixes.remove(prefix);
+        final String reference = _prefixes.remove(prefix);
+        if (reference != null) {
+            _unbindReference(prefix, reference);
+        }
+    }
+
+    /**
+     * Removes the IRI which was bound to the provided prefix from the trie.
+     * <p>
+     * The prefix must not be bound to the IRI in {@link #_prefixes} anymore.
+     * </p>
+     *
+     * @param prefix The prefix.
+     * @param reference The IRI which was bound to the prefix.
+     */
+    private void _unbindReference(final String prefix, final String reference) {
+        if (prefix.equals(_prefixTrie.get(reference))) {
+            _prefixTrie.remove(reference);
+            // Another prefix may be bound to the same IRI
+            for (Map.Entry<String, String> entry: _prefixes.entrySet()) {
+                if (entry.getValue().equals(reference)) {
+                    _prefixTrie.put(reference, entry.getKey());
+                }
+            }
+        }
     }
 
     /**
@@ -242,6 +295,31 @@ public final class CTM10Handler extends AbstractHamsterMapHandler<IRef> {
         return Collections.unmodifiableMap(_prefixes);
     }
 
+    /**
+     * Enables / disables the automatic discovery of prefixes (disabled by 
+     * default).
+     * <p>
+     * If enabled, the writer counts the namespaces of the IRIs which cannot
+     * be abbreviated by a registered prefix. As soon as a prefix for a 
+     * namespace saves more characters than its declaration needs, a prefix
+     * is generated and declared before the next topic or association.
+     * </p>
+     *
+     * @param discover {@code true} to enable the prefix discovery, otherwise {@code false}.
+     */
+    public void setPrefixDiscovery(final boolean discover) {
+        _discoverPrefixes = discover;
+    }
+
+    /**
+     * Returns if prefixes are discovered automatically.
+     *
+     * @return {@code true} if the prefix discovery is enabled, otherwise {@code false}.
+     */
+    public boolean getPrefixDiscovery() {
+        return _discoverPrefixes;
+    }
+
     private void _writePrefix(final String prefix, final String reference) throws IOException {
         _out.write("%prefix " + prefix + " <" + reference + ">");
         _newline();
@@ -268,6 +346,7 @@ public final class CTM10Handler extends AbstractHamsterMapHandler<IRef> {
         _somethingWritten = true;
         try {
             _finishPendingTopic();
+            _writeDiscoveredPrefixes();
             _newline();
             _writeTopicRef(type);
             _out.write('(');
@@ -363,20 +442,102 @@ public final class CTM10Handler extends AbstractHamsterMapHandler<IRef> {
     }
 
     private void _writeURI(final String reference) throws IOException {
-        for (Map.Entry<String, String> entry: _prefixes.entrySet()) {
-            String iri = entry.getValue();
-            if (reference.startsWith(iri)) {
-                String localPart = reference.substring(iri.length());
-                if (CTMUtils.isValidLocalPart(localPart)) {
-                    _out.write(entry.getKey());
-                    _out.write(':');
-                    _out.write(localPart);
-                    return;
-                }
+        // Try the longest matching prefix first, a shorter one may provide a valid local part
+        Map.Entry<String, String> match = _prefixTrie.longestMatch(reference);
+        while (match != null) {
+            final String iri = match.getKey();
+            final String localPart = reference.substring(iri.length());
+            if (CTMUtils.isValidLocalPart(localPart)) {
+                _out.write(match.getValue());
+                _out.write(':');
+                _out.write(localPart);
+                return;
             }
+            match = iri.isEmpty() ? null : _prefixTrie.longestMatch(reference, iri.length() - 1);
+        }
+        if (_discoverPrefixes) {
+            _countNamespace(reference);
         }
         // No relative IRI and no QName was written, write the reference as it is
-        _out.write('<' + reference + '>');
+        _out.write('<');
+        _out.write(reference);
+        _out.write('>');
+    }
+
+    /**
+     * Counts the usage of the namespace of the provided IRI and remembers the
+     * namespace if a prefix would pay off.
+     *
+     * @param reference An IRI which was not abbreviated.
+     */
+    private void _countNamespace(final String reference) {
+        final int idx = Math.max(reference.lastIndexOf('/'), reference.lastIndexOf('#'));
+        if (idx < 1 || idx == reference.length() - 1
+                || (reference.charAt(idx) == '/' && reference.charAt(idx - 1) == '/')
+                || !CTMUtils.isValidLocalPart(reference.substring(idx + 1))) {
+            return;
+        }
+        final String ns = reference.substring(0, idx + 1);
+        int[] usage = _namespaceUsage.get(ns);
+        if (usage == null) {
+            if (_namespaceUsage.size() >= _MAX_NAMESPACES || !CTMUtils.isValidIRI(ns)) {
+                return;
+            }
+            usage = new int[1];
+            _namespaceUsage.put(ns, usage);
+        }
+        usage[0]++;
+        // A QName saves the namespace and the angle brackets but needs the prefix and a colon
+        final int saved = usage[0] * (ns.length() + 2 - _ESTIMATED_PREFIX_LENGTH - 1);
+        if (saved > ns.length() + _ESTIMATED_PREFIX_LENGTH + _PREFIX_DIRECTIVE_LENGTH) {
+            _namespaceUsage.remove(ns);
+            _discoveredNamespaces.add(ns);
+        }
+    }
+
+    /**
+     * Declares prefixes for the discovered namespaces. Must be called between
+     * two topic blocks or associations.
+     *
+     * @throws IOException In case of an error.
+     */
+    private void _writeDiscoveredPrefixes() throws IOException {
+        if (_discoveredNamespaces.isEmpty()) {
+            return;
+        }
+        for (String ns: _discoveredNamespaces) {
+            if (_prefixTrie.get(ns) != null) {
+                continue;
+            }
+            final String prefix = _createPrefix(ns);
+            _prefixes.put(prefix, ns);
+            _prefixTrie.put(ns, prefix);
+            _writePrefix(prefix, ns);
+        }
+        _discoveredNamespaces.clear();
+    }
+
+    /**
+     * Returns an unused prefix for the provided namespace. The prefix is
+     * derived from the last segment of the namespace, if possible.
+     *
+     * @param ns The namespace.
+     * @return A prefix.
+     */
+    private String _createPrefix(final String ns) {
+        final int end = ns.length() - 1;
+        final int start = Math.max(ns.lastIndexOf('/', end - 1), ns.lastIndexOf('#', end - 1)) + 1;
+        String segment = ns.substring(start, end);
+        final int dot = segment.lastIndexOf('.');
+        if (dot != -1) {
+            // Host name, use the second-level label
+            segment = segment.substring(segment.lastIndexOf('.', dot - 1) + 1, dot);
+        }
+        String prefix = segment.toLowerCase();
+        while (!CTMUtils.isValidId(prefix) || _prefixes.containsKey(prefix)) {
+            prefix = "ns" + (++_prefixCounter);
+        }
+        return prefix;
     }
 
     /**
@@ -420,6 +581,7 @@ public final class CTM10Handler extends AbstractHamsterMapHandler<IRef> {
         _somethingWritten = true;
         if (newTopic) {
             _finishPendingTopic();
+            _writeDiscoveredPrefixes();
             _lastTopic = new Topic(identity);
             _newline();
             _writeTopicRef(identity);
@@ -20,23 +20,52 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PushbackInputStream;
 import java.io.Reader;
+import java.io.StringReader;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import com.semagia.mio.IRIContext;
+import com.semagia.mio.IResourceResolver;
 import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
 import com.semagia.mio.Source;
 import com.semagia.mio.base.AbstractDeserializer;
 import com.semagia.mio.ctm.CTMParser;
 import com.semagia.mio.ctm.api.IPrefixListener;
+import com.semagia.mio.helpers.IncludeCache;
+import com.semagia.mio.helpers.IncludePrefetcher;
 import com.semagia.mio.helpers.Locator;
+import com.semagia.mio.helpers.RecordingMapHandler;
+import com.semagia.mio.helpers.ReplayQueue;
 import com.semagia.mio.utils.BOMInputStream;
 
 /**
  * Deserializer which reads
  * <a href="http://www.isotopicmaps.org/ctm/">CTM</a>.
+ * <p>
+ * If the {@link Property#PARALLELISM} property is set to a value greater
+ * than {@code 1}, the document is split at top-level statement boundaries
+ * and the chunks which consist of topics, associations and template
+ * invocations are parsed concurrently. Directives and template definitions
+ * are parsed in document order and the events of the chunks are reported
+ * in document order as well. The identifiers of wildcard topics differ
+ * from the identifiers which are created by the sequential parser.
+ * </p>
+ * <p>
+ * If the {@link Property#CTM_HEADER} property is set, the document 
+ * starts with the prefixes and templates of the {@link CTMHeader}.
+ * Included topic maps do not see the header.
+ * </p>
+ * <p>
+ * If the {@link Property#INCLUDE_PREFETCH} property is set, the included
+ * and merged topic maps of the document are read and parsed by worker 
+ * threads before the parser reaches the directives. The directives are
+ * discovered while the document is read, the document is not kept in 
+ * memory.
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  */
@@ -52,11 +81,18 @@ final class CTMDeserializer extends AbstractDeserializer {
      */
     private static final String _DEFAULT_ENCODING = "utf-8";
 
+    /**
+     * Default min. number of characters of a chunk which is parsed 
+     * concurrently.
+     */
+    private static final int _DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
     private IParseContext _parseCtx;
     private IRIContext _iris;
     private final Map<String, Object> _properties;
 
     private Set<Locator> _includedBy;
+    private int _chunkSize;
 
     /**
      * 
@@ -65,6 +101,7 @@ final class CTMDeserializer extends AbstractDeserializer {
     public CTMDeserializer() {
         super();
         _properties = new HashMap<String, Object>();
+        _chunkSize = _DEFAULT_CHUNK_SIZE;
     }
 
     void setParseContext(final IParseContext parseCtx) {
@@ -75,6 +112,10 @@ final class CTMDeserializer extends AbstractDeserializer {
         _includedBy = included;
     }
 
+    void setChunkSize(final int chunkSize) {
+        _chunkSize = chunkSize;
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.mio.base.AbstractDeserializer#_parse(org.xml.sax.InputSource, java.lang.String)
      */
@@ -82,23 +123,236 @@ final class CTMDeserializer extends AbstractDeserializer {
     protected void doParse(Source src) throws IOException,
             MIOException {
         final Reader reader = _reader(src);
-        final CTMParser parser = new CTMParser(_parseCtx != null ? _parseCtx : new ParseContext());
+        final Locator docIRI = Locator.create(src.getBaseIRI());
+        final IncludePrefetcher prefetcher = _createPrefetcher();
         try {
-            parser.setSubordinate(super._isSubordinate);
-            parser.setIRIContext(_iris);
-            parser.setPrefixListener((IPrefixListener) getProperty("http://psi.semagia.com/mio/property/ctm/prefix-listener"));
-            parser.setDocumentIRI(Locator.create(src.getBaseIRI()));
-            parser.setMapHandler(super._handler);
-            parser.setIncludedBy(_includedBy);
-            parser.parse(reader);
+            final Object parallelism = getProperty(Property.PARALLELISM);
+            if (_parseCtx == null && parallelism instanceof Integer && ((Integer) parallelism).intValue() > 1) {
+                _parseParallel(reader, docIRI, ((Integer) parallelism).intValue(), prefetcher);
+            }
+            else {
+                final IParseContext ctx = _parseCtx != null ? _parseCtx : new ParseContext();
+                final CTMParser parser = new CTMParser(ctx);
+                parser.setSubordinate(super._isSubordinate);
+                parser.setIRIContext(_iris);
+                parser.setPrefixListener((IPrefixListener) getProperty("http://psi.semagia.com/mio/property/ctm/prefix-listener"));
+                if (_parseCtx == null) {
+                    _applyHeader((AbstractParseContext) ctx);
+                }
+                parser.setDocumentIRI(docIRI);
+                parser.setMapHandler(super._handler);
+                parser.setIncludedBy(_includedBy);
+                parser.setResourceResolver((IResourceResolver) getProperty(Property.RESOURCE_RESOLVER));
+                parser.setIncludeCache((IncludeCache) getProperty(Property.INCLUDE_CACHE));
+                parser.setIncludePrefetcher(prefetcher);
+                if (prefetcher != null) {
+                    final StatementSplitter splitter = new StatementSplitter(reader, _chunkSize);
+                    splitter.setDirectiveHandler(_createDirectiveHandler(docIRI, prefetcher));
+                    parser.parse(new SplitterReader(splitter, _chunkSize));
+                }
+                else {
+                    parser.parse(reader);
+                }
+            }
         }
         finally {
+            if (prefetcher != null) {
+                prefetcher.close();
+            }
             if (reader != null) {
                 reader.close();
             }
         }
     }
 
+    /**
+     * Makes the prefixes and templates of the {@link Property#CTM_HEADER}
+     * (if any) available to the provided context.
+     *
+     * @param ctx The context of the document.
+     */
+    private void _applyHeader(final AbstractParseContext ctx) {
+        final CTMHeader header = (CTMHeader) getProperty(Property.CTM_HEADER);
+        if (header != null) {
+            ctx.setHeader(header);
+        }
+    }
+
+    /**
+     * Returns a prefetcher iff the {@link Property#INCLUDE_PREFETCH} property
+     * is set to a value greater than {@code 0}.
+     *
+     * @return A prefetcher or {@code null}.
+     */
+    private IncludePrefetcher _createPrefetcher() {
+        final Object threads = getProperty(Property.INCLUDE_PREFETCH);
+        if (!(threads instanceof Integer) || ((Integer) threads).intValue() < 1) {
+            return null;
+        }
+        return new IncludePrefetcher(((Integer) threads).intValue(), 
+                (IResourceResolver) getProperty(Property.RESOURCE_RESOLVER), 
+                (IncludeCache) getProperty(Property.INCLUDE_CACHE));
+    }
+
+    /**
+     * Returns a directive handler which announces the included and merged 
+     * topic maps of the document to the prefetcher.
+     * <p>
+     * The directives are detected by a {@link StatementSplitter} while it
+     * reads ahead of the parser, the arguments are resolved against the 
+     * prefixes which were declared before the directive. Arguments which 
+     * cannot be resolved are ignored, the parser reports the error.
+     * </p>
+     *
+     * @param docIRI The document IRI.
+     * @param prefetcher The prefetcher.
+     * @return A directive handler.
+     */
+    private StatementSplitter.IDirectiveHandler _createDirectiveHandler(final Locator docIRI, 
+            final IncludePrefetcher prefetcher) {
+        final IResourceResolver resolver = (IResourceResolver) getProperty(Property.RESOURCE_RESOLVER);
+        final IncludeCache cache = (IncludeCache) getProperty(Property.INCLUDE_CACHE);
+        final Map<String, String> prefixes = new HashMap<String, String>();
+        final CTMHeader header = (CTMHeader) getProperty(Property.CTM_HEADER);
+        if (header != null && _parseCtx == null) {
+            prefixes.putAll(header.getPrefixes());
+        }
+        return new StatementSplitter.IDirectiveHandler() {
+            @Override
+            public void handleDirective(final String name, final String[] args) {
+                if ("%prefix".equals(name)) {
+                    final String iri = _resolve(args[1], docIRI, prefixes);
+                    if (iri != null) {
+                        prefixes.put(args[0], iri);
+                    }
+                    return;
+                }
+                final String iri = _resolve(args[0], docIRI, prefixes);
+                if (iri == null) {
+                    return;
+                }
+                if ("%include".equals(name)) {
+                    prefetcher.prefetch("ctm-include " + iri, iri, 
+                            new IncludePrefetchParser(IncludePrefetchParser.INCLUDE, docIRI, _includedBy, resolver, cache));
+                }
+                else if ("%mergemap".equals(name)) {
+                    final String syntax = _resolve(args[1], docIRI, prefixes);
+                    if (AbstractCTMParser.SYNTAX_CTM.equals(syntax)) {
+                        prefetcher.prefetch("ctm " + iri, iri, 
+                                new IncludePrefetchParser(IncludePrefetchParser.MERGEMAP_CTM, docIRI, _includedBy, resolver, cache));
+                    }
+                    else if (AbstractCTMParser.SYNTAX_XTM.equals(syntax)) {
+                        prefetcher.prefetch("xtm " + iri, iri, 
+                                new IncludePrefetchParser(IncludePrefetchParser.MERGEMAP_XTM, docIRI, _includedBy, resolver, cache));
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Resolves a directive argument (an IRI or a QName) to an absolute IRI.
+     *
+     * @param arg The argument.
+     * @param docIRI The document IRI.
+     * @param prefixes The prefixes which have been declared so far.
+     * @return The absolute IRI or {@code null} if the argument cannot be 
+     *          resolved.
+     */
+    private static String _resolve(final String arg, final Locator docIRI, 
+            final Map<String, String> prefixes) {
+        String iri = null;
+        if (arg.length() > 1 && arg.charAt(0) == '<' && arg.charAt(arg.length()-1) == '>') {
+            iri = arg.substring(1, arg.length()-1);
+        }
+        else {
+            final int idx = arg.indexOf(':');
+            if (idx > 0 && prefixes.containsKey(arg.substring(0, idx))) {
+                iri = prefixes.get(arg.substring(0, idx)) + arg.substring(idx+1);
+            }
+            else if (arg.indexOf("://") > 0) {
+                iri = arg;
+            }
+        }
+        if (iri == null) {
+            return null;
+        }
+        try {
+            return docIRI.resolve(iri).toExternalForm();
+        }
+        catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses the document in chunks.
+     * <p>
+     * The context segments are parsed by the calling thread, the body 
+     * segments are parsed by up to <code>parallelism</code> worker threads
+     * into {@link RecordingMapHandler}s which are replayed in document order.
+     * </p>
+     *
+     * @param reader The reader to read the document from.
+     * @param docIRI The document IRI.
+     * @param parallelism The number of worker threads.
+     * @param prefetcher The prefetcher or {@code null}.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of a syntax error.
+     */
+    private void _parseParallel(final Reader reader, final Locator docIRI, 
+            final int parallelism, final IncludePrefetcher prefetcher) throws IOException, MIOException {
+        final ChunkParseContext ctx = new ChunkParseContext();
+        ctx.setDocumentIRI(docIRI);
+        ctx.setPrefixListener((IPrefixListener) getProperty("http://psi.semagia.com/mio/property/ctm/prefix-listener"));
+        _applyHeader(ctx);
+        final StatementSplitter splitter = new StatementSplitter(reader, _chunkSize);
+        if (prefetcher != null) {
+            splitter.setDirectiveHandler(_createDirectiveHandler(docIRI, prefetcher));
+        }
+        final ReplayQueue queue = new ReplayQueue(super._handler, parallelism);
+        boolean header = true;
+        int chunk = 0;
+        try {
+            int kind;
+            while ((kind = splitter.next()) != StatementSplitter.END) {
+                if (kind == StatementSplitter.CONTEXT) {
+                    queue.flush();
+                    final CTMParser parser = new CTMParser(ctx);
+                    parser.setSubordinate(super._isSubordinate || !header);
+                    parser.setIRIContext(_iris);
+                    parser.setMapHandler(super._handler);
+                    parser.setIncludedBy(_includedBy);
+                    parser.setResourceResolver((IResourceResolver) getProperty(Property.RESOURCE_RESOLVER));
+                    parser.setIncludeCache((IncludeCache) getProperty(Property.INCLUDE_CACHE));
+                    parser.setIncludePrefetcher(prefetcher);
+                    parser.parse(new StringReader(splitter.getSegment()));
+                }
+                else {
+                    chunk++;
+                    final ChunkParseContext chunkCtx = new ChunkParseContext(ctx, chunk);
+                    final String segment = splitter.getSegment();
+                    queue.submit(new Callable<RecordingMapHandler>() {
+                        @Override
+                        public RecordingMapHandler call() throws Exception {
+                            final RecordingMapHandler handler = new RecordingMapHandler();
+                            final CTMParser parser = new CTMParser(chunkCtx);
+                            parser.setSubordinate(true);
+                            parser.setMapHandler(handler);
+                            parser.parse(new StringReader(segment));
+                            return handler;
+                        }
+                    });
+                }
+                header = false;
+            }
+            queue.flush();
+        }
+        finally {
+            queue.close();
+        }
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.mio.IDeserializer#setIRIContext(com.semagia.mio.IRIContext)
      */
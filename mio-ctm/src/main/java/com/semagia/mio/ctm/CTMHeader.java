@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.semagia.mio.IRIContext;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.Source;
+import com.semagia.mio.ctm.TemplateScopeHandler.Template;
+import com.semagia.mio.helpers.RecordingMapHandler;
+
+/**
+ * An immutable, precompiled set of prefixes and templates which is shared
+ * by a family of CTM documents.
+ * <p>
+ * A header is compiled once from a CTM document which contains prefix
+ * declarations and template definitions and can be shared by any number
+ * of CTM deserializers (see {@link com.semagia.mio.Property#CTM_HEADER}),
+ * even if they are used concurrently. The documents start with the
+ * prefixes and templates of the header as if the header was part of the
+ * document. The documents cannot bind the prefixes of the header to
+ * other IRIs and cannot redefine the templates of the header.
+ * </p>
+ * <p>
+ * The templates which are invoked by the templates of the header are
+ * resolved at compile time, so they must be defined within the header.
+ * The header keeps no wildcard state: The identifiers of wildcards are
+ * generated by the document which uses the header, so a document gets
+ * the same identifiers as if the header was not used.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class CTMHeader {
+
+    private final Map<String, String> _prefixes;
+    private final Map<String, ITemplate> _templates;
+
+    private CTMHeader(final Map<String, String> prefixes, final Map<String, ITemplate> templates) {
+        _prefixes = Collections.unmodifiableMap(new LinkedHashMap<String, String>(prefixes));
+        _templates = Collections.unmodifiableMap(new HashMap<String, ITemplate>(templates));
+    }
+
+    /**
+     * Compiles the prefixes and template definitions of the provided CTM
+     * document.
+     * <p>
+     * The document must not contain anything but directives and template
+     * definitions. Included documents must meet the same requirement.
+     * </p>
+     *
+     * @param src The CTM document.
+     * @return The compiled header.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of a syntax error, if a template is
+     *          defined twice, if an invoked template is not defined or if
+     *          the document contains topics or associations.
+     */
+    public static CTMHeader compile(final Source src) throws IOException, MIOException {
+        final ParseContext ctx = new ParseContext();
+        final RecordingMapHandler events = new RecordingMapHandler();
+        final IRIContext iris = new IRIContext();
+        final CTMDeserializer deser = new CTMDeserializer();
+        deser.setParseContext(ctx);
+        deser.setSubordinate(true);
+        deser.setIRIContext(iris);
+        deser.setMapHandler(events);
+        deser.parse(src);
+        if (events.size() > 0) {
+            throw new MIOException("A CTM header must not contain topics or associations");
+        }
+        // Link the templates, they must not depend on a document
+        for (ITemplate tpl: ctx.getTemplates().values()) {
+            ((Template) tpl).getProgram(ctx);
+        }
+        return new CTMHeader(ctx.getPrefixes(), ctx.getTemplates());
+    }
+
+    /**
+     * Returns the prefixes of the header.
+     *
+     * @return An immutable map of prefixes to IRIs.
+     */
+    public Map<String, String> getPrefixes() {
+        return _prefixes;
+    }
+
+    /**
+     * Returns the names of the templates of the header.
+     *
+     * @return An immutable set of <tt>name/arity</tt> strings.
+     */
+    public Set<String> getTemplateNames() {
+        return _templates.keySet();
+    }
+
+    /**
+     * Returns the template with the provided key.
+     *
+     * @param key The <tt>name/arity</tt> of the template.
+     * @return The template or {@code null} if no such template exists.
+     */
+    ITemplate getTemplate(final String key) {
+        return _templates.get(key);
+    }
+
+}
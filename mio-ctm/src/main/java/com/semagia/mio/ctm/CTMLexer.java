@@ -22,22 +22,31 @@ import java.io.Reader;
 
 import com.semagia.mio.MIOException;
 import com.semagia.mio.ctm.RealCTMParser.yyInput;
+import com.semagia.mio.utils.PositionReader;
 
 /**
  * CTM lexer which provides the API which the parser expects.
  * 
  * This class is used to keep the (JFlex) lexer independent of the (Jay) parser.
  * 
+ * The lexer does not track lines and columns; the position of the current
+ * token is computed on demand (usually in case of an error).
+ * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev: 606 $ - $Date: 2011-01-20 00:48:46 +0100 (Do, 20 Jan 2011) $
  */
-final class CTMLexer extends RealCTMLexer implements yyInput {
+final class CTMLexer extends RealCTMFastLexer implements yyInput {
 
     /**
      * Current token identifier.
      */
     private int _current;
 
+    /**
+     * Computes the position of the current token.
+     */
+    private final PositionReader _reader;
+
     /**
      * 
      *
@@ -53,7 +62,12 @@ final class CTMLexer extends RealCTMLexer implements yyInput {
      * @param reader
      */
     public CTMLexer(final Reader reader) {
+        this(new PositionReader(reader));
+    }
+
+    private CTMLexer(final PositionReader reader) {
         super(reader);
+        _reader = reader;
     }
 
     /* (non-Javadoc)
@@ -62,15 +76,33 @@ final class CTMLexer extends RealCTMLexer implements yyInput {
     @Override
     public boolean advance() throws IOException, MIOException {
         _current = super.token();
-        return _current != RealCTMLexer.EOF;
+        // The parser asks only for the position of the current token
+        _reader.release(getOffset());
+        return _current != RealCTMFastLexer.EOF;
     }
 
     /* (non-Javadoc)
-     * @see com.semagia.mio.ctm.RealCTMLexer#token()
+     * @see com.semagia.mio.ctm.RealCTMFastLexer#token()
      */
     @Override
     public int token() {
         return _current;
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ctm.RealCTMFastLexer#getLine()
+     */
+    @Override
+    public int getLine() {
+        return _reader.getLine(getOffset()) + 1;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ctm.RealCTMFastLexer#getColumn()
+     */
+    @Override
+    public int getColumn() {
+        return _reader.getColumn(getOffset());
+    }
+
 }
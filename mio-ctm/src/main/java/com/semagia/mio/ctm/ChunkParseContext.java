@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import com.semagia.mio.MIOException;
+
+/**
+ * {@link IParseContext} implementation which is used if a CTM document is
+ * parsed in chunks.
+ * <p>
+ * The main context receives the directives and template definitions, each
+ * chunk is parsed with a copy of the main context. The wildcard identifiers
+ * do not depend on the order in which the chunks are parsed:
+ * Anonymous wildcards are numbered per chunk
+ * (<tt>$__</tt><i>chunk</i><tt>_</tt><i>n</i>) and named wildcards get the
+ * same identifier (<tt>$__.</tt><i>name</i>) in all chunks.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class ChunkParseContext extends AbstractParseContext {
+
+    private final String _wildcardPrefix;
+
+    /**
+     * The wildcard counter.
+     */
+    private int _wildcardCounter;
+
+    /**
+     * Creates the main context.
+     */
+    ChunkParseContext() {
+        super();
+        _wildcardPrefix = "$__";
+    }
+
+    /**
+     * Creates a context for a chunk.
+     *
+     * @param ctx The main context.
+     * @param chunk The number of the chunk, must be greater than zero.
+     */
+    ChunkParseContext(final ChunkParseContext ctx, final int chunk) {
+        super(ctx);
+        if (chunk < 1) {
+            throw new IllegalArgumentException("The chunk number must be greater than zero");
+        }
+        _wildcardPrefix = "$__" + chunk + "_";
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ctm.AbstractParseContext#getTopicByWildcard(java.lang.String)
+     */
+    @Override
+    public IReference getTopicByWildcard(final String name) throws MIOException {
+        return name == null ? super.getTopicByWildcard(null)
+                            : resolveWildcardIdentifier("$__." + name);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ctm.IParseContext#makeNextWildcardId(java.lang.String)
+     */
+    @Override
+    public String makeNextWildcardId(final String name) {
+        _wildcardCounter++;
+        final StringBuilder sb = new StringBuilder(_wildcardPrefix).append(_wildcardCounter);
+        if (name != null) {
+            sb.append('.');
+            sb.append(name);
+        }
+        return sb.toString();
+    }
+
+}
@@ -86,11 +86,4 @@ interface IParseContext {
 
     public void setPrefixListener(IPrefixListener listener);
 
-    public ITemplateContext createTemplateContext(IReference[] _args,
-            IReference[] _bindings) throws MIOException;
-
-    public void pushTemplateContext(ITemplateContext ctx) throws MIOException;
-
-    public void popTemplateContext() throws MIOException;
-
 }
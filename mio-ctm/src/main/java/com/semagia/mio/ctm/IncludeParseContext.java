@@ -15,6 +15,11 @@
  */
 package com.semagia.mio.ctm;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import com.semagia.mio.MIOException;
 
 /**
@@ -24,6 +29,10 @@ import com.semagia.mio.MIOException;
  * Further, all templates registered within this context are made available
  * within the parent context as well.
  * 
+ * The context records the templates and prefixes which have been registered
+ * and if the included source depends on the parent context (i.e. if it uses
+ * wildcards), see {@link #getState()} and {@link #isContextDependent()}.
+ * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  */
 final class IncludeParseContext extends AbstractParseContext {
@@ -32,6 +41,9 @@ final class IncludeParseContext extends AbstractParseContext {
      * The parent context.
      */
     private final IParseContext _parent;
+    private final List<ITemplate> _templates;
+    private final Map<String, String> _prefixes;
+    private boolean _contextDependent;
 
     /**
      * Creates a new instance with the provided parent which is
@@ -45,6 +57,42 @@ final class IncludeParseContext extends AbstractParseContext {
             throw new IllegalArgumentException("The parent parse context must not be null");
         }
         _parent = parent;
+        _templates = new ArrayList<ITemplate>();
+        _prefixes = new LinkedHashMap<String, String>();
+    }
+
+    /**
+     * Indicates that the events of the included source depend on the 
+     * parent context.
+     * 
+     * The parent context is marked as well if it is an include context.
+     */
+    void setContextDependent() {
+        _contextDependent = true;
+        if (_parent instanceof IncludeParseContext) {
+            ((IncludeParseContext) _parent).setContextDependent();
+        }
+    }
+
+    /**
+     * Returns if the events of the included source depend on the parent
+     * context. 
+     *
+     * @return {@code true} if the events depend on the parent context, 
+     *          otherwise {@code false}.
+     */
+    boolean isContextDependent() {
+        return _contextDependent;
+    }
+
+    /**
+     * Returns the templates and prefixes which have been registered so far.
+     *
+     * @return The state which can be applied to another include context.
+     */
+    State getState() {
+        return new State(new ArrayList<ITemplate>(_templates), 
+                new LinkedHashMap<String, String>(_prefixes));
     }
 
     /* (non-Javadoc)
@@ -52,6 +100,7 @@ final class IncludeParseContext extends AbstractParseContext {
      */
     @Override
     public String makeNextWildcardId(String name) {
+        setContextDependent();
         return _parent.makeNextWildcardId(name);
     }
 
@@ -60,6 +109,7 @@ final class IncludeParseContext extends AbstractParseContext {
      */
     @Override
     public IReference resolveWildcardIdentifier(String name) {
+        setContextDependent();
         return _parent.resolveWildcardIdentifier(name);
     }
 
@@ -70,6 +120,47 @@ final class IncludeParseContext extends AbstractParseContext {
     public void registerTemplate(final ITemplate template) throws MIOException {
         super.registerTemplate(template);
         _parent.registerTemplate(template);
+        _templates.add(template);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ctm.AbstractParseContext#registerPrefix(java.lang.String, java.lang.String)
+     */
+    @Override
+    public void registerPrefix(final String prefix, final String iri) throws MIOException {
+        super.registerPrefix(prefix, iri);
+        _prefixes.put(prefix, iri);
+    }
+
+
+    /**
+     * The templates and prefixes of an included source.
+     */
+    static final class State {
+
+        private final List<ITemplate> _templates;
+        private final Map<String, String> _prefixes;
+
+        State(final List<ITemplate> templates, final Map<String, String> prefixes) {
+            _templates = templates;
+            _prefixes = prefixes;
+        }
+
+        /**
+         * Registers the prefixes and templates at the provided context.
+         *
+         * @param ctx The context of the including source.
+         * @throws MIOException In case of a template or prefix conflict.
+         */
+        void apply(final IncludeParseContext ctx) throws MIOException {
+            for (Map.Entry<String, String> prefix: _prefixes.entrySet()) {
+                ctx.registerPrefix(prefix.getKey(), prefix.getValue());
+            }
+            for (ITemplate template: _templates) {
+                ctx.registerTemplate(template);
+            }
+        }
+
     }
 
 }
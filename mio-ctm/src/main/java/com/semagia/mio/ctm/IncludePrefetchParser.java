@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.semagia.mio.DeserializerRegistry;
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.IRIContext;
+import com.semagia.mio.IResourceResolver;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.Syntax;
+import com.semagia.mio.helpers.IncludeCache;
+import com.semagia.mio.helpers.IncludePrefetcher;
+import com.semagia.mio.helpers.Locator;
+import com.semagia.mio.helpers.RecordingMapHandler;
+
+/**
+ * Parses included and merged topic maps on behalf of the
+ * {@link IncludePrefetcher}.
+ * <p>
+ * An included CTM source is parsed with an {@link IncludeParseContext}
+ * which is detached from the including source. If the included source
+ * depends on the including source (i.e. it uses wildcards), no events are
+ * returned and the source is parsed again by the including parser. The
+ * same applies if a source which was included by the source cannot be
+ * fingerprinted.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class IncludePrefetchParser implements IncludePrefetcher.IParser {
+
+    /**
+     * Kinds of sources.
+     */
+    static final int
+        INCLUDE = 0,
+        MERGEMAP_CTM = 1,
+        MERGEMAP_XTM = 2;
+
+    private final int _kind;
+    private final Locator _docIRI;
+    private final Set<Locator> _includedBy;
+    private final IResourceResolver _resolver;
+    private final IncludeCache _cache;
+
+    /**
+     * Creates a parser.
+     *
+     * @param kind The kind of the source.
+     * @param docIRI The IRI of the including source.
+     * @param includedBy The sources which include the including source or
+     *          {@code null}.
+     * @param resolver The resolver or {@code null}.
+     * @param cache The cache or {@code null}.
+     */
+    IncludePrefetchParser(final int kind, final Locator docIRI, final Set<Locator> includedBy,
+            final IResourceResolver resolver, final IncludeCache cache) {
+        _kind = kind;
+        _docIRI = docIRI;
+        _includedBy = new HashSet<Locator>();
+        if (includedBy != null) {
+            _includedBy.addAll(includedBy);
+        }
+        _includedBy.add(docIRI);
+        _resolver = resolver;
+        _cache = cache;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.IncludePrefetcher.IParser#parse(java.lang.String, byte[], java.lang.String)
+     */
+    @Override
+    public IncludeCache.Entry parse(final String iri, final byte[] data,
+            final String fingerprint) throws IOException, MIOException {
+        final IDeserializer deser;
+        IncludeParseContext ctx = null;
+        if (_kind == MERGEMAP_XTM) {
+            deser = DeserializerRegistry.getInstance().createDeserializer(Syntax.XTM);
+            if (deser == null) {
+                return null;
+            }
+        }
+        else {
+            final CTMDeserializer ctmDeser = new CTMDeserializer();
+            if (_kind == INCLUDE) {
+                final ParseContext parent = new ParseContext();
+                parent.setDocumentIRI(_docIRI);
+                ctx = new IncludeParseContext(parent);
+                ctmDeser.setParseContext(ctx);
+                ctmDeser.setIncludedBy(_includedBy);
+            }
+            deser = ctmDeser;
+        }
+        final IRIContext iris = new IRIContext();
+        iris.addIRI(iri);
+        final RecordingMapHandler events = new RecordingMapHandler();
+        deser.setSubordinate(true);
+        deser.setIRIContext(iris);
+        deser.setMapHandler(events);
+        deser.setProperty(Property.RESOURCE_RESOLVER, _resolver);
+        deser.setProperty(Property.INCLUDE_CACHE, _cache);
+        deser.parse(new Source(new ByteArrayInputStream(data), iri));
+        if (ctx != null && ctx.isContextDependent()) {
+            return null;
+        }
+        final Set<String> loaded = new HashSet<String>(iris.getIRIs());
+        loaded.remove(iri);
+        final Map<String, String> fingerprints = IncludeCache.fingerprints(loaded, _resolver);
+        if (fingerprints == null) {
+            return null;
+        }
+        return new IncludeCache.Entry(fingerprint, events, fingerprints, null,
+                ctx != null ? ctx.getState() : null);
+    }
+
+}
@@ -45,6 +45,7 @@ final class Reference implements IReference {
     static final IReference 
         CTM_INTEGER = create("*", CTMUtils.CTM_INTEGER),
         TOPIC_NAME = createIRI(TMDM.TOPIC_NAME),
+        SKIPPED_STRING = createString(""),
         TOPIC_IN_FOCUS = new Reference(FOCUS, null);
 
     private final int _type;
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * {@link Reader} which returns the segments of a {@link StatementSplitter}.
+ * <p>
+ * The reader keeps up to <code>window</code> characters ahead of the
+ * consumer, so the directive handler of the splitter receives the 
+ * directives before the consumer reaches them. At most 
+ * <code>window</code> characters plus one segment are kept in memory.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class SplitterReader extends Reader {
+
+    private final StatementSplitter _splitter;
+    private final int _window;
+    private final StringBuilder _buffer;
+    private int _pos;
+    private boolean _eof;
+
+    /**
+     * Creates a reader.
+     *
+     * @param splitter The splitter to read the segments from.
+     * @param window The number of characters to read ahead.
+     */
+    SplitterReader(final StatementSplitter splitter, final int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("The window must be greater than zero");
+        }
+        _splitter = splitter;
+        _window = window;
+        _buffer = new StringBuilder();
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Reader#read(char[], int, int)
+     */
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        _fill();
+        final int available = _buffer.length() - _pos;
+        if (available == 0) {
+            return -1;
+        }
+        final int n = Math.min(len, available);
+        _buffer.getChars(_pos, _pos + n, cbuf, off);
+        _pos += n;
+        return n;
+    }
+
+    /**
+     * Reads segments until <code>window</code> characters are available
+     * or the end of the document was reached.
+     */
+    private void _fill() throws IOException {
+        while (!_eof && _buffer.length() - _pos < _window) {
+            if (_splitter.next() == StatementSplitter.END) {
+                _eof = true;
+            }
+            else {
+                _buffer.delete(0, _pos);
+                _pos = 0;
+                _buffer.append(_splitter.getSegment());
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Reader#close()
+     */
+    @Override
+    public void close() throws IOException {
+        _buffer.setLength(0);
+        _pos = 0;
+        _eof = true;
+    }
+
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Splits a CTM document at top-level statement boundaries into segments.
+ * <p>
+ * A {@link #CONTEXT} segment contains directives, template definitions
+ * and the topic map reifier. These statements change the parse context and
+ * have to be parsed in document order. A {@link #BODY} segment contains
+ * topic blocks, associations and template invocations which are terminated
+ * by a <tt>.</tt>; these segments can be parsed independently of each other
+ * if the parse context of the preceding context segments is available.
+ * </p>
+ * <p>
+ * The splitter recognizes strings, IRIs, comments, identifiers and numbers
+ * just good enough to find the statement boundaries, it does not validate
+ * the document. Syntax errors are reported by the parser.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class StatementSplitter {
+
+    /**
+     * Indicates the end of the document.
+     */
+    static final int END = 0;
+
+    /**
+     * Indicates a segment which changes the parse context.
+     */
+    static final int CONTEXT = 1;
+
+    /**
+     * Indicates a segment which consists of topics, associations and
+     * template invocations.
+     */
+    static final int BODY = 2;
+
+    private static final int _EOF = -1;
+
+    // Token types returned by _consumeToken()
+    private static final int _TOKEN_OTHER = 0;
+    private static final int _TOKEN_WORD = 1;
+    private static final int _TOKEN_DOT = 2;
+    private static final int _TOKEN_OPEN = 3;
+    private static final int _TOKEN_CLOSE = 4;
+
+    private final Reader _reader;
+    private final int _chunkSize;
+    private char[] _buffer;
+    private int _pos;
+    private int _limit;
+    private final StringBuilder _segment;
+    private int _kind;
+    private boolean _bodySeen;
+    private String _result;
+    private IDirectiveHandler _directiveHandler;
+
+    /**
+     * Creates a splitter.
+     *
+     * @param reader The reader to read the document from.
+     * @param chunkSize The min. number of characters of a {@link #BODY}
+     *          segment (unless it is followed by a context segment or the
+     *          end of the document).
+     */
+    StatementSplitter(final Reader reader, final int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be greater than zero");
+        }
+        _reader = reader;
+        _chunkSize = chunkSize;
+        _buffer = new char[8192];
+        _segment = new StringBuilder();
+    }
+
+    /**
+     * Sets the handler which receives the directives.
+     *
+     * @param handler The handler or {@code null}.
+     */
+    void setDirectiveHandler(final IDirectiveHandler handler) {
+        _directiveHandler = handler;
+    }
+
+    /**
+     * Reads the next segment.
+     *
+     * @return {@link #CONTEXT}, {@link #BODY} or {@link #END} if the end of
+     *          the document was reached.
+     * @throws IOException In case of an error.
+     */
+    int next() throws IOException {
+        _result = null;
+        while (true) {
+            _skipIgnorable();
+            final int c = _peek(0);
+            if (c == _EOF) {
+                return _kind != END ? _emit() : END;
+            }
+            final int kind = _isContextStatement(c) ? CONTEXT : BODY;
+            if (_kind != END && (kind != _kind || kind == BODY && _segment.length() >= _chunkSize)) {
+                return _emit();
+            }
+            _kind = kind;
+            if (kind == BODY) {
+                _bodySeen = true;
+                _consumeStatement();
+            }
+            else if (c == '%') {
+                _consumeDirective();
+            }
+            else if (c == '~') {
+                _consume();
+                _consumeTopicRef();
+            }
+            else {
+                _consumeTemplateDefinition();
+            }
+        }
+    }
+
+    /**
+     * Returns the segment which was read by {@link #next()}.
+     *
+     * @return The segment.
+     */
+    String getSegment() {
+        return _result;
+    }
+
+    private int _emit() {
+        final int kind = _kind;
+        _result = _segment.toString();
+        _segment.setLength(0);
+        _kind = END;
+        return kind;
+    }
+
+    /**
+     * Returns if the statement which starts with the provided character
+     * belongs to a context segment.
+     */
+    private boolean _isContextStatement(final int c) throws IOException {
+        return c == '%'
+                || c == '~' && !_bodySeen
+                || c == 'd' && _peek(1) == 'e' && _peek(2) == 'f' && _isWordEnd(3);
+    }
+
+    private void _consumeStatement() throws IOException {
+        int depth = 0;
+        while (true) {
+            switch (_consumeToken()) {
+                case _TOKEN_DOT:
+                    if (depth == 0) {
+                        return;
+                    }
+                    break;
+                case _TOKEN_OPEN: depth++; break;
+                case _TOKEN_CLOSE: depth--; break;
+                case _EOF: return;
+            }
+        }
+    }
+
+    private void _consumeDirective() throws IOException {
+        final int start = _segment.length();
+        _consumeToken();
+        final String name = _segment.substring(start);
+        final int args = "%prefix".equals(name) || "%mergemap".equals(name) ? 2 : 1;
+        final String[] values = _directiveHandler != null ? new String[args] : null;
+        for (int i=0; i<args; i++) {
+            _skipIgnorable();
+            final int argStart = _segment.length();
+            _consumeToken();
+            if (values != null) {
+                values[i] = _segment.substring(argStart);
+            }
+        }
+        if (_directiveHandler != null) {
+            _directiveHandler.handleDirective(name, values);
+        }
+    }
+
+    private void _consumeTopicRef() throws IOException {
+        _skipIgnorable();
+        final int c = _peek(0);
+        if (c == '=' || c == '^') {
+            _consume();
+            _consumeToken();
+        }
+        else if (c == '[') {
+            int depth = 0;
+            do {
+                final int token = _consumeToken();
+                if (token == _TOKEN_OPEN) {
+                    depth++;
+                }
+                else if (token == _TOKEN_CLOSE) {
+                    depth--;
+                }
+                else if (token == _EOF) {
+                    break;
+                }
+            } while (depth > 0);
+        }
+        else {
+            _consumeToken();
+        }
+    }
+
+    private void _consumeTemplateDefinition() throws IOException {
+        while (true) {
+            _skipIgnorable();
+            final int start = _segment.length();
+            final int token = _consumeToken();
+            if (token == _EOF
+                    || token == _TOKEN_WORD && _segment.length() - start == 3
+                        && "end".contentEquals(_segment.subSequence(start, start + 3))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Consumes the next token and returns its type.
+     */
+    private int _consumeToken() throws IOException {
+        _skipIgnorable();
+        final int c = _peek(0);
+        switch (c) {
+            case _EOF:
+                return _EOF;
+            case '"':
+                _consumeString();
+                return _TOKEN_OTHER;
+            case '<':
+                _consumeUntil('>');
+                return _TOKEN_OTHER;
+            case '(':
+            case '[':
+                _consume();
+                return _TOKEN_OPEN;
+            case ')':
+            case ']':
+                _consume();
+                return _TOKEN_CLOSE;
+            case '.':
+                if (!_isDigit(_peek(1))) {
+                    _consume();
+                    return _TOKEN_DOT;
+                }
+                _consumeWord();
+                return _TOKEN_WORD;
+            default:
+                if (_isWordChar(c) || c == '%' || c == '$' || c == '?') {
+                    _consume();
+                    _consumeWord();
+                    return _TOKEN_WORD;
+                }
+                _consume();
+                return _TOKEN_OTHER;
+        }
+    }
+
+    /**
+     * Consumes identifiers, QNames, numbers, dates and IRIs like
+     * <tt>http://www.example.org/</tt>.
+     */
+    private void _consumeWord() throws IOException {
+        while (true) {
+            final int c = _peek(0);
+            if (c == ':' && _peek(1) == '/' && _peek(2) == '/') {
+                _consumeIRI();
+                return;
+            }
+            if (c == '.') {
+                int i = 1;
+                while (_peek(i) == '.') {
+                    i++;
+                }
+                if (!_isWordChar(_peek(i))) {
+                    return;
+                }
+                while (i-- > 0) {
+                    _consume();
+                }
+            }
+            else if (_isWordChar(c)) {
+                _consume();
+            }
+            else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Consumes the remaining part of an IRI, starting with <tt>://</tt>.
+     * An IRI must not end with <tt>.</tt>, <tt>;</tt> or <tt>)</tt>.
+     */
+    private void _consumeIRI() throws IOException {
+        _consume();
+        _consume();
+        _consume();
+        while (true) {
+            int i = 0;
+            while (_isIRIDelimiter(_peek(i))) {
+                i++;
+            }
+            if (!_isIRIChar(_peek(i))) {
+                return;
+            }
+            while (i-- > 0) {
+                _consume();
+            }
+            while (_isIRIChar(_peek(0))) {
+                _consume();
+            }
+        }
+    }
+
+    private void _consumeString() throws IOException {
+        _consume();
+        if (_peek(0) == '"' && _peek(1) == '"') {
+            _consume();
+            _consume();
+            while (_peek(0) != _EOF && !(_peek(0) == '"' && _peek(1) == '"' && _peek(2) == '"')) {
+                _consume();
+            }
+            _consume();
+            _consume();
+            _consume();
+            return;
+        }
+        while (true) {
+            final int c = _consume();
+            if (c == '\\') {
+                _consume();
+            }
+            else if (c == '"' || c == _EOF) {
+                return;
+            }
+        }
+    }
+
+    private void _consumeUntil(final char end) throws IOException {
+        int c;
+        do {
+            c = _consume();
+        } while (c != end && c != _EOF);
+    }
+
+    /**
+     * Skips whitespace and comments.
+     */
+    private void _skipIgnorable() throws IOException {
+        while (true) {
+            final int c = _peek(0);
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f') {
+                _consume();
+            }
+            else if (c == '#') {
+                _consume();
+                if (_peek(0) == '(') {
+                    _consume();
+                    int depth = 1;
+                    while (depth > 0 && _peek(0) != _EOF) {
+                        if (_peek(0) == '#' && _peek(1) == '(') {
+                            _consume();
+                            depth++;
+                        }
+                        else if (_peek(0) == ')' && _peek(1) == '#') {
+                            _consume();
+                            depth--;
+                        }
+                        _consume();
+                    }
+                }
+                else {
+                    while (_peek(0) != '\r' && _peek(0) != '\n' && _peek(0) != _EOF) {
+                        _consume();
+                    }
+                }
+            }
+            else {
+                return;
+            }
+        }
+    }
+
+    private boolean _isWordEnd(final int offset) throws IOException {
+        int i = offset;
+        while (_peek(i) == '.') {
+            i++;
+        }
+        return !_isWordChar(_peek(i));
+    }
+
+    private static boolean _isWordChar(final int c) {
+        return c >= 'a' && c <= 'z'
+                || c >= 'A' && c <= 'Z'
+                || _isDigit(c)
+                || c == '_' || c == '-' || c == '+' || c == ':'
+                || c >= 0x80;
+    }
+
+    private static boolean _isDigit(final int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean _isIRIDelimiter(final int c) {
+        return c == ';' || c == '.' || c == ')';
+    }
+
+    private static boolean _isIRIChar(final int c) {
+        return c != _EOF && c != ' ' && c != '\t' && c != '\r' && c != '\n'
+                && c != ';' && c != ']' && c != '.' && c != '(' && c != ')';
+    }
+
+    /**
+     * Appends the current character to the segment and advances.
+     *
+     * @return The consumed character or {@link #_EOF}.
+     */
+    private int _consume() throws IOException {
+        final int c = _peek(0);
+        if (c != _EOF) {
+            _segment.append((char) c);
+            _pos++;
+        }
+        return c;
+    }
+
+    /**
+     * Returns the character at the provided offset without consuming it.
+     */
+    private int _peek(final int offset) throws IOException {
+        while (_pos + offset >= _limit) {
+            if (_pos > 0) {
+                System.arraycopy(_buffer, _pos, _buffer, 0, _limit - _pos);
+                _limit -= _pos;
+                _pos = 0;
+            }
+            if (_limit == _buffer.length) {
+                _buffer = Arrays.copyOf(_buffer, _buffer.length * 2);
+            }
+            final int read = _reader.read(_buffer, _limit, _buffer.length - _limit);
+            if (read == -1) {
+                return _EOF;
+            }
+            _limit += read;
+        }
+        return _buffer[_pos + offset];
+    }
+
+
+    /**
+     * Receives the directives which are found by the splitter.
+     */
+    static interface IDirectiveHandler {
+
+        /**
+         * Called if a directive was found.
+         *
+         * @param name The name of the directive, i.e. <tt>%include</tt>.
+         * @param args The arguments as they occur in the document.
+         */
+        public void handleDirective(String name, String[] args);
+
+    }
+
+}
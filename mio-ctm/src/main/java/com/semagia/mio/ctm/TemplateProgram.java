@@ -0,0 +1,534 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.ctm.TemplateScopeHandler.Template;
+import com.semagia.mio.helpers.Literal;
+import com.semagia.mio.helpers.SimpleMapHandler;
+
+/**
+ * Executable form of a CTM template.
+ * <p>
+ * A program is a flat sequence of operations. The operands of the
+ * operations are either constants which were resolved when the template
+ * was defined or indexes into an array of slots which keeps the arguments
+ * and the wildcards of one execution. The bodies of invoked templates are
+ * inlined into the program of the invoking template; only recursive and
+ * deeply nested invocations are executed as separate programs.
+ * </p>
+ * <p>
+ * Programs are immutable and may be executed concurrently.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class TemplateProgram {
+
+    /**
+     * Operations.
+     */
+    static final byte
+        START_TOPIC = 1, END_TOPIC = 2,
+        START_ASSOCIATION = 3, END_ASSOCIATION = 4,
+        ROLE = 5,
+        START_OCCURRENCE = 6, END_OCCURRENCE = 7,
+        START_NAME = 8, END_NAME = 9,
+        START_VARIANT = 10, END_VARIANT = 11,
+        START_SCOPE = 12, END_SCOPE = 13,
+        THEME = 14,
+        REIFIER = 15,
+        VALUE = 16,
+        NAME_VALUE = 17,
+        SID = 18,
+        VSID = 19,
+        SLO = 20,
+        VSLO = 21,
+        IID = 22,
+        VIID = 23,
+        ISA = 24,
+        AKO = 25,
+        TEMPLATE_INVOCATION = 26,
+        // Binds the arguments of an inlined template invocation
+        BIND = 27
+    ;
+
+    /**
+     * Operand kinds, an operand is encoded as <tt>(index << 3) | kind</tt>.
+     */
+    static final int
+        CONSTANT = 0,
+        PARAM = 1,
+        PARAM_IID = 2,
+        PARAM_SLO = 3,
+        WILDCARD = 4,
+        FOCUS = 5,
+        // The index points to a constant error message
+        INVALID = 6;
+
+    /**
+     * Operand which indicates a missing (optional) value.
+     */
+    static final int NONE = -1;
+
+    private static final int _KIND_BITS = 3;
+    private static final int _KIND_MASK = 7;
+
+    /**
+     * Max. depth of inlined template invocations.
+     */
+    private static final int _MAX_INLINE_DEPTH = 8;
+
+    /**
+     * Template invocations are not inlined if the program has more
+     * operations.
+     */
+    private static final int _MAX_INLINE_SIZE = 4096;
+
+    private final byte[] _ops;
+    private final int[] _operands;
+    private final Object[] _constants;
+    private final String[] _wildcards;
+    private final Invocation[] _invocations;
+
+    private TemplateProgram(final byte[] ops, final int[] operands, final Object[] constants,
+            final String[] wildcards, final Invocation[] invocations) {
+        _ops = ops;
+        _operands = operands;
+        _constants = constants;
+        _wildcards = wildcards;
+        _invocations = invocations;
+    }
+
+    static int operand(final int kind, final int index) {
+        return (index << _KIND_BITS) | kind;
+    }
+
+    /**
+     * Returns the number of operands of the provided operation.
+     * <p>
+     * The number of operands of {@link #BIND} and
+     * {@link #TEMPLATE_INVOCATION} is variable, this method returns 0.
+     * </p>
+     *
+     * @param op The operation.
+     * @return The number of operands.
+     */
+    static int operandCount(final byte op) {
+        switch (op) {
+            case ROLE:
+                return 3;
+            case START_TOPIC:
+            case START_ASSOCIATION:
+            case START_OCCURRENCE:
+            case START_NAME:
+            case THEME:
+            case REIFIER:
+            case VALUE:
+            case NAME_VALUE:
+            case SID:
+            case VSID:
+            case SLO:
+            case VSLO:
+            case IID:
+            case VIID:
+            case ISA:
+            case AKO:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Creates the program of the provided template.
+     * <p>
+     * The invoked templates are looked up in the provided context.
+     * </p>
+     *
+     * @param tpl The template.
+     * @param ctx The context to look up the invoked templates.
+     * @return The program.
+     * @throws MIOException If an invoked template does not exist.
+     */
+    static TemplateProgram link(final Template tpl, final IParseContext ctx) throws MIOException {
+        final Linker linker = new Linker(ctx);
+        linker.allocate(tpl);
+        linker.emit(tpl, 0);
+        return linker.toProgram();
+    }
+
+    /**
+     * Returns a new array of slots for one execution of this program.
+     *
+     * @return An array of slots.
+     */
+    IReference[] createSlots() {
+        return new IReference[_wildcards.length];
+    }
+
+    /**
+     * Executes the program.
+     *
+     * @param ctx The parse context.
+     * @param slots The slots, the first slots keep the arguments of
+     *          the template.
+     * @param outerFocus The topic in focus of the invoking template or
+     *          {@code null}.
+     * @throws MIOException In case of an error.
+     */
+    void execute(final IParseContext ctx, final IReference[] slots,
+            final IReference outerFocus) throws MIOException {
+        final SimpleMapHandler handler = ctx.getMapHandler();
+        final byte[] ops = _ops;
+        final int[] operands = _operands;
+        IReference[] focus = new IReference[4];
+        int focusIdx = 0;
+        focus[0] = outerFocus;
+        int offset = 0;
+        int invocationIdx = 0;
+        for (int i=0; i<ops.length; i++) {
+            switch (ops[i]) {
+                case START_TOPIC:
+                    final IReference identity = _resolve(ctx, operands[offset++], slots, focus[focusIdx]);
+                    if (focus.length == focusIdx+1) {
+                        IReference[] topics = new IReference[focus.length*2];
+                        System.arraycopy(focus, 0, topics, 0, focus.length);
+                        focus = topics;
+                    }
+                    focusIdx++;
+                    focus[focusIdx] = identity;
+                    handler.startTopic(identity);
+                    break;
+                case END_TOPIC:
+                    focus[focusIdx] = null;
+                    focusIdx--;
+                    handler.endTopic();
+                    break;
+                case START_ASSOCIATION:
+                    handler.startAssociation(_resolve(ctx, operands[offset++], slots, focus[focusIdx]));
+                    break;
+                case END_ASSOCIATION:
+                    handler.endAssociation();
+                    break;
+                case ROLE:
+                    handler.startRole(_resolve(ctx, operands[offset++], slots, focus[focusIdx]));
+                    handler.player(_resolve(ctx, operands[offset++], slots, focus[focusIdx]));
+                    final int reifier = operands[offset++];
+                    if (reifier != NONE) {
+                        handler.reifier(_resolve(ctx, reifier, slots, focus[focusIdx]));
+                    }
+                    handler.endRole();
+                    break;
+                case START_OCCURRENCE:
+                    handler.startOccurrence(_resolve(ctx, operands[offset++], slots, focus[focusIdx]));
+                    break;
+                case END_OCCURRENCE:
+                    handler.endOccurrence();
+                    break;
+                case START_NAME:
+                    handler.startName(_resolve(ctx, operands[offset++], slots, focus[focusIdx]));
+                    break;
+                case END_NAME:
+                    handler.endName();
+                    break;
+                case START_VARIANT:
+                    handler.startVariant();
+                    break;
+                case END_VARIANT:
+                    handler.endVariant();
+                    break;
+                case START_SCOPE:
+                    handler.startScope();
+                    break;
+                case END_SCOPE:
+                    handler.endScope();
+                    break;
+                case ISA:
+                    handler.isa(_resolve(ctx, operands[offset++], slots, focus[focusIdx]));
+                    break;
+                case AKO:
+                    handler.ako(focus[focusIdx], _resolve(ctx, operands[offset++], slots, focus[focusIdx]));
+                    break;
+                case REIFIER:
+                    handler.reifier(_resolve(ctx, operands[offset++], slots, focus[focusIdx]));
+                    break;
+                case THEME:
+                    handler.theme(_resolve(ctx, operands[offset++], slots, focus[focusIdx]));
+                    break;
+                case VALUE:
+                    Literal lit = _literal(operands[offset++], slots);
+                    handler.value(lit.getValue(), lit.getDatatype());
+                    break;
+                case NAME_VALUE:
+                    lit = _literal(operands[offset++], slots);
+                    handler.value(lit.getValue());
+                    break;
+                case SID:
+                    handler.subjectIdentifier((String) _constants[operands[offset++] >>> _KIND_BITS]);
+                    break;
+                case VSID:
+                    final IReference sid = _resolve(ctx, operands[offset++], slots, focus[focusIdx]);
+                    if (sid.getType() != IRef.SUBJECT_IDENTIFIER) {
+                        throw new MIOException("Expected an IRI, got: " + sid);
+                    }
+                    handler.subjectIdentifier(sid.getIRI());
+                    break;
+                case SLO:
+                    handler.subjectLocator((String) _constants[operands[offset++] >>> _KIND_BITS]);
+                    break;
+                case VSLO:
+                    handler.subjectLocator(_resolve(ctx, operands[offset++], slots, focus[focusIdx]).getIRI());
+                    break;
+                case IID:
+                    handler.itemIdentifier((String) _constants[operands[offset++] >>> _KIND_BITS]);
+                    break;
+                case VIID:
+                    handler.itemIdentifier(_resolve(ctx, operands[offset++], slots, focus[focusIdx]).getIRI());
+                    break;
+                case BIND:
+                    final int base = operands[offset++];
+                    final int count = operands[offset++];
+                    for (int j=0; j<count; j++) {
+                        slots[base+j] = _resolve(ctx, operands[offset++], slots, focus[focusIdx]);
+                    }
+                    break;
+                case TEMPLATE_INVOCATION:
+                    _invocations[invocationIdx].execute(this, ctx, slots, focus[focusIdx]);
+                    invocationIdx++;
+                    break;
+                default:
+                    throw new MIOException("Internal error: Unexpected operation '" + ops[i] + "'");
+            }
+        }
+    }
+
+    /**
+     * Resolves the provided operand to a topic reference or to an
+     * argument of a template invocation.
+     */
+    private IReference _resolve(final IParseContext ctx, final int operand,
+            final IReference[] slots, final IReference focus) throws MIOException {
+        final int idx = operand >>> _KIND_BITS;
+        switch (operand & _KIND_MASK) {
+            case CONSTANT:
+                return (IReference) _constants[idx];
+            case PARAM:
+                return slots[idx];
+            case PARAM_IID:
+                return Reference.createIID(slots[idx].getIRI());
+            case PARAM_SLO:
+                return Reference.createSLO(slots[idx].getIRI());
+            case WILDCARD:
+                IReference ref = slots[idx];
+                if (ref == null) {
+                    ref = ctx.resolveWildcardIdentifier(ctx.makeNextWildcardId(_wildcards[idx]));
+                    slots[idx] = ref;
+                }
+                return ref;
+            case FOCUS:
+                return focus;
+            default:
+                throw new MIOException((String) _constants[idx]);
+        }
+    }
+
+    /**
+     * Resolves the provided operand to a literal.
+     */
+    private Literal _literal(final int operand, final IReference[] slots) throws MIOException {
+        final int idx = operand >>> _KIND_BITS;
+        switch (operand & _KIND_MASK) {
+            case CONSTANT:
+                return (Literal) _constants[idx];
+            case PARAM:
+                final IReference ref = slots[idx];
+                if (ref.isIRI()) {
+                    return Literal.createIRI(ref.getIRI());
+                }
+                if (!(ref.getValue() instanceof Literal)) {
+                    throw new MIOException("Expected a literal, got: " + ref);
+                }
+                return ref.getLiteral();
+            default:
+                throw new MIOException((String) _constants[idx]);
+        }
+    }
+
+
+    /**
+     * A template invocation which is not inlined.
+     */
+    private static final class Invocation {
+
+        private final Template _tpl;
+        private final int[] _args;
+
+        Invocation(final Template tpl, final int[] args) {
+            _tpl = tpl;
+            _args = args;
+        }
+
+        void execute(final TemplateProgram caller, final IParseContext ctx,
+                final IReference[] callerSlots, final IReference focus) throws MIOException {
+            final TemplateProgram program = _tpl.getProgram(ctx);
+            final IReference[] slots = program.createSlots();
+            for (int i=0; i<_args.length; i++) {
+                slots[i] = caller._resolve(ctx, _args[i], callerSlots, focus);
+            }
+            program.execute(ctx, slots, focus);
+        }
+    }
+
+
+    /**
+     * Creates a program from a template and inlines the invoked templates.
+     */
+    private static final class Linker {
+
+        private final IParseContext _ctx;
+        private final List<Template> _stack;
+        private final List<Object> _constants;
+        private final List<String> _wildcards;
+        private final List<Invocation> _invocations;
+        private byte[] _ops;
+        private int[] _operands;
+        private int _opSize;
+        private int _operandSize;
+
+        Linker(final IParseContext ctx) {
+            _ctx = ctx;
+            _stack = new ArrayList<Template>();
+            _constants = new ArrayList<Object>();
+            _wildcards = new ArrayList<String>();
+            _invocations = new ArrayList<Invocation>();
+            _ops = new byte[32];
+            _operands = new int[32];
+        }
+
+        /**
+         * Allocates the slots of the provided template.
+         *
+         * @return The index of the first slot.
+         */
+        int allocate(final Template tpl) {
+            final int base = _wildcards.size();
+            for (int i=0; i<tpl.getArity(); i++) {
+                _wildcards.add(null);
+            }
+            for (String name: tpl._wildcards) {
+                _wildcards.add(name);
+            }
+            return base;
+        }
+
+        /**
+         * Appends the operations of the template to the program.
+         *
+         * @param tpl The template.
+         * @param slotBase The index of the first slot of the template.
+         */
+        void emit(final Template tpl, final int slotBase) throws MIOException {
+            final int constBase = _constants.size();
+            for (Object constant: tpl._constants) {
+                _constants.add(constant);
+            }
+            _stack.add(tpl);
+            int offset = 0;
+            int invocationIdx = 0;
+            for (byte op: tpl._ops) {
+                if (op != TEMPLATE_INVOCATION) {
+                    _addOp(op);
+                    for (int i=operandCount(op); i>0; i--) {
+                        _addOperand(_relocate(tpl._operands[offset++], slotBase, constBase));
+                    }
+                    continue;
+                }
+                final Template.Invocation invocation = tpl._invocations[invocationIdx++];
+                final Template callee = (Template) _ctx.getTemplate(invocation._name, invocation._args.length);
+                final int[] args = new int[invocation._args.length];
+                for (int i=0; i<args.length; i++) {
+                    args[i] = _relocate(invocation._args[i], slotBase, constBase);
+                }
+                if (_stack.contains(callee) || _stack.size() >= _MAX_INLINE_DEPTH
+                        || _opSize >= _MAX_INLINE_SIZE) {
+                    _addOp(TEMPLATE_INVOCATION);
+                    _invocations.add(new Invocation(callee, args));
+                    continue;
+                }
+                final int base = allocate(callee);
+                _addOp(BIND);
+                _addOperand(base);
+                _addOperand(args.length);
+                for (int arg: args) {
+                    _addOperand(arg);
+                }
+                emit(callee, base);
+            }
+            _stack.remove(_stack.size()-1);
+        }
+
+        TemplateProgram toProgram() {
+            final byte[] ops = new byte[_opSize];
+            System.arraycopy(_ops, 0, ops, 0, _opSize);
+            final int[] operands = new int[_operandSize];
+            System.arraycopy(_operands, 0, operands, 0, _operandSize);
+            return new TemplateProgram(ops, operands, _constants.toArray(),
+                    _wildcards.toArray(new String[_wildcards.size()]),
+                    _invocations.toArray(new Invocation[_invocations.size()]));
+        }
+
+        private static int _relocate(final int operand, final int slotBase, final int constBase) {
+            if (operand == NONE) {
+                return NONE;
+            }
+            switch (operand & _KIND_MASK) {
+                case CONSTANT:
+                case INVALID:
+                    return operand + (constBase << _KIND_BITS);
+                case FOCUS:
+                    return operand;
+                default:
+                    return operand + (slotBase << _KIND_BITS);
+            }
+        }
+
+        private void _addOp(final byte op) {
+            if (_ops.length == _opSize) {
+                byte[] ops = new byte[_ops.length*2];
+                System.arraycopy(_ops, 0, ops, 0, _ops.length);
+                _ops = ops;
+            }
+            _ops[_opSize] = op;
+            _opSize++;
+        }
+
+        private void _addOperand(final int operand) {
+            if (_operands.length == _operandSize) {
+                int[] operands = new int[_operands.length*2];
+                System.arraycopy(_operands, 0, operands, 0, _operands.length);
+                _operands = operands;
+            }
+            _operands[_operandSize] = operand;
+            _operandSize++;
+        }
+    }
+
+}
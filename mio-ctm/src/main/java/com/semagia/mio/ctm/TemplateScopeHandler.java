@@ -15,14 +15,14 @@
  */
 package com.semagia.mio.ctm;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import com.semagia.mio.IRef;
 import com.semagia.mio.MIOException;
 import com.semagia.mio.helpers.Literal;
-import com.semagia.mio.helpers.SimpleMapHandler;
-import com.semagia.mio.voc.XSD;
 
 /**
  * {@link IContentHandler} implementation which acts within template definitions
@@ -63,7 +63,8 @@ final class TemplateScopeHandler implements IContentHandler {
     }
 
     public ITemplate dispose() {
-        final ITemplate tpl = _tpl;
+        final Template tpl = _tpl;
+        tpl.trim();
         _ctx = null;
         _tpl = null;
         return tpl;
@@ -71,7 +72,7 @@ final class TemplateScopeHandler implements IContentHandler {
 
     @Override
     public void ako(IReference supertype) throws MIOException {
-        _tpl.add(Template.AKO, supertype);
+        _tpl.add(TemplateProgram.AKO, supertype);
     }
 
     @Override
@@ -80,27 +81,27 @@ final class TemplateScopeHandler implements IContentHandler {
         if (_inTopic) {
             args.add(0, Reference.TOPIC_IN_FOCUS);
         }
-        _tpl.add(new TemplateInvocation(name, args));
+        _tpl.addInvocation(name, args);
     }
 
     @Override
     public void endAssociation() throws MIOException {
-        _tpl.add(Template.END_ASSOCIATION);
+        _tpl.add(TemplateProgram.END_ASSOCIATION);
     }
 
     @Override
     public void endName() throws MIOException {
-        _tpl.add(Template.END_NAME);
+        _tpl.add(TemplateProgram.END_NAME);
     }
 
     @Override
     public void endOccurrence() throws MIOException {
-        _tpl.add(Template.END_OCCURRENCE);
+        _tpl.add(TemplateProgram.END_OCCURRENCE);
     }
 
     @Override
     public void endScope() throws MIOException {
-        _tpl.add(Template.END_SCOPE);
+        _tpl.add(TemplateProgram.END_SCOPE);
     }
 
     @Override
@@ -111,67 +112,67 @@ final class TemplateScopeHandler implements IContentHandler {
     @Override
     public void endTopic() throws MIOException {
         _inTopic = false;
-        _tpl.add(Template.END_TOPIC);
+        _tpl.add(TemplateProgram.END_TOPIC);
     }
 
     @Override
     public void endVariant() throws MIOException {
-        _tpl.add(Template.END_VARIANT);
+        _tpl.add(TemplateProgram.END_VARIANT);
     }
 
     @Override
     public void handleRole(IReference type, IReference player, IReference reifier) throws MIOException {
-        _tpl.add(Template.ROLE, type, player, reifier);
+        _tpl.add(TemplateProgram.ROLE, type, player, reifier);
     }
 
     @Override
     public void identity(IReference ref) throws MIOException {
-        _tpl.add(Template.VSID, ref);
+        _tpl.add(TemplateProgram.VSID, ref);
     }
 
     @Override
     public void isa(IReference type) throws MIOException {
-        _tpl.add(Template.ISA, type);
+        _tpl.add(TemplateProgram.ISA, type);
     }
 
     @Override
     public void itemIdentifier(IReference ref) throws MIOException {
-        _tpl.add(Template.IID, ref);
+        _tpl.add(TemplateProgram.IID, ref);
     }
 
     @Override
     public void itemIdentifierVariable(IReference ref) throws MIOException {
-        _tpl.add(Template.VIID, ref);
+        _tpl.add(TemplateProgram.VIID, ref);
     }
 
     @Override
     public void nameValue(IReference value) throws MIOException {
-        _tpl.add(Template.NAME_VALUE, value);
+        _tpl.add(TemplateProgram.NAME_VALUE, value);
     }
 
     @Override
     public void reifier(IReference reifier) throws MIOException {
-        _tpl.add(Template.REIFIER, reifier);
+        _tpl.add(TemplateProgram.REIFIER, reifier);
     }
 
     @Override
     public void startAssociation(IReference type) throws MIOException {
-        _tpl.add(Template.START_ASSOCIATION, type);
+        _tpl.add(TemplateProgram.START_ASSOCIATION, type);
     }
 
     @Override
     public void startName(IReference type) throws MIOException {
-        _tpl.add(Template.START_NAME, type);
+        _tpl.add(TemplateProgram.START_NAME, type);
     }
 
     @Override
     public void startOccurrence(IReference type) throws MIOException {
-        _tpl.add(Template.START_OCCURRENCE, type);
+        _tpl.add(TemplateProgram.START_OCCURRENCE, type);
     }
 
     @Override
     public void startScope() throws MIOException {
-        _tpl.add(Template.START_SCOPE);
+        _tpl.add(TemplateProgram.START_SCOPE);
     }
 
     @Override
@@ -188,7 +189,7 @@ final class TemplateScopeHandler implements IContentHandler {
     @Override
     public void startTopic(final IReference ref) throws MIOException {
         _inTopic = true;
-        _tpl.add(Template.START_TOPIC, ref);
+        _tpl.add(TemplateProgram.START_TOPIC, ref);
     }
 
     @Override
@@ -204,122 +205,243 @@ final class TemplateScopeHandler implements IContentHandler {
 
     @Override
     public void startVariant() throws MIOException {
-        _tpl.add(Template.START_VARIANT);
+        _tpl.add(TemplateProgram.START_VARIANT);
     }
 
     @Override
     public void subjectIdentifier(IReference ref) throws MIOException {
-        _tpl.add(Template.SID, ref);
+        _tpl.add(TemplateProgram.SID, ref);
     }
 
     @Override
     public void subjectLocator(IReference ref) throws MIOException {
-        _tpl.add(Template.SLO, ref);
+        _tpl.add(TemplateProgram.SLO, ref);
     }
 
     @Override
     public void subjectLocatorVariable(IReference ref) throws MIOException {
-        _tpl.add(Template.VSLO, ref);
+        _tpl.add(TemplateProgram.VSLO, ref);
     }
 
     @Override
     public void theme(IReference theme) throws MIOException {
-        _tpl.add(Template.THEME, theme);
+        _tpl.add(TemplateProgram.THEME, theme);
     }
 
     @Override
     public void value(IReference value) throws MIOException {
-        _tpl.add(Template.VALUE, value);
-    }
-
-
-    private static final class Template implements ITemplate {
-
-        private static final byte 
-            START_TOPIC = 1, END_TOPIC = 2,
-            START_ASSOCIATION = 3, END_ASSOCIATION = 4,
-            ROLE = 5,
-            START_OCCURRENCE = 6, END_OCCURRENCE = 7,
-            START_NAME = 8, END_NAME = 9,
-            START_VARIANT = 10, END_VARIANT = 11,
-            START_SCOPE = 12, END_SCOPE = 13,
-            THEME = 14,
-            REIFIER = 15,
-            VALUE = 16,
-            NAME_VALUE = 17,
-            SID = 18,
-            VSID = 19,
-            SLO = 20,
-            VSLO = 21,
-            IID = 22,
-            VIID = 23,
-            ISA = 24,
-            AKO = 25,
-            TEMPLATE_INVOCATION = 26
-        ;
+        _tpl.add(TemplateProgram.VALUE, value);
+    }
+
+
+    /**
+     * Represents a template definition.
+     * <p>
+     * The references of the template body are compiled when they are
+     * added: Variables are mapped to the indexes of the parameters, 
+     * wildcards are mapped to slots which follow the parameters and
+     * constant IRIs and literals are kept in their resolved form. The
+     * template is linked into a {@link TemplateProgram} when it is
+     * executed the first time.
+     * </p>
+     */
+    static final class Template implements ITemplate {
+
+        private static final byte[] _EMPTY_OPS = new byte[0];
+        private static final int[] _EMPTY_OPERANDS = new int[0];
+        private static final Invocation[] _EMPTY_INVOCATIONS = new Invocation[0];
 
         private final String _name;
         private final List<IReference> _args;
-        private byte[] _states;
-        private IReference[] _values;
-        private TemplateInvocation[] _tplCalls;
-        private int _stateSize;
-        private int _valueSize;
-        private int _tplSize;
+        private Map<IReference, Integer> _params;
+        private Map<IReference, Integer> _wildcardSlots;
+        byte[] _ops;
+        int[] _operands;
+        Object[] _constants;
+        String[] _wildcards;
+        Invocation[] _invocations;
+        private List<Object> _constantList;
+        private List<String> _wildcardList;
+        private int _opSize;
+        private int _operandSize;
+        private int _invocationSize;
+        // Templates may be executed concurrently
+        private volatile TemplateProgram _program;
 
         public Template(final String name, final List<IReference> args) {
             _name = name;
             _args = Collections.unmodifiableList(args);
-            _stateSize = 0;
-            _valueSize = 0;
-            _tplSize = 0;
+            _params = new HashMap<IReference, Integer>(args.size());
+            for (int i=0; i<args.size(); i++) {
+                _params.put(args.get(i), Integer.valueOf(i));
+            }
+            _wildcardSlots = new HashMap<IReference, Integer>();
+            _constantList = new ArrayList<Object>();
+            _wildcardList = new ArrayList<String>();
             // TODO: Define good default values here.
-            _states = new byte[12];
-            _values = new IReference[8];
-            _tplCalls = new TemplateInvocation[4];
+            _ops = new byte[12];
+            _operands = new int[8];
+            _invocations = new Invocation[4];
+        }
+
+        void add(final byte op) {
+            if (_ops.length == _opSize) {
+                byte[] ops = new byte[_ops.length*2];
+                System.arraycopy(_ops, 0, ops, 0, _ops.length);
+                _ops = ops;
+            }
+            _ops[_opSize] = op;
+            _opSize++;
+        }
+
+        void add(final byte op, final IReference reference) {
+            add(op);
+            switch (op) {
+                case TemplateProgram.VALUE:
+                case TemplateProgram.NAME_VALUE:
+                    _addOperand(_literal(reference));
+                    break;
+                case TemplateProgram.SID:
+                case TemplateProgram.SLO:
+                case TemplateProgram.IID:
+                    _addOperand(_constant(reference.getIRI()));
+                    break;
+                case TemplateProgram.VSLO:
+                case TemplateProgram.VIID:
+                    _addOperand(_param(TemplateProgram.PARAM, reference.getString()));
+                    break;
+                default:
+                    _addOperand(_topic(reference));
+            }
+        }
+
+        void add(final byte op, final IReference type, final IReference player, final IReference reifier) {
+            add(op);
+            _addOperand(_topic(type));
+            _addOperand(_topic(player));
+            _addOperand(reifier != null ? _topic(reifier) : TemplateProgram.NONE);
         }
 
-        void add(final byte state) {
-            if (_states.length == _stateSize) {
-                byte[] states = new byte[_states.length*2];
-                System.arraycopy(_states, 0, states, 0, _states.length);
-                _states = states;
+        void addInvocation(final String name, final List<IReference> args) {
+            add(TemplateProgram.TEMPLATE_INVOCATION);
+            final int[] operands = new int[args.size()];
+            for (int i=0; i<operands.length; i++) {
+                final IReference arg = args.get(i);
+                operands[i] = arg == Reference.TOPIC_IN_FOCUS || arg.isVariable()
+                                || arg.isVIID() || arg.isVSLO() 
+                                || arg.isWildcard() || arg.isNamedWildcard() ? _topic(arg) : _constant(arg);
             }
-            _states[_stateSize] = state;
-            _stateSize++;
+            if (_invocations.length == _invocationSize) {
+                Invocation[] invocations = new Invocation[_invocations.length*2];
+                System.arraycopy(_invocations, 0, invocations, 0, _invocations.length);
+                _invocations = invocations;
+            }
+            _invocations[_invocationSize] = new Invocation(name, operands);
+            _invocationSize++;
+        }
+
+        /**
+         * Finishes the template definition.
+         */
+        void trim() {
+            final byte[] ops = _opSize == 0 ? _EMPTY_OPS : new byte[_opSize];
+            System.arraycopy(_ops, 0, ops, 0, _opSize);
+            _ops = ops;
+            final int[] operands = _operandSize == 0 ? _EMPTY_OPERANDS : new int[_operandSize];
+            System.arraycopy(_operands, 0, operands, 0, _operandSize);
+            _operands = operands;
+            final Invocation[] invocations = _invocationSize == 0 ? _EMPTY_INVOCATIONS : new Invocation[_invocationSize];
+            System.arraycopy(_invocations, 0, invocations, 0, _invocationSize);
+            _invocations = invocations;
+            _constants = _constantList.toArray();
+            _wildcards = _wildcardList.toArray(new String[_wildcardList.size()]);
+            _constantList = null;
+            _wildcardList = null;
+            _params = null;
+            _wildcardSlots = null;
         }
 
-        void add(final byte state, final IReference reference) {
-            add(state);
-            _addValue(reference);
+        /**
+         * Returns the executable form of this template.
+         *
+         * @param ctx The context to look up the invoked templates.
+         * @return The program.
+         * @throws MIOException If an invoked template does not exist.
+         */
+        TemplateProgram getProgram(final IParseContext ctx) throws MIOException {
+            TemplateProgram program = _program;
+            if (program == null) {
+                program = TemplateProgram.link(this, ctx);
+                _program = program;
+            }
+            return program;
         }
 
-        void add(final byte state, final IReference type, final IReference player, final IReference reifier) {
-            add(state);
-            _addValue(type);
-            _addValue(player);
-            _addValue(reifier);
+        private int _topic(final IReference ref) {
+            if (ref == Reference.TOPIC_IN_FOCUS) {
+                return TemplateProgram.operand(TemplateProgram.FOCUS, 0);
+            }
+            if (ref.isItemIdentifier() || ref.isIRI() || ref.isSubjectLocator()) {
+                return _constant(ref);
+            }
+            if (ref.isVIID()) {
+                return _param(TemplateProgram.PARAM_IID, ref.getString());
+            }
+            if (ref.isVSLO()) {
+                return _param(TemplateProgram.PARAM_SLO, ref.getString());
+            }
+            if (ref.isVariable()) {
+                return _param(TemplateProgram.PARAM, ref.getString());
+            }
+            if (ref.isWildcard() || ref.isNamedWildcard()) {
+                Integer slot = _wildcardSlots.get(ref);
+                if (slot == null) {
+                    slot = Integer.valueOf(_args.size() + _wildcardList.size());
+                    _wildcardSlots.put(ref, slot);
+                    _wildcardList.add(ref.isWildcard() ? null : (String) ref.getValue());
+                }
+                return TemplateProgram.operand(TemplateProgram.WILDCARD, slot.intValue());
+            }
+            return _invalid("Cannot find " + ref);
         }
 
-        void add(final TemplateInvocation invocation) {
-            add(TEMPLATE_INVOCATION);
-            if (_tplCalls.length == _tplSize) {
-                TemplateInvocation[] calls = new TemplateInvocation[_tplCalls.length*2];
-                System.arraycopy(_tplCalls, 0, calls, 0, _tplCalls.length);
-                _tplCalls = calls;
+        private int _literal(final IReference ref) {
+            if (ref.isVariable()) {
+                return _param(TemplateProgram.PARAM, ref.getString());
+            }
+            if (ref.isIRI()) {
+                return _constant(Literal.createIRI(ref.getIRI()));
+            }
+            if (ref.getValue() instanceof Literal) {
+                return _constant(ref.getLiteral());
             }
-            _tplCalls[_tplSize] = invocation;
-            _tplSize++;
+            return _invalid("Expected a literal, got: " + ref);
+        }
+
+        private int _param(final int kind, final String variable) {
+            final Integer idx = _params.get(Reference.createVariable(variable));
+            return idx != null ? TemplateProgram.operand(kind, idx.intValue()) 
+                               : _invalid("Unknown variable " + variable);
+        }
+
+        private int _constant(final Object value) {
+            _constantList.add(value);
+            return TemplateProgram.operand(TemplateProgram.CONSTANT, _constantList.size()-1);
+        }
+
+        private int _invalid(final String msg) {
+            _constantList.add(msg);
+            return TemplateProgram.operand(TemplateProgram.INVALID, _constantList.size()-1);
         }
 
-        private void _addValue(final IReference ref) {
-            if (_values.length == _valueSize) {
-                IReference[] values = new IReference[_values.length*2];
-                System.arraycopy(_values, 0, values, 0, _values.length);
-                _values = values;
+        private void _addOperand(final int operand) {
+            if (_operands.length == _operandSize) {
+                int[] operands = new int[_operands.length*2];
+                System.arraycopy(_operands, 0, operands, 0, _operands.length);
+                _operands = operands;
             }
-            _values[_valueSize] = ref;
-            _valueSize++;
+            _operands[_operandSize] = operand;
+            _operandSize++;
         }
 
         /* (non-Javadoc)
@@ -338,172 +460,49 @@ final class TemplateScopeHandler implements IContentHandler {
             return _name;
         }
 
-        public void execute(final ITemplateContext ctx) throws MIOException {
-            final SimpleMapHandler handler = ctx.getMapHandler();
-            int tplIdx = 0;
-            int offset = 0;
-            for (int i=0; i<_stateSize; i++) {
-                switch (_states[i]) {
-                    case START_TOPIC:
-                        IReference identity = ctx.getTopicReference(_values[offset]);
-                        ctx.pushFocus(identity);
-                        handler.startTopic(identity);
-                        offset++;
-                        break;
-                    case END_TOPIC:
-                        ctx.popFocus();
-                        handler.endTopic();
-                        break;
-                    case START_ASSOCIATION:
-                        handler.startAssociation(ctx.getTopicReference(_values[offset]));
-                        offset++;
-                        break;
-                    case END_ASSOCIATION:
-                        handler.endAssociation();
-                        break;
-                    case ROLE:
-                        handler.startRole(ctx.getTopicReference(_values[offset]));
-                        offset++;
-                        handler.player(ctx.getTopicReference(_values[offset]));
-                        offset++;
-                        IReference reifier = _values[offset];
-                        if (reifier != null) {
-                            handler.reifier(ctx.getTopicReference(reifier));
-                        }
-                        offset++;
-                        handler.endRole();
-                        break;
-                    case START_OCCURRENCE:
-                        handler.startOccurrence(ctx.getTopicReference(_values[offset]));
-                        offset++;
-                        break;
-                    case END_OCCURRENCE:
-                        handler.endOccurrence();
-                        break;
-                    case START_NAME:
-                        handler.startName(ctx.getTopicReference(_values[offset]));
-                        offset++;
-                        break;
-                    case END_NAME:
-                        handler.endName();
-                        break;
-                    case START_VARIANT:
-                        handler.startVariant();
-                        break;
-                    case END_VARIANT:
-                        handler.endVariant();
-                        break;
-                    case START_SCOPE:
-                        handler.startScope();
-                        break;
-                    case END_SCOPE:
-                        handler.endScope();
-                        break;
-                    case ISA:
-                        handler.isa(ctx.getTopicReference(_values[offset]));
-                        offset++;
-                        break;
-                    case AKO:
-                        handler.ako(ctx.getFocus(), ctx.getTopicReference(_values[offset]));
-                        offset++;
-                        break;
-                    case REIFIER:
-                        handler.reifier(ctx.getTopicReference(_values[offset]));
-                        offset++;
-                        break;
-                    case THEME:
-                        handler.theme(ctx.getTopicReference(_values[offset]));
-                        offset++;
-                        break;
-                    case VALUE:
-                        IReference ref = _values[offset];
-                        if (ref.isIRI()) {
-                            handler.value(ref.getIRI(), XSD.ANY_URI);
-                        }
-                        else {
-                            final Literal lit = ctx.getLiteral(ref);
-                            handler.value(lit.getValue(), lit.getDatatype());
-                        }
-                        offset++;
-                        break;
-                    case NAME_VALUE:
-                        Literal lit = ctx.getLiteral(_values[offset]);
-                        handler.value(lit.getValue());
-                        offset++;
-                        break;
-                    case SID:
-                        handler.subjectIdentifier(_values[offset].getIRI());
-                        offset++;
-                        break;
-                    case VSID:
-                        IReference sid = ctx.getTopicReference(_values[offset]);
-                        if (sid.getType() != IRef.SUBJECT_IDENTIFIER) {
-                            throw new MIOException("Expected an IRI, got: " + sid);
-                        }
-                        handler.subjectIdentifier(sid.getIRI());
-                        offset++;
-                        break;
-                    case SLO:
-                        handler.subjectLocator(_values[offset].getIRI());
-                        offset++;
-                        break;
-                    case VSLO:
-                        handler.subjectLocator(ctx.getIRI(_values[offset]));
-                        offset++;
-                        break;
-                    case IID:
-                        handler.itemIdentifier(_values[offset].getIRI());
-                        offset++;
-                        break;
-                    case VIID:
-                        handler.itemIdentifier(ctx.getIRI(_values[offset]));
-                        offset++;
-                        break;
-                    case TEMPLATE_INVOCATION:
-                        _tplCalls[tplIdx].execute(ctx.getParseContext());
-                        tplIdx++;
-                        break;
-                    default: 
-                        throw new MIOException("Internal error: Unexpected state '" + _states[i] + "'");
-                }
+
+        /**
+         * A template invocation within a template body.
+         */
+        static final class Invocation {
+
+            final String _name;
+            final int[] _args;
+
+            Invocation(final String name, final int[] args) {
+                _name = name;
+                _args = args;
             }
         }
 
     }
 
     /**
-     * Represents a CTM template invocation.
+     * Represents a CTM template invocation outside of template bodies.
      */
     static final class TemplateInvocation {
-        
+
         private static final IReference[] _EMPTY_REFS = new IReference[0];
-        
+
         private final String _name;
         private final IReference[] _args;
-        private final IReference[] _bindings;
-        private Template _tpl;
 
         public TemplateInvocation(final String name, final List<IReference> args) {
             _name = name;
-            _bindings = args.isEmpty() ? _EMPTY_REFS : args.toArray(new IReference[args.size()]);
-            _args = _bindings.length == 0 ? _EMPTY_REFS : new IReference[_bindings.length];
+            _args = args.isEmpty() ? _EMPTY_REFS : args.toArray(new IReference[args.size()]);
         }
 
         public void execute(final IParseContext context) throws MIOException {
-            if (_tpl == null) {
-                _initTemplate((Template) context.getTemplate(_name, _bindings.length));
-            }
-            final ITemplateContext tplCtx = context.createTemplateContext(_args, _bindings);
-            context.pushTemplateContext(tplCtx);
-            _tpl.execute(tplCtx);
-            context.popTemplateContext();
-        }
-
-        private void _initTemplate(final Template tpl) {
-            _tpl = tpl;
-            for (int i=0; i<_bindings.length; i++) {
-                _args[i] = _tpl._args.get(i);
+            final Template tpl = (Template) context.getTemplate(_name, _args.length);
+            final TemplateProgram program = tpl.getProgram(context);
+            final IReference[] slots = program.createSlots();
+            for (int i=0; i<_args.length; i++) {
+                final IReference arg = _args[i];
+                slots[i] = arg.isWildcard() || arg.isNamedWildcard() 
+                                ? context.getTopicByWildcard(arg.isWildcard() ? null : (String) arg.getValue())
+                                : arg;
             }
+            program.execute(context, slots, null);
         }
     }
 
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import java.io.File;
+import java.io.OutputStream;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import com.semagia.mio.IMapHandler;
+
+/**
+ * Tests against the {@link CTM10Handler} with enabled prefix discovery.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+@RunWith(Parameterized.class)
+public class TestCTM10HandlerPrefixDiscovery extends TestCTM10Handler {
+
+    public TestCTM10HandlerPrefixDiscovery(File file, String inputDir, String referenceDir, boolean convertToTMDM) {
+        super(file, inputDir, referenceDir, convertToTMDM);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ctm.TestCTM10Handler#makeOutputHandler(java.io.OutputStream, java.lang.String)
+     */
+    @Override
+    protected IMapHandler makeOutputHandler(final OutputStream out, final String baseIRI)
+            throws Exception {
+        CTM10Handler handler = new CTM10Handler(out);
+        handler.setPrefixDiscovery(true);
+        return handler;
+    }
+
+}
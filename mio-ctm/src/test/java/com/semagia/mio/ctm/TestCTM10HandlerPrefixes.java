@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import java.io.ByteArrayOutputStream;
+
+import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.helpers.SimpleMapHandler;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the prefix handling of the {@link CTM10Handler}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestCTM10HandlerPrefixes extends TestCase {
+
+    private static void _write(final CTM10Handler ctmHandler) throws Exception {
+        final SimpleMapHandler handler = SimpleMapHandler.create(ctmHandler);
+        handler.startTopicMap();
+        handler.startTopic(Ref.createSubjectIdentifier("http://a.example.org/x"));
+        handler.endTopic();
+        handler.startTopic(Ref.createSubjectIdentifier("http://b.example.org/y"));
+        handler.endTopic();
+        handler.endTopicMap();
+    }
+
+    private static CTM10Handler _handler(final ByteArrayOutputStream out) throws Exception {
+        final CTM10Handler handler = new CTM10Handler(out);
+        handler.setPrefixDiscovery(false);
+        return handler;
+    }
+
+    public void testRebindPrefix() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CTM10Handler handler = _handler(out);
+        handler.addPrefix("p", "http://a.example.org/");
+        handler.addPrefix("p", "http://b.example.org/");
+        _write(handler);
+        final String ctm = new String(out.toByteArray(), "utf-8");
+        assertTrue(ctm.contains("%prefix p <http://b.example.org/>"));
+        assertFalse(ctm.contains("http://a.example.org/>"));
+        assertTrue(ctm.contains("<http://a.example.org/x>"));
+        assertFalse(ctm.contains("p:x"));
+        assertTrue(ctm.contains("p:y"));
+    }
+
+    public void testRemovePrefix() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CTM10Handler handler = _handler(out);
+        handler.addPrefix("p", "http://a.example.org/");
+        handler.addPrefix("q", "http://a.example.org/");
+        handler.removePrefix("q");
+        _write(handler);
+        final String ctm = new String(out.toByteArray(), "utf-8");
+        assertTrue(ctm.contains("p:x"));
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2007 - 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.Property;
+
+/**
+ * Tests against the {@link CTMDeserializer} which parses the chunks
+ * concurrently.
+ * <p>
+ * Sources which create topics with generated item identifiers (wildcards,
+ * embedded topics, templates) are not tested since the identifiers differ
+ * from the identifiers in the reference files, these sources are tested
+ * by {@link TestCTMDeserializerParallelGenerated}.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+@RunWith(Parameterized.class)
+public class TestCTMDeserializerParallel extends TestCTMDeserializer {
+
+    public TestCTMDeserializerParallel(File file, String inputDir, String referenceDir, boolean convertToTMDM) {
+        super(file, inputDir, referenceDir, convertToTMDM);
+    }
+
+    @Parameters
+    public static Collection<Object> makeTestCases() {
+        final Collection<Object> result = new ArrayList<Object>();
+        for (Object params: TestCTMDeserializer.makeTestCases()) {
+            if (!createsGeneratedIdentifiers((File) ((Object[]) params)[0])) {
+                result.add(params);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns if the provided source may create topics with generated item
+     * identifiers, i.e. if it contains wildcards, embedded topics or
+     * template definitions.
+     *
+     * @param file The source.
+     * @return {@code true} if the source may create generated identifiers.
+     */
+    static boolean createsGeneratedIdentifiers(final File file) {
+        final String ctm;
+        try {
+            ctm = _read(file);
+        }
+        catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return ctm.indexOf('?') != -1 || ctm.indexOf('[') != -1 || ctm.contains("def ");
+    }
+
+    private static String _read(final File file) throws IOException {
+        final StringBuilder buff = new StringBuilder();
+        final Reader reader = new InputStreamReader(new FileInputStream(file), "utf-8");
+        try {
+            final char[] chars = new char[4096];
+            int read;
+            while ((read = reader.read(chars)) != -1) {
+                buff.append(chars, 0, read);
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return buff.toString();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ctm.TestCTMDeserializer#makeDeserializer()
+     */
+    @Override
+    protected IDeserializer makeDeserializer() throws Exception {
+        final CTMDeserializer deser = (CTMDeserializer) super.makeDeserializer();
+        deser.setProperty(Property.PARALLELISM, Integer.valueOf(4));
+        // Each statement becomes a chunk
+        deser.setChunkSize(1);
+        return deser;
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.IRef;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+
+/**
+ * Tests if the {@link CTMDeserializer} reports the same events if the chunks
+ * are parsed concurrently and if the document is parsed sequentially.
+ * <p>
+ * The tested sources contain wildcards, embedded topics or template 
+ * definitions. The generated item identifiers (<tt>$__</tt><i>...</i>) 
+ * differ, they are renamed in the order of their first occurrence before 
+ * the events are compared.
+ * </p>
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+@RunWith(Parameterized.class)
+public class TestCTMDeserializerParallelGenerated {
+
+    private static final Pattern _GENERATED_ID = Pattern.compile("\\$__[\\w.\\-]*");
+
+    private final File _file;
+
+    public TestCTMDeserializerParallelGenerated(File file, String inputDir, String referenceDir, boolean convertToTMDM) {
+        _file = file;
+    }
+
+    @Parameters
+    public static Collection<Object> makeTestCases() {
+        final Collection<Object> result = new ArrayList<Object>();
+        for (Object params: TestCTMDeserializer.makeTestCases()) {
+            if (TestCTMDeserializerParallel.createsGeneratedIdentifiers((File) ((Object[]) params)[0])) {
+                result.add(params);
+            }
+        }
+        return result;
+    }
+
+    private List<String> _parse(final boolean parallel) throws Exception {
+        final IDeserializer deser = new CTMDeserializerFactory().createDeserializer();
+        if (parallel) {
+            deser.setProperty(Property.PARALLELISM, Integer.valueOf(4));
+            // Each statement becomes a chunk
+            ((CTMDeserializer) deser).setChunkSize(1);
+        }
+        final List<String> events = new ArrayList<String>();
+        deser.setMapHandler(_createRecorder(events));
+        deser.parse(new Source(_file.toURI().toURL().toExternalForm()));
+        return _canonicalize(events);
+    }
+
+    /**
+     * Returns a map handler which adds a string representation of each 
+     * event to the provided list.
+     */
+    private static IMapHandler _createRecorder(final List<String> events) {
+        return (IMapHandler) Proxy.newProxyInstance(IMapHandler.class.getClassLoader(), 
+                new Class<?>[] {IMapHandler.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Exception {
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.invoke(this, args);
+                }
+                final StringBuilder buf = new StringBuilder(method.getName()).append('(');
+                if (args != null) {
+                    for (int i=0; i<args.length; i++) {
+                        if (i > 0) {
+                            buf.append(", ");
+                        }
+                        if (args[i] instanceof IRef) {
+                            final IRef ref = (IRef) args[i];
+                            buf.append(ref.getType()).append(':').append(ref.getIRI());
+                        }
+                        else {
+                            buf.append(args[i]);
+                        }
+                    }
+                }
+                events.add(buf.append(')').toString());
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Renames the generated identifiers in the order of their first 
+     * occurrence.
+     */
+    private static List<String> _canonicalize(final List<String> events) {
+        final Map<String, String> ids = new HashMap<String, String>();
+        final List<String> result = new ArrayList<String>(events.size());
+        for (String event: events) {
+            final Matcher matcher = _GENERATED_ID.matcher(event);
+            final StringBuffer buf = new StringBuffer();
+            while (matcher.find()) {
+                String id = ids.get(matcher.group());
+                if (id == null) {
+                    id = "$__" + ids.size();
+                    ids.put(matcher.group(), id);
+                }
+                matcher.appendReplacement(buf, Matcher.quoteReplacement(id));
+            }
+            matcher.appendTail(buf);
+            result.add(buf.toString());
+        }
+        return result;
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws Exception {
+        assertEquals(_file.getName(), _parse(false), _parse(true));
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.helpers.DefaultMapHandler;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link CTMHeader}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestCTMHeader extends TestCase {
+
+    private static final String _BASE = "http://www.example.org/map";
+
+    private static final String _HEADER = "%prefix ex <http://psi.example.org/>\n"
+            + "def person($p, $name)\n"
+            + "  $p isa ex:person; - $name.\n"
+            + "end\n";
+
+    private static CTMHeader _compile(final String ctm) throws Exception {
+        return CTMHeader.compile(new Source(new StringReader(ctm), _BASE + "/header"));
+    }
+
+    private static List<String> _parse(final CTMHeader header, final String ctm) throws Exception {
+        final List<String> sids = new ArrayList<String>();
+        final CTMDeserializer deser = new CTMDeserializer();
+        deser.setProperty(Property.CTM_HEADER, header);
+        deser.setMapHandler(new DefaultMapHandler() {
+            @Override
+            public void startTopic(IRef identity) throws MIOException {
+                if (identity.getType() == IRef.SUBJECT_IDENTIFIER) {
+                    sids.add(identity.getIRI());
+                }
+            }
+            @Override
+            public void subjectIdentifier(String iri) throws MIOException {
+                sids.add(iri);
+            }
+        });
+        deser.parse(new Source(new StringReader(ctm), _BASE));
+        return sids;
+    }
+
+    public void testCompile() throws Exception {
+        final CTMHeader header = _compile(_HEADER);
+        assertEquals("http://psi.example.org/", header.getPrefixes().get("ex"));
+        assertEquals(1, header.getTemplateNames().size());
+        assertTrue(header.getTemplateNames().contains("person/2"));
+    }
+
+    public void testUseHeader() throws Exception {
+        final CTMHeader header = _compile(_HEADER);
+        final List<String> sids = _parse(header, "person(ex:lars, \"Lars\")\n"
+                + "ex:lutz - \"Lutz\".\n");
+        assertTrue(sids.contains("http://psi.example.org/lars"));
+        assertTrue(sids.contains("http://psi.example.org/lutz"));
+        // The header is reusable
+        assertTrue(_parse(header, "person(ex:lars, \"Lars\")").contains("http://psi.example.org/lars"));
+    }
+
+    public void testPrefixRedeclaration() throws Exception {
+        final CTMHeader header = _compile(_HEADER);
+        _parse(header, "%prefix ex <http://psi.example.org/>\nex:lars - \"Lars\".");
+        try {
+            _parse(header, "%prefix ex <http://psi.example.org/other/>\nex:lars - \"Lars\".");
+            fail("Expected an exception for a prefix which is bound to another IRI");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+    public void testTemplateRedefinition() throws Exception {
+        final CTMHeader header = _compile(_HEADER);
+        try {
+            _parse(header, "def person($p, $name) $p - $name. end");
+            fail("Expected an exception for a template which is defined by the header");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+    public void testIllegalTopic() throws Exception {
+        try {
+            _compile(_HEADER + "ex:lars - \"Lars\".");
+            fail("Expected an exception for a header which contains a topic");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+    public void testUndefinedTemplate() throws Exception {
+        try {
+            _compile("def author($a) person($a, \"Author\") end");
+            fail("Expected an exception for a template which invokes an undefined template");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.helpers.DefaultMapHandler;
+import com.semagia.mio.helpers.IncludeCache;
+import com.semagia.mio.helpers.ResourceCatalog;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link CTMDeserializer} which uses an {@link IncludeCache}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestCTMIncludeCache extends TestCase {
+
+    private static final String _BASE = "http://www.example.org/";
+
+    private ResourceCatalog _catalog;
+    private IncludeCache _cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _catalog = new ResourceCatalog();
+        _cache = new IncludeCache();
+        _add("a.ctm", "%include <" + _BASE + "b.ctm>\n");
+        _add("b.ctm", "%include <" + _BASE + "c.ctm>\n<" + _BASE + "b> .\n");
+        _add("c.ctm", "<" + _BASE + "c1> .\n");
+    }
+
+    private void _add(final String name, final String ctm) throws Exception {
+        _catalog.addBytes(_BASE + name, ctm.getBytes("utf-8"));
+    }
+
+    private List<String> _parse() throws Exception {
+        final List<String> sids = new ArrayList<String>();
+        final CTMDeserializer deser = new CTMDeserializer();
+        deser.setProperty(Property.RESOURCE_RESOLVER, _catalog);
+        deser.setProperty(Property.INCLUDE_CACHE, _cache);
+        deser.setMapHandler(new DefaultMapHandler() {
+            @Override
+            public void startTopic(IRef identity) throws MIOException {
+                if (identity.getType() == IRef.SUBJECT_IDENTIFIER) {
+                    sids.add(identity.getIRI());
+                }
+            }
+        });
+        deser.parse(new Source(_catalog.resolve(_BASE + "a.ctm").getByteStream(), _BASE + "a.ctm"));
+        return sids;
+    }
+
+    public void testReplay() throws Exception {
+        final List<String> sids = _parse();
+        assertTrue(sids.contains(_BASE + "b"));
+        assertTrue(sids.contains(_BASE + "c1"));
+        assertTrue(_cache.size() > 0);
+        assertEquals(sids, _parse());
+    }
+
+    public void testChangedNestedInclude() throws Exception {
+        assertTrue(_parse().contains(_BASE + "c1"));
+        _add("c.ctm", "<" + _BASE + "c2> .\n");
+        final List<String> sids = _parse();
+        assertTrue(sids.contains(_BASE + "b"));
+        assertTrue(sids.contains(_BASE + "c2"));
+        assertFalse(sids.contains(_BASE + "c1"));
+    }
+
+}
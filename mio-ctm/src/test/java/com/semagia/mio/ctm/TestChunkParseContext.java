@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.semagia.mio.helpers.Locator;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link ChunkParseContext}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestChunkParseContext extends TestCase {
+
+    private ChunkParseContext _ctx;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _ctx = new ChunkParseContext();
+        _ctx.setDocumentIRI(Locator.create("http://www.example.org/map"));
+    }
+
+    public void testWildcardIdsAreDistinct() throws Exception {
+        final ChunkParseContext[] contexts = new ChunkParseContext[] {
+                _ctx, new ChunkParseContext(_ctx, 1), new ChunkParseContext(_ctx, 2), 
+                new ChunkParseContext(_ctx, 11), new ChunkParseContext(_ctx, 12)};
+        final Set<String> ids = new HashSet<String>();
+        for (ChunkParseContext ctx: contexts) {
+            for (int i=0; i<25; i++) {
+                assertTrue(ids.add(ctx.makeNextWildcardId(null)));
+            }
+        }
+        assertEquals(contexts.length * 25, ids.size());
+    }
+
+    public void testAnonymousWildcardsAreDistinct() throws Exception {
+        final ChunkParseContext chunk1 = new ChunkParseContext(_ctx, 1);
+        final ChunkParseContext chunk2 = new ChunkParseContext(_ctx, 2);
+        final IReference ref1 = chunk1.getTopicByWildcard(null);
+        final IReference ref2 = chunk2.getTopicByWildcard(null);
+        assertFalse(ref1.equals(ref2));
+        assertFalse(ref1.equals(chunk1.getTopicByWildcard(null)));
+    }
+
+    public void testNamedWildcardsAreShared() throws Exception {
+        final ChunkParseContext chunk1 = new ChunkParseContext(_ctx, 1);
+        final ChunkParseContext chunk2 = new ChunkParseContext(_ctx, 2);
+        final IReference ref = chunk1.getTopicByWildcard("x");
+        assertEquals(ref, chunk1.getTopicByWildcard("x"));
+        assertEquals(ref, chunk2.getTopicByWildcard("x"));
+        assertFalse(ref.equals(chunk2.getTopicByWildcard("y")));
+    }
+
+    public void testIllegalChunkNumber() {
+        try {
+            new ChunkParseContext(_ctx, 0);
+            fail("Expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+}
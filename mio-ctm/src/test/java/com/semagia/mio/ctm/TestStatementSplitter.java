@@ -0,0 +1,129 @@
+/*
+ * Copyright 2007 - 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link StatementSplitter}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestStatementSplitter extends TestCase {
+
+    private static List<String> _split(final String ctm, final int chunkSize) throws Exception {
+        final StatementSplitter splitter = new StatementSplitter(new StringReader(ctm), chunkSize);
+        final List<String> result = new ArrayList<String>();
+        int kind;
+        while ((kind = splitter.next()) != StatementSplitter.END) {
+            result.add((kind == StatementSplitter.CONTEXT ? "C:" : "B:") + splitter.getSegment().trim());
+        }
+        return result;
+    }
+
+    public void testHeader() throws Exception {
+        final List<String> segments = _split("%encoding \"utf-8\" %version 1.0\n"
+                + "%prefix ex <http://www.example.org/>\n"
+                + "~ ex:map\n"
+                + "ex:a - \"A\".\n", 1);
+        assertEquals(2, segments.size());
+        assertEquals("C:%encoding \"utf-8\" %version 1.0\n"
+                + "%prefix ex <http://www.example.org/>\n"
+                + "~ ex:map", segments.get(0));
+        assertEquals("B:ex:a - \"A\".", segments.get(1));
+    }
+
+    public void testStatements() throws Exception {
+        final List<String> segments = _split("a.b - \"x. y\"; occ: 1.5; occ: .5.\n"
+                + "b = http://www.example.org/a.b#c.\n"
+                + "c - \"\"\"a. \"b\".\"\"\". # comment.\n"
+                + "#( x. #( y. )# z. )#\n"
+                + "assoc(r: [- \"x.\"], r2: d).", 1);
+        assertEquals(4, segments.size());
+        assertEquals("B:a.b - \"x. y\"; occ: 1.5; occ: .5.", segments.get(0));
+        assertEquals("B:b = http://www.example.org/a.b#c.", segments.get(1));
+        assertEquals("B:c - \"\"\"a. \"b\".\"\"\". # comment.\n#( x. #( y. )# z. )#", segments.get(2));
+        assertEquals("B:assoc(r: [- \"x.\"], r2: d).", segments.get(3));
+    }
+
+    public void testChunkSize() throws Exception {
+        final List<String> segments = _split("a - \"a\". b - \"b\". c - \"c\".", 10);
+        assertEquals(2, segments.size());
+        assertEquals("B:a - \"a\". b - \"b\".", segments.get(0));
+        assertEquals("B:c - \"c\".", segments.get(1));
+    }
+
+    public void testContextStatements() throws Exception {
+        final List<String> segments = _split("a - \"a\".\n"
+                + "def tpl($x, $y) $x - $y. ?y isa ?x. end\n"
+                + "%prefix ex <http://www.example.org/>\n"
+                + "tpl(ex:b, \"end\").\n"
+                + "define - \"define\".", 100);
+        assertEquals(3, segments.size());
+        assertEquals("B:a - \"a\".", segments.get(0));
+        assertEquals("C:def tpl($x, $y) $x - $y. ?y isa ?x. end\n"
+                + "%prefix ex <http://www.example.org/>", segments.get(1));
+        assertEquals("B:tpl(ex:b, \"end\").\ndefine - \"define\".", segments.get(2));
+    }
+
+    public void testReifierAfterBody() throws Exception {
+        final List<String> segments = _split("a - \"a\".\n~ b.", 1);
+        assertEquals(2, segments.size());
+        assertEquals("B:~ b.", segments.get(1));
+    }
+
+    public void testSplitterReader() throws Exception {
+        final String ctm = "a - \"a\".\n"
+                + "b - \"b\".\n"
+                + "%include <http://www.example.org/inc1.ctm>\n"
+                + "c - \"c\".\n"
+                + "d - \"d\".\n"
+                + "e - \"e\".\n"
+                + "%include <http://www.example.org/inc2.ctm>\n"
+                + "f - \"f\".\n";
+        final StatementSplitter splitter = new StatementSplitter(new StringReader(ctm), 1);
+        final StringBuilder buf = new StringBuilder();
+        final List<String> directives = new ArrayList<String>();
+        splitter.setDirectiveHandler(new StatementSplitter.IDirectiveHandler() {
+            @Override
+            public void handleDirective(final String name, final String[] args) {
+                directives.add(args[0] + "@" + buf.length());
+            }
+        });
+        final SplitterReader reader = new SplitterReader(splitter, 20);
+        int c;
+        while ((c = reader.read()) != -1) {
+            buf.append((char) c);
+        }
+        assertEquals(ctm, buf.toString());
+        assertEquals(2, directives.size());
+        final int inc1 = ctm.indexOf("%include");
+        final int inc2 = ctm.lastIndexOf("%include");
+        assertTrue(directives.get(0).startsWith("<http://www.example.org/inc1.ctm>@"));
+        assertTrue(directives.get(1).startsWith("<http://www.example.org/inc2.ctm>@"));
+        // Announced before the directive is read but not before the window reaches it
+        final int pos1 = Integer.parseInt(directives.get(0).substring(directives.get(0).indexOf('@') + 1));
+        final int pos2 = Integer.parseInt(directives.get(1).substring(directives.get(1).indexOf('@') + 1));
+        assertTrue(pos1 <= inc1);
+        assertTrue(pos2 <= inc2);
+        assertTrue(pos2 > inc1);
+    }
+
+}
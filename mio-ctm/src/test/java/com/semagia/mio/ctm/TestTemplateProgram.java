@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ctm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.ctm.TemplateScopeHandler.TemplateInvocation;
+import com.semagia.mio.helpers.DefaultMapHandler;
+import com.semagia.mio.helpers.Locator;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link TemplateProgram}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestTemplateProgram extends TestCase {
+
+    private static final String _BASE = "http://www.example.org/map";
+
+    private ParseContext _ctx;
+    private List<String> _events;
+
+    /* (non-Javadoc)
+     * @see junit.framework.TestCase#setUp()
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _ctx = new ParseContext();
+        _ctx.setDocumentIRI(Locator.create(_BASE));
+        _events = new ArrayList<String>();
+        _ctx.setMapHandler(new DefaultMapHandler() {
+            @Override
+            public void startTopic(IRef identity) throws MIOException {
+                _events.add("topic " + identity.getIRI());
+            }
+            @Override
+            public void topicRef(IRef identity) throws MIOException {
+                _events.add("ref " + identity.getIRI());
+            }
+            @Override
+            public void value(String value) throws MIOException {
+                _events.add("value " + value);
+            }
+            @Override
+            public void value(String value, String datatype) throws MIOException {
+                _events.add("value " + value + "^^" + datatype);
+            }
+        });
+    }
+
+    private static IReference _var(final String name) {
+        return Reference.createVariable(name);
+    }
+
+    private static IReference _iid(final String ident) {
+        return Reference.createIID(_BASE + "#" + ident);
+    }
+
+    private static List<IReference> _args(final IReference... args) {
+        return new ArrayList<IReference>(Arrays.asList(args));
+    }
+
+    private TemplateScopeHandler _define(final String name, final IReference... params) {
+        return new TemplateScopeHandler(_ctx, name, _args(params));
+    }
+
+    private void _register(final TemplateScopeHandler handler) throws MIOException {
+        _ctx.registerTemplate(handler.dispose());
+    }
+
+    private void _call(final String name, final IReference... args) throws MIOException {
+        new TemplateInvocation(name, _args(args)).execute(_ctx);
+    }
+
+    /**
+     * def person($p, $name)
+     *   $p isa person; - $name.
+     * end
+     */
+    private void _definePerson() throws MIOException {
+        final TemplateScopeHandler tpl = _define("person", _var("p"), _var("name"));
+        tpl.startTopic(_var("p"));
+        tpl.isa(_iid("person"));
+        tpl.startName(Reference.TOPIC_NAME);
+        tpl.nameValue(_var("name"));
+        tpl.endName();
+        tpl.endTopic();
+        _register(tpl);
+    }
+
+    public void testParameters() throws Exception {
+        _definePerson();
+        _call("person", _iid("lars"), Reference.createString("Lars"));
+        assertEquals(Arrays.asList("topic " + _BASE + "#lars", "ref " + _BASE + "#person",
+                "ref http://psi.topicmaps.org/iso13250/model/topic-name", "value Lars"), _events);
+    }
+
+    public void testLiteralValue() throws Exception {
+        final TemplateScopeHandler tpl = _define("homepage", _var("t"), _var("iri"));
+        tpl.startTopic(_var("t"));
+        tpl.startOccurrence(_iid("homepage"));
+        tpl.value(_var("iri"));
+        tpl.endOccurrence();
+        tpl.startOccurrence(_iid("note"));
+        tpl.value(Reference.createInteger("1"));
+        tpl.endOccurrence();
+        tpl.endTopic();
+        _register(tpl);
+        _call("homepage", _iid("t"), Reference.createIRI("http://www.example.org/"));
+        assertTrue(_events.contains("value http://www.example.org/^^http://www.w3.org/2001/XMLSchema#anyURI"));
+        assertTrue(_events.contains("value 1^^http://www.w3.org/2001/XMLSchema#integer"));
+    }
+
+    public void testWildcardsPerInvocation() throws Exception {
+        final TemplateScopeHandler tpl = _define("pair", _var("a"));
+        tpl.startTopic("x");
+        tpl.isa(_var("a"));
+        tpl.endTopic();
+        tpl.startTopic("x");
+        tpl.endTopic();
+        _register(tpl);
+        _call("pair", _iid("a"));
+        _call("pair", _iid("a"));
+        assertEquals(6, _events.size());
+        assertEquals(_events.get(0), _events.get(2));
+        assertEquals(_events.get(3), _events.get(5));
+        assertFalse(_events.get(0).equals(_events.get(3)));
+    }
+
+    public void testNestedInvocation() throws Exception {
+        _definePerson();
+        // def author($a) $a isa author; person($a, "Author"). end
+        final TemplateScopeHandler tpl = _define("author", _var("a"));
+        tpl.startTopic(_var("a"));
+        tpl.isa(_iid("author"));
+        tpl.callTemplate("person", _args(Reference.createString("Author")));
+        tpl.endTopic();
+        _register(tpl);
+        _call("author", _iid("lars"));
+        assertEquals(Arrays.asList("topic " + _BASE + "#lars", "ref " + _BASE + "#author",
+                "topic " + _BASE + "#lars", "ref " + _BASE + "#person",
+                "ref http://psi.topicmaps.org/iso13250/model/topic-name", "value Author"), _events);
+    }
+
+    public void testDeeplyNestedInvocations() throws Exception {
+        _definePerson();
+        String callee = "person";
+        for (int i=0; i<20; i++) {
+            final String name = "t" + i;
+            final TemplateScopeHandler tpl = _define(name, _var("p"));
+            tpl.callTemplate(callee, i == 0 ? _args(_var("p"), Reference.createString(name))
+                                            : _args(_var("p")));
+            _register(tpl);
+            callee = name;
+        }
+        _call(callee, _iid("deep"));
+        assertEquals(Arrays.asList("topic " + _BASE + "#deep", "ref " + _BASE + "#person",
+                "ref http://psi.topicmaps.org/iso13250/model/topic-name", "value t0"), _events);
+    }
+
+    public void testUnknownTemplate() throws Exception {
+        final TemplateScopeHandler tpl = _define("caller");
+        tpl.callTemplate("unknown", _args());
+        _register(tpl);
+        try {
+            _call("caller");
+            fail("Expected an exception for an unknown template");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+    public void testUnknownVariable() throws Exception {
+        final TemplateScopeHandler tpl = _define("broken", _var("a"));
+        tpl.startTopic(_var("b"));
+        tpl.endTopic();
+        _register(tpl);
+        try {
+            _call("broken", _iid("a"));
+            fail("Expected an exception for an unknown variable");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.jtm;
+
+import java.io.IOException;
+
+import com.semagia.mio.MIOException;
+
+/**
+ * A lexer which provides the tokens of a JSON document.
+ *
+ * @see JsonToken
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+interface IJsonLexer {
+
+    /**
+     * Indicates the end of the input.
+     */
+    public static final int EOF = -1;
+
+    /**
+     * Returns the next token.
+     *
+     * @return A token type (see {@link JsonToken}) or {@link #EOF}.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of a syntax error.
+     */
+    public int token() throws IOException, MIOException;
+
+    /**
+     * Returns the text of the current token. Strings are returned without 
+     * the quotes; escape sequences are not resolved.
+     *
+     * @return The text of the current token.
+     */
+    public String value();
+
+    /**
+     * Returns the text of the current token like {@link #value()}, but the
+     * returned character sequence may be a view upon the lexer buffer which
+     * is only valid until the next token is requested.
+     *
+     * @return The text of the current token.
+     */
+    public CharSequence valueChars();
+
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.jtm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered JSON serializer which writes UTF-8 encoded bytes.
+ * <p>
+ * Unlike {@link JSONWriter}, strings are escaped directly into the output
+ * buffer by a lookup table; no intermediate {@link String}s or arrays are
+ * created. Like the {@link JSONWriter}, this class is not a generic JSON
+ * writer, it's good enough to support JTM.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class JSONByteWriter {
+
+    /**
+     * Replacement sequences for the ASCII characters; <tt>null</tt> if the
+     * character is written as it is.
+     */
+    private static final byte[][] _ESCAPES = new byte[128][];
+    private static final byte[] _HEX = ascii("0123456789abcdef");
+
+    static {
+        for (int i=0; i<0x20; i++) {
+            _ESCAPES[i] = new byte[] {'\\', 'u', '0', '0', _HEX[i >> 4], _HEX[i & 0xF]};
+        }
+        _ESCAPES['"'] = ascii("\\\"");
+        _ESCAPES['\\'] = ascii("\\\\");
+        _ESCAPES['\b'] = ascii("\\b");
+        _ESCAPES['\t'] = ascii("\\t");
+        _ESCAPES['\n'] = ascii("\\n");
+        _ESCAPES['\f'] = ascii("\\f");
+        _ESCAPES['\r'] = ascii("\\r");
+    }
+
+    /**
+     * Max. number of bytes which are written for a single character.
+     */
+    private static final int _MAX_CHAR_BYTES = 12;
+
+    private final OutputStream _out;
+    private final byte[] _buff;
+    private int _pos;
+    private boolean _wantComma;
+    private boolean _afterKey;
+    private int _depth;
+    private boolean _prettify;
+
+    public JSONByteWriter(final OutputStream out) {
+        this(out, 0);
+    }
+
+    /**
+     * Creates a writer which starts at the provided depth. The depth is
+     * only used for the indentation of the elements.
+     *
+     * @param out The stream to write to.
+     * @param depth The initial depth.
+     */
+    public JSONByteWriter(final OutputStream out, final int depth) {
+        _out = out;
+        _buff = new byte[1 << 14];
+        _depth = depth;
+    }
+
+    /**
+     * Returns the ASCII representation of the provided string.
+     *
+     * @param s A string which consists of ASCII characters.
+     * @return The bytes of the string.
+     */
+    static byte[] ascii(final String s) {
+        final byte[] bytes = new byte[s.length()];
+        for (int i=0; i<bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the representation of a <tt>"key":</tt> sequence.
+     *
+     * @param key The key, must be a valid JSON string which needs no escaping.
+     * @return The bytes of the key.
+     */
+    static byte[] encodeKey(final String key) {
+        return ascii('"' + key + "\":");
+    }
+
+    /**
+     * Enables / disables newlines and indentation of JSON elements.
+     * (disabled by default)
+     *
+     * @param prettify <tt>true</tt> to enable prettified JSON, otherwise <tt>false</tt>.
+     */
+    public void setPrettify(final boolean prettify) {
+        _prettify = prettify;
+    }
+
+    /**
+     * Returns if newlines and indentation are enabled.
+     *
+     * @return <tt>true</tt> if prettified JSON is enabled, otherwise <tt>false</tt>.
+     */
+    public boolean getPrettify() {
+        return _prettify;
+    }
+
+    /**
+     * Start of a JSON object.
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void startObject() throws IOException {
+        _comma();
+        if (!_afterKey) {
+            _indent();
+        }
+        _write('{');
+        _afterKey = false;
+        _depth++;
+        _wantComma = false;
+    }
+
+    /**
+     * End of a JSON object.
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void endObject() throws IOException {
+        _depth--;
+        _write('}');
+        _wantComma = true;
+    }
+
+    /**
+     * Start of a JSON array.
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void startArray() throws IOException {
+        _write('[');
+        _afterKey = false;
+        _depth++;
+        _wantComma = false;
+    }
+
+    /**
+     * End of a JSON array.
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void endArray() throws IOException {
+        _depth--;
+        _write(']');
+        _wantComma = true;
+    }
+
+    /**
+     * Writes the key of a <tt>"key": value</tt> pair.
+     *
+     * @param key The key as returned by {@link #encodeKey(String)}.
+     * @throws IOException If an error occurs.
+     */
+    public void key(final byte[] key) throws IOException {
+        _comma();
+        _indent();
+        raw(key, 0, key.length);
+        _wantComma = false;
+        _afterKey = true;
+    }
+
+    /**
+     * Writes the key of a <tt>"key": value</tt> pair. The key is escaped.
+     *
+     * @param key The key.
+     * @throws IOException If an error occurs.
+     */
+    public void key(final String key) throws IOException {
+        _comma();
+        _indent();
+        _write('"');
+        append(key, 0, key.length());
+        _write('"');
+        _write(':');
+        _wantComma = false;
+        _afterKey = true;
+    }
+
+    /**
+     * Writes an escaped string value.
+     *
+     * @param value The value to write.
+     * @throws IOException If an error occurs.
+     */
+    public void value(final CharSequence value) throws IOException {
+        startString();
+        append(value, 0, value.length());
+        endString();
+    }
+
+    /**
+     * Starts a string value. The content of the string is written by the
+     * <tt>append</tt> methods.
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void startString() throws IOException {
+        _comma();
+        _write('"');
+        _afterKey = false;
+    }
+
+    /**
+     * Ends a string value.
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void endString() throws IOException {
+        _write('"');
+        _wantComma = true;
+    }
+
+    /**
+     * Writes the escaped characters.
+     *
+     * @param chars The characters to write.
+     * @throws IOException If an error occurs.
+     */
+    public void append(final CharSequence chars) throws IOException {
+        append(chars, 0, chars.length());
+    }
+
+    /**
+     * Writes the escaped characters in the range <tt>[start, end)</tt>.
+     *
+     * @param chars The characters to write.
+     * @param start The start index (inclusive).
+     * @param end The end index (exclusive).
+     * @throws IOException If an error occurs.
+     */
+    public void append(final CharSequence chars, final int start, final int end) throws IOException {
+        final byte[] buff = _buff;
+        for (int i=start; i<end; i++) {
+            if (_pos + _MAX_CHAR_BYTES > buff.length) {
+                _flushBuffer();
+            }
+            final char c = chars.charAt(i);
+            if (c < 0x80) {
+                final byte[] escape = _ESCAPES[c];
+                if (escape != null) {
+                    System.arraycopy(escape, 0, buff, _pos, escape.length);
+                    _pos += escape.length;
+                }
+                else {
+                    // Avoid "</" which may be misinterpreted if the JSON is embedded into HTML
+                    if (c == '/' && i > start && chars.charAt(i-1) == '<') {
+                        buff[_pos++] = '\\';
+                    }
+                    buff[_pos++] = (byte) c;
+                }
+            }
+            else if (c < 0x800) {
+                if (c < 0xA0) {
+                    _writeUnicodeEscape(c);
+                }
+                else {
+                    buff[_pos++] = (byte) (0xC0 | (c >> 6));
+                    buff[_pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            else if (Character.isHighSurrogate(c) && i+1 < end
+                        && Character.isLowSurrogate(chars.charAt(i+1))) {
+                final int cp = Character.toCodePoint(c, chars.charAt(++i));
+                buff[_pos++] = (byte) (0xF0 | (cp >> 18));
+                buff[_pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buff[_pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buff[_pos++] = (byte) (0x80 | (cp & 0x3F));
+            }
+            else if (Character.isSurrogate(c) || (c >= '\u2000' && c < '\u2100')) {
+                _writeUnicodeEscape(c);
+            }
+            else {
+                buff[_pos++] = (byte) (0xE0 | (c >> 12));
+                buff[_pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buff[_pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Terminates a top-level value by a newline. The next value is written
+     * without a preceding comma.
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void endRecord() throws IOException {
+        _write('\n');
+        _wantComma = false;
+    }
+
+    /**
+     * Writes a single byte as it is.
+     *
+     * @param b The byte to write.
+     * @throws IOException If an error occurs.
+     */
+    public void raw(final byte b) throws IOException {
+        _write(b);
+    }
+
+    /**
+     * Writes the bytes as they are.
+     *
+     * @param bytes The bytes to write.
+     * @param offset The offset.
+     * @param len The number of bytes to write.
+     * @throws IOException If an error occurs.
+     */
+    public void raw(final byte[] bytes, final int offset, final int len) throws IOException {
+        if (_pos + len > _buff.length) {
+            _flushBuffer();
+            if (len > _buff.length) {
+                _out.write(bytes, offset, len);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, _buff, _pos, len);
+        _pos += len;
+    }
+
+    /**
+     * Writes the buffered bytes and flushes the underlying stream.
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void flush() throws IOException {
+        _flushBuffer();
+        _out.flush();
+    }
+
+    /**
+     * Writes the buffered bytes and closes the underlying stream.
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void close() throws IOException {
+        _flushBuffer();
+        _out.close();
+    }
+
+    private void _writeUnicodeEscape(final char c) {
+        final byte[] buff = _buff;
+        buff[_pos++] = '\\';
+        buff[_pos++] = 'u';
+        buff[_pos++] = _HEX[(c >> 12) & 0xF];
+        buff[_pos++] = _HEX[(c >> 8) & 0xF];
+        buff[_pos++] = _HEX[(c >> 4) & 0xF];
+        buff[_pos++] = _HEX[c & 0xF];
+    }
+
+    private void _comma() throws IOException {
+        if (_wantComma) {
+            _write(',');
+        }
+    }
+
+    /**
+     * Indents a line, iff {@link #getPrettify()} is enabled.
+     *
+     * @throws IOException If an error occurs.
+     */
+    private void _indent() throws IOException {
+        if (!_prettify || _depth == 0) {
+            return;
+        }
+        _write('\n');
+        for (int i=0; i<_depth; i++) {
+            _write(' ');
+            _write(' ');
+        }
+    }
+
+    private void _write(final int b) throws IOException {
+        if (_pos == _buff.length) {
+            _flushBuffer();
+        }
+        _buff[_pos++] = (byte) b;
+    }
+
+    private void _flushBuffer() throws IOException {
+        if (_pos > 0) {
+            _out.write(_buff, 0, _pos);
+            _pos = 0;
+        }
+    }
+
+}
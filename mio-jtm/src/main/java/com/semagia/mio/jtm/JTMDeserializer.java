@@ -15,21 +15,38 @@
  */
 package com.semagia.mio.jtm;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URL;
+import java.util.concurrent.Callable;
 
 import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
 import com.semagia.mio.Source;
 import com.semagia.mio.base.AbstractDefaultDeserializer;
+import com.semagia.mio.helpers.ConstructFilter;
+import com.semagia.mio.helpers.FilteringMapHandler;
+import com.semagia.mio.helpers.RecordingMapHandler;
+import com.semagia.mio.helpers.ReplayQueue;
 import com.semagia.mio.helpers.SimpleMapHandler;
 import com.semagia.mio.utils.BOMInputStream;
 
 /**
  * A {@link IDeserializer} for 
  * <a href="http://www.cerny-online.com/jtm/">JSON Topic Maps (JTM)</a>.
+ * <p>
+ * If the {@link Property#PARALLELISM} property is set to a value greater
+ * than {@code 1} and the source provides UTF-8 encoded bytes, the elements
+ * of the top-level <tt>topics</tt> and <tt>associations</tt> arrays are
+ * parsed concurrently. The version and the prefixes are interpreted by the
+ * calling thread in document order, each chunk of elements is parsed with
+ * the version and prefixes which were declared before the chunk. All other 
+ * members of the top-level object are interpreted after the arrays. The 
+ * events are reported in document order.
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev: 471 $ - $Date: 2010-09-08 13:25:57 +0200 (Mi, 08 Sep 2010) $
@@ -41,8 +58,20 @@ final class JTMDeserializer extends AbstractDefaultDeserializer {
      */
     private static final String _DEFAULT_ENCODING = "utf-8";
 
+    /**
+     * Default min. number of bytes of a chunk of topics or associations.
+     */
+    private static final int _DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private int _chunkSize;
+
     public JTMDeserializer() {
         super();
+        _chunkSize = _DEFAULT_CHUNK_SIZE;
+    }
+
+    void setChunkSize(final int chunkSize) {
+        _chunkSize = chunkSize;
     }
 
     /* (non-Javadoc)
@@ -50,9 +79,137 @@ final class JTMDeserializer extends AbstractDefaultDeserializer {
      */
     @Override
     protected void doParse(final Source src) throws IOException, MIOException {
-        final Reader reader = _reader(src);
+        if (src.getCharacterStream() == null
+                && (src.getEncoding() == null || "utf-8".equalsIgnoreCase(src.getEncoding()))) {
+            final InputStream in = src.getByteStream() != null ? src.getByteStream() 
+                                                               : new URL(src.getIRI()).openStream();
+            final BOMInputStream stream = new BOMInputStream(in, _DEFAULT_ENCODING);
+            if (!"utf-8".equalsIgnoreCase(stream.getEncoding())) {
+                _parse(src, new JsonParser(new InputStreamReader(stream, stream.getEncoding())));
+                return;
+            }
+            final Object parallelism = getProperty(Property.PARALLELISM);
+            if (parallelism instanceof Integer && ((Integer) parallelism).intValue() > 1) {
+                _parseParallel(src, new TopLevelArrayScanner(stream), ((Integer) parallelism).intValue());
+            }
+            else {
+                // UTF-8 bytes are read by the byte lexer
+                _parse(src, new JsonParser(stream));
+            }
+            return;
+        }
+        _parse(src, new JsonParser(createReader(src)));
+    }
+
+    private void _parse(final Source src, final JsonParser jsonParser) throws IOException, MIOException {
         final JTMParser parser = new JTMParser(src.getBaseIRI());
-        parser.parse(new JsonParser(reader), SimpleMapHandler.create(_handler));
+        if (_handler instanceof FilteringMapHandler) {
+            parser.setFilter((FilteringMapHandler) _handler);
+        }
+        parser.parse(jsonParser, SimpleMapHandler.create(_handler));
+    }
+
+    /**
+     * Parses the elements of the <tt>topics</tt> and <tt>associations</tt>
+     * arrays concurrently.
+     * <p>
+     * Consecutive elements of the same array are collected into chunks
+     * which are parsed by the worker threads. A change of the version or
+     * the prefixes terminates the current chunk. The remaining members of 
+     * the top-level object are collected and parsed as an object by the 
+     * calling thread after all chunks have been reported.
+     * </p>
+     *
+     * @param src The source.
+     * @param scanner The scanner.
+     * @param parallelism The number of worker threads.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    private void _parseParallel(final Source src, final TopLevelArrayScanner scanner, 
+            final int parallelism) throws IOException, MIOException {
+        final JTMParser settings = new JTMParser(src.getBaseIRI());
+        final ByteArrayOutputStream members = new ByteArrayOutputStream();
+        final ByteArrayOutputStream member = new ByteArrayOutputStream();
+        final ReplayQueue queue = new ReplayQueue(_handler, parallelism);
+        final Object property = getProperty(Property.CONSTRUCT_FILTER);
+        final ConstructFilter filter = property instanceof ConstructFilter ? (ConstructFilter) property : null;
+        members.write('{');
+        JTMParser snapshot = null;
+        ByteArrayOutputStream chunk = null;
+        int chunkKind = TopLevelArrayScanner.END;
+        try {
+            int kind;
+            while ((kind = scanner.next()) != TopLevelArrayScanner.END) {
+                if (kind == TopLevelArrayScanner.MEMBER) {
+                    member.reset();
+                    scanner.readElement(member);
+                    if (members.size() > 1) {
+                        members.write(',');
+                    }
+                    member.writeTo(members);
+                    final String name = scanner.getName();
+                    if ("version".equals(name) || "prefixes".equals(name)) {
+                        if (chunk != null) {
+                            queue.submit(_createTask(snapshot, filter, chunk, chunkKind));
+                            chunk = null;
+                        }
+                        final ByteArrayOutputStream obj = new ByteArrayOutputStream(member.size() + 2);
+                        obj.write('{');
+                        member.writeTo(obj);
+                        obj.write('}');
+                        settings.parseSettings(new JsonParser(obj.toByteArray()));
+                        snapshot = null;
+                    }
+                    continue;
+                }
+                if (chunk != null && kind != chunkKind) {
+                    queue.submit(_createTask(snapshot, filter, chunk, chunkKind));
+                    chunk = null;
+                }
+                if (chunk == null) {
+                    if (snapshot == null) {
+                        snapshot = new JTMParser(settings);
+                    }
+                    chunk = new ByteArrayOutputStream(8192);
+                    chunk.write('[');
+                    chunkKind = kind;
+                }
+                else {
+                    chunk.write(',');
+                }
+                scanner.readElement(chunk);
+                if (chunk.size() >= _chunkSize) {
+                    queue.submit(_createTask(snapshot, filter, chunk, chunkKind));
+                    chunk = null;
+                }
+            }
+            if (chunk != null) {
+                queue.submit(_createTask(snapshot, filter, chunk, chunkKind));
+            }
+            queue.flush();
+        }
+        finally {
+            queue.close();
+        }
+        members.write('}');
+        _parse(src, new JsonParser(members.toByteArray()));
+    }
+
+    private static Callable<RecordingMapHandler> _createTask(final JTMParser settings, 
+            final ConstructFilter filter, final ByteArrayOutputStream chunk, final int kind) {
+        chunk.write(']');
+        final byte[] data = chunk.toByteArray();
+        return new Callable<RecordingMapHandler>() {
+            @Override
+            public RecordingMapHandler call() throws Exception {
+                final RecordingMapHandler handler = new RecordingMapHandler();
+                final JTMParser parser = new JTMParser(settings);
+                parser.parseElements(new JsonParser(data), 
+                        SimpleMapHandler.create(parser.applyFilter(handler, filter)), kind == TopLevelArrayScanner.TOPIC);
+                return handler;
+            }
+        };
     }
 
     /**
@@ -67,7 +224,7 @@ final class JTMDeserializer extends AbstractDefaultDeserializer {
      * @return A reader.
      * @throws IOException If the construction of the reader fails.
      */
-    private static Reader _reader(final Source src) throws IOException {
+    static Reader createReader(final Source src) throws IOException {
         if (src.getByteStream() != null) {
             return _reader(src.getByteStream(), src.getEncoding());
         }
@@ -0,0 +1,1166 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.jtm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.helpers.AbstractHamsterMapHandler;
+import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.voc.TMDM;
+import com.semagia.mio.voc.XSD;
+
+/**
+ * {@link com.semagia.mio.IMapHandler} implementation that translates all
+ * events into <a href="http://www.cerny-online.com/jtm/">JSON Topic Maps (JTM)</a>
+ * 1.0 or 1.1.
+ * <p>
+ * The topics are written while the events are received; the associations
+ * are written into a temporary file and appended to the topics after the
+ * {@link #endTopicMap()} event. The amount of memory does not depend on
+ * the size of the topic map.
+ * </p>
+ * <p>
+ * JTM 1.1 supports prefixes which are declared in the header of the document.
+ * If the prefix discovery is enabled (default), the topics are written into a
+ * temporary file as well, and the namespaces which are used more than once
+ * are declared as prefixes when the topic map has been read. Further prefixes
+ * can be added by {@link #addPrefix(String, String)}.
+ * </p>
+ * <p>
+ * If the line mode is enabled (see {@link #setLineMode(boolean)}), the 
+ * handler writes JTM Lines: The first line is an object which provides the
+ * version and the prefixes, each following line is a JTM item of type 
+ * "topic", "association" or "topicmap". The items are written as the 
+ * events are received, no temporary files are used.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class JTMHandler extends AbstractHamsterMapHandler<IRef> {
+
+    private static final IRef _DEFAULT_NAME = Ref.createSubjectIdentifier(TMDM.TOPIC_NAME);
+    private static final IRef _TYPE_INSTANCE = Ref.createSubjectIdentifier(TMDM.TYPE_INSTANCE);
+    private static final IRef _TYPE = Ref.createSubjectIdentifier(TMDM.TYPE);
+    private static final IRef _INSTANCE = Ref.createSubjectIdentifier(TMDM.INSTANCE);
+
+    private static final String _XSD_NS = "http://www.w3.org/2001/XMLSchema#";
+
+    private static final byte[]
+        _KEY_VERSION = JSONByteWriter.encodeKey("version"),
+        _KEY_ITEM_TYPE = JSONByteWriter.encodeKey("item_type"),
+        _KEY_PREFIXES = JSONByteWriter.encodeKey("prefixes"),
+        _KEY_TOPICS = JSONByteWriter.encodeKey("topics"),
+        _KEY_ASSOCIATIONS = JSONByteWriter.encodeKey("associations"),
+        _KEY_SIDS = JSONByteWriter.encodeKey("subject_identifiers"),
+        _KEY_SLOS = JSONByteWriter.encodeKey("subject_locators"),
+        _KEY_IIDS = JSONByteWriter.encodeKey("item_identifiers"),
+        _KEY_INSTANCE_OF = JSONByteWriter.encodeKey("instance_of"),
+        _KEY_NAMES = JSONByteWriter.encodeKey("names"),
+        _KEY_OCCURRENCES = JSONByteWriter.encodeKey("occurrences"),
+        _KEY_VARIANTS = JSONByteWriter.encodeKey("variants"),
+        _KEY_ROLES = JSONByteWriter.encodeKey("roles"),
+        _KEY_TYPE = JSONByteWriter.encodeKey("type"),
+        _KEY_PLAYER = JSONByteWriter.encodeKey("player"),
+        _KEY_VALUE = JSONByteWriter.encodeKey("value"),
+        _KEY_DATATYPE = JSONByteWriter.encodeKey("datatype"),
+        _KEY_SCOPE = JSONByteWriter.encodeKey("scope"),
+        _KEY_REIFIER = JSONByteWriter.encodeKey("reifier");
+
+    private static final String
+        _ITEM_TOPIC = "topic",
+        _ITEM_ASSOCIATION = "association",
+        _ITEM_TOPICMAP = "topicmap";
+
+    private static final byte[]
+        _SI = JSONByteWriter.ascii("si:"),
+        _SL = JSONByteWriter.ascii("sl:"),
+        _II = JSONByteWriter.ascii("ii:");
+
+    /**
+     * The arrays of a topic object.
+     */
+    private static final int
+        _NONE = 0,
+        _SIDS = 1,
+        _SLOS = 2,
+        _IIDS = 4,
+        _INSTANCE_OF = 8,
+        _NAMES = 16,
+        _OCCURRENCES = 32;
+
+    /**
+     * Marks the start / end of an IRI which was written with a namespace
+     * reference into a temporary file. The bytes do not appear in escaped JSON
+     * strings.
+     */
+    private static final byte
+        _MARK_IRI = 0x01,
+        _MARK_END = 0x02;
+
+    /**
+     * Max. number of namespaces which are considered by the prefix discovery.
+     * The identifiers of the namespaces are written as two bytes.
+     */
+    private static final int _MAX_NAMESPACES = 4096;
+
+    /**
+     * Min. number of IRIs which must use a namespace to get a prefix.
+     */
+    private static final int _MIN_NAMESPACE_USAGE = 2;
+
+    private static final int _MAX_PREFIX_LENGTH = 12;
+
+    private final OutputStream _out;
+    private final boolean _jtm11;
+    private final Map<String, String> _prefixes;
+    private boolean _prettify;
+    private boolean _discoverPrefixes;
+    private boolean _lineMode;
+    private File _directory;
+
+    private JSONByteWriter _writer;
+    private JSONByteWriter _topicWriter;
+    private JSONByteWriter _assocWriter;
+    private File _topicFile;
+    private File _assocFile;
+    private Map<String, Integer> _namespaceIds;
+    private List<String> _namespaces;
+    private int[] _namespaceUsage;
+    private String[] _namespacePrefixes;
+
+    private IRef _topic;
+    private final Set<IRef> _topicIdentities;
+    private int _topicArray;
+    private int _topicArrays;
+    private IRef _tmReifier;
+    private List<String> _tmIids;
+
+    /**
+     * Creates a JTM 1.1 writer.
+     *
+     * @param out The stream to write the JTM to.
+     */
+    public JTMHandler(final OutputStream out) {
+        this(out, "1.1");
+    }
+
+    /**
+     * Creates a JTM writer.
+     *
+     * @param out The stream to write the JTM to.
+     * @param version The JTM version, either "1.0" or "1.1".
+     */
+    public JTMHandler(final OutputStream out, final String version) {
+        if (out == null) {
+            throw new IllegalArgumentException("The output stream must not be null");
+        }
+        if (!"1.0".equals(version) && !"1.1".equals(version)) {
+            throw new IllegalArgumentException("Unsupported version: " + version);
+        }
+        _out = out;
+        _jtm11 = "1.1".equals(version);
+        _prefixes = new LinkedHashMap<String, String>();
+        if (_jtm11) {
+            _prefixes.put("xsd", _XSD_NS);
+        }
+        _discoverPrefixes = _jtm11;
+        _directory = new File(System.getProperty("java.io.tmpdir"));
+        _topicIdentities = new HashSet<IRef>();
+    }
+
+    /**
+     * Returns the JTM version which is written.
+     *
+     * @return "1.0" or "1.1".
+     */
+    public String getVersion() {
+        return _jtm11 ? "1.1" : "1.0";
+    }
+
+    /**
+     * Indicates if the JSON should be prettified.
+     *
+     * @param prettify {@code true} to prettify the output, otherwise {@code false}.
+     */
+    public void setPrettify(final boolean prettify) {
+        _prettify = prettify;
+    }
+
+    /**
+     * Returns if the JSON is prettified.
+     *
+     * @return {@code true} if the JSON is prettified, otherwise {@code false}.
+     */
+    public boolean getPrettify() {
+        return _prettify;
+    }
+
+    /**
+     * Enables / disables the automatic detection of prefixes (enabled by
+     * default). Prefixes are only supported by JTM 1.1.
+     *
+     * @param discover {@code true} to detect prefixes, otherwise {@code false}.
+     */
+    public void setPrefixDiscovery(final boolean discover) {
+        if (discover && !_jtm11) {
+            throw new IllegalStateException("Prefixes are not supported by JTM 1.0");
+        }
+        if (discover && _lineMode) {
+            throw new IllegalStateException("The prefix discovery is not supported in line mode");
+        }
+        _discoverPrefixes = discover;
+    }
+
+    /**
+     * Returns if prefixes are detected automatically.
+     *
+     * @return {@code true} if prefixes are detected, otherwise {@code false}.
+     */
+    public boolean getPrefixDiscovery() {
+        return _discoverPrefixes;
+    }
+
+    /**
+     * Enables / disables the line mode (disabled by default).
+     * <p>
+     * In line mode, each item is written as one line and the prefix discovery
+     * is disabled. The prettify option is ignored.
+     * </p>
+     *
+     * @param lineMode {@code true} to write JTM Lines, otherwise {@code false}.
+     */
+    public void setLineMode(final boolean lineMode) {
+        _lineMode = lineMode;
+        if (lineMode) {
+            _discoverPrefixes = false;
+        }
+    }
+
+    /**
+     * Returns if JTM Lines are written.
+     *
+     * @return {@code true} if the line mode is enabled, otherwise {@code false}.
+     */
+    public boolean getLineMode() {
+        return _lineMode;
+    }
+
+    /**
+     * Adds a prefix which should be used to abbreviate IRIs.
+     *
+     * @param prefix The prefix.
+     * @param iri The IRI the prefix is bound to.
+     */
+    public void addPrefix(final String prefix, final String iri) {
+        if (!_jtm11) {
+            throw new IllegalStateException("Prefixes are not supported by JTM 1.0");
+        }
+        if (prefix == null) {
+            throw new IllegalArgumentException("The prefix must not be null");
+        }
+        if (iri == null) {
+            throw new IllegalArgumentException("The IRI must not be null");
+        }
+        if (!_isValidPrefix(prefix)) {
+            throw new IllegalArgumentException("Invalid prefix: " + prefix);
+        }
+        if ("xsd".equals(prefix) && !_XSD_NS.equals(iri)) {
+            throw new IllegalArgumentException("The prefix 'xsd' is reserved for XML Schema Datatypes");
+        }
+        _prefixes.put(prefix, iri);
+    }
+
+    /**
+     * Sets the directory for the temporary files.
+     *
+     * @param directory The directory.
+     */
+    public void setTemporaryDirectory(final File directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("The directory must not be null");
+        }
+        _directory = directory;
+    }
+
+    /**
+     * Returns the directory for the temporary files.
+     *
+     * @return The directory.
+     */
+    public File getTemporaryDirectory() {
+        return _directory;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#startTopicMap()
+     */
+    @Override
+    public void startTopicMap() throws MIOException {
+        super.startTopicMap();
+        _topic = null;
+        _tmReifier = null;
+        _tmIids = new ArrayList<String>(2);
+        try {
+            _writer = _createWriter(_out, 0);
+            if (_lineMode) {
+                _namespaceIds = null;
+                _namespacePrefixes = null;
+                _writer.startObject();
+                _writer.key(_KEY_VERSION);
+                _writer.value(getVersion());
+                _writePrefixes();
+                _writer.endObject();
+                _writer.endRecord();
+                _topicWriter = _writer;
+                _assocWriter = _writer;
+                return;
+            }
+            _assocFile = File.createTempFile("mio-jtm-", ".assocs", _directory);
+            _assocWriter = _createWriter(new FileOutputStream(_assocFile), 2);
+            if (_discoverPrefixes) {
+                _namespaceIds = new HashMap<String, Integer>();
+                _namespaces = new ArrayList<String>();
+                _namespaceUsage = new int[64];
+                _namespacePrefixes = null;
+                _topicFile = File.createTempFile("mio-jtm-", ".topics", _directory);
+                _topicWriter = _createWriter(new FileOutputStream(_topicFile), 2);
+            }
+            else {
+                _namespaceIds = null;
+                _writeHeader();
+                _topicWriter = _writer;
+            }
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#endTopicMap()
+     */
+    @Override
+    public void endTopicMap() throws MIOException {
+        super.endTopicMap();
+        if (_lineMode) {
+            _endTopicMapLines();
+            return;
+        }
+        try {
+            _endTopic();
+            _assocWriter.close();
+            if (_topicFile != null) {
+                _topicWriter.close();
+                _assignPrefixes();
+                _writeHeader();
+                _copy(_topicFile, _writer);
+            }
+            _writer.endArray();
+            _writer.key(_KEY_ASSOCIATIONS);
+            _writer.startArray();
+            _copy(_assocFile, _writer);
+            _writer.endArray();
+            // Prefixes are resolved, the remaining IRIs are written into the document
+            _namespaceIds = null;
+            _writeReifier(_writer, _tmReifier);
+            _writeItemIdentifiers(_writer, _tmIids);
+            _writer.endObject();
+            _writer.raw((byte) '\n');
+            _writer.flush();
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+        finally {
+            _assocFile.delete();
+            if (_topicFile != null) {
+                _topicFile.delete();
+                _topicFile = null;
+            }
+            _namespaceIds = null;
+            _namespaces = null;
+            _namespaceUsage = null;
+            _namespacePrefixes = null;
+            _tmIids = null;
+        }
+    }
+
+    /**
+     * Writes the topic map item, if necessary, and flushes the writer.
+     *
+     * @throws MIOException In case of an error.
+     */
+    private void _endTopicMapLines() throws MIOException {
+        try {
+            _endTopic();
+            if (_tmReifier != null || !_tmIids.isEmpty()) {
+                _startItem(_writer, _ITEM_TOPICMAP);
+                _writeReifier(_writer, _tmReifier);
+                _writeItemIdentifiers(_writer, _tmIids);
+                _endItem(_writer);
+            }
+            _writer.flush();
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+        finally {
+            _tmIids = null;
+        }
+    }
+
+    private JSONByteWriter _createWriter(final OutputStream out, final int depth) {
+        final JSONByteWriter writer = new JSONByteWriter(out, depth);
+        writer.setPrettify(_prettify && !_lineMode);
+        return writer;
+    }
+
+    /**
+     * Starts an object. In line mode, the item type is written.
+     *
+     * @param writer The writer.
+     * @param itemType The item type.
+     * @throws IOException In case of an error.
+     */
+    private void _startItem(final JSONByteWriter writer, final String itemType) throws IOException {
+        writer.startObject();
+        if (_lineMode) {
+            writer.key(_KEY_ITEM_TYPE);
+            writer.value(itemType);
+        }
+    }
+
+    /**
+     * Ends an object. In line mode, the object is terminated by a newline.
+     *
+     * @param writer The writer.
+     * @throws IOException In case of an error.
+     */
+    private void _endItem(final JSONByteWriter writer) throws IOException {
+        writer.endObject();
+        if (_lineMode) {
+            writer.endRecord();
+        }
+    }
+
+    /**
+     * Writes the start of the topic map object up to the start of the
+     * topics array.
+     *
+     * @throws IOException In case of an error.
+     */
+    private void _writeHeader() throws IOException {
+        _writer.startObject();
+        _writer.key(_KEY_VERSION);
+        _writer.value(getVersion());
+        _writer.key(_KEY_ITEM_TYPE);
+        _writer.value("topicmap");
+        _writePrefixes();
+        _writer.key(_KEY_TOPICS);
+        _writer.startArray();
+    }
+
+    /**
+     * Writes the "prefixes" object if any prefix is known (JTM 1.1 only).
+     *
+     * @throws IOException In case of an error.
+     */
+    private void _writePrefixes() throws IOException {
+        if (!_jtm11) {
+            return;
+        }
+        boolean started = false;
+        for (Map.Entry<String, String> prefix: _prefixes.entrySet()) {
+            if ("xsd".equals(prefix.getKey())) {
+                continue;
+            }
+            if (!started) {
+                _writer.key(_KEY_PREFIXES);
+                _writer.startObject();
+                started = true;
+            }
+            _writer.key(prefix.getKey());
+            _writer.value(prefix.getValue());
+        }
+        if (_namespacePrefixes != null) {
+            for (int i=0; i<_namespacePrefixes.length; i++) {
+                if (_namespacePrefixes[i] == null) {
+                    continue;
+                }
+                if (!started) {
+                    _writer.key(_KEY_PREFIXES);
+                    _writer.startObject();
+                    started = true;
+                }
+                _writer.key(_namespacePrefixes[i]);
+                _writer.value(_namespaces.get(i));
+            }
+        }
+        if (started) {
+            _writer.endObject();
+        }
+    }
+
+    /**
+     * Assigns prefixes to the namespaces which were used often enough.
+     */
+    private void _assignPrefixes() {
+        final int size = _namespaces.size();
+        _namespacePrefixes = new String[size];
+        final Set<String> used = new HashSet<String>(_prefixes.keySet());
+        int counter = 0;
+        for (int i=0; i<size; i++) {
+            if (_namespaceUsage[i] < _MIN_NAMESPACE_USAGE) {
+                continue;
+            }
+            String prefix = _suggestPrefix(_namespaces.get(i));
+            while (prefix == null || used.contains(prefix)) {
+                prefix = "ns" + (++counter);
+            }
+            used.add(prefix);
+            _namespacePrefixes[i] = prefix;
+        }
+    }
+
+    /**
+     * Returns a prefix which is derived from the last segment of the namespace.
+     * If the segment is a host name, the second-level label is used.
+     *
+     * @param ns The namespace.
+     * @return A prefix or {@code null} if no prefix could be derived.
+     */
+    private static String _suggestPrefix(final String ns) {
+        final int end = ns.length() - 1;
+        final int start = Math.max(ns.lastIndexOf('/', end - 1), ns.lastIndexOf('#', end - 1)) + 1;
+        String segment = ns.substring(start, end);
+        final int dot = segment.lastIndexOf('.');
+        if (dot != -1) {
+            segment = segment.substring(segment.lastIndexOf('.', dot - 1) + 1, dot);
+        }
+        final StringBuilder prefix = new StringBuilder(_MAX_PREFIX_LENGTH);
+        for (int i=0; i<segment.length() && prefix.length() < _MAX_PREFIX_LENGTH; i++) {
+            final char c = segment.charAt(i);
+            if (_isASCIILetterOrDigit(c)) {
+                prefix.append(Character.toLowerCase(c));
+            }
+        }
+        if (prefix.length() == 0 || !Character.isLetter(prefix.charAt(0))) {
+            return null;
+        }
+        return prefix.toString();
+    }
+
+    private static boolean _isASCIILetterOrDigit(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean _isValidPrefix(final String prefix) {
+        if (prefix.isEmpty() || !Character.isLetter(prefix.charAt(0))) {
+            return false;
+        }
+        for (int i=1; i<prefix.length(); i++) {
+            final char c = prefix.charAt(i);
+            if (!_isASCIILetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the content of the temporary file to the writer and replaces
+     * the namespace references by the namespace IRIs or by CURIEs.
+     *
+     * @param file The file to read.
+     * @param writer The writer to write to.
+     * @throws IOException In case of an error.
+     */
+    private void _copy(final File file, final JSONByteWriter writer) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buff = new byte[1 << 16];
+            final int copy = 0, idHigh = 1, idLow = 2, local = 3;
+            int state = copy;
+            int id = 0;
+            String prefix = null;
+            int read;
+            while ((read = in.read(buff)) != -1) {
+                int start = 0;
+                for (int i=0; i<read; i++) {
+                    final byte b = buff[i];
+                    if (state == copy) {
+                        if (b == _MARK_IRI) {
+                            writer.raw(buff, start, i - start);
+                            state = idHigh;
+                        }
+                    }
+                    else if (state == idHigh) {
+                        id = (b & 0xFF) << 8;
+                        state = idLow;
+                    }
+                    else if (state == idLow) {
+                        id |= b & 0xFF;
+                        prefix = _namespacePrefixes[id];
+                        if (prefix != null) {
+                            writer.raw((byte) '[');
+                            writer.append(prefix);
+                            writer.raw((byte) ':');
+                        }
+                        else {
+                            writer.append(_namespaces.get(id));
+                        }
+                        start = i + 1;
+                        state = local;
+                    }
+                    else if (b == _MARK_END) {
+                        writer.raw(buff, start, i - start);
+                        if (prefix != null) {
+                            writer.raw((byte) ']');
+                        }
+                        start = i + 1;
+                        state = copy;
+                    }
+                }
+                if (state == copy || state == local) {
+                    writer.raw(buff, start, read - start);
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+
+    /*
+     * Topics.
+     */
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#startTopic(com.semagia.mio.IRef)
+     */
+    @Override
+    public void startTopic(final IRef identity) throws MIOException {
+        super.startTopic(identity);
+        if (!identity.equals(_topic)) {
+            try {
+                _startTopic(identity);
+            }
+            catch (IOException ex) {
+                throw new MIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Starts a new topic object and writes the provided identity.
+     *
+     * @param identity The identity of the topic.
+     * @throws IOException In case of an error.
+     */
+    private void _startTopic(final IRef identity) throws IOException {
+        _endTopic();
+        _topic = identity;
+        _topicIdentities.add(identity);
+        _topicArrays = _NONE;
+        _topicArray = _NONE;
+        _startItem(_topicWriter, _ITEM_TOPIC);
+        _openTopicArray(identity, _identityArray(identity));
+        _writeIRI(_topicWriter, null, identity.getIRI());
+    }
+
+    /**
+     * Ensures that the provided array of the topic object is open. Starts a
+     * new topic object if the current object belongs to another topic or
+     * if the array was written before.
+     *
+     * @param topic The topic.
+     * @param array The array to open.
+     * @throws IOException In case of an error.
+     */
+    private void _openTopicArray(final IRef topic, final int array) throws IOException {
+        if (!topic.equals(_topic) || (_topicArray != array && (_topicArrays & array) != 0)) {
+            _startTopic(topic);
+        }
+        if (_topicArray == array) {
+            return;
+        }
+        _closeTopicArray();
+        final byte[] key;
+        switch (array) {
+            case _SIDS: key = _KEY_SIDS; break;
+            case _SLOS: key = _KEY_SLOS; break;
+            case _IIDS: key = _KEY_IIDS; break;
+            case _INSTANCE_OF: key = _KEY_INSTANCE_OF; break;
+            case _NAMES: key = _KEY_NAMES; break;
+            case _OCCURRENCES: key = _KEY_OCCURRENCES; break;
+            default: throw new IllegalArgumentException("Unknown array: " + array);
+        }
+        _topicWriter.key(key);
+        _topicWriter.startArray();
+        _topicArray = array;
+        _topicArrays |= array;
+    }
+
+    private void _closeTopicArray() throws IOException {
+        if (_topicArray != _NONE) {
+            _topicWriter.endArray();
+            _topicArray = _NONE;
+        }
+    }
+
+    private void _endTopic() throws IOException {
+        if (_topic != null) {
+            _closeTopicArray();
+            _endItem(_topicWriter);
+            _topic = null;
+            _topicIdentities.clear();
+        }
+    }
+
+    private static int _identityArray(final IRef identity) {
+        switch (identity.getType()) {
+            case IRef.SUBJECT_IDENTIFIER: return _SIDS;
+            case IRef.SUBJECT_LOCATOR: return _SLOS;
+            default: return _IIDS;
+        }
+    }
+
+    /**
+     * Writes the identity unless it was written for the current topic object
+     * (the identity reported by {@link #startTopic(IRef)} is reported again
+     * by the identity event).
+     */
+    private void _handleIdentity(final IRef topic, final int array, final IRef identity) throws MIOException {
+        if (topic.equals(_topic) && _topicIdentities.contains(identity)) {
+            return;
+        }
+        try {
+            _openTopicArray(topic, array);
+            if (_topicIdentities.add(identity)) {
+                _writeIRI(_topicWriter, null, identity.getIRI());
+            }
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleItemIdentifier(java.lang.Object, java.lang.String)
+     */
+    @Override
+    protected void handleItemIdentifier(final IRef topic, final String iid)
+            throws MIOException {
+        _handleIdentity(topic, _IIDS, Ref.createItemIdentifier(iid));
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleSubjectIdentifier(java.lang.Object, java.lang.String)
+     */
+    @Override
+    protected void handleSubjectIdentifier(final IRef topic, final String sid)
+            throws MIOException {
+        _handleIdentity(topic, _SIDS, Ref.createSubjectIdentifier(sid));
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleSubjectLocator(java.lang.Object, java.lang.String)
+     */
+    @Override
+    protected void handleSubjectLocator(final IRef topic, final String slo)
+            throws MIOException {
+        _handleIdentity(topic, _SLOS, Ref.createSubjectLocator(slo));
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleTypeInstance(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    protected void handleTypeInstance(final IRef instance, final IRef type)
+            throws MIOException {
+        try {
+            if (_jtm11) {
+                _openTopicArray(instance, _INSTANCE_OF);
+                _writeTopicRef(_topicWriter, type);
+            }
+            else {
+                // JTM 1.0 does not support "instance_of"
+                final JSONByteWriter writer = _assocWriter;
+                _startAssociation(writer);
+                writer.key(_KEY_TYPE);
+                _writeTopicRef(writer, _TYPE_INSTANCE);
+                writer.key(_KEY_ROLES);
+                writer.startArray();
+                writer.startObject();
+                writer.key(_KEY_TYPE);
+                _writeTopicRef(writer, _TYPE);
+                writer.key(_KEY_PLAYER);
+                _writeTopicRef(writer, type);
+                writer.endObject();
+                writer.startObject();
+                writer.key(_KEY_TYPE);
+                _writeTopicRef(writer, _INSTANCE);
+                writer.key(_KEY_PLAYER);
+                _writeTopicRef(writer, instance);
+                writer.endObject();
+                writer.endArray();
+                _endItem(writer);
+            }
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createName(java.lang.Object, java.lang.Object, java.lang.String, java.util.Collection, java.lang.Object, java.util.Collection, java.util.Collection)
+     */
+    @Override
+    protected void createName(final IRef parent, final IRef type,
+            final String value, final Collection<IRef> scope,
+            final IRef reifier, final Collection<String> iids,
+            final Collection<IVariant<IRef>> variants) throws MIOException {
+        try {
+            _openTopicArray(parent, _NAMES);
+            final JSONByteWriter writer = _topicWriter;
+            writer.startObject();
+            writer.key(_KEY_VALUE);
+            writer.value(value);
+            if (type != null && !_DEFAULT_NAME.equals(type)) {
+                writer.key(_KEY_TYPE);
+                _writeTopicRef(writer, type);
+            }
+            _writeScope(writer, scope);
+            if (!variants.isEmpty()) {
+                writer.key(_KEY_VARIANTS);
+                writer.startArray();
+                for (IVariant<IRef> variant: variants) {
+                    writer.startObject();
+                    _writeValueDatatype(writer, variant.getValue(), variant.getDatatype());
+                    writer.key(_KEY_SCOPE);
+                    writer.startArray();
+                    for (IRef theme: variant.getScope()) {
+                        _writeTopicRef(writer, theme);
+                    }
+                    writer.endArray();
+                    _writeReifier(writer, variant.getReifier());
+                    _writeItemIdentifiers(writer, variant.getItemIdentifiers());
+                    writer.endObject();
+                }
+                writer.endArray();
+            }
+            _writeReifier(writer, reifier);
+            _writeItemIdentifiers(writer, iids);
+            writer.endObject();
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createOccurrence(java.lang.Object, java.lang.Object, java.lang.String, java.lang.String, java.util.Collection, java.lang.Object, java.util.Collection)
+     */
+    @Override
+    protected void createOccurrence(final IRef parent, final IRef type,
+            final String value, final String datatype,
+            final Collection<IRef> scope, final IRef reifier,
+            final Collection<String> iids) throws MIOException {
+        try {
+            _openTopicArray(parent, _OCCURRENCES);
+            final JSONByteWriter writer = _topicWriter;
+            writer.startObject();
+            _writeValueDatatype(writer, value, datatype);
+            writer.key(_KEY_TYPE);
+            _writeTopicRef(writer, type);
+            _writeScope(writer, scope);
+            _writeReifier(writer, reifier);
+            _writeItemIdentifiers(writer, iids);
+            writer.endObject();
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+
+    /*
+     * Associations.
+     */
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createAssociation(java.lang.Object, java.util.Collection, java.lang.Object, java.util.Collection, java.util.Collection)
+     */
+    @Override
+    protected void createAssociation(final IRef type,
+            final Collection<IRef> scope, final IRef reifier,
+            final Collection<String> iids,
+            final Collection<IRole<IRef>> roles) throws MIOException {
+        try {
+            final JSONByteWriter writer = _assocWriter;
+            _startAssociation(writer);
+            writer.key(_KEY_TYPE);
+            _writeTopicRef(writer, type);
+            _writeScope(writer, scope);
+            writer.key(_KEY_ROLES);
+            writer.startArray();
+            for (IRole<IRef> role: roles) {
+                writer.startObject();
+                writer.key(_KEY_TYPE);
+                _writeTopicRef(writer, role.getType());
+                writer.key(_KEY_PLAYER);
+                _writeTopicRef(writer, role.getPlayer());
+                _writeReifier(writer, role.getReifier());
+                _writeItemIdentifiers(writer, role.getItemIdentifiers());
+                writer.endObject();
+            }
+            writer.endArray();
+            _writeReifier(writer, reifier);
+            _writeItemIdentifiers(writer, iids);
+            _endItem(writer);
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /**
+     * Starts an association object. In line mode, the current topic is
+     * closed since topics and associations share the same writer.
+     *
+     * @param writer The writer.
+     * @throws IOException In case of an error.
+     */
+    private void _startAssociation(final JSONByteWriter writer) throws IOException {
+        if (_lineMode) {
+            _endTopic();
+        }
+        _startItem(writer, _ITEM_ASSOCIATION);
+    }
+
+
+    /*
+     * Topic map.
+     */
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleTopicMapItemIdentifier(java.lang.String)
+     */
+    @Override
+    protected void handleTopicMapItemIdentifier(final String iid)
+            throws MIOException {
+        _tmIids.add(iid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleTopicMapReifier(java.lang.Object)
+     */
+    @Override
+    protected void handleTopicMapReifier(final IRef reifier) throws MIOException {
+        _tmReifier = reifier;
+    }
+
+
+    /*
+     * Topic references.
+     */
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createTopicByItemIdentifier(java.lang.String)
+     */
+    @Override
+    protected IRef createTopicByItemIdentifier(final String iid) throws MIOException {
+        return Ref.createItemIdentifier(iid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createTopicBySubjectIdentifier(java.lang.String)
+     */
+    @Override
+    protected IRef createTopicBySubjectIdentifier(final String sid) throws MIOException {
+        return Ref.createSubjectIdentifier(sid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createTopicBySubjectLocator(java.lang.String)
+     */
+    @Override
+    protected IRef createTopicBySubjectLocator(final String slo) throws MIOException {
+        return Ref.createSubjectLocator(slo);
+    }
+
+
+    /*
+     * Writer helpers.
+     */
+
+    private void _writeValueDatatype(final JSONByteWriter writer,
+            final String value, final String datatype) throws IOException {
+        writer.key(_KEY_VALUE);
+        writer.value(value);
+        if (!XSD.STRING.equals(datatype)) {
+            writer.key(_KEY_DATATYPE);
+            _writeIRI(writer, null, datatype);
+        }
+    }
+
+    private void _writeScope(final JSONByteWriter writer,
+            final Collection<IRef> scope) throws IOException {
+        if (scope != null && !scope.isEmpty()) {
+            writer.key(_KEY_SCOPE);
+            writer.startArray();
+            for (IRef theme: scope) {
+                _writeTopicRef(writer, theme);
+            }
+            writer.endArray();
+        }
+    }
+
+    private void _writeReifier(final JSONByteWriter writer,
+            final IRef reifier) throws IOException {
+        if (reifier != null) {
+            writer.key(_KEY_REIFIER);
+            _writeTopicRef(writer, reifier);
+        }
+    }
+
+    private void _writeItemIdentifiers(final JSONByteWriter writer,
+            final Collection<String> iids) throws IOException {
+        if (iids != null && !iids.isEmpty()) {
+            writer.key(_KEY_IIDS);
+            writer.startArray();
+            for (String iid: iids) {
+                _writeIRI(writer, null, iid);
+            }
+            writer.endArray();
+        }
+    }
+
+    private void _writeTopicRef(final JSONByteWriter writer,
+            final IRef ref) throws IOException {
+        final byte[] kind;
+        switch (ref.getType()) {
+            case IRef.SUBJECT_IDENTIFIER: kind = _SI; break;
+            case IRef.SUBJECT_LOCATOR: kind = _SL; break;
+            default: kind = _II;
+        }
+        _writeIRI(writer, kind, ref.getIRI());
+    }
+
+    /**
+     * Writes an IRI. In JTM 1.1 mode, the IRI is abbreviated by a registered
+     * prefix, if possible. If the prefix discovery is enabled, the namespace
+     * of the IRI is replaced by a namespace reference which is resolved
+     * when the temporary file is copied.
+     *
+     * @param writer The writer.
+     * @param kind The topic reference kind ("si:", "sl:", "ii:") or {@code null}.
+     * @param iri The IRI to write.
+     * @throws IOException In case of an error.
+     */
+    private void _writeIRI(final JSONByteWriter writer, final byte[] kind,
+            final String iri) throws IOException {
+        writer.startString();
+        if (kind != null) {
+            writer.raw(kind, 0, kind.length);
+        }
+        if (_jtm11) {
+            String prefix = null;
+            int nsLength = 0;
+            for (Map.Entry<String, String> entry: _prefixes.entrySet()) {
+                final String ns = entry.getValue();
+                if (ns.length() > nsLength && iri.length() > ns.length()
+                        && iri.startsWith(ns) && iri.indexOf(']', ns.length()) == -1) {
+                    prefix = entry.getKey();
+                    nsLength = ns.length();
+                }
+            }
+            if (prefix != null) {
+                writer.raw((byte) '[');
+                writer.append(prefix);
+                writer.raw((byte) ':');
+                writer.append(iri, nsLength, iri.length());
+                writer.raw((byte) ']');
+                writer.endString();
+                return;
+            }
+            if (_namespaceIds != null) {
+                final int end = _namespaceEnd(iri);
+                if (end != -1) {
+                    final String ns = iri.substring(0, end);
+                    Integer id = _namespaceIds.get(ns);
+                    if (id == null && _namespaces.size() < _MAX_NAMESPACES) {
+                        id = _namespaces.size();
+                        _namespaceIds.put(ns, id);
+                        _namespaces.add(ns);
+                        if (id == _namespaceUsage.length) {
+                            final int[] usage = new int[id * 2];
+                            System.arraycopy(_namespaceUsage, 0, usage, 0, id);
+                            _namespaceUsage = usage;
+                        }
+                    }
+                    if (id != null) {
+                        _namespaceUsage[id]++;
+                        writer.raw(_MARK_IRI);
+                        writer.raw((byte) (id >> 8));
+                        writer.raw((byte) (id & 0xFF));
+                        writer.append(iri, end, iri.length());
+                        writer.raw(_MARK_END);
+                        writer.endString();
+                        return;
+                    }
+                }
+            }
+        }
+        writer.append(iri);
+        writer.endString();
+    }
+
+    /**
+     * Returns the end of the namespace of the IRI.
+     *
+     * @param iri The IRI.
+     * @return The position after the last '/' or '#' or <tt>-1</tt> if the
+     *          IRI has no usable namespace.
+     */
+    private static int _namespaceEnd(final String iri) {
+        final int idx = Math.max(iri.lastIndexOf('/'), iri.lastIndexOf('#'));
+        if (idx < 1 || idx == iri.length() - 1
+                || iri.indexOf(':') > idx
+                || (iri.charAt(idx) == '/' && iri.charAt(idx - 1) == '/')
+                || iri.indexOf(']', idx) != -1) {
+            return -1;
+        }
+        return idx + 1;
+    }
+
+}
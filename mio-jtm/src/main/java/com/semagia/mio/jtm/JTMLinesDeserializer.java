@@ -0,0 +1,252 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.jtm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.semagia.mio.MIOException;
+import com.semagia.mio.MIOParseException;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.base.AbstractDefaultDeserializer;
+import com.semagia.mio.helpers.ConstructFilter;
+import com.semagia.mio.helpers.FilteringMapHandler;
+import com.semagia.mio.helpers.RecordingMapHandler;
+import com.semagia.mio.helpers.ReplayQueue;
+import com.semagia.mio.helpers.SimpleMapHandler;
+
+/**
+ * A {@link IDeserializer} for JTM Lines.
+ * <p>
+ * JTM Lines is a line-based variant of
+ * <a href="http://www.cerny-online.com/jtm/">JSON Topic Maps (JTM)</a>:
+ * Each line contains one JTM item (usually of type "topic" or
+ * "association"). A line which starts with a "version" member is a header
+ * which provides the version and optionally the prefixes; it applies to the
+ * following lines until the next header. Hence, JTM Lines documents can be
+ * concatenated and split at any line after the header. Empty lines are
+ * ignored.
+ * </p>
+ * <p>
+ * If the {@link Property#PARALLELISM} property is set to a value greater
+ * than {@code 1}, the lines are parsed concurrently. The events are
+ * reported in document order.
+ * </p>
+ *
+ * @see JTMHandler#setLineMode(boolean)
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class JTMLinesDeserializer extends AbstractDefaultDeserializer {
+
+    /**
+     * Default min. number of characters of a chunk of lines.
+     */
+    private static final int _DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private int _chunkSize;
+
+    public JTMLinesDeserializer() {
+        super();
+        _chunkSize = _DEFAULT_CHUNK_SIZE;
+    }
+
+    void setChunkSize(final int chunkSize) {
+        _chunkSize = chunkSize;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.base.AbstractDeserializer#doParse(com.semagia.mio.Source)
+     */
+    @Override
+    protected void doParse(final Source src) throws IOException, MIOException {
+        final BufferedReader reader = new BufferedReader(JTMDeserializer.createReader(src));
+        final Object parallelism = getProperty(Property.PARALLELISM);
+        if (parallelism instanceof Integer && ((Integer) parallelism).intValue() > 1) {
+            _parseParallel(src, reader, ((Integer) parallelism).intValue());
+        }
+        else {
+            _parse(src, reader);
+        }
+    }
+
+    private void _parse(final Source src, final BufferedReader reader) throws IOException, MIOException {
+        final SimpleMapHandler handler = SimpleMapHandler.create(_handler);
+        JTMParser parser = _createParser(src);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (_isEmpty(line)) {
+                continue;
+            }
+            if (_isHeader(line)) {
+                parser = _createParser(src);
+                _parseHeader(parser, line, lineNumber);
+                continue;
+            }
+            _parseLine(parser, line, lineNumber, handler);
+        }
+    }
+
+    /**
+     * Parses the lines concurrently.
+     * <p>
+     * Consecutive lines are collected into chunks which are parsed by the
+     * worker threads. Header lines are parsed by the calling thread and
+     * terminate the current chunk.
+     * </p>
+     *
+     * @param src The source.
+     * @param reader The reader to read the lines from.
+     * @param parallelism The number of worker threads.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    private void _parseParallel(final Source src, final BufferedReader reader,
+            final int parallelism) throws IOException, MIOException {
+        final ReplayQueue queue = new ReplayQueue(_handler, parallelism);
+        final Object property = getProperty(Property.CONSTRUCT_FILTER);
+        final ConstructFilter filter = property instanceof ConstructFilter ? (ConstructFilter) property : null;
+        JTMParser settings = new JTMParser(src.getBaseIRI());
+        List<String> chunk = null;
+        int chunkLineNumber = 0;
+        int chunkSize = 0;
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (_isEmpty(line)) {
+                    continue;
+                }
+                if (_isHeader(line)) {
+                    if (chunk != null) {
+                        queue.submit(_createTask(settings, filter, chunk, chunkLineNumber));
+                        chunk = null;
+                    }
+                    settings = new JTMParser(src.getBaseIRI());
+                    _parseHeader(settings, line, lineNumber);
+                    continue;
+                }
+                if (chunk == null) {
+                    chunk = new ArrayList<String>();
+                    chunkLineNumber = lineNumber;
+                    chunkSize = 0;
+                }
+                // Empty lines within a chunk are kept to report the correct line numbers
+                while (chunkLineNumber + chunk.size() < lineNumber) {
+                    chunk.add("");
+                }
+                chunk.add(line);
+                chunkSize += line.length();
+                if (chunkSize >= _chunkSize) {
+                    queue.submit(_createTask(settings, filter, chunk, chunkLineNumber));
+                    chunk = null;
+                }
+            }
+            if (chunk != null) {
+                queue.submit(_createTask(settings, filter, chunk, chunkLineNumber));
+            }
+            queue.flush();
+        }
+        finally {
+            queue.close();
+        }
+    }
+
+    private static Callable<RecordingMapHandler> _createTask(final JTMParser settings,
+            final ConstructFilter filter, final List<String> lines, final int firstLineNumber) {
+        return new Callable<RecordingMapHandler>() {
+            @Override
+            public RecordingMapHandler call() throws Exception {
+                final RecordingMapHandler handler = new RecordingMapHandler();
+                final JTMParser parser = new JTMParser(settings);
+                final SimpleMapHandler simpleHandler = SimpleMapHandler.create(parser.applyFilter(handler, filter));
+                int lineNumber = firstLineNumber;
+                for (String line: lines) {
+                    if (!_isEmpty(line)) {
+                        _parseLine(parser, line, lineNumber, simpleHandler);
+                    }
+                    lineNumber++;
+                }
+                return handler;
+            }
+        };
+    }
+
+    private JTMParser _createParser(final Source src) {
+        final JTMParser parser = new JTMParser(src.getBaseIRI());
+        if (_handler instanceof FilteringMapHandler) {
+            parser.setFilter((FilteringMapHandler) _handler);
+        }
+        return parser;
+    }
+
+    private static void _parseHeader(final JTMParser parser, final String line,
+            final int lineNumber) throws IOException, MIOException {
+        try {
+            parser.parseSettings(new JsonParser(new StringReader(line)));
+        }
+        catch (MIOException ex) {
+            throw new MIOParseException(ex.getMessage(), ex, lineNumber, -1);
+        }
+    }
+
+    private static void _parseLine(final JTMParser parser, final String line,
+            final int lineNumber, final SimpleMapHandler handler) throws IOException, MIOException {
+        try {
+            parser.parse(new JsonParser(new StringReader(line)), handler);
+        }
+        catch (MIOException ex) {
+            throw new MIOParseException(ex.getMessage(), ex, lineNumber, -1);
+        }
+    }
+
+    private static boolean _isEmpty(final String line) {
+        return line.trim().isEmpty();
+    }
+
+    /**
+     * Returns if the line is a header, i.e. if the first member of the object
+     * is "version".
+     *
+     * @param line The line.
+     * @return {@code true} if the line is a header, otherwise {@code false}.
+     */
+    private static boolean _isHeader(final String line) {
+        int i = _skipWhitespace(line, 0);
+        if (i == line.length() || line.charAt(i) != '{') {
+            return false;
+        }
+        i = _skipWhitespace(line, i + 1);
+        return line.startsWith("\"version\"", i);
+    }
+
+    private static int _skipWhitespace(final String line, final int start) {
+        int i = start;
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+}
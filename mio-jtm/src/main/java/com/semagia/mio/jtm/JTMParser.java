@@ -22,8 +22,12 @@ import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.semagia.mio.IMapHandler;
 import com.semagia.mio.IRef;
 import com.semagia.mio.MIOException;
+import com.semagia.mio.helpers.CharSequenceMapHandlerAdapter;
+import com.semagia.mio.helpers.ConstructFilter;
+import com.semagia.mio.helpers.FilteringMapHandler;
 import com.semagia.mio.helpers.Locator;
 import com.semagia.mio.helpers.Ref;
 import com.semagia.mio.helpers.SimpleMapHandler;
@@ -58,11 +62,97 @@ final class JTMParser {
     }
     
     private final Locator _docIRI;
+    private FilteringMapHandler _filter;
+    /**
+     * Reusable buffer for occurrence and variant values.
+     */
+    private final StringBuilder _value;
 
     public JTMParser(final String docIRI) {
         _docIRI = Locator.create(docIRI);
         _prefixes = new HashMap<String, String>();
         _prefixes.put("xsd", _XSD);
+        _value = new StringBuilder();
+    }
+
+    /**
+     * Creates a parser which uses the document IRI, the version and the
+     * prefixes of the provided parser.
+     * <p>
+     * The filter is not copied, see {@link #applyFilter(IMapHandler, ConstructFilter)}.
+     * </p>
+     *
+     * @param parser The parser to copy the settings from.
+     */
+    public JTMParser(final JTMParser parser) {
+        _docIRI = parser._docIRI;
+        _jtm11Mode = parser._jtm11Mode;
+        _prefixes = new HashMap<String, String>(parser._prefixes);
+        _value = new StringBuilder();
+    }
+
+    /**
+     * Sets the handler which discards excluded constructs.
+     * <p>
+     * If set, the parser does not build values for discarded content.
+     * </p>
+     *
+     * @param filter The filtering handler or {@code null}.
+     */
+    public void setFilter(final FilteringMapHandler filter) {
+        _filter = filter;
+    }
+
+    /**
+     * Returns a handler which discards the constructs excluded by the
+     * provided filter and uses it as filter of this parser.
+     * <p>
+     * Parsers which run on worker threads must not share the
+     * {@link FilteringMapHandler} of the deserializer, its state reflects
+     * the events of the calling thread.
+     * </p>
+     *
+     * @param handler The handler which should receive the events.
+     * @param filter The filter or {@code null}.
+     * @return The filtering handler or the provided handler if the filter
+     *          is {@code null}.
+     */
+    IMapHandler applyFilter(final IMapHandler handler, final ConstructFilter filter) {
+        if (filter == null) {
+            return handler;
+        }
+        final FilteringMapHandler filtering = FilteringMapHandler.create(handler, filter);
+        setFilter(filtering);
+        return filtering;
+    }
+
+    private boolean _isSkipping() {
+        return _filter != null && _filter.isSkipping();
+    }
+
+    /**
+     * Consumes all tokens until the end of the current object.
+     *
+     * @param parser The parser.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of a syntax error.
+     */
+    private static void _skipObject(final JsonParser parser) throws IOException, MIOException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (parser.nextToken()) {
+                case JsonToken.START_OBJECT:
+                case JsonToken.START_ARRAY:
+                    depth++;
+                    break;
+                case JsonToken.END_OBJECT:
+                case JsonToken.END_ARRAY:
+                    depth--;
+                    break;
+                case IJsonLexer.EOF:
+                    throw new MIOException("Unexpected end of input");
+            }
+        }
     }
 
     /**
@@ -91,30 +181,10 @@ final class JTMParser {
         while (parser.nextToken() != JsonToken.END_OBJECT) {
             switch (parser.getCurrentToken()) {
                 case JsonToken.KW_VERSION:
-                    parser.nextToken();
-                    if ("1.0".equals(parser.getText())) {
-                        _jtm11Mode = false;
-                    }
-                    else if ("1.1".equals(parser.getText())) {
-                        _jtm11Mode = true;
-                    }
-                    else {
-                        throw new MIOException("Unsupported version: " + parser.getText());
-                    }
+                    _handleVersion(parser);
                     break;
                 case JsonToken.KW_PREFIXES:
-                    if (!_jtm11Mode) {
-                        throw new MIOException("Prefixes are not allowed in JTM 1.0");
-                    }
-                    if (parser.nextToken() != JsonToken.START_OBJECT) {
-                        throw new MIOException("Expected an object for the prefixes");
-                    }
-                    while (parser.nextToken() != JsonToken.END_OBJECT) {
-                        String prefix = parser.getText();
-                        parser.nextToken();
-                        String iri = parser.getText();
-                        _registerPrefix(prefix, iri);
-                    }
+                    _handlePrefixes(parser);
                     break;
                 case JsonToken.KW_ITEM_TYPE:
                     parser.nextToken();
@@ -381,6 +451,90 @@ final class JTMParser {
         }
     }
 
+    /**
+     * Interprets an object which provides the version and / or the prefixes
+     * of the document.
+     * <p>
+     * Unlike {@link #parse(JsonParser, SimpleMapHandler)} this method does
+     * not report any events and does not accept any other members.
+     * </p>
+     *
+     * @param parser The parser.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of a syntax error.
+     */
+    public void parseSettings(final JsonParser parser) throws IOException, MIOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new MIOException("Expected data to start with an Object");
+        }
+        while (parser.nextToken() != JsonToken.END_OBJECT) {
+            switch (parser.getCurrentToken()) {
+                case JsonToken.KW_VERSION:
+                    _handleVersion(parser);
+                    break;
+                case JsonToken.KW_PREFIXES:
+                    _handlePrefixes(parser);
+                    break;
+                default:
+                    _reportIllegalField(parser);
+            }
+        }
+    }
+
+    /**
+     * Interprets an array of topics or associations.
+     *
+     * @param parser The parser.
+     * @param handler The handler.
+     * @param topics {@code true} if the array contains topics, 
+     *          {@code false} if the array contains associations.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of a syntax error.
+     */
+    public void parseElements(final JsonParser parser, final SimpleMapHandler handler, 
+            final boolean topics) throws IOException, MIOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new MIOException(topics ? "Expected an array of topics" 
+                                          : "Expected an array of associations");
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (topics) {
+                _handleTopic(parser, handler);
+            }
+            else {
+                _handleAssociation(parser, handler);
+            }
+        }
+    }
+
+    private void _handleVersion(final JsonParser parser) throws IOException, MIOException {
+        parser.nextToken();
+        if ("1.0".equals(parser.getText())) {
+            _jtm11Mode = false;
+        }
+        else if ("1.1".equals(parser.getText())) {
+            _jtm11Mode = true;
+        }
+        else {
+            throw new MIOException("Unsupported version: " + parser.getText());
+        }
+    }
+
+    private void _handlePrefixes(final JsonParser parser) throws IOException, MIOException {
+        if (!_jtm11Mode) {
+            throw new MIOException("Prefixes are not allowed in JTM 1.0");
+        }
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new MIOException("Expected an object for the prefixes");
+        }
+        while (parser.nextToken() != JsonToken.END_OBJECT) {
+            String prefix = parser.getText();
+            parser.nextToken();
+            String iri = parser.getText();
+            _registerPrefix(prefix, iri);
+        }
+    }
+
     private void _registerPrefix(final String prefix, final String iri) throws MIOException {
         if ("xsd".equals(prefix)) {
             if (!_XSD.equals(iri)) {
@@ -669,11 +823,33 @@ final class JTMParser {
         handler.endTopic();
     }
 
+    /**
+     * Returns the value of the current token.
+     * <p>
+     * If the handler receives character sequences, the value is copied into
+     * a reusable buffer since the datatype may follow the value, otherwise
+     * the value is returned as string.
+     * </p>
+     */
+    private CharSequence _readValue(final JsonParser parser, final IMapHandler handler) {
+        if (CharSequenceMapHandlerAdapter.isCharSequenceMapHandler(handler)) {
+            _value.setLength(0);
+            _value.append(parser.getTextCharacters());
+            return _value;
+        }
+        return parser.getText();
+    }
+
     private void _handleOccurrence(final JsonParser parser, final SimpleMapHandler handler) throws IOException, MIOException {
         handler.startOccurrence();
+        if (_isSkipping()) {
+            _skipObject(parser);
+            handler.endOccurrence();
+            return;
+        }
         boolean seenType = false;
         String datatype = XSD.STRING;
-        String value = null;
+        CharSequence value = null;
         while (parser.nextToken() != JsonToken.END_OBJECT) {
             switch (parser.getCurrentToken()) {
                 case JsonToken.KW_TYPE:
@@ -681,12 +857,18 @@ final class JTMParser {
                         parser.nextToken();
                         handler.type(_makeTopicRef(parser.getText()));
                         seenType = true;
+                        if (_isSkipping()) {
+                            // Excluded by its type
+                            _skipObject(parser);
+                            handler.endOccurrence();
+                            return;
+                        }
                         break;
                     }
                 case JsonToken.KW_VALUE:
                     if (value == null) {
                         parser.nextToken();
-                        value = parser.getText();
+                        value = _readValue(parser, handler);
                         break;
                     }
                 case JsonToken.KW_DATATYPE:
@@ -710,9 +892,11 @@ final class JTMParser {
             throw new MIOException("The value of the occurrence is undefined");
         }
         if (datatype.equals(XSD.ANY_URI)) {
-            value = _resolveIRI(value);
+            handler.value(_resolveIRI(value.toString()), datatype);
+        }
+        else {
+            handler.valueChars(value, datatype);
         }
-        handler.value(value, datatype);
         if (!seenType) {
             throw new MIOException("The type of the occurrence is undefined");
         }
@@ -721,6 +905,11 @@ final class JTMParser {
 
     private void _handleName(final JsonParser parser, final SimpleMapHandler handler) throws IOException, MIOException {
         handler.startName();
+        if (_isSkipping()) {
+            _skipObject(parser);
+            handler.endName();
+            return;
+        }
         boolean seenValue = false;
         boolean seenType = false;
         while (parser.nextToken() != JsonToken.END_OBJECT) {
@@ -730,12 +919,18 @@ final class JTMParser {
                         parser.nextToken();
                         handler.type(_makeTopicRef(parser.getText()));
                         seenType = true;
+                        if (_isSkipping()) {
+                            // Excluded by its type
+                            _skipObject(parser);
+                            handler.endName();
+                            return;
+                        }
                         break;
                     }
                 case JsonToken.KW_VALUE:
                     if (!seenValue) {
                         parser.nextToken();
-                        handler.value(parser.getText());
+                        handler.valueChars(parser.getTextCharacters());
                         seenValue = true;
                         break;
                     }
@@ -770,15 +965,20 @@ final class JTMParser {
 
     private void _handleVariant(final JsonParser parser, final SimpleMapHandler handler) throws IOException, MIOException {
         handler.startVariant();
+        if (_isSkipping()) {
+            _skipObject(parser);
+            handler.endVariant();
+            return;
+        }
         String datatype = XSD.STRING;
-        String value = null;
+        CharSequence value = null;
         boolean seenScope = false;
         while (parser.nextToken() != JsonToken.END_OBJECT) {
             switch (parser.getCurrentToken()) {
                 case JsonToken.KW_VALUE:
                     if (value == null) {
                         parser.nextToken();
-                        value = parser.getText();
+                        value = _readValue(parser, handler);
                         break;
                     }
                 case JsonToken.KW_DATATYPE:
@@ -808,14 +1008,21 @@ final class JTMParser {
             throw new MIOException("The value of the variant is undefined");
         }
         if (XSD.ANY_URI.equals(datatype)) {
-            value = _resolveIRI(value);
+            handler.value(_resolveIRI(value.toString()), datatype);
+        }
+        else {
+            handler.valueChars(value, datatype);
         }
-        handler.value(value, datatype);
         handler.endVariant();
     }
 
     private void _handleAssociation(final JsonParser parser, final SimpleMapHandler handler) throws IOException, MIOException {
         handler.startAssociation();
+        if (_isSkipping()) {
+            _skipObject(parser);
+            handler.endAssociation();
+            return;
+        }
         boolean seenType = false;
         boolean seenRoles = false;
         while (parser.nextToken() != JsonToken.END_OBJECT) {
@@ -825,6 +1032,12 @@ final class JTMParser {
                         parser.nextToken();
                         handler.type(_makeTopicRef(parser.getText()));
                         seenType = true;
+                        if (_isSkipping()) {
+                            // Excluded by its type
+                            _skipObject(parser);
+                            handler.endAssociation();
+                            return;
+                        }
                         break;
                     }
                 case JsonToken.KW_IIDS:
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.jtm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import com.semagia.mio.MIOException;
+import com.semagia.mio.MIOParseException;
+
+/**
+ * A lexer for <a href="http://www.cerny-online.com/jtm/">JSON Topic Maps (JTM)</a>
+ * which operates upon UTF-8 encoded bytes.
+ * <p>
+ * The JTM keys are matched against byte constants, a string is created
+ * only if the value of a token is requested. This lexer accepts the same
+ * tokens as the JFlex-generated {@link JsonFastLexer}.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class JsonByteLexer implements IJsonLexer {
+
+    private static final Charset _UTF8 = Charset.forName("utf-8");
+
+    private static final byte[] _NULL = JSONByteWriter.ascii("null");
+
+    /**
+     * The keys and their token types. The index of a key in the outer array
+     * is the length of the key.
+     */
+    private static final byte[][][] _KEYS = new byte[20][][];
+    private static final int[][] _KEY_TOKENS = new int[20][];
+
+    static {
+        _key("version", JsonToken.KW_VERSION);
+        _key("item_type", JsonToken.KW_ITEM_TYPE);
+        _key("topics", JsonToken.KW_TOPICS);
+        _key("associations", JsonToken.KW_ASSOCIATIONS);
+        _key("roles", JsonToken.KW_ROLES);
+        _key("occurrences", JsonToken.KW_OCCURRENCES);
+        _key("names", JsonToken.KW_NAMES);
+        _key("variants", JsonToken.KW_VARIANTS);
+        _key("scope", JsonToken.KW_SCOPE);
+        _key("type", JsonToken.KW_TYPE);
+        _key("player", JsonToken.KW_PLAYER);
+        _key("value", JsonToken.KW_VALUE);
+        _key("datatype", JsonToken.KW_DATATYPE);
+        _key("reifier", JsonToken.KW_REIFIER);
+        _key("parent", JsonToken.KW_PARENT);
+        _key("item_identifiers", JsonToken.KW_IIDS);
+        _key("subject_identifiers", JsonToken.KW_SIDS);
+        _key("subject_locators", JsonToken.KW_SLOS);
+        _key("instance_of", JsonToken.KW_INSTANCE_OF);
+        _key("prefixes", JsonToken.KW_PREFIXES);
+    }
+
+    private static void _key(final String key, final int token) {
+        final int length = key.length();
+        final byte[][] keys = _KEYS[length];
+        final int[] tokens = _KEY_TOKENS[length];
+        final int size = keys == null ? 0 : keys.length;
+        final byte[][] newKeys = new byte[size + 1][];
+        final int[] newTokens = new int[size + 1];
+        if (keys != null) {
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(tokens, 0, newTokens, 0, size);
+        }
+        newKeys[size] = JSONByteWriter.ascii(key);
+        newTokens[size] = token;
+        _KEYS[length] = newKeys;
+        _KEY_TOKENS[length] = newTokens;
+    }
+
+    private final InputStream _in;
+    private byte[] _buffer;
+    private int _pos;
+    private int _limit;
+    /**
+     * Start / end of the current token value within the buffer.
+     */
+    private int _start;
+    private int _end;
+    /**
+     * Indicates if the current token value consists of ASCII characters only.
+     */
+    private boolean _ascii;
+    private final AsciiSequence _chars;
+    /**
+     * Number of bytes which were discarded from the buffer.
+     */
+    private long _offset;
+    private int _line;
+    private long _lineStart;
+
+    /**
+     * Creates a lexer which reads the provided stream.
+     *
+     * @param in The stream to read the UTF-8 encoded JSON from.
+     */
+    public JsonByteLexer(final InputStream in) {
+        this(in, new byte[1 << 14], 0);
+    }
+
+    /**
+     * Creates a lexer which reads the provided bytes.
+     *
+     * @param data The UTF-8 encoded JSON. The array is used as buffer and
+     *          must not be modified.
+     */
+    public JsonByteLexer(final byte[] data) {
+        this(null, data, data.length);
+    }
+
+    private JsonByteLexer(final InputStream in, final byte[] buffer, final int limit) {
+        _in = in;
+        _buffer = buffer;
+        _limit = limit;
+        _chars = new AsciiSequence();
+        _line = 1;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.jtm.IJsonLexer#token()
+     */
+    @Override
+    public int token() throws IOException, MIOException {
+        while (true) {
+            if (_pos == _limit && !_fill(1)) {
+                _start = _end = _pos;
+                return EOF;
+            }
+            final byte b = _buffer[_pos];
+            switch (b) {
+                case '\n':
+                    _line++;
+                    _lineStart = _offset + _pos + 1;
+                    _pos++;
+                    continue;
+                case ' ':
+                case '\t':
+                case '\r':
+                case '\f':
+                    _pos++;
+                    continue;
+                case '{': return _punctuation(JsonToken.START_OBJECT);
+                case '}': return _punctuation(JsonToken.END_OBJECT);
+                case '[': return _punctuation(JsonToken.START_ARRAY);
+                case ']': return _punctuation(JsonToken.END_ARRAY);
+                case ',': return _punctuation(JsonToken.COMMA);
+                case ':': return _punctuation(JsonToken.COLON);
+                case '"': return _string();
+                case 'n': return _null();
+                default:
+                    throw _illegalCharacter();
+            }
+        }
+    }
+
+    private int _punctuation(final int token) {
+        _start = _pos;
+        _end = ++_pos;
+        _ascii = true;
+        return token;
+    }
+
+    private int _null() throws IOException, MIOException {
+        if (_limit - _pos < _NULL.length) {
+            _fill(_NULL.length);
+        }
+        if (!_matches(_NULL, _pos, Math.min(_limit - _pos, _NULL.length))) {
+            throw _illegalCharacter();
+        }
+        _start = _pos;
+        _end = _pos + _NULL.length;
+        _pos = _end;
+        _ascii = true;
+        return JsonToken.VALUE_NULL;
+    }
+
+    private int _string() throws IOException, MIOException {
+        int i = _pos + 1;
+        boolean ascii = true;
+        while (true) {
+            i = _require(i, 1);
+            final byte b = _buffer[i];
+            if (b == '"') {
+                break;
+            }
+            if (b == '\\') {
+                // Validate the escape sequence, it is resolved by the parser
+                i = _require(i, 2);
+                switch (_buffer[i + 1]) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                    case 'b':
+                    case 'f':
+                    case 'n':
+                    case 'r':
+                    case 't':
+                        i++;
+                        break;
+                    case 'u':
+                        i = _require(i, 6);
+                        for (int k=i+2; k<i+6; k++) {
+                            if (Character.digit(_buffer[k], 16) == -1) {
+                                throw _illegalEscape(i);
+                            }
+                        }
+                        i += 5;
+                        break;
+                    default:
+                        throw _illegalEscape(i);
+                }
+            }
+            else if (b < 0) {
+                ascii = false;
+            }
+            i++;
+        }
+        _start = _pos + 1;
+        _end = i;
+        _pos = i + 1;
+        _ascii = ascii;
+        final int length = _end - _start;
+        if (length < _KEYS.length && _KEYS[length] != null) {
+            final byte[][] keys = _KEYS[length];
+            for (int k=0; k<keys.length; k++) {
+                if (_matches(keys[k], _start, length)) {
+                    return _KEY_TOKENS[length][k];
+                }
+            }
+        }
+        return JsonToken.VALUE_STRING;
+    }
+
+    /**
+     * Ensures that <code>n</code> bytes of the current string starting at
+     * the buffer index <code>i</code> are available.
+     *
+     * @return The buffer index of the byte which was at index <code>i</code>.
+     */
+    private int _require(final int i, final int n) throws IOException, MIOException {
+        if (_limit - i >= n) {
+            return i;
+        }
+        final int consumed = i - _pos;
+        if (!_fill(consumed + n)) {
+            throw new MIOParseException("Unterminated string at line " + _line, _line, _column());
+        }
+        return _pos + consumed;
+    }
+
+    private boolean _matches(final byte[] expected, final int start, final int length) {
+        if (expected.length != length) {
+            return false;
+        }
+        final byte[] buffer = _buffer;
+        for (int i=0; i<length; i++) {
+            if (buffer[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.jtm.IJsonLexer#value()
+     */
+    @Override
+    public String value() {
+        return _ascii ? _chars.toString() : new String(_buffer, _start, _end - _start, _UTF8);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.jtm.IJsonLexer#valueChars()
+     */
+    @Override
+    public CharSequence valueChars() {
+        return _ascii ? _chars : value();
+    }
+
+    private int _column() {
+        return (int) (_offset + _pos - _lineStart);
+    }
+
+    private MIOException _illegalCharacter() {
+        final int column = _column();
+        final int b = _buffer[_pos] & 0xFF;
+        final String text = b < 0x80 ? String.valueOf((char) b) : "0x" + Integer.toHexString(b);
+        return new MIOParseException("Illegal character <" + text + "> at line " + _line + " column: " + column, _line, column);
+    }
+
+    private MIOException _illegalEscape(final int index) {
+        final int column = (int) (_offset + index - _lineStart);
+        return new MIOParseException("Illegal escape sequence at line " + _line + " column: " + column, _line, column);
+    }
+
+    /**
+     * Ensures that at least <code>n</code> bytes starting at the current
+     * position are available in the buffer. The buffer is compacted and
+     * enlarged if necessary.
+     *
+     * @param n The number of bytes.
+     * @return {@code true} if the bytes are available, {@code false} if the
+     *          end of the input was reached before.
+     * @throws IOException In case of an I/O error.
+     */
+    private boolean _fill(final int n) throws IOException {
+        if (_in == null) {
+            return _limit - _pos >= n;
+        }
+        if (_pos > 0) {
+            System.arraycopy(_buffer, _pos, _buffer, 0, _limit - _pos);
+            _offset += _pos;
+            _limit -= _pos;
+            _start = _end = _pos = 0;
+        }
+        if (n > _buffer.length) {
+            final byte[] buffer = new byte[Math.max(n, _buffer.length * 2)];
+            System.arraycopy(_buffer, 0, buffer, 0, _limit);
+            _buffer = buffer;
+        }
+        while (_limit < n) {
+            final int read = _in.read(_buffer, _limit, _buffer.length - _limit);
+            if (read == -1) {
+                return false;
+            }
+            _limit += read;
+        }
+        return true;
+    }
+
+    /**
+     * A view upon ASCII bytes of the current token value.
+     */
+    private final class AsciiSequence implements CharSequence {
+
+        /* (non-Javadoc)
+         * @see java.lang.CharSequence#length()
+         */
+        @Override
+        public int length() {
+            return _end - _start;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.CharSequence#charAt(int)
+         */
+        @Override
+        public char charAt(final int index) {
+            return (char) _buffer[_start + index];
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.CharSequence#subSequence(int, int)
+         */
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            return toString().subSequence(start, end);
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            final int length = _end - _start;
+            final char[] chars = new char[length];
+            for (int i=0; i<length; i++) {
+                chars[i] = (char) _buffer[_start + i];
+            }
+            return new String(chars);
+        }
+
+    }
+
+}
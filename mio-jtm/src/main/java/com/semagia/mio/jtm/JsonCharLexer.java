@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.jtm;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.semagia.mio.MIOException;
+import com.semagia.mio.utils.PositionReader;
+
+/**
+ * Lexer which reads characters.
+ * <p>
+ * The lexer does not track lines and columns; the position of the current
+ * token is computed on demand by the {@link PositionReader}.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class JsonCharLexer extends JsonFastLexer {
+
+    /**
+     * Computes the position of the current token.
+     */
+    private final PositionReader _reader;
+
+    /**
+     * Creates a lexer which reads from the provided reader.
+     *
+     * @param reader The reader to read from.
+     */
+    public JsonCharLexer(final Reader reader) {
+        this(new PositionReader(reader));
+    }
+
+    private JsonCharLexer(final PositionReader reader) {
+        super(reader);
+        _reader = reader;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.jtm.JsonFastLexer#token()
+     */
+    @Override
+    public int token() throws IOException, MIOException {
+        final int token = super.token();
+        // The parser asks only for the position of the current token
+        _reader.release(getOffset());
+        return token;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.jtm.JsonFastLexer#getLine()
+     */
+    @Override
+    public int getLine() {
+        return _reader.getLine(getOffset()) + 1;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.jtm.JsonFastLexer#getColumn()
+     */
+    @Override
+    public int getColumn() {
+        return _reader.getColumn(getOffset());
+    }
+
+}
@@ -16,6 +16,7 @@
 package com.semagia.mio.jtm;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 
 import com.semagia.mio.MIOException;
@@ -28,11 +29,34 @@ import com.semagia.mio.MIOException;
  */
 final class JsonParser {
 
-    private final JsonLexer _lexer;
+    private final IJsonLexer _lexer;
     private int _current = -1;
 
+    /**
+     * Creates a parser which reads characters.
+     *
+     * @param reader The reader.
+     */
     public JsonParser(final Reader reader) {
-        _lexer = new JsonLexer(reader);
+        _lexer = new JsonCharLexer(reader);
+    }
+
+    /**
+     * Creates a parser which reads UTF-8 encoded bytes.
+     *
+     * @param in The stream to read from.
+     */
+    public JsonParser(final InputStream in) {
+        _lexer = new JsonByteLexer(in);
+    }
+
+    /**
+     * Creates a parser which reads UTF-8 encoded bytes.
+     *
+     * @param data The bytes to read, the array must not be modified.
+     */
+    public JsonParser(final byte[] data) {
+        _lexer = new JsonByteLexer(data);
     }
 
     /**
@@ -61,6 +85,26 @@ final class JsonParser {
         return _current;
     }
 
+    /**
+     * Returns the text associated to the current token without creating a
+     * string if the text contains no escape sequences.
+     * <p>
+     * The returned character sequence may be a view upon the lexer buffer
+     * which is only valid until the next token is requested.
+     * </p>
+     *
+     * @return The unescaped text.
+     */
+    public CharSequence getTextCharacters() {
+        final CharSequence value = _lexer.valueChars();
+        for (int i=0; i<value.length(); i++) {
+            if (value.charAt(i) == '\\') {
+                return getText();
+            }
+        }
+        return value;
+    }
+
     /**
      * Returns the text associated to the current token.
      * 
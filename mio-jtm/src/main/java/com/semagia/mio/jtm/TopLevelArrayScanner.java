@@ -0,0 +1,341 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.jtm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.semagia.mio.MIOException;
+
+/**
+ * Scans the members of the top-level object of a JTM document on byte
+ * level.
+ * <p>
+ * The elements of the <tt>topics</tt> and <tt>associations</tt> arrays are
+ * reported one by one, all other members are reported as a whole. The
+ * scanner skips strings, objects and arrays by counting brackets and
+ * detecting strings, it does not tokenize or validate the document. Syntax
+ * errors are reported by the parser.
+ * </p>
+ * <p>
+ * The scanner expects an ASCII-compatible encoding like UTF-8.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class TopLevelArrayScanner {
+
+    /**
+     * Indicates the end of the top-level object.
+     */
+    static final int END = 0;
+
+    /**
+     * Indicates a member of the top-level object which is not an element of
+     * the <tt>topics</tt> or <tt>associations</tt> array.
+     */
+    static final int MEMBER = 1;
+
+    /**
+     * Indicates an element of the <tt>topics</tt> array.
+     */
+    static final int TOPIC = 2;
+
+    /**
+     * Indicates an element of the <tt>associations</tt> array.
+     */
+    static final int ASSOCIATION = 3;
+
+    private static final int _EOF = -1;
+
+    /**
+     * Max. number of bytes of a member name which are inspected.
+     */
+    private static final int _MAX_NAME_LENGTH = 64;
+
+    private final InputStream _in;
+    private final byte[] _buffer;
+    private int _pos;
+    private int _limit;
+    /**
+     * The stream which receives the consumed bytes or {@code null}.
+     */
+    private OutputStream _out;
+    /**
+     * Start of the bytes in the buffer which have not been written to
+     * {@link #_out} yet.
+     */
+    private int _mark;
+    private final StringBuilder _name;
+    /**
+     * {@link #TOPIC} or {@link #ASSOCIATION} if the scanner is positioned
+     * within an array, otherwise {@link #END}.
+     */
+    private int _array;
+    private boolean _started;
+
+    /**
+     * Creates a scanner.
+     *
+     * @param in The stream to read the document from.
+     */
+    TopLevelArrayScanner(final InputStream in) {
+        _in = in;
+        _buffer = new byte[8192];
+        _name = new StringBuilder();
+    }
+
+    /**
+     * Moves the scanner to the next member or array element.
+     * <p>
+     * Each {@link #MEMBER}, {@link #TOPIC} and {@link #ASSOCIATION} must be
+     * consumed by {@link #readElement(OutputStream)} before this method is
+     * called again.
+     * </p>
+     *
+     * @return {@link #MEMBER}, {@link #TOPIC}, {@link #ASSOCIATION} or
+     *          {@link #END}.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException If the document does not start with an object.
+     */
+    int next() throws IOException, MIOException {
+        if (!_started) {
+            _skipWhitespace();
+            if (_read() != '{') {
+                throw new MIOException("Expected data to start with an Object");
+            }
+            _started = true;
+        }
+        while (true) {
+            _skipSeparators();
+            final int c = _peek(0);
+            if (_array != END) {
+                if (c != ']') {
+                    return c == _EOF ? END : _array;
+                }
+                _read();
+                _array = END;
+                continue;
+            }
+            if (c == '}' || c == _EOF) {
+                return END;
+            }
+            _name.setLength(0);
+            if (c == '"') {
+                // The JTM keys do not contain escape sequences or non-ASCII chars
+                int i = 1;
+                int b;
+                while ((b = _peek(i)) != '"' && b != _EOF && i < _MAX_NAME_LENGTH) {
+                    _name.append((char) b);
+                    i++;
+                }
+                if ("topics".contentEquals(_name) || "associations".contentEquals(_name)) {
+                    i++;
+                    int j = _skipWhitespace(i);
+                    if (_peek(j) == ':') {
+                        j = _skipWhitespace(j + 1);
+                        if (_peek(j) == '[') {
+                            _skip(j + 1);
+                            _array = _name.charAt(0) == 't' ? TOPIC : ASSOCIATION;
+                            continue;
+                        }
+                    }
+                }
+            }
+            return MEMBER;
+        }
+    }
+
+    /**
+     * Returns the name of the current {@link #MEMBER}.
+     *
+     * @return The name of the member.
+     */
+    String getName() {
+        return _name.toString();
+    }
+
+    /**
+     * Writes the current member (name, colon and value) or the current array
+     * element to the provided stream.
+     *
+     * @param out The stream to write the bytes to.
+     * @throws IOException In case of an I/O error.
+     */
+    void readElement(final OutputStream out) throws IOException {
+        _mark = _pos;
+        _out = out;
+        try {
+            if (_array == END) {
+                _consumeValue();
+                _skipWhitespace();
+                if (_peek(0) == ':') {
+                    _read();
+                    _skipWhitespace();
+                    _consumeValue();
+                }
+            }
+            else {
+                _consumeValue();
+            }
+            _flush();
+        }
+        finally {
+            _out = null;
+        }
+    }
+
+    /**
+     * Consumes a string, an object, an array or a scalar value.
+     */
+    private void _consumeValue() throws IOException {
+        final int c = _peek(0);
+        if (c == '"') {
+            _consumeString();
+        }
+        else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                final int b = _peek(0);
+                if (b == '"') {
+                    _consumeString();
+                    continue;
+                }
+                _read();
+                if (b == '{' || b == '[') {
+                    depth++;
+                }
+                else if (b == '}' || b == ']') {
+                    depth--;
+                }
+                else if (b == _EOF) {
+                    return;
+                }
+            } while (depth > 0);
+        }
+        else {
+            // Consume at least one byte to guarantee progress with invalid input
+            _read();
+            int b;
+            while ((b = _peek(0)) != ',' && b != '}' && b != ']' && b != ':'
+                    && !_isWhitespace(b) && b != _EOF) {
+                _read();
+            }
+        }
+    }
+
+    private void _consumeString() throws IOException {
+        _read();
+        while (true) {
+            final int c = _read();
+            if (c == '\\') {
+                _read();
+            }
+            else if (c == '"' || c == _EOF) {
+                return;
+            }
+        }
+    }
+
+    private void _skipSeparators() throws IOException {
+        int c;
+        while ((c = _peek(0)) == ',' || _isWhitespace(c)) {
+            _read();
+        }
+    }
+
+    private void _skipWhitespace() throws IOException {
+        while (_isWhitespace(_peek(0))) {
+            _read();
+        }
+    }
+
+    /**
+     * Returns the offset of the first non-whitespace byte at or after the
+     * provided offset.
+     */
+    private int _skipWhitespace(final int offset) throws IOException {
+        int i = offset;
+        while (_isWhitespace(_peek(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private void _skip(final int n) throws IOException {
+        for (int i=0; i<n; i++) {
+            _read();
+        }
+    }
+
+    private static boolean _isWhitespace(final int c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    /**
+     * Consumes the current byte.
+     *
+     * @return The consumed byte or {@link #_EOF}.
+     */
+    private int _read() throws IOException {
+        final int c = _peek(0);
+        if (c != _EOF) {
+            _pos++;
+        }
+        return c;
+    }
+
+    /**
+     * Returns the byte at the provided offset without consuming it.
+     */
+    private int _peek(final int offset) throws IOException {
+        if (_pos + offset >= _limit && !_fill(offset)) {
+            return _EOF;
+        }
+        return _buffer[_pos + offset] & 0xFF;
+    }
+
+    private boolean _fill(final int offset) throws IOException {
+        if (offset >= _buffer.length) {
+            throw new IOException("Lookahead exceeds the buffer size");
+        }
+        _flush();
+        System.arraycopy(_buffer, _pos, _buffer, 0, _limit - _pos);
+        _limit -= _pos;
+        _pos = 0;
+        _mark = 0;
+        while (_limit <= offset) {
+            final int read = _in.read(_buffer, _limit, _buffer.length - _limit);
+            if (read == -1) {
+                return false;
+            }
+            _limit += read;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the consumed bytes to {@link #_out}.
+     */
+    private void _flush() throws IOException {
+        if (_out != null && _pos > _mark) {
+            _out.write(_buffer, _mark, _pos - _mark);
+        }
+        _mark = _pos;
+    }
+
+}
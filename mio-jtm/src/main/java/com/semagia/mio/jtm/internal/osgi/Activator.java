@@ -20,9 +20,10 @@ import org.osgi.framework.BundleContext;
 
 import com.semagia.mio.IDeserializerFactory;
 import com.semagia.mio.jtm.JTMDeserializerFactory;
+import com.semagia.mio.jtm.JTMLinesDeserializerFactory;
 
 /**
- * Registeres the JTM {@link IDeserializerFactory} instance.
+ * Registeres the JTM and JTM Lines {@link IDeserializerFactory} instances.
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev: 471 $ - $Date: 2010-09-08 13:25:57 +0200 (Mi, 08 Sep 2010) $
@@ -35,6 +36,7 @@ public class Activator implements BundleActivator {
     @Override
     public void start(BundleContext context) throws Exception {
         context.registerService(IDeserializerFactory.class.getName(), new JTMDeserializerFactory(), null);
+        context.registerService(IDeserializerFactory.class.getName(), new JTMLinesDeserializerFactory(), null);
     }
 
     /* (non-Javadoc)
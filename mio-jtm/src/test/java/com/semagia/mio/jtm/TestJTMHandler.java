@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.jtm;
+
+import java.io.ByteArrayOutputStream;
+
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.IRef;
+import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.voc.XSD;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link JTMHandler}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestJTMHandler extends TestCase {
+
+    private static final String _NS = "http://psi.example.org/";
+
+    private static void _write(final IMapHandler handler) throws Exception {
+        final IRef person = Ref.createSubjectIdentifier(_NS + "person");
+        final IRef age = Ref.createSubjectIdentifier(_NS + "age");
+        handler.startTopicMap();
+        handler.startTopic(Ref.createSubjectIdentifier(_NS + "lars"));
+        handler.startIsa();
+        handler.topicRef(person);
+        handler.endIsa();
+        handler.startName();
+        handler.value("Lars \"</lars>\"\n\u00e4\u20ac\ud834\udd1e");
+        handler.endName();
+        handler.startOccurrence();
+        handler.startType();
+        handler.topicRef(age);
+        handler.endType();
+        handler.value("42", XSD.INTEGER);
+        handler.endOccurrence();
+        handler.endTopic();
+        handler.endTopicMap();
+    }
+
+    private static String _toString(final ByteArrayOutputStream out) throws Exception {
+        return new String(out.toByteArray(), "utf-8");
+    }
+
+    public void testPrefixDiscovery() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        _write(new JTMHandler(out));
+        final String jtm = _toString(out);
+        assertTrue(jtm.startsWith("{\"version\":\"1.1\",\"item_type\":\"topicmap\",\"prefixes\":{\"example\":\"http://psi.example.org/\"},\"topics\":["));
+        assertTrue(jtm.contains("\"subject_identifiers\":[\"[example:lars]\"]"));
+        assertTrue(jtm.contains("\"instance_of\":[\"si:[example:person]\"]"));
+        assertTrue(jtm.contains("\"datatype\":\"[xsd:integer]\""));
+        assertTrue(jtm.endsWith("\"associations\":[]}\n"));
+    }
+
+    public void testExplicitPrefix() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final JTMHandler handler = new JTMHandler(out);
+        handler.setPrefixDiscovery(false);
+        handler.addPrefix("ex", _NS);
+        _write(handler);
+        final String jtm = _toString(out);
+        assertTrue(jtm.contains("\"prefixes\":{\"ex\":\"http://psi.example.org/\"}"));
+        assertTrue(jtm.contains("\"instance_of\":[\"si:[ex:person]\"]"));
+    }
+
+    public void testJTM10() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        _write(new JTMHandler(out, "1.0"));
+        final String jtm = _toString(out);
+        assertTrue(jtm.startsWith("{\"version\":\"1.0\",\"item_type\":\"topicmap\",\"topics\":["));
+        assertFalse(jtm.contains("instance_of"));
+        assertTrue(jtm.contains("\"datatype\":\"" + XSD.INTEGER + "\""));
+        assertTrue(jtm.contains("\"associations\":[{\"type\":\"si:http://psi.topicmaps.org/iso13250/model/type-instance\""));
+    }
+
+    public void testLineMode() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final JTMHandler handler = new JTMHandler(out);
+        handler.setLineMode(true);
+        assertFalse(handler.getPrefixDiscovery());
+        handler.setPrettify(true);
+        handler.addPrefix("ex", _NS);
+        _write(handler);
+        final String[] lines = _toString(out).split("\n", -1);
+        assertEquals(3, lines.length);
+        assertEquals("{\"version\":\"1.1\",\"prefixes\":{\"ex\":\"http://psi.example.org/\"}}", lines[0]);
+        assertTrue(lines[1].startsWith("{\"item_type\":\"topic\",\"subject_identifiers\":[\"[ex:lars]\"]"));
+        assertTrue(lines[1].contains("\"instance_of\":[\"si:[ex:person]\"]"));
+        assertEquals("", lines[2]);
+    }
+
+    public void testLineModeJTM10() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final JTMHandler handler = new JTMHandler(out, "1.0");
+        handler.setLineMode(true);
+        _write(handler);
+        final String[] lines = _toString(out).split("\n");
+        assertEquals("{\"version\":\"1.0\"}", lines[0]);
+        for (int i=1; i<lines.length; i++) {
+            assertTrue(lines[i].startsWith("{\"item_type\":\"topic\",")
+                    || lines[i].startsWith("{\"item_type\":\"association\",\"type\":\"si:http://psi.topicmaps.org/iso13250/model/type-instance\""));
+        }
+    }
+
+    public void testLineModeNoPrefixDiscovery() throws Exception {
+        final JTMHandler handler = new JTMHandler(new ByteArrayOutputStream());
+        handler.setLineMode(true);
+        try {
+            handler.setPrefixDiscovery(true);
+            fail("The prefix discovery is not supported in line mode");
+        }
+        catch (IllegalStateException ex) {
+            // noop.
+        }
+    }
+
+    public void testEscaping() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        _write(new JTMHandler(out));
+        final String jtm = _toString(out);
+        assertTrue(jtm.contains("\"value\":\"Lars \\\"<\\/lars>\\\"\\n\u00e4\\u20ac\ud834\udd1e\""));
+    }
+
+    private static String _writeIdentities(final JTMHandler handler, final ByteArrayOutputStream out) throws Exception {
+        final IRef sid = Ref.createSubjectIdentifier("http://ex.org/b");
+        handler.startTopicMap();
+        handler.startTopic(sid);
+        handler.subjectIdentifier(sid.getIRI());
+        handler.itemIdentifier("http://ex.org/map#b");
+        handler.subjectIdentifier(sid.getIRI());
+        handler.endTopic();
+        handler.endTopicMap();
+        return _toString(out);
+    }
+
+    public void testNoDuplicateIdentities() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String jtm = _writeIdentities(new JTMHandler(out, "1.0"), out);
+        assertTrue(jtm.contains("\"subject_identifiers\":[\"http://ex.org/b\"]"));
+        assertTrue(jtm.contains("\"item_identifiers\":[\"http://ex.org/map#b\"]"));
+        out = new ByteArrayOutputStream();
+        JTMHandler handler = new JTMHandler(out);
+        handler.setPrefixDiscovery(false);
+        jtm = _writeIdentities(handler, out);
+        assertTrue(jtm.contains("\"subject_identifiers\":[\"http://ex.org/b\"]"));
+        out = new ByteArrayOutputStream();
+        handler = new JTMHandler(out);
+        handler.setLineMode(true);
+        jtm = _writeIdentities(handler, out);
+        assertTrue(jtm.contains("\"subject_identifiers\":[\"http://ex.org/b\"]"));
+        assertEquals(jtm.indexOf("http://ex.org/b\""), jtm.lastIndexOf("http://ex.org/b\""));
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.jtm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import com.semagia.mio.MIOParseException;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.helpers.ConstructFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link JTMLinesDeserializer}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestJTMLinesDeserializer extends TestCase {
+
+    private static final String _HEADER = "{\"version\":\"1.1\",\"prefixes\":{\"ex\":\"http://psi.example.org/\"}}\n";
+
+    private static String _lines(final int count) {
+        final StringBuilder buf = new StringBuilder(_HEADER);
+        for (int i=0; i<count; i++) {
+            buf.append("{\"item_type\":\"topic\",\"subject_identifiers\":[\"[ex:t").append(i).append("]\"],")
+                .append("\"names\":[{\"value\":\"Topic ").append(i).append("\"}]}\n");
+            if (i > 0) {
+                buf.append("\n{\"item_type\":\"association\",\"type\":\"si:[ex:a]\",\"roles\":[")
+                    .append("{\"type\":\"si:[ex:r]\",\"player\":\"si:[ex:t").append(i).append("]\"},")
+                    .append("{\"type\":\"si:[ex:r2]\",\"player\":\"si:[ex:t0]\"}]}\n");
+            }
+        }
+        buf.append("{\"item_type\":\"topicmap\",\"reifier\":\"si:[ex:t0]\"}\n");
+        return buf.toString();
+    }
+
+    private static String _parse(final JTMLinesDeserializer deser, final String lines) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final JTMHandler handler = new JTMHandler(out);
+        handler.setPrefixDiscovery(false);
+        handler.addPrefix("ex", "http://psi.example.org/");
+        handler.setLineMode(true);
+        deser.setMapHandler(handler);
+        deser.parse(new Source(new ByteArrayInputStream(lines.getBytes("utf-8")), "http://www.example.org/map"));
+        return new String(out.toByteArray(), "utf-8");
+    }
+
+    private static JTMLinesDeserializer _parallel() {
+        final JTMLinesDeserializer deser = new JTMLinesDeserializer();
+        deser.setProperty(Property.PARALLELISM, Integer.valueOf(4));
+        // Each line becomes a chunk
+        deser.setChunkSize(1);
+        return deser;
+    }
+
+    public void testRoundTrip() throws Exception {
+        final String lines = _lines(10);
+        assertEquals(lines.replace("\n\n", "\n"), _parse(new JTMLinesDeserializer(), lines));
+    }
+
+    public void testParallel() throws Exception {
+        final String lines = _lines(100);
+        assertEquals(_parse(new JTMLinesDeserializer(), lines), _parse(_parallel(), lines));
+    }
+
+    public void testConcatenation() throws Exception {
+        final String lines = _lines(10) + "{\"version\":\"1.1\",\"prefixes\":{\"ex\":\"http://www.example.org/\"}}\n"
+                + "{\"item_type\":\"topic\",\"subject_identifiers\":[\"[ex:x]\"]}\n";
+        final String expected = _parse(new JTMLinesDeserializer(), lines);
+        assertTrue(expected.contains("\"subject_identifiers\":[\"http://www.example.org/x\"]"));
+        assertEquals(expected, _parse(_parallel(), lines));
+    }
+
+    public void testParallelFilter() throws Exception {
+        // The unknown prefix is not resolved if the name is skipped
+        final String lines = _HEADER
+                + "{\"item_type\":\"topic\",\"subject_identifiers\":[\"[ex:x]\"],"
+                + "\"names\":[{\"value\":\"x\",\"scope\":[\"si:[unknown:x]\"]}]}\n";
+        final ConstructFilter filter = new ConstructFilter().exclude(ConstructFilter.NAME);
+        final JTMLinesDeserializer deser = new JTMLinesDeserializer();
+        deser.setProperty(Property.CONSTRUCT_FILTER, filter);
+        final String expected = _parse(deser, lines);
+        assertFalse(expected.contains("\"names\""));
+        final JTMLinesDeserializer parallel = _parallel();
+        parallel.setProperty(Property.CONSTRUCT_FILTER, filter);
+        assertEquals(expected, _parse(parallel, lines));
+    }
+
+    public void testLineNumber() throws Exception {
+        final String lines = _HEADER + "\n{\"item_type\":\"topic\",\"subject_identifiers\":[\"[unknown:x]\"]}\n";
+        try {
+            _parse(new JTMLinesDeserializer(), lines);
+            fail("Expected an error for an unknown prefix");
+        }
+        catch (MIOParseException ex) {
+            assertEquals(3, ex.getLineNumber());
+        }
+        try {
+            _parse(_parallel(), lines);
+            fail("Expected an error for an unknown prefix");
+        }
+        catch (MIOParseException ex) {
+            assertEquals(3, ex.getLineNumber());
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.jtm;
+
+import java.io.ByteArrayInputStream;
+
+import com.semagia.mio.MIOParseException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link JsonByteLexer}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestJsonByteLexer extends TestCase {
+
+    private static JsonByteLexer _lexer(final String json) throws Exception {
+        return new JsonByteLexer(new ByteArrayInputStream(json.getBytes("utf-8")));
+    }
+
+    public void testTokens() throws Exception {
+        final JsonByteLexer lexer = _lexer("{ \"subject_identifiers\" : [\"http://www.example.org/\"],\n"
+                + "\t\"reifier\": null, \"occurrences\":[], \"roles\": {} }");
+        assertEquals(JsonToken.START_OBJECT, lexer.token());
+        assertEquals(JsonToken.KW_SIDS, lexer.token());
+        assertEquals("subject_identifiers", lexer.value());
+        assertEquals(JsonToken.COLON, lexer.token());
+        assertEquals(JsonToken.START_ARRAY, lexer.token());
+        assertEquals(JsonToken.VALUE_STRING, lexer.token());
+        assertEquals("http://www.example.org/", lexer.value());
+        assertEquals("http://www.example.org/", lexer.valueChars().toString());
+        assertEquals(JsonToken.END_ARRAY, lexer.token());
+        assertEquals(JsonToken.COMMA, lexer.token());
+        assertEquals(JsonToken.KW_REIFIER, lexer.token());
+        assertEquals(JsonToken.COLON, lexer.token());
+        assertEquals(JsonToken.VALUE_NULL, lexer.token());
+        assertEquals(JsonToken.COMMA, lexer.token());
+        assertEquals(JsonToken.KW_OCCURRENCES, lexer.token());
+        assertEquals(JsonToken.COLON, lexer.token());
+        assertEquals(JsonToken.START_ARRAY, lexer.token());
+        assertEquals(JsonToken.END_ARRAY, lexer.token());
+        assertEquals(JsonToken.COMMA, lexer.token());
+        assertEquals(JsonToken.KW_ROLES, lexer.token());
+        assertEquals(JsonToken.COLON, lexer.token());
+        assertEquals(JsonToken.START_OBJECT, lexer.token());
+        assertEquals(JsonToken.END_OBJECT, lexer.token());
+        assertEquals(JsonToken.END_OBJECT, lexer.token());
+        assertEquals(IJsonLexer.EOF, lexer.token());
+    }
+
+    public void testKeywordLikeValues() throws Exception {
+        final JsonByteLexer lexer = _lexer("[\"type\", \"types\", \"typ\"]");
+        assertEquals(JsonToken.START_ARRAY, lexer.token());
+        assertEquals(JsonToken.KW_TYPE, lexer.token());
+        assertEquals("type", lexer.value());
+        assertEquals(JsonToken.COMMA, lexer.token());
+        assertEquals(JsonToken.VALUE_STRING, lexer.token());
+        assertEquals("types", lexer.value());
+        assertEquals(JsonToken.COMMA, lexer.token());
+        assertEquals(JsonToken.VALUE_STRING, lexer.token());
+        assertEquals("typ", lexer.value());
+    }
+
+    public void testNonASCII() throws Exception {
+        final String value = "L\u00e4rs \u20ac\ud834\udd1e";
+        final JsonByteLexer lexer = _lexer("\"" + value + "\"");
+        assertEquals(JsonToken.VALUE_STRING, lexer.token());
+        assertEquals(value, lexer.value());
+        assertEquals(value, lexer.valueChars().toString());
+    }
+
+    public void testEscapes() throws Exception {
+        final JsonParser parser = new JsonParser("\"a\\\"b\\\\\\u00e4\"".getBytes("utf-8"));
+        assertEquals(JsonToken.VALUE_STRING, parser.nextToken());
+        assertEquals("a\"b\\\u00e4", parser.getText());
+    }
+
+    public void testValidEscapes() throws Exception {
+        final JsonByteLexer lexer = _lexer("\"\\/\\b\\f\\n\\r\\t\\u00E4\\\"\"");
+        assertEquals(JsonToken.VALUE_STRING, lexer.token());
+        assertEquals(IJsonLexer.EOF, lexer.token());
+    }
+
+    private static void _assertIllegalEscape(final String json) throws Exception {
+        final JsonByteLexer lexer = _lexer(json);
+        try {
+            while (lexer.token() != IJsonLexer.EOF) {
+                // noop.
+            }
+            fail("Expected an exception for an illegal escape sequence: " + json);
+        }
+        catch (MIOParseException ex) {
+            assertEquals(1, ex.getLineNumber());
+            assertEquals(json.indexOf('\\'), ex.getColumnNumber());
+        }
+    }
+
+    public void testIllegalEscapes() throws Exception {
+        _assertIllegalEscape("{\"names\":[{\"value\":\"\\x\"}]}");
+        _assertIllegalEscape("[\"a\\u12G4\"]");
+        _assertIllegalEscape("[\"a\\u12\"]");
+        _assertIllegalEscape("[\"\\\u00e4\"]");
+    }
+
+    public void testIllegalEscapeParser() throws Exception {
+        final JsonParser parser = new JsonParser("{\"names\":[{\"value\":\"\\x\"}]}".getBytes("utf-8"));
+        try {
+            while (parser.nextToken() != IJsonLexer.EOF) {
+                // noop.
+            }
+            fail("Expected an exception for an illegal escape sequence");
+        }
+        catch (MIOParseException ex) {
+            // noop.
+        }
+    }
+
+    public void testLargeString() throws Exception {
+        final StringBuilder buf = new StringBuilder();
+        for (int i=0; i<50000; i++) {
+            buf.append(i % 10 == 0 ? '\u00e4' : 'a');
+        }
+        final String value = buf.toString();
+        final JsonByteLexer lexer = _lexer("  [\"" + value + "\", \"x\"]");
+        assertEquals(JsonToken.START_ARRAY, lexer.token());
+        assertEquals(JsonToken.VALUE_STRING, lexer.token());
+        assertEquals(value, lexer.value());
+        assertEquals(JsonToken.COMMA, lexer.token());
+        assertEquals(JsonToken.VALUE_STRING, lexer.token());
+        assertEquals("x", lexer.value());
+    }
+
+    public void testIllegalCharacter() throws Exception {
+        final JsonByteLexer lexer = _lexer("{\n  true}");
+        assertEquals(JsonToken.START_OBJECT, lexer.token());
+        try {
+            lexer.token();
+            fail("Expected an exception for an illegal character");
+        }
+        catch (MIOParseException ex) {
+            assertEquals(2, ex.getLineNumber());
+            assertEquals(2, ex.getColumnNumber());
+        }
+    }
+
+    public void testUnterminatedString() throws Exception {
+        final JsonByteLexer lexer = _lexer("\"abc");
+        try {
+            lexer.token();
+            fail("Expected an exception for an unterminated string");
+        }
+        catch (MIOParseException ex) {
+            // noop.
+        }
+    }
+
+}
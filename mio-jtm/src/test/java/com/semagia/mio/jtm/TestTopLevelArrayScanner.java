@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.jtm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+import com.semagia.mio.MIOException;
+
+/**
+ * Tests against the {@link TopLevelArrayScanner}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestTopLevelArrayScanner extends TestCase {
+
+    private static TopLevelArrayScanner _scanner(final String json) throws Exception {
+        return new TopLevelArrayScanner(new ByteArrayInputStream(json.getBytes("utf-8")));
+    }
+
+    private static String _read(final TopLevelArrayScanner scanner) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        scanner.readElement(out);
+        return out.toString("utf-8");
+    }
+
+    public void testMembers() throws Exception {
+        final TopLevelArrayScanner scanner = _scanner(" {\"version\": \"1.1\",\n"
+                + "\"prefixes\": {\"ex\": \"http://www.example.org/\"}, \"item_type\":\"topicmap\", "
+                + "\"reifier\":null}");
+        assertEquals(TopLevelArrayScanner.MEMBER, scanner.next());
+        assertEquals("version", scanner.getName());
+        assertEquals("\"version\": \"1.1\"", _read(scanner));
+        assertEquals(TopLevelArrayScanner.MEMBER, scanner.next());
+        assertEquals("prefixes", scanner.getName());
+        assertEquals("\"prefixes\": {\"ex\": \"http://www.example.org/\"}", _read(scanner));
+        assertEquals(TopLevelArrayScanner.MEMBER, scanner.next());
+        assertEquals("item_type", scanner.getName());
+        assertEquals("\"item_type\":\"topicmap\"", _read(scanner));
+        assertEquals(TopLevelArrayScanner.MEMBER, scanner.next());
+        assertEquals("reifier", scanner.getName());
+        assertEquals("\"reifier\":null", _read(scanner));
+        assertEquals(TopLevelArrayScanner.END, scanner.next());
+    }
+
+    public void testElements() throws Exception {
+        final String topic1 = "{\"subject_identifiers\":[\"http://www.example.org/a\"],"
+                + "\"names\":[{\"value\":\"}]\\\"{[\\\\\"}]}";
+        final String topic2 = "{\"item_identifiers\":[\"#b\"]}";
+        final String assoc = "{\"type\":\"si:http://www.example.org/t\","
+                + "\"roles\":[{\"type\":\"ii:#b\",\"player\":\"ii:#b\"}]}";
+        final TopLevelArrayScanner scanner = _scanner("{\"topics\" : [ " + topic1 + " ,\n" + topic2
+                + "],\"item_type\":\"topicmap\",\"associations\":[" + assoc + "], \"topics\": []}");
+        assertEquals(TopLevelArrayScanner.TOPIC, scanner.next());
+        assertEquals(topic1, _read(scanner));
+        assertEquals(TopLevelArrayScanner.TOPIC, scanner.next());
+        assertEquals(topic2, _read(scanner));
+        assertEquals(TopLevelArrayScanner.MEMBER, scanner.next());
+        assertEquals("\"item_type\":\"topicmap\"", _read(scanner));
+        assertEquals(TopLevelArrayScanner.ASSOCIATION, scanner.next());
+        assertEquals(assoc, _read(scanner));
+        assertEquals(TopLevelArrayScanner.END, scanner.next());
+    }
+
+    public void testNoArray() throws Exception {
+        final TopLevelArrayScanner scanner = _scanner("{\"topics\": null}");
+        assertEquals(TopLevelArrayScanner.MEMBER, scanner.next());
+        assertEquals("topics", scanner.getName());
+        assertEquals("\"topics\": null", _read(scanner));
+        assertEquals(TopLevelArrayScanner.END, scanner.next());
+    }
+
+    public void testLargeElement() throws Exception {
+        final StringBuilder buf = new StringBuilder("{\"names\":[");
+        for (int i=0; i<5000; i++) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            buf.append("{\"value\":\"name ").append(i).append("\"}");
+        }
+        buf.append("]}");
+        final String topic = buf.toString();
+        final TopLevelArrayScanner scanner = _scanner("{\"topics\":[" + topic + "]}");
+        assertEquals(TopLevelArrayScanner.TOPIC, scanner.next());
+        assertEquals(topic, _read(scanner));
+        assertEquals(TopLevelArrayScanner.END, scanner.next());
+    }
+
+    public void testIllegalStart() throws Exception {
+        try {
+            _scanner("[]").next();
+            fail("Expected an exception for an array");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+}
@@ -15,24 +15,32 @@
  */
 package com.semagia.mio.ltm;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import com.semagia.mio.IRIContext;
 import com.semagia.mio.DeserializerRegistry;
 import com.semagia.mio.IDeserializer;
 import com.semagia.mio.IMapHandler;
 import com.semagia.mio.IRef;
+import com.semagia.mio.IResourceResolver;
 import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
 import com.semagia.mio.Source;
 import com.semagia.mio.Syntax;
+import com.semagia.mio.helpers.IncludeCache;
+import com.semagia.mio.helpers.IncludePrefetcher;
 import com.semagia.mio.helpers.Literal;
 import com.semagia.mio.helpers.Locator;
 import com.semagia.mio.helpers.QName;
+import com.semagia.mio.helpers.RecordingMapHandler;
 import com.semagia.mio.helpers.Ref;
 import com.semagia.mio.helpers.SimpleMapHandler;
 import com.semagia.mio.ltm.api.IPrefixListener;
@@ -64,6 +72,9 @@ abstract class AbstractLTMParser {
     private boolean _baseLocatorSeen;
     private boolean _ignoreMergemap;
     private boolean _ignoreInclude;
+    private IResourceResolver _resolver;
+    private IncludeCache _cache;
+    private IncludePrefetcher _prefetcher;
     protected boolean _legacy;
     private Locator _docLocator;
     private Locator _baseLocator;
@@ -112,6 +123,15 @@ abstract class AbstractLTMParser {
         _included = included;
     }
 
+    /**
+     * Returns the IRIs of the documents which include this document.
+     *
+     * @return A (maybe empty) collection of IRIs.
+     */
+    Collection<Locator> getIncludedBy() {
+        return _included;
+    }
+
     public IRIContext getContext() {
         return _context;
     }
@@ -133,6 +153,36 @@ abstract class AbstractLTMParser {
         _ignoreInclude = ignore;
     }
 
+    /**
+     * Sets the resolver which is passed to the deserializers of included and
+     * merged topic maps.
+     *
+     * @param resolver The resolver or {@code null}.
+     */
+    public void setResourceResolver(final IResourceResolver resolver) {
+        _resolver = resolver;
+    }
+
+    /**
+     * Sets the cache which provides the events of included and merged 
+     * topic maps.
+     *
+     * @param cache The cache or {@code null}.
+     */
+    public void setIncludeCache(final IncludeCache cache) {
+        _cache = cache;
+    }
+
+    /**
+     * Sets the prefetcher which provides the included and merged topic maps
+     * of the document.
+     *
+     * @param prefetcher The prefetcher or {@code null}.
+     */
+    public void setIncludePrefetcher(final IncludePrefetcher prefetcher) {
+        _prefetcher = prefetcher;
+    }
+
     public void setSubordinate(final boolean subordinate) {
         _isSubordinate = subordinate;
     }
@@ -462,12 +512,32 @@ abstract class AbstractLTMParser {
         }
         _context.addIRI(docIRI.toExternalForm());
         final LTMDeserializer deser = new LTMDeserializer();
-        deser.setMapHandler(_handler);
         deser.setSubordinate(true);
         deser.setPrefixListener(_listener);
-        deser.setIRIContext(_context);
         deser.setIncludedBy(included);
-        deser.parse(new Source(docIRI.toExternalForm()));
+        deser.setProperty(Property.RESOURCE_RESOLVER, _resolver);
+        deser.setProperty(Property.INCLUDE_CACHE, _cache);
+        _parse(deser, cacheKey(included, docIRI.toExternalForm()), docIRI.toExternalForm());
+    }
+
+    /**
+     * Returns the cache key of a LTM source.
+     * <p>
+     * The events of included sources depend on the including sources, so
+     * the key contains the IRIs of the including sources.
+     * </p>
+     *
+     * @param included The IRIs of the including sources.
+     * @param iri The IRI of the source.
+     * @return The cache key.
+     */
+    static String cacheKey(final Collection<Locator> included, final String iri) {
+        final StringBuilder key = new StringBuilder("ltm");
+        for (Locator loc: included) {
+            key.append(' ').append(loc.getReference());
+        }
+        key.append(' ').append(iri);
+        return key.toString();
     }
 
     /**
@@ -495,10 +565,75 @@ abstract class AbstractLTMParser {
             if (deser == null) {
                 _reportError("Unknown syntax '" + syntax + "'");
             }
-            deser.setMapHandler(_handler);
             deser.setSubordinate(true);
+            deser.setProperty(Property.RESOURCE_RESOLVER, _resolver);
+            _parse(deser, syntax.toLowerCase() + " " + docIRI.toExternalForm(), docIRI.toExternalForm());
+        }
+    }
+
+    /**
+     * Parses an included or merged source.
+     * <p>
+     * The events of the source are taken from the {@link IncludePrefetcher}
+     * or from the {@link IncludeCache} if the source has not been changed 
+     * and if the events are applicable to the current {@link IRIContext}.
+     * Otherwise the events are recorded and added to the cache. The cache is
+     * not used if a prefix listener is set since the prefixes of the source
+     * are not cached.
+     * </p>
+     *
+     * @param deser The deserializer to parse the source.
+     * @param key The cache key.
+     * @param docIRI The IRI of the source.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    private void _parse(final IDeserializer deser, final String key, 
+            final String docIRI) throws IOException, MIOException {
+        byte[] data = null;
+        String fingerprint = null;
+        IncludeCache.Entry entry = null;
+        final IncludePrefetcher.Result prefetched = _prefetcher != null ? _prefetcher.take(key) : null;
+        if (prefetched != null) {
+            data = prefetched.getData();
+            fingerprint = prefetched.getFingerprint();
+            entry = prefetched.getEntry();
+        }
+        else if (_cache != null && _listener == null) {
+            data = IncludeCache.load(docIRI, _resolver);
+            if (data != null) {
+                fingerprint = IncludeCache.fingerprint(data);
+                entry = _cache.get(key, fingerprint, _resolver);
+            }
+        }
+        if (data == null) {
             deser.setIRIContext(_context);
-            deser.parse(new Source(docIRI.toExternalForm()));
+            deser.setMapHandler(_handler);
+            deser.parse(new Source(docIRI));
+            return;
+        }
+        if (entry != null && entry.isApplicable(_context)) {
+            entry.getEvents().replay(_handler);
+            for (String iri: entry.getIRIs()) {
+                _context.addIRI(iri);
+            }
+            return;
+        }
+        final IRIContext iris = new IRIContext(_context);
+        final RecordingMapHandler events = new RecordingMapHandler();
+        deser.setIRIContext(iris);
+        deser.setMapHandler(events);
+        deser.parse(new Source(new ByteArrayInputStream(data), docIRI));
+        events.replay(_handler);
+        if (_cache != null) {
+            final Set<String> loaded = new HashSet<String>(iris.getIRIs());
+            final Set<String> required = new HashSet<String>(iris.getInheritedIRIs());
+            loaded.remove(docIRI);
+            required.remove(docIRI);
+            final Map<String, String> fingerprints = IncludeCache.fingerprints(loaded, _resolver);
+            if (fingerprints != null) {
+                _cache.put(key, new IncludeCache.Entry(fingerprint, events, fingerprints, required, null));
+            }
         }
     }
 
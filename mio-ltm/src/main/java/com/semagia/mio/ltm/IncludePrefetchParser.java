@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.ltm;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.semagia.mio.DeserializerRegistry;
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.IRIContext;
+import com.semagia.mio.IResourceResolver;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.Syntax;
+import com.semagia.mio.helpers.IncludeCache;
+import com.semagia.mio.helpers.IncludePrefetcher;
+import com.semagia.mio.helpers.Locator;
+import com.semagia.mio.helpers.RecordingMapHandler;
+
+/**
+ * Parses included and merged topic maps on behalf of the
+ * {@link IncludePrefetcher}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class IncludePrefetchParser implements IncludePrefetcher.IParser {
+
+    private final Syntax _syntax;
+    private final Collection<Locator> _included;
+    private final IResourceResolver _resolver;
+    private final IncludeCache _cache;
+
+    /**
+     * Creates a parser.
+     *
+     * @param syntax The syntax of the source.
+     * @param included The IRIs of the including LTM sources, only used if
+     *          the syntax is LTM.
+     * @param resolver The resolver or {@code null}.
+     * @param cache The cache or {@code null}.
+     */
+    IncludePrefetchParser(final Syntax syntax, final Collection<Locator> included,
+            final IResourceResolver resolver, final IncludeCache cache) {
+        _syntax = syntax;
+        _included = included;
+        _resolver = resolver;
+        _cache = cache;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.IncludePrefetcher.IParser#parse(java.lang.String, byte[], java.lang.String)
+     */
+    @Override
+    public IncludeCache.Entry parse(final String iri, final byte[] data,
+            final String fingerprint) throws IOException, MIOException {
+        final IDeserializer deser;
+        if (_syntax == Syntax.LTM) {
+            final LTMDeserializer ltmDeser = new LTMDeserializer();
+            ltmDeser.setIncludedBy(_included);
+            ltmDeser.setProperty(Property.INCLUDE_CACHE, _cache);
+            deser = ltmDeser;
+        }
+        else {
+            deser = DeserializerRegistry.getInstance().createDeserializer(_syntax);
+            if (deser == null) {
+                return null;
+            }
+        }
+        final IRIContext iris = new IRIContext();
+        iris.addIRI(iri);
+        final RecordingMapHandler events = new RecordingMapHandler();
+        deser.setSubordinate(true);
+        deser.setIRIContext(iris);
+        deser.setMapHandler(events);
+        deser.setProperty(Property.RESOURCE_RESOLVER, _resolver);
+        deser.parse(new Source(new ByteArrayInputStream(data), iri));
+        final Set<String> loaded = new HashSet<String>(iris.getIRIs());
+        loaded.remove(iri);
+        final Map<String, String> fingerprints = IncludeCache.fingerprints(loaded, _resolver);
+        if (fingerprints == null) {
+            return null;
+        }
+        return new IncludeCache.Entry(fingerprint, events, fingerprints, null, null);
+    }
+
+}
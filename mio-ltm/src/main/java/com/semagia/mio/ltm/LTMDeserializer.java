@@ -20,14 +20,22 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PushbackInputStream;
 import java.io.Reader;
+import java.io.StringReader;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import com.semagia.mio.IRIContext;
+import com.semagia.mio.IResourceResolver;
 import com.semagia.mio.MIOException;
 import com.semagia.mio.Property;
 import com.semagia.mio.Source;
+import com.semagia.mio.Syntax;
 import com.semagia.mio.base.AbstractDefaultDeserializer;
+import com.semagia.mio.helpers.IncludeCache;
+import com.semagia.mio.helpers.IncludePrefetcher;
 import com.semagia.mio.helpers.Locator;
 import com.semagia.mio.ltm.api.IPrefixListener;
 import com.semagia.mio.utils.BOMInputStream;
@@ -94,25 +102,157 @@ final class LTMDeserializer extends AbstractDefaultDeserializer {
     @Override
     protected void doParse(final Source src) throws IOException,
             MIOException {
-        final Reader reader = _reader(src);
+        Reader reader = _reader(src);
+        IncludePrefetcher prefetcher = null;
         try {
-            _parser.setPrefixListener((IPrefixListener) getProperty("http://psi.semagia.com/mio/property/ltm/prefix-listener"));
+            final IPrefixListener listener = (IPrefixListener) getProperty("http://psi.semagia.com/mio/property/ltm/prefix-listener");
+            _parser.setPrefixListener(listener);
             _parser.setLegacyMode(Boolean.TRUE.equals(getProperty(Property.LTM_LEGACY)));
             _parser.setIgnoreMergemap(Boolean.TRUE.equals(getProperty(Property.IGNORE_MERGEMAP)));
             _parser.setIgnoreInclude(Boolean.TRUE.equals(getProperty(Property.IGNORE_INCLUDE)));
+            _parser.setResourceResolver((IResourceResolver) getProperty(Property.RESOURCE_RESOLVER));
+            _parser.setIncludeCache((IncludeCache) getProperty(Property.INCLUDE_CACHE));
             _parser.setDocumentIRI(src.getBaseIRI());
             _parser.setSubordinate(_isSubordinate);
             _parser.setMapHandler(super._handler);
+            final Object threads = getProperty(Property.INCLUDE_PREFETCH);
+            if (threads instanceof Integer && ((Integer) threads).intValue() > 0 && listener == null) {
+                prefetcher = new IncludePrefetcher(((Integer) threads).intValue(), 
+                        (IResourceResolver) getProperty(Property.RESOURCE_RESOLVER),
+                        (IncludeCache) getProperty(Property.INCLUDE_CACHE));
+                final String text = _read(reader);
+                reader = new StringReader(text);
+                _prefetch(text, Locator.create(src.getBaseIRI()), prefetcher);
+                _parser.setIncludePrefetcher(prefetcher);
+            }
             _parser.parse(reader);
         }
         finally {
             _parser = null;
+            if (prefetcher != null) {
+                prefetcher.close();
+            }
             if (reader != null) {
                 reader.close();
             }
         }
     }
 
+    /**
+     * Announces the included and merged topic maps of the document to the
+     * prefetcher.
+     * <p>
+     * The document is scanned for <tt>#INCLUDE</tt>, <tt>#MERGEMAP</tt> and
+     * <tt>#BASEURI</tt> directives, comments, strings and data blocks are
+     * skipped. Syntax errors are ignored, the parser reports them.
+     * </p>
+     *
+     * @param text The document.
+     * @param docIRI The document IRI.
+     * @param prefetcher The prefetcher.
+     */
+    private void _prefetch(final String text, final Locator docIRI, 
+            final IncludePrefetcher prefetcher) {
+        final boolean ignoreInclude = Boolean.TRUE.equals(getProperty(Property.IGNORE_INCLUDE));
+        final boolean ignoreMergemap = Boolean.TRUE.equals(getProperty(Property.IGNORE_MERGEMAP));
+        final IResourceResolver resolver = (IResourceResolver) getProperty(Property.RESOURCE_RESOLVER);
+        final IncludeCache cache = (IncludeCache) getProperty(Property.INCLUDE_CACHE);
+        final Collection<Locator> includedBy = new ArrayList<Locator>(_parser.getIncludedBy());
+        includedBy.add(docIRI);
+        final List<String> args = new ArrayList<String>(2);
+        Locator base = docIRI;
+        String directive = null;
+        final int length = text.length();
+        int i = 0;
+        while (i <= length) {
+            final char c = i < length ? text.charAt(i) : 0;
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f') {
+                i++;
+                continue;
+            }
+            if (c == '/' && text.startsWith("/*", i)) {
+                final int end = text.indexOf("*/", i + 2);
+                i = end == -1 ? length : end + 2;
+                continue;
+            }
+            if (c == '"') {
+                int end = i + 1;
+                while (end < length && (text.charAt(end) != '"' || end + 1 < length && text.charAt(end + 1) == '"')) {
+                    end += text.charAt(end) == '"' ? 2 : 1;
+                }
+                if (directive != null && args.size() < ("#MERGEMAP".equals(directive) ? 2 : 1)) {
+                    args.add(text.substring(i + 1, Math.min(end, length)));
+                    i = end + 1;
+                    continue;
+                }
+                i = end + 1;
+            }
+            // Any other token terminates the directive
+            if (directive != null && !args.isEmpty()) {
+                try {
+                    final String arg = args.get(0);
+                    final Locator loc = arg.length() > 0 && arg.charAt(0) == '#' ? docIRI.resolve(arg) : base.resolve(arg);
+                    final String iri = loc.toExternalForm();
+                    if ("#BASEURI".equals(directive)) {
+                        base = loc;
+                    }
+                    else if ("#INCLUDE".equals(directive) && !ignoreInclude) {
+                        prefetcher.prefetch(AbstractLTMParser.cacheKey(includedBy, iri), iri, 
+                                new IncludePrefetchParser(Syntax.LTM, includedBy, resolver, cache));
+                    }
+                    else if ("#MERGEMAP".equals(directive) && !ignoreMergemap) {
+                        final Syntax syntax = args.size() == 2 ? Syntax.valueOf(args.get(1)) : Syntax.LTM;
+                        if (syntax == Syntax.LTM) {
+                            prefetcher.prefetch(AbstractLTMParser.cacheKey(Collections.<Locator>emptyList(), iri), iri, 
+                                    new IncludePrefetchParser(Syntax.LTM, Collections.<Locator>emptyList(), resolver, cache));
+                        }
+                        else if (syntax != null) {
+                            prefetcher.prefetch(args.get(1).toLowerCase() + " " + iri, iri, 
+                                    new IncludePrefetchParser(syntax, null, resolver, cache));
+                        }
+                    }
+                }
+                catch (IllegalArgumentException ex) {
+                    // Invalid IRI, reported by the parser
+                }
+            }
+            directive = null;
+            args.clear();
+            if (c == '[' && text.startsWith("[[", i)) {
+                final int end = text.indexOf("]]", i + 2);
+                i = end == -1 ? length : end + 2;
+            }
+            else if (c == '#') {
+                int end = i + 1;
+                while (end < length && text.charAt(end) >= 'A' && text.charAt(end) <= 'Z') {
+                    end++;
+                }
+                directive = text.substring(i, end);
+                i = end;
+            }
+            else if (c != '"') {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Reads the document into a string.
+     *
+     * @param reader The reader to read the document from.
+     * @return The document.
+     * @throws IOException In case of an I/O error.
+     */
+    private static String _read(final Reader reader) throws IOException {
+        final StringBuilder buf = new StringBuilder(8192);
+        final char[] chars = new char[8192];
+        int read;
+        while ((read = reader.read(chars)) != -1) {
+            buf.append(chars, 0, read);
+        }
+        return buf.toString();
+    }
+
     /**
      * Sets the prefix listener.
      *
@@ -20,19 +20,33 @@ import java.io.Reader;
 
 import com.semagia.mio.MIOException;
 import com.semagia.mio.ltm.RealLTMParser.yyInput;
+import com.semagia.mio.utils.PositionReader;
 
 /**
  * Tokenizer for LTM tokens.
  * 
+ * The lexer does not track lines and columns; the position of the current
+ * token is computed on demand (usually in case of an error).
+ * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev: 467 $ - $Date: 2010-09-08 12:17:40 +0200 (Mi, 08 Sep 2010) $
  */
-final class LTMLexer extends RealLTMLexer implements yyInput {
+final class LTMLexer extends RealLTMFastLexer implements yyInput {
 
     private int _current;
 
+    /**
+     * Computes the position of the current token.
+     */
+    private final PositionReader _reader;
+
     public LTMLexer(final Reader reader) {
+        this(new PositionReader(reader));
+    }
+
+    private LTMLexer(final PositionReader reader) {
         super(reader);
+        _reader = reader;
     }
 
     /* (non-Javadoc)
@@ -41,15 +55,33 @@ final class LTMLexer extends RealLTMLexer implements yyInput {
     @Override
     public boolean advance() throws IOException, MIOException {
         _current = super.token();
-        return _current != RealLTMLexer.EOF;
+        // The parser asks only for the position of the current token
+        _reader.release(getOffset());
+        return _current != RealLTMFastLexer.EOF;
     }
 
     /* (non-Javadoc)
-     * @see com.semagia.mio.ltm.lexer.RealLTMLexer#token()
+     * @see com.semagia.mio.ltm.RealLTMFastLexer#token()
      */
     @Override
     public int token() {
         return _current;
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ltm.RealLTMFastLexer#getLine()
+     */
+    @Override
+    public int getLine() {
+        return _reader.getLine(getOffset()) + 1;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.ltm.RealLTMFastLexer#getColumn()
+     */
+    @Override
+    public int getColumn() {
+        return _reader.getColumn(getOffset());
+    }
+
 }
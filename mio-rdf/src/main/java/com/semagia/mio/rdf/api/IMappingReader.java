@@ -17,6 +17,7 @@ package com.semagia.mio.rdf.api;
 
 import java.io.IOException;
 
+import com.semagia.mio.IResourceResolver;
 import com.semagia.mio.MIOException;
 import com.semagia.mio.Source;
 
@@ -58,4 +59,11 @@ public interface IMappingReader {
      */
     public void setPrefixListener(IMappingPrefixListener listener);
 
+    /**
+     * Sets the resolver which provides the sources of included mappings.
+     *
+     * @param resolver A resolver or {@code null}.
+     */
+    public void setResourceResolver(IResourceResolver resolver);
+
 }
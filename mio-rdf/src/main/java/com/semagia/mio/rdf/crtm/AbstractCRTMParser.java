@@ -16,20 +16,19 @@
 package com.semagia.mio.rdf.crtm;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.Reader;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.semagia.mio.IResourceResolver;
 import com.semagia.mio.MIOException;
+import com.semagia.mio.Source;
 import com.semagia.mio.helpers.Locator;
 import com.semagia.mio.helpers.QName;
 import com.semagia.mio.rdf.api.IMappingHandler;
 import com.semagia.mio.rdf.api.IMappingPrefixListener;
-import com.semagia.mio.utils.BOMInputStream;
 
 /**
  * Abstract class which is not grammar-aware but provides the logic.
@@ -45,6 +44,7 @@ abstract class AbstractCRTMParser {
     private Collection<Locator> _included;
     private Boolean _globalLang2Scope;
     private IMappingPrefixListener _listener;
+    private IResourceResolver _resolver;
 
     protected AbstractCRTMParser(final String iri) {
         _handler = null;
@@ -63,6 +63,10 @@ abstract class AbstractCRTMParser {
         _listener = listener;
     }
 
+    void setResourceResolver(final IResourceResolver resolver) {
+        _resolver = resolver;
+    }
+
     protected final void setIncludedBy(final Collection<Locator> included) {
         if (_included.size() > 0) {
             throw new IllegalStateException("Internal error: The included IRIs are already set");
@@ -154,13 +158,19 @@ abstract class AbstractCRTMParser {
         final Locator includeIRI = _docIRI.resolve(iri);
         if (!_included.contains(includeIRI)) {
             _included.add(includeIRI);
-            final BOMInputStream stream = new BOMInputStream(new URL(includeIRI.toExternalForm()).openStream(), "utf-8");
-            final Reader reader = new InputStreamReader(stream, stream.getEncoding());
+            final Source src = _resolver != null ? _resolver.resolve(includeIRI.toExternalForm()) : null;
+            final Reader reader = CRTMMappingReader.createReader(src != null ? src : new Source(includeIRI.toExternalForm()));
             final CRTMParser parser = new CRTMParser(includeIRI.toExternalForm());
             parser.setMappingHandler(_handler);
             parser.setPrefixListener(_listener);
+            parser.setResourceResolver(_resolver);
             parser.setIncludedBy(_included);
-            parser.parse(reader);
+            try {
+                parser.parse(reader);
+            }
+            finally {
+                reader.close();
+            }
         }
     }
 
@@ -20,19 +20,33 @@ import java.io.Reader;
 
 import com.semagia.mio.MIOException;
 import com.semagia.mio.rdf.crtm.RealCRTMParser.yyInput;
+import com.semagia.mio.utils.PositionReader;
 
 /**
  * Tokenizer for CRTM tokens.
  * 
+ * The lexer does not track lines and columns; the position of the current
+ * token is computed on demand (usually in case of an error).
+ * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev: 473 $ - $Date: 2010-09-08 13:36:04 +0200 (Mi, 08 Sep 2010) $
  */
-final class CRTMLexer extends RealCRTMLexer implements yyInput {
+final class CRTMLexer extends RealCRTMFastLexer implements yyInput {
 
     private int _current;
-    
+
+    /**
+     * Computes the position of the current token.
+     */
+    private final PositionReader _reader;
+
     public CRTMLexer(final Reader reader) {
+        this(new PositionReader(reader));
+    }
+
+    private CRTMLexer(final PositionReader reader) {
         super(reader);
+        _reader = reader;
     }
 
     /* (non-Javadoc)
@@ -44,15 +58,33 @@ final class CRTMLexer extends RealCRTMLexer implements yyInput {
             return false;
         }
         _current = super.token();
+        // The parser asks only for the position of the current token
+        _reader.release(getOffset());
         return true;
     }
 
     /* (non-Javadoc)
-     * @see com.semagia.mio.rdf.crtm.RealCRTMLexer#token()
+     * @see com.semagia.mio.rdf.crtm.RealCRTMFastLexer#token()
      */
     @Override
     public int token() {
         return _current;
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.mio.rdf.crtm.RealCRTMFastLexer#getLine()
+     */
+    @Override
+    public int getLine() {
+        return _reader.getLine(getOffset()) + 1;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.rdf.crtm.RealCRTMFastLexer#getColumn()
+     */
+    @Override
+    public int getColumn() {
+        return _reader.getColumn(getOffset()) + 1;
+    }
+
 }
@@ -20,6 +20,7 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URL;
 
+import com.semagia.mio.IResourceResolver;
 import com.semagia.mio.MIOException;
 import com.semagia.mio.Source;
 import com.semagia.mio.rdf.api.IMappingHandler;
@@ -35,9 +36,10 @@ import com.semagia.mio.utils.BOMInputStream;
  */
 final class CRTMMappingReader implements IMappingReader {
 
-    private final String _DEFAULT_ENCODING = "utf-8";
+    private static final String _DEFAULT_ENCODING = "utf-8";
     private IMappingPrefixListener _listener;
     private IMappingHandler _handler;
+    private IResourceResolver _resolver;
 
     public CRTMMappingReader() {
         _listener = null;
@@ -48,17 +50,39 @@ final class CRTMMappingReader implements IMappingReader {
      */
     @Override
     public void read(final Source src) throws IOException, MIOException {
-        //TODO: Check for characterstream / bytetream
-        final BOMInputStream stream = new BOMInputStream(new URL(src.getBaseIRI()).openStream(), _DEFAULT_ENCODING);
-        final Reader reader = new InputStreamReader(stream, stream.getEncoding());
+        final Reader reader = createReader(src);
         final CRTMParser parser = new CRTMParser(src.getBaseIRI());
         parser.setMappingHandler(_handler);
         parser.setPrefixListener(_listener);
+        parser.setResourceResolver(_resolver);
         _handler.start();
-        parser.parse(reader);
+        try {
+            parser.parse(reader);
+        }
+        finally {
+            reader.close();
+        }
         _handler.end();
     }
 
+    /**
+     * Returns a reader which reads from the character stream, the byte stream
+     * or the IRI of the provided source.
+     *
+     * @param src The source.
+     * @return A reader.
+     * @throws IOException In case of an I/O error.
+     */
+    static Reader createReader(final Source src) throws IOException {
+        if (src.getCharacterStream() != null) {
+            return src.getCharacterStream();
+        }
+        final BOMInputStream stream = new BOMInputStream(src.getByteStream() != null ? src.getByteStream()
+                                                                                      : new URL(src.getBaseIRI()).openStream(),
+                                                         src.getEncoding() != null ? src.getEncoding() : _DEFAULT_ENCODING);
+        return new InputStreamReader(stream, stream.getEncoding());
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.mio.rdf.api.IMappingReader#getMappingHandler()
      */
@@ -83,4 +107,12 @@ final class CRTMMappingReader implements IMappingReader {
         _listener = listener;
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.mio.rdf.api.IMappingReader#setResourceResolver(com.semagia.mio.IResourceResolver)
+     */
+    @Override
+    public void setResourceResolver(final IResourceResolver resolver) {
+        _resolver = resolver;
+    }
+
 }
@@ -34,6 +34,7 @@ import org.slf4j.LoggerFactory;
 
 import com.semagia.mio.IMapHandler;
 import com.semagia.mio.IRef;
+import com.semagia.mio.IResourceResolver;
 import com.semagia.mio.MIOException;
 import com.semagia.mio.MIOParseException;
 import com.semagia.mio.Property;
@@ -88,7 +89,10 @@ final class RDFDeserializer extends AbstractDefaultDeserializer {
             final DefaultMappingHandler handler = new DefaultMappingHandler();
             mappingReader.setMappingHandler(handler);
             mappingReader.setPrefixListener((IMappingPrefixListener) getProperty("http://psi.semagia.com/mio/property/rdf2tm/prefix-listener"));
-            mappingReader.read(new Source(mappingIRI));
+            final IResourceResolver resolver = (IResourceResolver) getProperty(Property.RESOURCE_RESOLVER);
+            mappingReader.setResourceResolver(resolver);
+            final Source mappingSource = resolver != null ? resolver.resolve(mappingIRI) : null;
+            mappingReader.read(mappingSource != null ? mappingSource : new Source(mappingIRI));
             setProperty(Property.RDF2TM_MAPPING, handler.getMapping());
         }
         // 2nd: Delegate superclass which invokes handler.startTopicMap etc. and
@@ -18,6 +18,7 @@ package com.semagia.mio.rdf.sesame;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -33,6 +34,7 @@ import org.openrdf.rio.RDFParseException;
 import org.openrdf.rio.RDFParser;
 import org.openrdf.rio.helpers.RDFHandlerBase;
 
+import com.semagia.mio.IResourceResolver;
 import com.semagia.mio.MIOException;
 import com.semagia.mio.MIOParseException;
 import com.semagia.mio.Source;
@@ -93,6 +95,14 @@ final class RDFSourceMappingReader implements IMappingReader {
         _listener = listener;
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.mio.rdf.api.IMappingReader#setResourceResolver(com.semagia.mio.IResourceResolver)
+     */
+    @Override
+    public void setResourceResolver(final IResourceResolver resolver) {
+        // noop, RDF mappings do not include other resources
+    }
+
     /**
      * Returns either an existing Mapping or creates a Mapping for
      * the provided predicate IRI.
@@ -114,12 +124,19 @@ final class RDFSourceMappingReader implements IMappingReader {
      */
     @Override
     public void read(final Source source) throws IOException, MIOException {
-        //TODO: check for characterstream / bytestream
         _parser.setRDFHandler(new RDFStatementHandler());
-        final InputStream stream = new BufferedInputStream(new URL(source.getIRI()).openStream());
+        final Reader reader = source.getCharacterStream();
+        final InputStream stream = reader != null ? null 
+                                                  : new BufferedInputStream(source.getByteStream() != null ? source.getByteStream() 
+                                                                                                           : new URL(source.getIRI()).openStream());
         _handler.start();
         try {
-            _parser.parse(stream, source.getBaseIRI());
+            if (reader != null) {
+                _parser.parse(reader, source.getBaseIRI());
+            }
+            else {
+                _parser.parse(stream, source.getBaseIRI());
+            }
         }
         catch (OpenRDFException ex) {
             if (ex.getCause() instanceof MIOException) {
@@ -134,6 +151,9 @@ final class RDFSourceMappingReader implements IMappingReader {
             if (stream != null) {
                 stream.close();
             }
+            else {
+                reader.close();
+            }
         }
         _buildMapping();
         _handler.end();
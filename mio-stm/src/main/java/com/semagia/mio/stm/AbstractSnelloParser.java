@@ -46,6 +46,19 @@ abstract class AbstractSnelloParser {
         return _contentHandler.getParserEnvironment().getRuntime().getMapHandler();
     }
 
+    /**
+     * Sets the precompiled template library.
+     *
+     * @param lib The library or {@code null}.
+     */
+    public void setTemplateLib(SnelloTemplateLib lib) {
+        getRuntime().setTemplateLib(lib);
+    }
+
+    SnelloRuntime getRuntime() {
+        return _contentHandler.getParserEnvironment().getRuntime();
+    }
+
     public void setDocumentIRI(String iri) {
         ((GlobalParserEnvironment)_contentHandler.getParserEnvironment()).setDocumentIRI(Locator.create(iri));
         _registerPredefinedPrefixes();
@@ -34,4 +34,17 @@ interface ITemplate {
 
     public void execute(SimpleMapHandler handler, IContext ctx) throws MIOException;
 
+    /**
+     * Resolves the templates which are invoked by this template against the
+     * provided library.
+     * <p>
+     * After this method has been called, the template is not modified 
+     * anymore and may be executed concurrently.
+     * </p>
+     *
+     * @param lib The template library.
+     * @throws MIOException If an invoked template is not defined.
+     */
+    public void bind(ITemplateLib lib) throws MIOException;
+
 }
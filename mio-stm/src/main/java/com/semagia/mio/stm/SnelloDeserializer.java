@@ -23,6 +23,7 @@ import java.io.Reader;
 import java.net.URL;
 
 import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
 import com.semagia.mio.Source;
 import com.semagia.mio.base.AbstractDefaultDeserializer;
 import com.semagia.mio.utils.BOMInputStream;
@@ -62,10 +63,11 @@ final class SnelloDeserializer extends AbstractDefaultDeserializer {
     @Override
     protected void doParse(final Source src) throws IOException,
             MIOException {
-        Reader reader = _reader(src);
+        Reader reader = reader(src);
         try {
             _parser.setDocumentIRI(src.getBaseIRI());
             _parser.setMapHandler(super._handler);
+            _parser.setTemplateLib((SnelloTemplateLib) getProperty(Property.SNELLO_TEMPLATE_LIB));
             _parser.parse(reader);
         }
         finally {
@@ -89,7 +91,7 @@ final class SnelloDeserializer extends AbstractDefaultDeserializer {
      * @throws IOException If the construction of the reader fails.
      * @throws MIOException If the source is invalid (i.e. bad syntax).
      */
-    private static Reader _reader(final Source src) throws IOException, MIOException {
+    static Reader reader(final Source src) throws IOException, MIOException {
         if (src.getByteStream() != null) {
             return _reader(src.getByteStream(), src.getEncoding());
         }
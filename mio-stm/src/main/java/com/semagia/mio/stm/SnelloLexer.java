@@ -22,16 +22,20 @@ import java.io.Reader;
 
 import com.semagia.mio.MIOException;
 import com.semagia.mio.stm.RealSnelloParser.yyInput;
+import com.semagia.mio.utils.PositionReader;
 
 /**
  * Snello lexer which provides the API which the parser expects.
  * 
  * This class is used to keep the (JFlex) lexer independent of the (Jay) parser.
  * 
+ * The lexer does not track lines and columns; the position of the current
+ * token is computed on demand (usually in case of an error).
+ * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev: 469 $ - $Date: 2010-09-08 12:39:06 +0200 (Mi, 08 Sep 2010) $
  */
-final class SnelloLexer extends RealSnelloLexer implements yyInput {
+final class SnelloLexer extends RealSnelloFastLexer implements yyInput {
 
     /**
      * Current token identifier.
@@ -43,6 +47,11 @@ final class SnelloLexer extends RealSnelloLexer implements yyInput {
      */
     private boolean _eofSeen;
 
+    /**
+     * Computes the position of the current token.
+     */
+    private final PositionReader _reader;
+
     /**
      * 
      *
@@ -58,7 +67,12 @@ final class SnelloLexer extends RealSnelloLexer implements yyInput {
      * @param reader
      */
     public SnelloLexer(Reader reader) {
+        this(new PositionReader(reader));
+    }
+
+    private SnelloLexer(final PositionReader reader) {
         super(reader);
+        _reader = reader;
     }
 
     /* (non-Javadoc)
@@ -70,7 +84,9 @@ final class SnelloLexer extends RealSnelloLexer implements yyInput {
             return false;
         }
         _current = super.token();
-        _eofSeen = _current == RealSnelloLexer.EOF;
+        // The parser asks only for the position of the current token
+        _reader.release(getOffset());
+        _eofSeen = _current == RealSnelloFastLexer.EOF;
         if (_eofSeen) {
             // Ensure that "topic <<EOF>>" works: The last token is always a EOD!
             _current = TokenTypes.EOD;
@@ -80,7 +96,7 @@ final class SnelloLexer extends RealSnelloLexer implements yyInput {
     }
 
     /* (non-Javadoc)
-     * @see com.semagia.mio.stm.lexer.RealSnelloLexer#value()
+     * @see com.semagia.mio.stm.RealSnelloFastLexer#value()
      */
     @Override
     public String value() {
@@ -89,11 +105,27 @@ final class SnelloLexer extends RealSnelloLexer implements yyInput {
     }
 
     /* (non-Javadoc)
-     * @see com.semagia.mio.stm.lexer.RealSnelloLexer#token()
+     * @see com.semagia.mio.stm.RealSnelloFastLexer#token()
      */
     @Override
     public int token() {
         return _current;
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.mio.stm.RealSnelloFastLexer#getLine()
+     */
+    @Override
+    public int getLine() {
+        return _reader.getLine(getOffset()) + 1;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.stm.RealSnelloFastLexer#getColumn()
+     */
+    @Override
+    public int getColumn() {
+        return _reader.getColumn(getOffset());
+    }
+
 }
@@ -15,7 +15,9 @@
  */
 package com.semagia.mio.stm;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.semagia.mio.IMapHandler;
@@ -31,7 +33,8 @@ import com.semagia.mio.helpers.Locator;
  */
 final class SnelloRuntime implements ITemplateLib {
 
-    private TemplateLib _localTemplateLib;
+    private final TemplateLib _localTemplateLib;
+    private SnelloTemplateLib _templateLib;
     private Map<String, ITemplateLib> _templateLibs;
     private Context _context;
     private SimpleMapHandler _mapHandler;
@@ -40,41 +43,74 @@ final class SnelloRuntime implements ITemplateLib {
 
     public SnelloRuntime() {
         _localTemplateLib = new TemplateLib();
-        try {
-            _localTemplateLib.registerTemplate("isa", new TemplateISA());
-            _localTemplateLib.registerTemplate("ako", new TemplateAKO());
-        }
-        catch (MIOException ex) {
-            // Should not happen
-        }
-        _templateLibs = new HashMap<String, ITemplateLib>();
+        _templateLib = SnelloTemplateLib.DEFAULT;
         _context = new Context(this);
     }
 
+    /**
+     * Sets the precompiled template library.
+     * <p>
+     * The templates of the library are available to the document, the
+     * document cannot redefine them.
+     * </p>
+     *
+     * @param lib The library or {@code null} to use the predefined 
+     *          templates only.
+     */
+    public void setTemplateLib(final SnelloTemplateLib lib) {
+        _templateLib = lib != null ? lib : SnelloTemplateLib.DEFAULT;
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.mio.stm.dm.ITemplateLib#getTemplate(java.lang.String)
      */
     @Override
     public ITemplate getTemplate(final String name, int arity) throws MIOException {
-        return _localTemplateLib.getTemplate(name, arity);
+        final ITemplate tpl = _localTemplateLib.lookup(name, arity);
+        return tpl != null ? tpl : _templateLib.getTemplate(name, arity);
     }
 
     @Override
     public Iterable<String> getTemplateNames() {
-        return _localTemplateLib.getTemplateNames();
+        final List<String> names = new ArrayList<String>();
+        for (String name: _templateLib.getTemplateNames()) {
+            names.add(name);
+        }
+        for (String name: _localTemplateLib.getTemplateNames()) {
+            names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * Returns the templates which were defined by the document.
+     *
+     * @return An unmodifiable map of templates.
+     */
+    Map<String, ITemplate> getLocalTemplates() {
+        return _localTemplateLib.getTemplates();
     }
 
     public ITemplate getTemplate(String iri, String name, int arity) throws MIOException {
-        ITemplateLib lib = _templateLibs.get(iri);
-        
+        ITemplateLib lib = _templateLibs != null ? _templateLibs.get(iri) : null;
+        if (lib == null) {
+            _reportError("A template library <" + iri + "> is not registered");
+        }
         return lib.getTemplate(name, arity);
     }
 
     public void registerTemplate(String name, ITemplate template) throws MIOException {
+        final int arity = template.getParameterNames().length - template.getDefaultValues().length;
+        if (_templateLib.lookup(name, arity) != null) {
+            _reportError("A template with the name '" + name + "/" + arity + "' exists already");
+        }
         _localTemplateLib.registerTemplate(name, template);
     }
 
     public void registerTemplateLib(String iri, ITemplateLib lib) throws MIOException {
+        if (_templateLibs == null) {
+            _templateLibs = new HashMap<String, ITemplateLib>();
+        }
         ITemplateLib existing = _templateLibs.put(iri, lib);
         if (existing != null) {
             _reportError("...");
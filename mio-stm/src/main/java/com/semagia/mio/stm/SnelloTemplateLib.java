@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.stm;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.semagia.mio.MIOException;
+import com.semagia.mio.Source;
+import com.semagia.mio.helpers.RecordingMapHandler;
+
+/**
+ * An immutable, precompiled library of Snello templates.
+ * <p>
+ * A library is compiled once from a Snello document which contains
+ * template definitions and can be shared by any number of Snello
+ * deserializers (see {@link com.semagia.mio.Property#SNELLO_TEMPLATE_LIB}),
+ * even if they are used concurrently. The templates which are invoked by
+ * the templates of the library are resolved at compile time, so they must
+ * be defined within the library.
+ * </p>
+ * <p>
+ * The library contains the predefined templates <tt>isa</tt> and
+ * <tt>ako</tt>. Documents which use the library cannot redefine its
+ * templates.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class SnelloTemplateLib implements ITemplateLib {
+
+    /**
+     * The library which provides the predefined templates.
+     */
+    static final SnelloTemplateLib DEFAULT;
+
+    static {
+        final Map<String, ITemplate> templates = new HashMap<String, ITemplate>();
+        final ITemplate isa = new TemplateISA();
+        final ITemplate ako = new TemplateAKO();
+        templates.put(TemplateLib.key("isa", isa), isa);
+        templates.put(TemplateLib.key("ako", ako), ako);
+        try {
+            DEFAULT = new SnelloTemplateLib(templates);
+        }
+        catch (MIOException ex) {
+            // Cannot happen, the predefined templates invoke no templates
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private final Map<String, ITemplate> _templates;
+
+    private SnelloTemplateLib(final Map<String, ITemplate> templates) throws MIOException {
+        _templates = Collections.unmodifiableMap(new HashMap<String, ITemplate>(templates));
+        for (ITemplate tpl: _templates.values()) {
+            tpl.bind(this);
+        }
+    }
+
+    /**
+     * Compiles the template definitions of the provided Snello document.
+     * <p>
+     * The document must not contain anything but directives and template
+     * definitions.
+     * </p>
+     *
+     * @param src The Snello document.
+     * @return The compiled library.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of a syntax error, if a template is
+     *          defined twice, if an invoked template is not defined or if
+     *          the document contains topics or associations.
+     */
+    public static SnelloTemplateLib compile(final Source src) throws IOException, MIOException {
+        final SnelloParser parser = new SnelloParser();
+        final RecordingMapHandler events = new RecordingMapHandler();
+        parser.setDocumentIRI(src.getBaseIRI());
+        parser.setMapHandler(events);
+        final Reader reader = SnelloDeserializer.reader(src);
+        try {
+            parser.parse(reader);
+        }
+        finally {
+            reader.close();
+        }
+        if (events.size() > 0) {
+            throw new MIOException("A template library must not contain topics or associations");
+        }
+        final Map<String, ITemplate> templates = new HashMap<String, ITemplate>(DEFAULT._templates);
+        templates.putAll(parser.getRuntime().getLocalTemplates());
+        return new SnelloTemplateLib(templates);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.stm.ITemplateLib#getTemplate(java.lang.String, int)
+     */
+    @Override
+    public ITemplate getTemplate(final String name, final int arity) throws MIOException {
+        final ITemplate tpl = lookup(name, arity);
+        if (tpl == null) {
+            throw new MIOException("A template '" + name + "/" + arity + "' is not defined");
+        }
+        return tpl;
+    }
+
+    /**
+     * Returns the template with the provided name and arity.
+     *
+     * @param name The name of the template.
+     * @param arity The number of arguments.
+     * @return The template or {@code null} if no such template exists.
+     */
+    ITemplate lookup(final String name, final int arity) {
+        return _templates.get(name + "/" + arity);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.stm.ITemplateLib#registerTemplate(java.lang.String, com.semagia.mio.stm.ITemplate)
+     */
+    @Override
+    public void registerTemplate(final String name, final ITemplate template) throws MIOException {
+        throw new MIOException("The template library is immutable");
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.stm.ITemplateLib#getTemplateNames()
+     */
+    @Override
+    public Iterable<String> getTemplateNames() {
+        return _templates.keySet();
+    }
+
+}
@@ -63,4 +63,12 @@ final class TemplateAKO implements ITemplate {
         return SnelloRef.NO_REFS;
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.mio.stm.ITemplate#bind(com.semagia.mio.stm.ITemplateLib)
+     */
+    @Override
+    public void bind(final ITemplateLib lib) {
+        // noop.
+    }
+
 }
@@ -72,10 +72,7 @@ final class TemplateInvocation {
     }
 
     public void execute(SnelloRuntime runtime) throws MIOException {
-        if (_tpl == null) {
-            _tpl = runtime.getTemplate(_name, _args.length);
-            _init();
-        }
+        bind(runtime);
         Context ctx = runtime.newContext();
         final SimpleMapHandler handler = ctx.getMapHandler();
         _initContext(ctx);
@@ -88,6 +85,20 @@ final class TemplateInvocation {
         }
     }
 
+    /**
+     * Resolves the invoked template against the provided library iff the
+     * template has not been resolved yet.
+     *
+     * @param lib The template library.
+     * @throws MIOException If the template is not defined.
+     */
+    void bind(final ITemplateLib lib) throws MIOException {
+        if (_tpl == null) {
+            _tpl = lib.getTemplate(_name, _args.length);
+            _init();
+        }
+    }
+
     /**
      * 
      *
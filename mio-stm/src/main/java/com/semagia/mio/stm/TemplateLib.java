@@ -15,6 +15,7 @@
  */
 package com.semagia.mio.stm;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -39,14 +40,44 @@ final class TemplateLib implements ITemplateLib {
      */
     @Override
     public ITemplate getTemplate(final String name, final int arity) throws MIOException {
-        final String key = name + "/" + arity;
-        final ITemplate tpl = _templates.get(key);
+        final ITemplate tpl = lookup(name, arity);
         if (tpl == null) {
-            _reportError("A template '" + key + "' is not defined");
+            _reportError("A template '" + name + "/" + arity + "' is not defined");
         }
         return tpl;
     }
 
+    /**
+     * Returns the template with the provided name and arity.
+     *
+     * @param name The name of the template.
+     * @param arity The number of arguments.
+     * @return The template or {@code null} if no such template exists.
+     */
+    ITemplate lookup(final String name, final int arity) {
+        return _templates.get(name + "/" + arity);
+    }
+
+    /**
+     * Returns the templates by their keys.
+     *
+     * @return An unmodifiable map of templates.
+     */
+    Map<String, ITemplate> getTemplates() {
+        return Collections.unmodifiableMap(_templates);
+    }
+
+    /**
+     * Returns the key of a template.
+     *
+     * @param name The name of the template.
+     * @param template The template.
+     * @return The name and the number of mandatory parameters.
+     */
+    static String key(final String name, final ITemplate template) {
+        return name + "/" + (template.getParameterNames().length - template.getDefaultValues().length);
+    }
+
     @Override
     public Iterable<String> getTemplateNames() {
         return _templates.keySet();
@@ -61,7 +92,7 @@ final class TemplateLib implements ITemplateLib {
      */
     @Override
     public void registerTemplate(String name, ITemplate template) throws MIOException {
-        final String key = name + "/" + (template.getParameterNames().length - template.getDefaultValues().length);
+        final String key = key(name, template);
         ITemplate existing = _templates.put(key, template);
         if (existing != null) {
             _reportError("A template with the name '" + key + "' exists already");
@@ -310,6 +310,7 @@ final class TemplateScopeSnelloContentHandler implements ISnelloContentHandler {
     }
 
     public ITemplate getTemplate() {
+        _tpl.trim();
         return _tpl;
     }
 
@@ -412,6 +413,27 @@ final class TemplateScopeSnelloContentHandler implements ISnelloContentHandler {
             _addValue(reifier);
         }
 
+        /**
+         * Shrinks the instruction arrays to their actual size.
+         */
+        void trim() {
+            if (_states.length != _stateSize) {
+                final byte[] states = new byte[_stateSize];
+                System.arraycopy(_states, 0, states, 0, _stateSize);
+                _states = states;
+            }
+            if (_values.length != _valueSize) {
+                final SnelloRef[] values = new SnelloRef[_valueSize];
+                System.arraycopy(_values, 0, values, 0, _valueSize);
+                _values = values;
+            }
+            if (_tplCalls.length != _tplSize) {
+                final TemplateInvocation[] calls = new TemplateInvocation[_tplSize];
+                System.arraycopy(_tplCalls, 0, calls, 0, _tplSize);
+                _tplCalls = calls;
+            }
+        }
+
         private void _addValue(final SnelloRef ref) {
             if (_values.length == _valueSize) {
                 SnelloRef[] values = new SnelloRef[_values.length*2];
@@ -444,6 +466,17 @@ final class TemplateScopeSnelloContentHandler implements ISnelloContentHandler {
             return _defaults;
         }
 
+        /* (non-Javadoc)
+         * @see com.semagia.mio.stm.ITemplate#bind(com.semagia.mio.stm.ITemplateLib)
+         */
+        @Override
+        public void bind(final ITemplateLib lib) throws MIOException {
+            trim();
+            for (int i=0; i<_tplSize; i++) {
+                _tplCalls[i].bind(lib);
+            }
+        }
+
         /* (non-Javadoc)
          * @see com.semagia.mio.stm.dm.ITemplate#execute(com.semagia.mio.stm.dm.IContext)
          */
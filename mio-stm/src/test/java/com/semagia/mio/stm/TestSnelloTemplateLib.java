@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.stm;
+
+import java.io.StringReader;
+
+import com.semagia.mio.MIOException;
+import com.semagia.mio.Source;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link SnelloTemplateLib}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestSnelloTemplateLib extends TestCase {
+
+    private static SnelloTemplateLib _compile(final String snello) throws Exception {
+        return SnelloTemplateLib.compile(new Source(new StringReader(snello), "http://www.example.org/lib.stm"));
+    }
+
+    public void testPredefinedTemplates() throws Exception {
+        final SnelloTemplateLib lib = _compile("");
+        assertTrue(lib.getTemplate("isa", 2) instanceof TemplateISA);
+        assertTrue(lib.getTemplate("ako", 2) instanceof TemplateAKO);
+        assertSame(SnelloTemplateLib.DEFAULT.getTemplate("isa", 2), lib.getTemplate("isa", 2));
+    }
+
+    public void testUnknownTemplate() throws Exception {
+        try {
+            SnelloTemplateLib.DEFAULT.getTemplate("isa", 3);
+            fail("Expected an exception for an unknown template");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+    public void testImmutable() throws Exception {
+        try {
+            SnelloTemplateLib.DEFAULT.registerTemplate("isa2", new TemplateISA());
+            fail("Expected an exception, the library is immutable");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+    public void testRuntimeSharesLib() throws Exception {
+        final SnelloTemplateLib lib = _compile("");
+        final SnelloRuntime runtime1 = new SnelloRuntime();
+        final SnelloRuntime runtime2 = new SnelloRuntime();
+        runtime1.setTemplateLib(lib);
+        runtime2.setTemplateLib(lib);
+        assertSame(runtime1.getTemplate("ako", 2), runtime2.getTemplate("ako", 2));
+    }
+
+    public void testRuntimeLocalTemplates() throws Exception {
+        final SnelloRuntime runtime = new SnelloRuntime();
+        final ITemplate tpl = new TemplateAKO();
+        runtime.registerTemplate("subclass", tpl);
+        assertSame(tpl, runtime.getTemplate("subclass", 2));
+        assertEquals(1, runtime.getLocalTemplates().size());
+        // Another runtime does not see the template
+        try {
+            new SnelloRuntime().getTemplate("subclass", 2);
+            fail("Expected an exception for an unknown template");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+    public void testRuntimeCannotRedefineLibTemplates() throws Exception {
+        final SnelloRuntime runtime = new SnelloRuntime();
+        try {
+            runtime.registerTemplate("isa", new TemplateAKO());
+            fail("Expected an exception, the template is defined by the library");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+}
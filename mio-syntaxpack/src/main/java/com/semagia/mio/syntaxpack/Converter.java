@@ -0,0 +1,521 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.syntaxpack;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.semagia.mio.DeserializerRegistry;
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.Source;
+import com.semagia.mio.Syntax;
+import com.semagia.mio.ctm.CTM10Handler;
+import com.semagia.mio.xtm.XTM21Handler;
+
+/**
+ * Converts topic maps into XTM 2.1 or CTM.
+ * <p>
+ * The converter accepts single files and directory trees. The syntax of a
+ * file is detected by its file extension unless an input syntax is set
+ * (see {@link #setInputSyntax(Syntax)}); files in directories without a
+ * known syntax are ignored. The converted files are written into the
+ * target directory, the directory structure of the source is kept.
+ * </p>
+ * <p>
+ * The files are converted concurrently by a fixed number of threads (see
+ * {@link #setParallelism(int)}). Each file is streamed from the deserializer
+ * into the writer, the memory per thread does not depend on the file size
+ * (apart from what the deserializer of the input syntax keeps).
+ * </p>
+ * Usage:
+ * <pre>
+ * java com.semagia.mio.syntaxpack.Converter [-ctm | -xtm] [-syntax &lt;MIME type&gt;] [-threads &lt;n&gt;] &lt;source&gt; &lt;target directory&gt;
+ * </pre>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class Converter {
+
+    private final Syntax _outputSyntax;
+    private Syntax _inputSyntax;
+    private int _parallelism;
+    private IProgressListener _listener;
+
+    /**
+     * Creates a converter.
+     *
+     * @param outputSyntax The output syntax, either {@link Syntax#XTM_21}
+     *          or {@link Syntax#CTM}.
+     */
+    public Converter(final Syntax outputSyntax) {
+        if (!Syntax.XTM_21.equals(outputSyntax) && !Syntax.CTM.equals(outputSyntax)) {
+            throw new IllegalArgumentException("Unsupported output syntax: " + outputSyntax);
+        }
+        _outputSyntax = outputSyntax;
+        _parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Returns the output syntax.
+     *
+     * @return The output syntax.
+     */
+    public Syntax getOutputSyntax() {
+        return _outputSyntax;
+    }
+
+    /**
+     * Sets the syntax of the input files. If the syntax is {@code null}
+     * (default), the syntax is detected by the file extension.
+     *
+     * @param syntax The syntax or {@code null}.
+     */
+    public void setInputSyntax(final Syntax syntax) {
+        _inputSyntax = syntax;
+    }
+
+    /**
+     * Returns the syntax of the input files.
+     *
+     * @return The syntax or {@code null} if the syntax is detected by the
+     *          file extension.
+     */
+    public Syntax getInputSyntax() {
+        return _inputSyntax;
+    }
+
+    /**
+     * Sets the number of files which are converted concurrently
+     * (the number of available processors by default).
+     *
+     * @param parallelism The number of threads, must be greater than 0.
+     */
+    public void setParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than 0");
+        }
+        _parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of files which are converted concurrently.
+     *
+     * @return The number of threads.
+     */
+    public int getParallelism() {
+        return _parallelism;
+    }
+
+    /**
+     * Sets a listener which is notified about each converted file.
+     *
+     * @param listener The listener or {@code null}.
+     */
+    public void setProgressListener(final IProgressListener listener) {
+        _listener = listener;
+    }
+
+    /**
+     * Converts the provided file or the files of the provided directory tree.
+     * <p>
+     * The listener receives the results in the same order as the results
+     * are returned.
+     * </p>
+     * <p>
+     * If the source is a directory, the target directory must not be the
+     * source directory or a directory inside of it. A file is never
+     * converted into itself, the conversion of such a file fails.
+     * </p>
+     *
+     * @param source A file or a directory.
+     * @param target The directory to write the converted files into.
+     * @return The results of the conversions, one result per file.
+     * @throws IOException If the source cannot be read or if the target
+     *          directory is inside of the source directory.
+     */
+    public List<Result> convert(final File source, final File target) throws IOException {
+        if (!source.exists()) {
+            throw new IOException("File not found: " + source);
+        }
+        if (source.isDirectory()) {
+            final File sourceDir = source.getCanonicalFile();
+            for (File dir = target.getCanonicalFile(); dir != null; dir = dir.getParentFile()) {
+                if (dir.equals(sourceDir)) {
+                    throw new IOException("The target directory must not be inside of the source directory: " + target);
+                }
+            }
+        }
+        final List<File> files = new ArrayList<File>();
+        if (source.isDirectory()) {
+            _collect(source, files);
+        }
+        else {
+            files.add(source);
+        }
+        final List<Result> results = new ArrayList<Result>(files.size());
+        if (files.isEmpty()) {
+            return results;
+        }
+        final String sourcePath = source.isDirectory() ? source.getPath() : source.getParent();
+        final Set<File> targets = new HashSet<File>();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(_parallelism, files.size()));
+        final LinkedList<Future<Result>> pending = new LinkedList<Future<Result>>();
+        try {
+            for (final File file: files) {
+                final Syntax syntax = _inputSyntax != null ? _inputSyntax : Syntax.forFilename(file.getName());
+                final File out = _target(file, sourcePath, target, targets);
+                pending.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        return _convert(file, syntax, out);
+                    }
+                }));
+            }
+            while (!pending.isEmpty()) {
+                final Result result = pending.removeFirst().get();
+                results.add(result);
+                if (_listener != null) {
+                    _listener.converted(result);
+                }
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        }
+        catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+        finally {
+            for (Future<Result> future: pending) {
+                future.cancel(true);
+            }
+            executor.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * Collects the files of the directory tree which have a known syntax
+     * (or all files if the input syntax is set).
+     */
+    private void _collect(final File dir, final List<File> files) throws IOException {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            throw new IOException("Cannot read the directory: " + dir);
+        }
+        Arrays.sort(children);
+        for (File child: children) {
+            if (child.isDirectory()) {
+                _collect(child, files);
+            }
+            else if (_inputSyntax != null || Syntax.forFilename(child.getName()) != null) {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * Returns the file to write the converted <code>file</code> into.
+     */
+    private File _target(final File file, final String sourcePath, final File target,
+            final Set<File> targets) {
+        final String path = file.getPath();
+        String relPath = sourcePath != null && path.startsWith(sourcePath)
+                            ? path.substring(sourcePath.length()) : file.getName();
+        while (relPath.startsWith(File.separator)) {
+            relPath = relPath.substring(1);
+        }
+        final String ext = "." + _outputSyntax.getDefaultFileExtension();
+        final int idx = relPath.lastIndexOf('.');
+        File out = new File(target, (idx > relPath.lastIndexOf(File.separatorChar) + 1 ? relPath.substring(0, idx) : relPath) + ext);
+        if (!targets.add(out)) {
+            // Another file with the same name but another extension exists
+            out = new File(target, relPath + ext);
+            targets.add(out);
+        }
+        return out;
+    }
+
+    private Result _convert(final File file, final Syntax syntax, final File out) {
+        final long start = System.nanoTime();
+        boolean created = false;
+        try {
+            if (out.getCanonicalFile().equals(file.getCanonicalFile())) {
+                throw new MIOException("The target is the source file");
+            }
+            if (syntax == null) {
+                throw new MIOException("Unknown syntax");
+            }
+            final IDeserializer deser = DeserializerRegistry.getInstance().createDeserializer(syntax);
+            if (deser == null) {
+                throw new MIOException("No deserializer available for " + syntax.getName());
+            }
+            final File dir = out.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("Cannot create the directory: " + dir);
+            }
+            final InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+            try {
+                created = true;
+                final OutputStream os = new BufferedOutputStream(new FileOutputStream(out), 1 << 16);
+                try {
+                    deser.setMapHandler(_createHandler(os));
+                    deser.parse(new Source(in, file.toURI().toString()));
+                }
+                finally {
+                    os.close();
+                }
+            }
+            finally {
+                in.close();
+            }
+            return new Result(file, out, file.length(), System.nanoTime() - start, null);
+        }
+        catch (Exception ex) {
+            if (created) {
+                out.delete();
+            }
+            return new Result(file, out, file.length(), System.nanoTime() - start, ex);
+        }
+    }
+
+    private IMapHandler _createHandler(final OutputStream out) throws IOException {
+        return Syntax.CTM.equals(_outputSyntax) ? new CTM10Handler(out)
+                                                : new XTM21Handler(out);
+    }
+
+    /**
+     * Converts the files provided by the command line arguments.
+     *
+     * @param args The command line arguments.
+     */
+    public static void main(final String[] args) {
+        Syntax outputSyntax = Syntax.XTM_21;
+        Syntax inputSyntax = null;
+        int parallelism = -1;
+        int i = 0;
+        try {
+            for (; i < args.length && args[i].startsWith("-"); i++) {
+                final String arg = args[i];
+                if ("-ctm".equals(arg)) {
+                    outputSyntax = Syntax.CTM;
+                }
+                else if ("-xtm".equals(arg)) {
+                    outputSyntax = Syntax.XTM_21;
+                }
+                else if ("-syntax".equals(arg) && i + 1 < args.length) {
+                    inputSyntax = Syntax.forMIMEType(args[++i]);
+                    if (inputSyntax == null) {
+                        inputSyntax = Syntax.forFileExtension(args[i]);
+                    }
+                    if (inputSyntax == null) {
+                        _usage("Unknown syntax: " + args[i]);
+                        return;
+                    }
+                }
+                else if ("-threads".equals(arg) && i + 1 < args.length) {
+                    parallelism = Integer.parseInt(args[++i]);
+                }
+                else {
+                    _usage("Unknown option: " + arg);
+                    return;
+                }
+            }
+        }
+        catch (NumberFormatException ex) {
+            _usage("Invalid number: " + args[i]);
+            return;
+        }
+        if (args.length - i != 2) {
+            _usage(null);
+            return;
+        }
+        final Converter converter = new Converter(outputSyntax);
+        converter.setInputSyntax(inputSyntax);
+        if (parallelism > 0) {
+            converter.setParallelism(parallelism);
+        }
+        converter.setProgressListener(new IProgressListener() {
+            @Override
+            public void converted(final Result result) {
+                if (result.isSuccess()) {
+                    System.out.println(String.format("OK     %s -> %s (%d bytes, %d ms, %.2f MB/s)",
+                            result.getSource(), result.getTarget(), result.getSize(),
+                            result.getTime(), result.getThroughput() / (1024 * 1024)));
+                }
+                else {
+                    System.out.println(String.format("FAILED %s (%d ms): %s",
+                            result.getSource(), result.getTime(), result.getException()));
+                }
+            }
+        });
+        final long start = System.nanoTime();
+        final List<Result> results;
+        try {
+            results = converter.convert(new File(args[i]), new File(args[i + 1]));
+        }
+        catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+            return;
+        }
+        int failures = 0;
+        long size = 0;
+        for (Result result: results) {
+            if (!result.isSuccess()) {
+                failures++;
+            }
+            size += result.getSize();
+        }
+        System.out.println(String.format("%d file(s), %d failure(s), %d bytes, %d ms",
+                results.size(), failures, size, (System.nanoTime() - start) / 1000000));
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void _usage(final String msg) {
+        if (msg != null) {
+            System.err.println(msg);
+        }
+        System.err.println("Usage: java " + Converter.class.getName()
+                + " [-ctm | -xtm] [-syntax <MIME type>] [-threads <n>] <source> <target directory>");
+        System.exit(2);
+    }
+
+
+    /**
+     * Receives the results of the conversions.
+     */
+    public interface IProgressListener {
+
+        /**
+         * Called after a file was converted (or the conversion failed).
+         *
+         * @param result The result.
+         */
+        public void converted(Result result);
+
+    }
+
+    /**
+     * The result of the conversion of a file.
+     */
+    public static final class Result {
+
+        private final File _source;
+        private final File _target;
+        private final long _size;
+        private final long _nanos;
+        private final Exception _exception;
+
+        Result(final File source, final File target, final long size,
+                final long nanos, final Exception exception) {
+            _source = source;
+            _target = target;
+            _size = size;
+            _nanos = nanos;
+            _exception = exception;
+        }
+
+        /**
+         * Returns the converted file.
+         *
+         * @return The source file.
+         */
+        public File getSource() {
+            return _source;
+        }
+
+        /**
+         * Returns the file which contains the result of the conversion.
+         *
+         * @return The target file, the file does not exist if the conversion
+         *          failed.
+         */
+        public File getTarget() {
+            return _target;
+        }
+
+        /**
+         * Returns the size of the source file.
+         *
+         * @return The number of bytes.
+         */
+        public long getSize() {
+            return _size;
+        }
+
+        /**
+         * Returns the time the conversion took.
+         *
+         * @return The time in milliseconds.
+         */
+        public long getTime() {
+            return _nanos / 1000000;
+        }
+
+        /**
+         * Returns the number of bytes of the source file which were converted
+         * per second.
+         *
+         * @return The throughput in bytes per second.
+         */
+        public double getThroughput() {
+            return _nanos > 0 ? _size * 1e9 / _nanos : 0;
+        }
+
+        /**
+         * Returns if the conversion was successful.
+         *
+         * @return <tt>true</tt> if the file was converted, otherwise <tt>false</tt>.
+         */
+        public boolean isSuccess() {
+            return _exception == null;
+        }
+
+        /**
+         * Returns the reason why the conversion failed.
+         *
+         * @return The exception or {@code null} if the conversion was successful.
+         */
+        public Exception getException() {
+            return _exception;
+        }
+
+    }
+
+}
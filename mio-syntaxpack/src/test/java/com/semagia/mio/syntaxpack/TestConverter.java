@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.syntaxpack;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.semagia.mio.Syntax;
+import com.semagia.mio.syntaxpack.Converter.IProgressListener;
+import com.semagia.mio.syntaxpack.Converter.Result;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link Converter}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestConverter extends TestCase {
+
+    private static final String _XTM = "<topicMap xmlns=\"http://www.topicmaps.org/xtm/\" version=\"2.0\">"
+                                        + "<topic id=\"puccini\"><subjectIdentifier href=\"http://psi.example.org/puccini\"/></topic>"
+                                        + "</topicMap>";
+
+    private File _dir;
+    private File _source;
+    private File _target;
+    private Converter _converter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _dir = File.createTempFile("mio-converter-test", "");
+        _dir.delete();
+        _dir.mkdir();
+        _source = new File(_dir, "src");
+        _target = new File(_dir, "target");
+        _converter = new Converter(Syntax.XTM_21);
+        _converter.setParallelism(2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        _delete(_dir);
+        super.tearDown();
+    }
+
+    private static void _delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child: children) {
+                _delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static File _write(final File file, final String content) throws IOException {
+        file.getParentFile().mkdirs();
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("utf-8"));
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static String _read(final File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buf = new byte[(int) file.length()];
+            int off = 0;
+            while (off < buf.length) {
+                final int read = in.read(buf, off, buf.length - off);
+                if (read == -1) {
+                    break;
+                }
+                off += read;
+            }
+            return new String(buf, 0, off, "utf-8");
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    public void testTargetNames() throws Exception {
+        _write(new File(_source, "a.xtm"), _XTM);
+        _write(new File(_source, "a.xtm2"), _XTM);
+        _write(new File(_source, "readme.txt"), "not a topic map");
+        _write(new File(_source, "sub" + File.separator + "b.xtm"), _XTM);
+        final List<Result> results = _converter.convert(_source, _target);
+        assertEquals(3, results.size());
+        assertEquals(new File(_target, "a.xtm"), results.get(0).getTarget());
+        // Another file with the same name but another extension exists
+        assertEquals(new File(_target, "a.xtm2.xtm"), results.get(1).getTarget());
+        assertEquals(new File(new File(_target, "sub"), "b.xtm"), results.get(2).getTarget());
+        for (Result result: results) {
+            assertTrue(result.isSuccess());
+            assertTrue(_read(result.getTarget()).contains("version=\"2.1\""));
+        }
+    }
+
+    public void testSingleFile() throws Exception {
+        final File file = _write(new File(_source, "a.xtm"), _XTM);
+        final List<Result> results = _converter.convert(file, _target);
+        assertEquals(1, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(new File(_target, "a.xtm"), results.get(0).getTarget());
+        assertEquals(file.length(), results.get(0).getSize());
+    }
+
+    public void testFailure() throws Exception {
+        _write(new File(_source, "a.xtm"), _XTM);
+        _write(new File(_source, "b.xtm"), "<topicMap");
+        _write(new File(_source, "c.xtm"), _XTM);
+        final List<Result> notified = new ArrayList<Result>();
+        _converter.setProgressListener(new IProgressListener() {
+            @Override
+            public void converted(final Result result) {
+                notified.add(result);
+            }
+        });
+        final List<Result> results = _converter.convert(_source, _target);
+        assertEquals(results, notified);
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        final Result failed = results.get(1);
+        assertFalse(failed.isSuccess());
+        assertNotNull(failed.getException());
+        assertFalse(failed.getTarget().exists());
+        assertTrue(results.get(2).isSuccess());
+    }
+
+    public void testTargetInsideSource() throws Exception {
+        final File file = _write(new File(_source, "a.xtm"), _XTM);
+        try {
+            _converter.convert(_source, _source);
+            fail("Expected an exception, the target is the source directory");
+        }
+        catch (IOException ex) {
+            // noop.
+        }
+        try {
+            _converter.convert(_source, new File(_source, "sub" + File.separator + ".." + File.separator + "target"));
+            fail("Expected an exception, the target is inside of the source directory");
+        }
+        catch (IOException ex) {
+            // noop.
+        }
+        assertEquals(_XTM, _read(file));
+    }
+
+    public void testTargetIsSource() throws Exception {
+        final File file = _write(new File(_source, "a.xtm"), _XTM);
+        final List<Result> results = _converter.convert(file, _source);
+        assertEquals(1, results.size());
+        assertFalse(results.get(0).isSuccess());
+        assertEquals(_XTM, _read(file));
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.tabella;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered CSV serializer which writes UTF-8 encoded bytes.
+ * <p>
+ * Fields which contain the separator, a quote, a carriage return or a
+ * line feed are quoted; quotes are escaped by doubling them (RFC 4180).
+ * Records are terminated by a line feed.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class CSVByteWriter {
+
+    private final OutputStream _out;
+    private final byte _separator;
+    private final byte[] _buff;
+    private int _pos;
+    private boolean _wantSeparator;
+    private boolean _emptyRecord;
+
+    /**
+     * Creates a writer.
+     *
+     * @param out The stream to write to.
+     * @param separator The field separator, an ASCII character which is
+     *          neither a quote nor a line terminator.
+     */
+    public CSVByteWriter(final OutputStream out, final char separator) {
+        if (!isValidSeparator(separator)) {
+            throw new IllegalArgumentException("Illegal separator: " + (int) separator);
+        }
+        _out = out;
+        _separator = (byte) separator;
+        _buff = new byte[1 << 14];
+        _emptyRecord = true;
+    }
+
+    /**
+     * Returns if the provided character can be used as field separator.
+     *
+     * @param separator The separator.
+     * @return <tt>true</tt> if the separator is valid, otherwise <tt>false</tt>.
+     */
+    static boolean isValidSeparator(final char separator) {
+        return separator < 0x80 && separator != '"'
+                && separator != '\r' && separator != '\n';
+    }
+
+    /**
+     * Writes a field.
+     *
+     * @param value The field value.
+     * @throws IOException If an error occurs.
+     */
+    public void field(final String value) throws IOException {
+        final byte[] bytes = value.getBytes("UTF-8");
+        field(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes a field.
+     *
+     * @param value The UTF-8 encoded field value.
+     * @param offset The start of the value.
+     * @param length The length of the value.
+     * @throws IOException If an error occurs.
+     */
+    public void field(final byte[] value, final int offset, final int length) throws IOException {
+        if (_wantSeparator) {
+            _write(_separator);
+        }
+        _wantSeparator = true;
+        final int end = offset + length;
+        if (!_needsQuotes(value, offset, end)) {
+            _raw(value, offset, length);
+            return;
+        }
+        _write((byte) '"');
+        for (int i=offset; i<end; i++) {
+            final byte b = value[i];
+            if (b == '"') {
+                _write(b);
+            }
+            _write(b);
+        }
+        _write((byte) '"');
+    }
+
+    /**
+     * Ends a record.
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void endRecord() throws IOException {
+        if (_emptyRecord) {
+            // A record with a single, empty field must not be an empty line
+            _write((byte) '"');
+            _write((byte) '"');
+        }
+        _write((byte) '\n');
+        _wantSeparator = false;
+        _emptyRecord = true;
+    }
+
+    /**
+     * Writes the buffered bytes to the underlying stream.
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void flush() throws IOException {
+        _out.write(_buff, 0, _pos);
+        _pos = 0;
+        _out.flush();
+    }
+
+    /**
+     * Flushes the buffer and closes the underlying stream.
+     *
+     * @throws IOException If an error occurs.
+     */
+    public void close() throws IOException {
+        flush();
+        _out.close();
+    }
+
+    private boolean _needsQuotes(final byte[] value, final int offset, final int end) {
+        for (int i=offset; i<end; i++) {
+            final byte b = value[i];
+            if (b == _separator || b == '"' || b == '\n' || b == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void _raw(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        _emptyRecord = false;
+        if (length > _buff.length - _pos) {
+            _out.write(_buff, 0, _pos);
+            _pos = 0;
+            if (length > _buff.length) {
+                _out.write(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, _buff, _pos, length);
+        _pos += length;
+    }
+
+    private void _write(final byte b) throws IOException {
+        _emptyRecord = false;
+        if (_pos == _buff.length) {
+            _out.write(_buff, 0, _pos);
+            _pos = 0;
+        }
+        _buff[_pos++] = b;
+    }
+
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.tabella;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import com.semagia.mio.IResourceResolver;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.MIOParseException;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.base.AbstractDefaultDeserializer;
+import com.semagia.mio.helpers.Locator;
+import com.semagia.mio.helpers.RecordingMapHandler;
+import com.semagia.mio.helpers.ReplayQueue;
+import com.semagia.mio.helpers.SimpleMapHandler;
+import com.semagia.mio.tabella.CSVMapping.Relation;
+import com.semagia.mio.tabella.CSVScanner.Chunk;
+import com.semagia.mio.tabella.CSVScanner.RowReader;
+import com.semagia.mio.utils.BOMInputStream;
+
+/**
+ * {@link IDeserializer} implementation which maps the rows of a CSV
+ * document to topics and associations.
+ * <p>
+ * The mapping is provided by the {@link Property#TABELLA_MAPPING} property
+ * or read from the IRI provided by the {@link Property#TABELLA_MAPPING_IRI}
+ * property (see {@link CSVMapping}).
+ * </p>
+ * <p>
+ * The document is scanned as bytes and split into chunks of complete rows.
+ * If the {@link Property#PARALLELISM} property is set to a value greater
+ * than {@code 1}, the chunks are mapped concurrently. The events are
+ * reported in document order.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class CSVDeserializer extends AbstractDefaultDeserializer {
+
+    private static final Charset _UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Default min. number of bytes of a chunk of rows.
+     */
+    private static final int _DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private int _chunkSize;
+
+    public CSVDeserializer() {
+        super();
+        _chunkSize = _DEFAULT_CHUNK_SIZE;
+    }
+
+    void setChunkSize(final int chunkSize) {
+        _chunkSize = chunkSize;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.base.AbstractDeserializer#parse(com.semagia.mio.Source)
+     */
+    @Override
+    public void parse(final Source src) throws IOException, MIOException {
+        if (getProperty(Property.TABELLA_MAPPING) == null) {
+            final String mappingIRI = (String) getProperty(Property.TABELLA_MAPPING_IRI);
+            if (mappingIRI == null) {
+                throw new MIOException("No mapping given, set the property " + Property.TABELLA_MAPPING);
+            }
+            final IResourceResolver resolver = (IResourceResolver) getProperty(Property.RESOURCE_RESOLVER);
+            final Source mappingSource = resolver != null ? resolver.resolve(mappingIRI) : null;
+            setProperty(Property.TABELLA_MAPPING, CSVMapping.read(mappingSource != null ? mappingSource : new Source(mappingIRI)));
+        }
+        super.parse(src);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.base.AbstractDeserializer#doParse(com.semagia.mio.Source)
+     */
+    @Override
+    protected void doParse(final Source src) throws IOException, MIOException {
+        final CSVMapping mapping = (CSVMapping) getProperty(Property.TABELLA_MAPPING);
+        final Relation relation = mapping.getRelation(_fileName(src.getIRI()));
+        if (relation == null) {
+            throw new MIOException("The mapping provides no relation for <" + src.getIRI() + ">, available relations: " + mapping.getRelationNames());
+        }
+        final Locator base = Locator.create(src.getBaseIRI());
+        final Charset[] charset = new Charset[1];
+        final CSVScanner scanner = new CSVScanner(_openStream(src, mapping, charset), mapping._quote);
+        scanner.skipRows(mapping._ignoreFirstLines);
+        final Format format = new Format(mapping._separator, mapping._quote, charset[0]);
+        final Object parallelism = getProperty(Property.PARALLELISM);
+        if (parallelism instanceof Integer && ((Integer) parallelism).intValue() > 1) {
+            _parseParallel(scanner, relation, base, format, ((Integer) parallelism).intValue());
+        }
+        else {
+            final RowMapper mapper = new RowMapper(relation, base);
+            final SimpleMapHandler handler = SimpleMapHandler.create(_handler);
+            Chunk chunk;
+            while ((chunk = scanner.nextChunk(_chunkSize)) != null) {
+                _map(chunk, format, mapper, handler);
+            }
+        }
+    }
+
+    /**
+     * Maps the chunks concurrently.
+     *
+     * @param scanner The scanner to read the chunks from.
+     * @param relation The relation.
+     * @param base The base IRI.
+     * @param format The CSV format.
+     * @param parallelism The number of worker threads.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    private void _parseParallel(final CSVScanner scanner, final Relation relation,
+            final Locator base, final Format format, final int parallelism) throws IOException, MIOException {
+        final ReplayQueue queue = new ReplayQueue(_handler, parallelism);
+        try {
+            Chunk chunk;
+            while ((chunk = scanner.nextChunk(_chunkSize)) != null) {
+                queue.submit(_createTask(chunk, format, relation, base));
+            }
+            queue.flush();
+        }
+        finally {
+            queue.close();
+        }
+    }
+
+    private static Callable<RecordingMapHandler> _createTask(final Chunk chunk,
+            final Format format, final Relation relation, final Locator base) {
+        return new Callable<RecordingMapHandler>() {
+            @Override
+            public RecordingMapHandler call() throws Exception {
+                final RecordingMapHandler handler = new RecordingMapHandler();
+                _map(chunk, format, new RowMapper(relation, base), SimpleMapHandler.create(handler));
+                return handler;
+            }
+        };
+    }
+
+    private static void _map(final Chunk chunk, final Format format,
+            final RowMapper mapper, final SimpleMapHandler handler) throws MIOException {
+        final RowReader reader = new RowReader(chunk, format._separator, format._quote, format._charset);
+        while (reader.next()) {
+            try {
+                mapper.map(reader.getFields(), reader.getFieldCount(), handler);
+            }
+            catch (MIOParseException ex) {
+                throw ex;
+            }
+            catch (MIOException ex) {
+                throw new MIOParseException(ex.getMessage(), ex, reader.getLine(), -1);
+            }
+        }
+    }
+
+    /**
+     * Returns a stream which provides the bytes of the source in an
+     * ASCII-compatible encoding.
+     *
+     * @param src The source.
+     * @param mapping The mapping.
+     * @param charset Receives the encoding of the stream.
+     * @return The stream.
+     * @throws IOException In case of an I/O error.
+     */
+    private static InputStream _openStream(final Source src, final CSVMapping mapping,
+            final Charset[] charset) throws IOException {
+        if (src.getCharacterStream() != null) {
+            charset[0] = _UTF_8;
+            return new EncodingInputStream(src.getCharacterStream());
+        }
+        final InputStream in = src.getByteStream() != null ? src.getByteStream()
+                                                           : new URL(src.getIRI()).openStream();
+        final String encoding = src.getEncoding() != null ? src.getEncoding() : mapping._encoding;
+        final BOMInputStream stream = new BOMInputStream(in, encoding != null ? encoding : "UTF-8");
+        final Charset cs = Charset.forName(stream.getEncoding());
+        if (_isASCIICompatible(cs)) {
+            charset[0] = cs;
+            return stream;
+        }
+        charset[0] = _UTF_8;
+        return new EncodingInputStream(new InputStreamReader(stream, cs));
+    }
+
+    private static boolean _isASCIICompatible(final Charset charset) {
+        final String probe = "\t\n\r \"',;|";
+        return Arrays.equals(probe.getBytes(charset), probe.getBytes(_UTF_8));
+    }
+
+    /**
+     * Returns the last segment of the provided IRI.
+     *
+     * @param iri The IRI or {@code null}.
+     * @return The file name or {@code null}.
+     */
+    private static String _fileName(final String iri) {
+        if (iri == null) {
+            return null;
+        }
+        int end = iri.length();
+        for (int i=0; i<iri.length(); i++) {
+            final char c = iri.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        return iri.substring(iri.lastIndexOf('/', end - 1) + 1, end);
+    }
+
+
+    /**
+     * The format of the CSV document.
+     */
+    private static final class Format {
+
+        final byte _separator;
+        final int _quote;
+        final Charset _charset;
+
+        Format(final byte separator, final int quote, final Charset charset) {
+            _separator = separator;
+            _quote = quote;
+            _charset = charset;
+        }
+
+    }
+
+
+    /**
+     * Provides the characters of a reader as UTF-8 encoded bytes.
+     */
+    private static final class EncodingInputStream extends InputStream {
+
+        private final Reader _reader;
+        private final CharsetEncoder _encoder;
+        private final CharBuffer _chars;
+        private final ByteBuffer _bytes;
+        private boolean _flushed;
+
+        EncodingInputStream(final Reader reader) {
+            _reader = reader;
+            _encoder = _UTF_8.newEncoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            _chars = CharBuffer.allocate(8192);
+            _chars.flip();
+            // Large enough to encode all characters at once
+            _bytes = ByteBuffer.allocate(8192 * 4);
+            _bytes.flip();
+        }
+
+        /* (non-Javadoc)
+         * @see java.io.InputStream#read()
+         */
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        /* (non-Javadoc)
+         * @see java.io.InputStream#read(byte[], int, int)
+         */
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!_bytes.hasRemaining()) {
+                if (_flushed) {
+                    return -1;
+                }
+                _encode();
+            }
+            final int n = Math.min(len, _bytes.remaining());
+            _bytes.get(b, off, n);
+            return n;
+        }
+
+        private void _encode() throws IOException {
+            _bytes.clear();
+            _chars.compact();
+            final boolean eof = _reader.read(_chars) == -1;
+            _chars.flip();
+            _encoder.encode(_chars, _bytes, eof);
+            if (eof) {
+                _encoder.flush(_bytes);
+                _flushed = true;
+            }
+            _bytes.flip();
+        }
+
+        /* (non-Javadoc)
+         * @see java.io.InputStream#close()
+         */
+        @Override
+        public void close() throws IOException {
+            _reader.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,740 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.tabella;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.helpers.AbstractHamsterMapHandler;
+import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.voc.TMDM;
+
+/**
+ * {@link com.semagia.mio.IMapHandler} implementation that projects the
+ * topic map into tables (CSV or TSV files).
+ * <p>
+ * Each topic type gets a file <tt>topics-&lt;type&gt;.csv</tt> with one row
+ * per topic, topics without a type are written into <tt>topics.csv</tt>.
+ * The columns are the identities (<tt>si</tt>, <tt>sl</tt>, <tt>ii</tt>),
+ * the names (<tt>name</tt> or <tt>name:&lt;type&gt;</tt>) and the
+ * occurrences (<tt>&lt;type&gt;</tt>) of the topics. Each association type
+ * gets a file <tt>associations-&lt;type&gt;.csv</tt> with one row per
+ * association; the columns are the role types (the cells are the players)
+ * and the themes (<tt>scope</tt>). Topic references are written as IRIs;
+ * subject locators and item identifiers are prefixed by <tt>sl:</tt> and
+ * <tt>ii:</tt>. Scoped names and occurrences get the themes as suffix
+ * (<tt>name@&lt;theme&gt;</tt>), repeated columns are numbered
+ * (<tt>si#2</tt>). The file <tt>index.csv</tt> maps the files to the types.
+ * </p>
+ * <p>
+ * Variants, datatypes, reifiers, the item identifiers of the statements
+ * and the topic map item identifiers are not written. A topic which is
+ * reported several times produces several rows.
+ * </p>
+ * <p>
+ * The columns are known when the topic map has been read, therefore the
+ * rows are buffered; if the buffers exceed the max. buffer size (see
+ * {@link #setMaxBufferSize(int)}), they are written into temporary files.
+ * The files are written after the {@link #endTopicMap()} event. The amount
+ * of memory does not depend on the size of the topic map.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class CSVHandler extends AbstractHamsterMapHandler<IRef> {
+
+    private static final IRef _DEFAULT_NAME = Ref.createSubjectIdentifier(TMDM.TOPIC_NAME);
+
+    private static final String
+        _KIND_TOPIC = "topic",
+        _KIND_ASSOCIATION = "association";
+
+    private static final String
+        _COL_SID = "si",
+        _COL_SLO = "sl",
+        _COL_IID = "ii",
+        _COL_NAME = "name",
+        _COL_SCOPE = "scope";
+
+    private static final int _DEFAULT_MAX_BUFFER_SIZE = 1 << 23;
+
+    /**
+     * Tables which have a buffer larger than this value get a new buffer
+     * after the buffer was written into the temporary file.
+     */
+    private static final int _MAX_RETAINED_SIZE = 1 << 16;
+
+    private final File _directory;
+    private char _separator;
+    private int _maxBufferSize;
+
+    private Map<IRef, Table> _topicTables;
+    private Map<IRef, Table> _assocTables;
+    private List<Table> _tables;
+    private Set<String> _fileNames;
+    private List<Row> _rows;
+    private Map<String, Integer> _counts;
+    private int _buffered;
+
+    /**
+     * Creates a CSV writer.
+     *
+     * @param directory The directory to write the files into.
+     */
+    public CSVHandler(final File directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("The directory must not be null");
+        }
+        _directory = directory;
+        _separator = ',';
+        _maxBufferSize = _DEFAULT_MAX_BUFFER_SIZE;
+    }
+
+    /**
+     * Sets the field separator (<tt>','</tt> by default). If the separator is
+     * a tab, the files get the extension <tt>.tsv</tt>.
+     *
+     * @param separator An ASCII character which is neither a quote nor a
+     *          line terminator.
+     */
+    public void setSeparator(final char separator) {
+        if (!CSVByteWriter.isValidSeparator(separator)) {
+            throw new IllegalArgumentException("Illegal separator: " + (int) separator);
+        }
+        _separator = separator;
+    }
+
+    /**
+     * Returns the field separator.
+     *
+     * @return The separator.
+     */
+    public char getSeparator() {
+        return _separator;
+    }
+
+    /**
+     * Sets the max. number of bytes which are buffered in memory before the
+     * rows are written into temporary files (8 MiB by default).
+     *
+     * @param size The max. buffer size.
+     */
+    public void setMaxBufferSize(final int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The buffer size must not be negative");
+        }
+        _maxBufferSize = size;
+    }
+
+    /**
+     * Returns the max. number of bytes which are buffered in memory.
+     *
+     * @return The max. buffer size.
+     */
+    public int getMaxBufferSize() {
+        return _maxBufferSize;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#startTopicMap()
+     */
+    @Override
+    public void startTopicMap() throws MIOException {
+        if (!_directory.isDirectory()) {
+            throw new MIOException("Not a directory: " + _directory);
+        }
+        super.startTopicMap();
+        _topicTables = new HashMap<IRef, Table>();
+        _assocTables = new HashMap<IRef, Table>();
+        _tables = new ArrayList<Table>();
+        _fileNames = new HashSet<String>();
+        _rows = new ArrayList<Row>();
+        _counts = new HashMap<String, Integer>();
+        _buffered = 0;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#endTopicMap()
+     */
+    @Override
+    public void endTopicMap() throws MIOException {
+        super.endTopicMap();
+        final String ext = _separator == '\t' ? ".tsv" : ".csv";
+        try {
+            final CSVByteWriter index = _createWriter(new File(_directory, "index" + ext));
+            index.field("file");
+            index.field("kind");
+            index.field("type");
+            index.endRecord();
+            for (Table table: _tables) {
+                final String fileName = table._name + ext;
+                _writeTable(table, new File(_directory, fileName));
+                index.field(fileName);
+                index.field(table._kind);
+                index.field(table._type != null ? _label(table._type) : "");
+                index.endRecord();
+            }
+            index.close();
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+        finally {
+            for (Table table: _tables) {
+                if (table._file != null) {
+                    table._file.delete();
+                }
+            }
+            _topicTables = null;
+            _assocTables = null;
+            _tables = null;
+            _fileNames = null;
+            _rows = null;
+            _counts = null;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#startTopic(com.semagia.mio.IRef)
+     */
+    @Override
+    public void startTopic(final IRef identity) throws MIOException {
+        super.startTopic(identity);
+        final Row row = new Row();
+        row.add(_identityColumn(identity.getType()), identity.getIRI());
+        _rows.add(row);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#endTopic()
+     */
+    @Override
+    public void endTopic() throws MIOException {
+        super.endTopic();
+        final Row row = _rows.remove(_rows.size() - 1);
+        try {
+            if (row._types.isEmpty()) {
+                _addRow(_table(_topicTables, _KIND_TOPIC, null), row);
+            }
+            for (IRef type: row._types) {
+                _addRow(_table(_topicTables, _KIND_TOPIC, type), row);
+            }
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleItemIdentifier(java.lang.Object, java.lang.String)
+     */
+    @Override
+    protected void handleItemIdentifier(final IRef topic, final String iid)
+            throws MIOException {
+        _row().addIdentity(_COL_IID, iid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleSubjectIdentifier(java.lang.Object, java.lang.String)
+     */
+    @Override
+    protected void handleSubjectIdentifier(final IRef topic, final String sid)
+            throws MIOException {
+        _row().addIdentity(_COL_SID, sid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleSubjectLocator(java.lang.Object, java.lang.String)
+     */
+    @Override
+    protected void handleSubjectLocator(final IRef topic, final String slo)
+            throws MIOException {
+        _row().addIdentity(_COL_SLO, slo);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleTypeInstance(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    protected void handleTypeInstance(final IRef instance, final IRef type)
+            throws MIOException {
+        final List<IRef> types = _row()._types;
+        if (!types.contains(type)) {
+            types.add(type);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createName(java.lang.Object, java.lang.Object, java.lang.String, java.util.Collection, java.lang.Object, java.util.Collection, java.util.Collection)
+     */
+    @Override
+    protected void createName(final IRef parent, final IRef type,
+            final String value, final Collection<IRef> scope,
+            final IRef reifier, final Collection<String> iids,
+            final Collection<IVariant<IRef>> variants) throws MIOException {
+        final String column = type == null || _DEFAULT_NAME.equals(type)
+                                ? _COL_NAME : _COL_NAME + ":" + _label(type);
+        _row().add(_scoped(column, scope), value);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createOccurrence(java.lang.Object, java.lang.Object, java.lang.String, java.lang.String, java.util.Collection, java.lang.Object, java.util.Collection)
+     */
+    @Override
+    protected void createOccurrence(final IRef parent, final IRef type,
+            final String value, final String datatype,
+            final Collection<IRef> scope, final IRef reifier,
+            final Collection<String> iids) throws MIOException {
+        _row().add(_scoped(_label(type), scope), value);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createAssociation(java.lang.Object, java.util.Collection, java.lang.Object, java.util.Collection, java.util.Collection)
+     */
+    @Override
+    protected void createAssociation(final IRef type,
+            final Collection<IRef> scope, final IRef reifier,
+            final Collection<String> iids,
+            final Collection<IRole<IRef>> roles) throws MIOException {
+        final Row row = new Row();
+        for (IRole<IRef> role: roles) {
+            row.add(_label(role.getType()), _label(role.getPlayer()));
+        }
+        if (scope != null) {
+            for (IRef theme: scope) {
+                row.add(_COL_SCOPE, _label(theme));
+            }
+        }
+        try {
+            _addRow(_table(_assocTables, _KIND_ASSOCIATION, type), row);
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleTopicMapItemIdentifier(java.lang.String)
+     */
+    @Override
+    protected void handleTopicMapItemIdentifier(final String iid)
+            throws MIOException {
+        // noop.
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleTopicMapReifier(java.lang.Object)
+     */
+    @Override
+    protected void handleTopicMapReifier(final IRef reifier) throws MIOException {
+        // noop.
+    }
+
+
+    /*
+     * Topic references.
+     */
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createTopicByItemIdentifier(java.lang.String)
+     */
+    @Override
+    protected IRef createTopicByItemIdentifier(final String iid) throws MIOException {
+        return Ref.createItemIdentifier(iid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createTopicBySubjectIdentifier(java.lang.String)
+     */
+    @Override
+    protected IRef createTopicBySubjectIdentifier(final String sid) throws MIOException {
+        return Ref.createSubjectIdentifier(sid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createTopicBySubjectLocator(java.lang.String)
+     */
+    @Override
+    protected IRef createTopicBySubjectLocator(final String slo) throws MIOException {
+        return Ref.createSubjectLocator(slo);
+    }
+
+
+    /*
+     * Table helpers.
+     */
+
+    private Row _row() {
+        return _rows.get(_rows.size() - 1);
+    }
+
+    private static String _identityColumn(final int type) {
+        switch (type) {
+            case IRef.SUBJECT_LOCATOR: return _COL_SLO;
+            case IRef.ITEM_IDENTIFIER: return _COL_IID;
+            default: return _COL_SID;
+        }
+    }
+
+    /**
+     * Returns the IRI of the reference; subject locators and item identifiers
+     * are prefixed by <tt>sl:</tt> and <tt>ii:</tt>.
+     */
+    private static String _label(final IRef ref) {
+        switch (ref.getType()) {
+            case IRef.SUBJECT_LOCATOR: return "sl:" + ref.getIRI();
+            case IRef.ITEM_IDENTIFIER: return "ii:" + ref.getIRI();
+            default: return ref.getIRI();
+        }
+    }
+
+    private static String _scoped(final String column, final Collection<IRef> scope) {
+        if (scope == null || scope.isEmpty()) {
+            return column;
+        }
+        final String[] themes = new String[scope.size()];
+        int i = 0;
+        for (IRef theme: scope) {
+            themes[i++] = _label(theme);
+        }
+        Arrays.sort(themes);
+        final StringBuilder sb = new StringBuilder(column).append('@');
+        for (i=0; i<themes.length; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(themes[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the table for the provided type, creates the table if necessary.
+     *
+     * @param tables The tables of the kind.
+     * @param kind The kind of the table.
+     * @param type The type or {@code null}.
+     * @return The table.
+     */
+    private Table _table(final Map<IRef, Table> tables, final String kind, final IRef type) {
+        Table table = tables.get(type);
+        if (table == null) {
+            final String base = kind + "s" + (type != null ? "-" + _fileName(type.getIRI()) : "");
+            String name = base;
+            for (int i=2; !_fileNames.add(name); i++) {
+                name = base + "-" + i;
+            }
+            table = new Table(name, kind, type);
+            tables.put(type, table);
+            _tables.add(table);
+        }
+        return table;
+    }
+
+    /**
+     * Returns a file name for the provided IRI which consists of the
+     * last segment of the IRI.
+     */
+    private static String _fileName(final String iri) {
+        int end = iri.length();
+        while (end > 0 && "/#:".indexOf(iri.charAt(end - 1)) != -1) {
+            end--;
+        }
+        int start = end;
+        while (start > 0 && "/#:".indexOf(iri.charAt(start - 1)) == -1) {
+            start--;
+        }
+        final StringBuilder sb = new StringBuilder(end - start);
+        for (int i=start; i<end; i++) {
+            final char c = iri.charAt(i);
+            sb.append(c < 0x80 && (Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.') ? c : '_');
+        }
+        return sb.length() != 0 ? sb.toString() : "_";
+    }
+
+    /**
+     * Encodes the row into the buffer of the table.
+     * <p>
+     * A row is encoded as a sequence of cells, each cell consists of the
+     * column index + 1 (variable length), the length of the UTF-8 encoded
+     * value (4 bytes) and the value. The row is terminated by a 0 byte.
+     * </p>
+     */
+    private void _addRow(final Table table, final Row row) throws IOException {
+        final int before = table._length;
+        final Map<String, Integer> counts = _counts;
+        counts.clear();
+        final List<String> columns = row._columns;
+        final List<String> values = row._values;
+        for (int i=0; i<columns.size(); i++) {
+            final String column = columns.get(i);
+            final Integer count = counts.get(column);
+            final int n = count == null ? 1 : count.intValue() + 1;
+            counts.put(column, Integer.valueOf(n));
+            table.writeVarInt(table.column(n == 1 ? column : column + "#" + n) + 1);
+            table.writeString(values.get(i));
+        }
+        table.writeVarInt(0);
+        _buffered += table._length - before;
+        if (_buffered > _maxBufferSize) {
+            for (Table t: _tables) {
+                t.flush();
+            }
+            _buffered = 0;
+        }
+    }
+
+    private CSVByteWriter _createWriter(final File file) throws IOException {
+        return new CSVByteWriter(new FileOutputStream(file), _separator);
+    }
+
+    /**
+     * Writes the header and the buffered rows of the table into the file.
+     */
+    private void _writeTable(final Table table, final File file) throws IOException {
+        final CSVByteWriter writer = _createWriter(file);
+        try {
+            final List<String> labels = table._labels;
+            final int columnCount = labels.size();
+            for (String label: labels) {
+                writer.field(label);
+            }
+            writer.endRecord();
+            InputStream in = new ByteArrayInputStream(table._buff, 0, table._length);
+            if (table._file != null) {
+                in = new SequenceInputStream(new FileInputStream(table._file), in);
+            }
+            final DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 14));
+            try {
+                final int[] offsets = new int[columnCount];
+                final int[] lengths = new int[columnCount];
+                byte[] buff = new byte[1024];
+                int c;
+                while ((c = data.read()) != -1) {
+                    Arrays.fill(lengths, 0);
+                    int pos = 0;
+                    for (int column = _readVarInt(data, c); column != 0; column = _readVarInt(data, data.read())) {
+                        final int len = data.readInt();
+                        if (pos + len > buff.length) {
+                            buff = Arrays.copyOf(buff, Math.max(buff.length * 2, pos + len));
+                        }
+                        data.readFully(buff, pos, len);
+                        offsets[column - 1] = pos;
+                        lengths[column - 1] = len;
+                        pos += len;
+                    }
+                    for (int i=0; i<columnCount; i++) {
+                        writer.field(buff, offsets[i], lengths[i]);
+                    }
+                    writer.endRecord();
+                }
+            }
+            finally {
+                data.close();
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private static int _readVarInt(final DataInputStream in, final int first) throws IOException {
+        int b = first;
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            if (b == -1) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            b = in.read();
+        }
+    }
+
+
+    /**
+     * The cells of a topic or association.
+     */
+    private static final class Row {
+
+        final List<String> _columns = new ArrayList<String>();
+        final List<String> _values = new ArrayList<String>();
+        final List<IRef> _types = new ArrayList<IRef>(2);
+
+        void add(final String column, final String value) {
+            _columns.add(column);
+            _values.add(value);
+        }
+
+        /**
+         * Adds the identity unless the row contains it already (the identity
+         * reported by {@link CSVHandler#startTopic(IRef)} is reported again
+         * by the identity event).
+         */
+        void addIdentity(final String column, final String iri) {
+            for (int i=0; i<_columns.size(); i++) {
+                if (_columns.get(i).equals(column) && _values.get(i).equals(iri)) {
+                    return;
+                }
+            }
+            add(column, iri);
+        }
+
+    }
+
+    /**
+     * A table which collects the rows of a topic or association type.
+     */
+    private final class Table {
+
+        final String _name;
+        final String _kind;
+        final IRef _type;
+        final Map<String, Integer> _columns;
+        final List<String> _labels;
+        byte[] _buff;
+        int _length;
+        File _file;
+
+        Table(final String name, final String kind, final IRef type) {
+            _name = name;
+            _kind = kind;
+            _type = type;
+            _columns = new HashMap<String, Integer>();
+            _labels = new ArrayList<String>();
+            _buff = new byte[1024];
+        }
+
+        /**
+         * Returns the index of the column, creates the column if necessary.
+         */
+        int column(final String label) {
+            Integer idx = _columns.get(label);
+            if (idx == null) {
+                idx = Integer.valueOf(_labels.size());
+                _columns.put(label, idx);
+                _labels.add(label);
+            }
+            return idx.intValue();
+        }
+
+        void writeVarInt(int value) {
+            _ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                _buff[_length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            _buff[_length++] = (byte) value;
+        }
+
+        /**
+         * Writes the length of the UTF-8 encoded string and the encoded string.
+         */
+        void writeString(final String s) {
+            final int len = s.length();
+            _ensureCapacity(4 + len * 3);
+            final byte[] buff = _buff;
+            final int start = _length + 4;
+            int pos = start;
+            for (int i=0; i<len; i++) {
+                final char c = s.charAt(i);
+                if (c < 0x80) {
+                    buff[pos++] = (byte) c;
+                }
+                else if (c < 0x800) {
+                    buff[pos++] = (byte) (0xC0 | (c >> 6));
+                    buff[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+                else if (Character.isHighSurrogate(c) && i + 1 < len
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    final int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buff[pos++] = (byte) (0xF0 | (cp >> 18));
+                    buff[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buff[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buff[pos++] = (byte) (0x80 | (cp & 0x3F));
+                }
+                else if (Character.isSurrogate(c)) {
+                    buff[pos++] = (byte) '?';
+                }
+                else {
+                    buff[pos++] = (byte) (0xE0 | (c >> 12));
+                    buff[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buff[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            final int n = pos - start;
+            buff[_length] = (byte) (n >>> 24);
+            buff[_length + 1] = (byte) (n >>> 16);
+            buff[_length + 2] = (byte) (n >>> 8);
+            buff[_length + 3] = (byte) n;
+            _length = pos;
+        }
+
+        /**
+         * Appends the buffered rows to the temporary file.
+         */
+        void flush() throws IOException {
+            if (_length == 0) {
+                return;
+            }
+            if (_file == null) {
+                _file = File.createTempFile("mio-tabella-", ".rows", _directory);
+            }
+            final OutputStream out = new FileOutputStream(_file, true);
+            try {
+                out.write(_buff, 0, _length);
+            }
+            finally {
+                out.close();
+            }
+            _length = 0;
+            if (_buff.length > _MAX_RETAINED_SIZE) {
+                _buff = new byte[1024];
+            }
+        }
+
+        private void _ensureCapacity(final int n) {
+            if (_length + n > _buff.length) {
+                _buff = Arrays.copyOf(_buff, Math.max(_buff.length * 2, _length + n));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.tabella;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.MIOParseException;
+import com.semagia.mio.Source;
+import com.semagia.mio.utils.xml.XMLUtils;
+
+/**
+ * An immutable mapping of CSV columns to topics and associations.
+ * <p>
+ * The mapping is described by a subset of the DB2TM format (see
+ * <tt>db2tm.rnc</tt>):
+ * </p>
+ * <pre>
+ * &lt;db2tm name="people"&gt;
+ *   &lt;using prefix="ex" subject-identifier="http://psi.example.org/"/&gt;
+ *   &lt;sources&gt;
+ *     &lt;csv path="." separator=";" ignoreFirstLines="1"/&gt;
+ *   &lt;/sources&gt;
+ *   &lt;relation name="people.csv" columns="id name homepage org"&gt;
+ *     &lt;topic id="person" type="ex:person"&gt;
+ *       &lt;subject-identifier&gt;ex:person/${id}&lt;/subject-identifier&gt;
+ *       &lt;topic-name column="name"/&gt;
+ *       &lt;occurrence type="ex:homepage" datatype="xsd:anyURI" column="homepage"/&gt;
+ *     &lt;/topic&gt;
+ *     &lt;topic id="org" type="ex:organization"&gt;
+ *       &lt;item-identifier&gt;#org-${org}&lt;/item-identifier&gt;
+ *     &lt;/topic&gt;
+ *     &lt;association type="ex:works-for"&gt;
+ *       &lt;role type="ex:employee" player="#person"/&gt;
+ *       &lt;role type="ex:employer" player="#org"/&gt;
+ *     &lt;/association&gt;
+ *   &lt;/relation&gt;
+ * &lt;/db2tm&gt;
+ * </pre>
+ * <p>
+ * Each row of the CSV document creates the topics and associations of the
+ * relation. A value refers either to a column or is a text which may
+ * contain <tt>${column}</tt> references. A value is omitted if a
+ * referenced column is empty; a topic without identity is omitted as well
+ * as the associations it would play in (unless the role is
+ * <tt>optional</tt>). Relative IRIs are resolved against the base IRI of
+ * the CSV document.
+ * </p>
+ * <p>
+ * The first <tt>csv</tt> source provides the format of the CSV documents
+ * (the <tt>path</tt> is ignored). The relation is chosen by the file name of
+ * the CSV document; a mapping with one relation applies to any document.
+ * JDBC sources, conditions, virtual columns, extents and changelogs are not
+ * supported.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class CSVMapping {
+
+    private final String _name;
+    final byte _separator;
+    final int _quote;
+    final String _encoding;
+    final int _ignoreFirstLines;
+    private final List<Relation> _relations;
+
+    CSVMapping(final String name, final byte separator, final int quote,
+            final String encoding, final int ignoreFirstLines,
+            final List<Relation> relations) {
+        _name = name;
+        _separator = separator;
+        _quote = quote;
+        _encoding = encoding;
+        _ignoreFirstLines = ignoreFirstLines;
+        _relations = Collections.unmodifiableList(new ArrayList<Relation>(relations));
+    }
+
+    /**
+     * Reads a mapping.
+     *
+     * @param src The DB2TM document.
+     * @return The mapping.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an invalid or unsupported mapping.
+     */
+    public static CSVMapping read(final Source src) throws IOException, MIOException {
+        final MappingContentHandler handler = new MappingContentHandler();
+        try {
+            final XMLReader reader = XMLReaderFactory.createXMLReader();
+            reader.setContentHandler(handler);
+            reader.parse(XMLUtils.asInputSource(src));
+        }
+        catch (SAXException ex) {
+            if (ex.getException() instanceof MIOException) {
+                throw (MIOException) ex.getException();
+            }
+            if (ex instanceof SAXParseException) {
+                throw new MIOParseException(ex, ((SAXParseException) ex).getLineNumber(), ((SAXParseException) ex).getColumnNumber());
+            }
+            throw new MIOException(ex);
+        }
+        return handler.getMapping();
+    }
+
+    /**
+     * Returns the name of the mapping.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * Returns the names of the relations.
+     *
+     * @return An immutable list of relation names.
+     */
+    public List<String> getRelationNames() {
+        final List<String> names = new ArrayList<String>(_relations.size());
+        for (Relation relation: _relations) {
+            names.add(relation._name);
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Returns the relation with the provided name. If the mapping contains
+     * only one relation, that relation is returned.
+     *
+     * @param name The name of the relation, may be {@code null}.
+     * @return The relation or {@code null} if no relation was found.
+     */
+    Relation getRelation(final String name) {
+        for (Relation relation: _relations) {
+            if (relation._name.equals(name)) {
+                return relation;
+            }
+        }
+        return _relations.size() == 1 ? _relations.get(0) : null;
+    }
+
+
+    /**
+     * Maps the columns of a row to topics and associations.
+     */
+    static final class Relation {
+
+        final String _name;
+        final String[] _columns;
+        final Entity[] _entities;
+
+        Relation(final String name, final String[] columns, final Entity[] entities) {
+            _name = name;
+            _columns = columns;
+            _entities = entities;
+        }
+
+    }
+
+
+    /**
+     * Represents a topic or an association.
+     */
+    static final class Entity {
+
+        final String _id;
+        final boolean _isTopic;
+        final IRef[] _types;
+        final IRef[] _scope;
+        final Field[] _identities;
+        final Field[] _characteristics;
+        final Player[] _players;
+        final Role[] _roles;
+
+        Entity(final String id, final boolean isTopic, final IRef[] types,
+                final IRef[] scope, final Field[] identities,
+                final Field[] characteristics, final Player[] players,
+                final Role[] roles) {
+            _id = id;
+            _isTopic = isTopic;
+            _types = types;
+            _scope = scope;
+            _identities = identities;
+            _characteristics = characteristics;
+            _players = players;
+            _roles = roles;
+        }
+
+    }
+
+
+    /**
+     * Represents an identifier, a name or an occurrence.
+     */
+    static final class Field {
+
+        static final int
+            SUBJECT_IDENTIFIER = 1,
+            SUBJECT_LOCATOR = 2,
+            ITEM_IDENTIFIER = 3,
+            NAME = 4,
+            OCCURRENCE = 5;
+
+        final int _kind;
+        final IRef _type;
+        final IRef[] _scope;
+        final String _datatype;
+        final Value _value;
+
+        Field(final int kind, final IRef type, final IRef[] scope,
+                final String datatype, final Value value) {
+            _kind = kind;
+            _type = type;
+            _scope = scope;
+            _datatype = datatype;
+            _value = value;
+        }
+
+    }
+
+
+    /**
+     * Represents an association which is played by a topic.
+     */
+    static final class Player {
+
+        final IRef _type;
+        final IRef _roleType;
+        final IRef[] _scope;
+        final Role[] _others;
+
+        Player(final IRef type, final IRef roleType, final IRef[] scope, final Role[] others) {
+            _type = type;
+            _roleType = roleType;
+            _scope = scope;
+            _others = others;
+        }
+
+    }
+
+
+    /**
+     * Represents a role.
+     * <p>
+     * The player is either a topic of the relation (the index of the
+     * entity) or a constant topic.
+     * </p>
+     */
+    static final class Role {
+
+        final IRef _type;
+        final int _entity;
+        final IRef _player;
+        final boolean _optional;
+
+        Role(final IRef type, final int entity, final IRef player, final boolean optional) {
+            _type = type;
+            _entity = entity;
+            _player = player;
+            _optional = optional;
+        }
+
+    }
+
+
+    /**
+     * A text with column references.
+     */
+    static final class Value {
+
+        private final String[] _literals;
+        private final int[] _columns;
+
+        /**
+         * Creates a value.
+         *
+         * @param literals The literals, the length is the number of columns + 1.
+         * @param columns The column indexes.
+         */
+        Value(final String[] literals, final int[] columns) {
+            _literals = literals;
+            _columns = columns;
+        }
+
+        /**
+         * Returns the value of the provided row.
+         *
+         * @param fields The fields of the row.
+         * @param count The number of fields.
+         * @return The value or {@code null} if a column is empty.
+         */
+        String evaluate(final String[] fields, final int count) {
+            final int[] columns = _columns;
+            if (columns.length == 1 && _literals[0].isEmpty() && _literals[1].isEmpty()) {
+                final int col = columns[0];
+                return col < count && !fields[col].isEmpty() ? fields[col] : null;
+            }
+            final StringBuilder sb = new StringBuilder(_literals[0]);
+            for (int i=0; i<columns.length; i++) {
+                final int col = columns[i];
+                if (col >= count || fields[col].isEmpty()) {
+                    return null;
+                }
+                sb.append(fields[col]).append(_literals[i+1]);
+            }
+            return sb.toString();
+        }
+
+    }
+
+}
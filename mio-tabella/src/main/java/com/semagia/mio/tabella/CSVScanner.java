@@ -0,0 +1,408 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.tabella;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.semagia.mio.MIOParseException;
+
+/**
+ * Byte-level CSV scanner which splits the input into chunks of complete
+ * rows.
+ * <p>
+ * The scanner operates on the bytes of an ASCII-compatible encoding (i.e.
+ * UTF-8 or ISO-8859-1): The separator, the quote and the line breaks are
+ * matched as bytes; the fields are decoded only if a row is read. The
+ * chunks are independent of each other and of the scanner, so the rows of
+ * different chunks can be read concurrently (see {@link RowReader}).
+ * </p>
+ * <p>
+ * Quoted fields may contain separators and line breaks, a quote within
+ * a quoted field is escaped by another quote.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class CSVScanner {
+
+    /**
+     * Indicates that fields are not quoted. The value does not match any
+     * byte.
+     */
+    static final int NO_QUOTE = 0x100;
+
+    private static final int _INITIAL_SIZE = 64 * 1024;
+
+    private final InputStream _in;
+    private final int _quote;
+    private byte[] _buf;
+    private int _start;
+    private int _end;
+    private boolean _eof;
+    private int _line;
+
+    /**
+     * Creates a scanner.
+     *
+     * @param in The stream to read from.
+     * @param quote The quote character or {@link #NO_QUOTE}.
+     */
+    public CSVScanner(final InputStream in, final int quote) {
+        _in = in;
+        _quote = quote;
+        _buf = new byte[_INITIAL_SIZE];
+        _line = 1;
+    }
+
+    /**
+     * Skips the provided number of rows.
+     *
+     * @param count The number of rows to skip.
+     * @throws IOException In case of an I/O error.
+     */
+    public void skipRows(final int count) throws IOException {
+        int remaining = count;
+        boolean quoted = false;
+        while (remaining > 0) {
+            if (_start == _end) {
+                if (_eof) {
+                    return;
+                }
+                _fill();
+                continue;
+            }
+            final byte b = _buf[_start++];
+            if (b == _quote) {
+                quoted = !quoted;
+            }
+            else if (b == '\n') {
+                _line++;
+                if (!quoted) {
+                    remaining--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the next chunk of rows.
+     * <p>
+     * The chunk contains at least <code>minSize</code> bytes unless the
+     * end of the input is reached. A chunk ends always at the end of a row.
+     * </p>
+     *
+     * @param minSize The min. number of bytes of the chunk.
+     * @return A chunk or {@code null} if the end of the input was reached.
+     * @throws IOException In case of an I/O error.
+     */
+    public Chunk nextChunk(final int minSize) throws IOException {
+        final int quote = _quote;
+        // Positions are relative to _start since the buffer may be compacted
+        int pos = 0;
+        int rowEnd = -1;
+        int lines = 0;
+        int rowEndLines = 0;
+        boolean quoted = false;
+        while (true) {
+            final byte[] buf = _buf;
+            final int start = _start;
+            final int end = _end;
+            int i = start + pos;
+            for (; i < end; i++) {
+                final byte b = buf[i];
+                if (b == quote) {
+                    quoted = !quoted;
+                }
+                else if (b == '\n') {
+                    lines++;
+                    if (!quoted) {
+                        rowEnd = i + 1 - start;
+                        rowEndLines = lines;
+                        if (rowEnd >= minSize) {
+                            return _cut(rowEnd, rowEndLines);
+                        }
+                    }
+                }
+            }
+            pos = i - start;
+            if (_eof) {
+                return pos == 0 ? null : _cut(pos, lines);
+            }
+            _fill();
+        }
+    }
+
+    /**
+     * Returns a chunk of the provided length and keeps the remaining bytes
+     * in a new buffer.
+     */
+    private Chunk _cut(final int length, final int lines) {
+        final Chunk chunk = new Chunk(_buf, _start, length, _line);
+        final int rest = _end - _start - length;
+        final byte[] buf = new byte[Math.max(_INITIAL_SIZE, _buf.length)];
+        System.arraycopy(_buf, _start + length, buf, 0, rest);
+        _buf = buf;
+        _start = 0;
+        _end = rest;
+        _line += lines;
+        return chunk;
+    }
+
+    /**
+     * Reads more bytes into the buffer, the buffer is compacted or grown
+     * if necessary.
+     */
+    private void _fill() throws IOException {
+        if (_end == _buf.length) {
+            final int size = _end - _start;
+            if (_start > 0 && size < _buf.length / 2) {
+                System.arraycopy(_buf, _start, _buf, 0, size);
+            }
+            else {
+                final byte[] buf = new byte[_buf.length * 2];
+                System.arraycopy(_buf, _start, buf, 0, size);
+                _buf = buf;
+            }
+            _start = 0;
+            _end = size;
+        }
+        final int read = _in.read(_buf, _end, _buf.length - _end);
+        if (read == -1) {
+            _eof = true;
+        }
+        else {
+            _end += read;
+        }
+    }
+
+
+    /**
+     * A number of complete rows.
+     */
+    static final class Chunk {
+
+        final byte[] _data;
+        final int _offset;
+        final int _length;
+        final int _line;
+
+        Chunk(final byte[] data, final int offset, final int length, final int line) {
+            _data = data;
+            _offset = offset;
+            _length = length;
+            _line = line;
+        }
+
+    }
+
+
+    /**
+     * Reads the rows of a chunk.
+     * <p>
+     * Empty lines are skipped. Instances of this class are not thread-safe,
+     * but different chunks can be read concurrently.
+     * </p>
+     */
+    static final class RowReader {
+
+        private final byte[] _data;
+        private final int _end;
+        private final byte _separator;
+        private final int _quote;
+        private final Charset _charset;
+        private int _pos;
+        private int _nextLine;
+        private int _line;
+        private String[] _fields;
+        private int _fieldCount;
+        private byte[] _scratch;
+
+        /**
+         * Creates a reader.
+         *
+         * @param chunk The chunk to read.
+         * @param separator The field separator.
+         * @param quote The quote character or {@link CSVScanner#NO_QUOTE}.
+         * @param charset The encoding of the fields.
+         */
+        RowReader(final Chunk chunk, final byte separator, final int quote, final Charset charset) {
+            _data = chunk._data;
+            _pos = chunk._offset;
+            _end = chunk._offset + chunk._length;
+            _nextLine = chunk._line;
+            _separator = separator;
+            _quote = quote;
+            _charset = charset;
+            _fields = new String[16];
+        }
+
+        /**
+         * Reads the next row.
+         *
+         * @return {@code true} if a row was read, {@code false} if the end
+         *          of the chunk was reached.
+         * @throws MIOParseException If a quoted field is not terminated.
+         */
+        boolean next() throws MIOParseException {
+            final byte[] data = _data;
+            // Skip empty lines
+            while (_pos < _end && (data[_pos] == '\n' || data[_pos] == '\r')) {
+                if (data[_pos] == '\n') {
+                    _nextLine++;
+                }
+                _pos++;
+            }
+            if (_pos == _end) {
+                return false;
+            }
+            _line = _nextLine;
+            _fieldCount = 0;
+            while (true) {
+                int i = _pos;
+                final String field;
+                if (data[i] == _quote) {
+                    i = _readQuoted(i + 1);
+                    field = _decodeQuoted(_pos + 1, i - 1);
+                }
+                else {
+                    while (i < _end && data[i] != _separator && data[i] != '\n') {
+                        i++;
+                    }
+                    int fieldEnd = i;
+                    if (fieldEnd > _pos && data[fieldEnd-1] == '\r'
+                            && (fieldEnd == _end || data[fieldEnd] == '\n')) {
+                        fieldEnd--;
+                    }
+                    field = fieldEnd == _pos ? "" : new String(data, _pos, fieldEnd - _pos, _charset);
+                }
+                _add(field);
+                while (i < _end && data[i] != _separator && data[i] != '\n') {
+                    // Ignore characters after a quoted field, i.e. "\r"
+                    i++;
+                }
+                if (i < _end && data[i] == _separator) {
+                    _pos = i + 1;
+                    if (_pos == _end) {
+                        _add("");
+                        return true;
+                    }
+                    continue;
+                }
+                if (i < _end) {
+                    _nextLine++;
+                    i++;
+                }
+                _pos = i;
+                return true;
+            }
+        }
+
+        /**
+         * Returns the index after the closing quote.
+         */
+        private int _readQuoted(final int start) throws MIOParseException {
+            final byte[] data = _data;
+            int i = start;
+            while (true) {
+                if (i == _end) {
+                    throw new MIOParseException("Unterminated quoted field", _line, -1);
+                }
+                final byte b = data[i];
+                if (b == _quote) {
+                    if (i + 1 < _end && data[i+1] == _quote) {
+                        i += 2;
+                        continue;
+                    }
+                    return i + 1;
+                }
+                if (b == '\n') {
+                    _nextLine++;
+                }
+                i++;
+            }
+        }
+
+        private String _decodeQuoted(final int start, final int end) {
+            final byte[] data = _data;
+            int escaped = -1;
+            for (int i=start; i<end; i++) {
+                if (data[i] == _quote) {
+                    escaped = i;
+                    break;
+                }
+            }
+            if (escaped == -1) {
+                return new String(data, start, end - start, _charset);
+            }
+            if (_scratch == null || _scratch.length < end - start) {
+                _scratch = new byte[Math.max(end - start, 256)];
+            }
+            final byte[] scratch = _scratch;
+            int len = escaped - start;
+            System.arraycopy(data, start, scratch, 0, len);
+            for (int i=escaped; i<end; i++) {
+                scratch[len++] = data[i];
+                if (data[i] == _quote) {
+                    i++;
+                }
+            }
+            return new String(scratch, 0, len, _charset);
+        }
+
+        private void _add(final String field) {
+            if (_fieldCount == _fields.length) {
+                _fields = Arrays.copyOf(_fields, _fieldCount * 2);
+            }
+            _fields[_fieldCount++] = field;
+        }
+
+        /**
+         * Returns the fields of the current row.
+         * <p>
+         * The array is reused, only the first {@link #getFieldCount()}
+         * elements are valid.
+         * </p>
+         *
+         * @return The fields.
+         */
+        String[] getFields() {
+            return _fields;
+        }
+
+        /**
+         * Returns the number of fields of the current row.
+         *
+         * @return The number of fields.
+         */
+        int getFieldCount() {
+            return _fieldCount;
+        }
+
+        /**
+         * Returns the line number where the current row starts.
+         *
+         * @return The line number.
+         */
+        int getLine() {
+            return _line;
+        }
+
+    }
+
+}
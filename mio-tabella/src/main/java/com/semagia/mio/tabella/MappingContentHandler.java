@@ -0,0 +1,524 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.tabella;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOParseException;
+import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.tabella.CSVMapping.Entity;
+import com.semagia.mio.tabella.CSVMapping.Field;
+import com.semagia.mio.tabella.CSVMapping.Player;
+import com.semagia.mio.tabella.CSVMapping.Relation;
+import com.semagia.mio.tabella.CSVMapping.Role;
+import com.semagia.mio.tabella.CSVMapping.Value;
+import com.semagia.mio.voc.XSD;
+
+/**
+ * Content handler which creates a {@link CSVMapping} from a DB2TM document.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class MappingContentHandler extends DefaultHandler {
+
+    private static final String _XSD = "http://www.w3.org/2001/XMLSchema#";
+
+    private static final IRef[] _NO_REFS = new IRef[0];
+
+    private Locator _locator;
+    private String _name;
+    private final Map<String, String> _prefixes;
+    private final Map<String, Integer> _prefixKinds;
+    private boolean _format;
+    private byte _separator;
+    private int _quote;
+    private String _encoding;
+    private int _ignoreFirstLines;
+    private final List<Relation> _relations;
+    private CSVMapping _mapping;
+
+    // Relation state
+    private String _relationName;
+    private String[] _columns;
+    private List<EntityBuilder> _entities;
+    private EntityBuilder _entity;
+    private PlayerBuilder _player;
+
+    // Field state
+    private int _fieldKind;
+    private IRef _fieldType;
+    private IRef[] _fieldScope;
+    private String _fieldDatatype;
+    private String _fieldColumn;
+    private StringBuilder _text;
+
+    public MappingContentHandler() {
+        _prefixes = new HashMap<String, String>();
+        _prefixKinds = new HashMap<String, Integer>();
+        _relations = new ArrayList<Relation>();
+        _separator = ',';
+        _quote = '"';
+    }
+
+    /**
+     * Returns the mapping.
+     *
+     * @return The mapping or {@code null} if the document was not read.
+     */
+    public CSVMapping getMapping() {
+        return _mapping;
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler#setDocumentLocator(org.xml.sax.Locator)
+     */
+    @Override
+    public void setDocumentLocator(final Locator locator) {
+        _locator = locator;
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String, java.lang.String, java.lang.String, org.xml.sax.Attributes)
+     */
+    @Override
+    public void startElement(final String uri, final String localName,
+            final String qName, final Attributes attrs) throws SAXException {
+        final String name = localName.isEmpty() ? qName : localName;
+        if ("db2tm".equals(name)) {
+            _name = attrs.getValue("name");
+        }
+        else if ("using".equals(name)) {
+            _handleUsing(attrs);
+        }
+        else if ("sources".equals(name)) {
+            // noop.
+        }
+        else if ("csv".equals(name)) {
+            _handleCSV(attrs);
+        }
+        else if ("relation".equals(name)) {
+            _relationName = _required(attrs, "name");
+            _columns = _required(attrs, "columns").trim().split("[\\s,]+");
+            _entities = new ArrayList<EntityBuilder>();
+        }
+        else if ("topic".equals(name) && _entities != null && _entity == null) {
+            _entity = new EntityBuilder(attrs.getValue("id"), true);
+            _entity._types.addAll(Arrays.asList(_refs(attrs.getValue("type"))));
+            _entity._types.addAll(Arrays.asList(_refs(attrs.getValue("types"))));
+        }
+        else if ("association".equals(name) && _entities != null && _entity == null) {
+            _entity = new EntityBuilder(attrs.getValue("id"), false);
+            _entity._types.add(_ref(_required(attrs, "type")));
+            _entity._scope = _refs(attrs.getValue("scope"));
+        }
+        else if ("role".equals(name) && _entity != null && !_entity._isTopic) {
+            _entity._roles.add(_role(attrs, "type"));
+        }
+        else if ("player".equals(name) && _entity != null && _entity._isTopic) {
+            _player = new PlayerBuilder(_ref(_required(attrs, "atype")),
+                    _ref(_required(attrs, "rtype")), _refs(attrs.getValue("scope")));
+        }
+        else if ("other".equals(name) && _player != null) {
+            _player._others.add(_role(attrs, "rtype"));
+        }
+        else if (_entity != null && _entity._isTopic && _player == null && _text == null
+                && _startField(name, attrs)) {
+            // noop.
+        }
+        else {
+            throw _error("The element <" + name + "> is not supported at this position");
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String, java.lang.String, java.lang.String)
+     */
+    @Override
+    public void endElement(final String uri, final String localName,
+            final String qName) throws SAXException {
+        final String name = localName.isEmpty() ? qName : localName;
+        if (_text != null) {
+            _endField();
+        }
+        else if ("player".equals(name)) {
+            _entity._players.add(_player);
+            _player = null;
+        }
+        else if ("topic".equals(name) || "association".equals(name)) {
+            if (_entity._isTopic && _entity._identities.isEmpty()) {
+                throw _error("The topic requires at least one identity field");
+            }
+            if (!_entity._isTopic && _entity._roles.isEmpty()) {
+                throw _error("The association requires at least one role");
+            }
+            _entities.add(_entity);
+            _entity = null;
+        }
+        else if ("relation".equals(name)) {
+            _relations.add(_buildRelation());
+            _entities = null;
+        }
+        else if ("db2tm".equals(name)) {
+            _mapping = new CSVMapping(_name, _separator, _quote, _encoding, _ignoreFirstLines, _relations);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
+     */
+    @Override
+    public void characters(final char[] ch, final int start, final int length) throws SAXException {
+        if (_text != null) {
+            _text.append(ch, start, length);
+        }
+    }
+
+    private void _handleUsing(final Attributes attrs) throws SAXException {
+        final String prefix = _required(attrs, "prefix");
+        int kind = IRef.SUBJECT_IDENTIFIER;
+        String iri = attrs.getValue("subject-identifier");
+        if (iri == null) {
+            kind = IRef.ITEM_IDENTIFIER;
+            iri = attrs.getValue("item-identifier");
+        }
+        if (iri == null) {
+            kind = IRef.SUBJECT_LOCATOR;
+            iri = attrs.getValue("subject-locator");
+        }
+        if (iri == null) {
+            throw _error("The prefix '" + prefix + "' is not bound to an IRI");
+        }
+        _prefixes.put(prefix, iri);
+        _prefixKinds.put(prefix, Integer.valueOf(kind));
+    }
+
+    private void _handleCSV(final Attributes attrs) throws SAXException {
+        if (_format) {
+            // Only the first source provides the format
+            return;
+        }
+        _format = true;
+        final String separator = attrs.getValue("separator");
+        if (separator != null) {
+            final String sep = "\\t".equals(separator) ? "\t" : separator;
+            if (sep.length() != 1 || sep.charAt(0) > 0x7F) {
+                throw _error("Invalid separator '" + separator + "'");
+            }
+            _separator = (byte) sep.charAt(0);
+        }
+        final String quoting = attrs.getValue("quoting");
+        if (quoting != null) {
+            if (quoting.isEmpty()) {
+                _quote = CSVScanner.NO_QUOTE;
+            }
+            else if (quoting.length() != 1 || quoting.charAt(0) > 0x7F) {
+                throw _error("Invalid quote character '" + quoting + "'");
+            }
+            else {
+                _quote = quoting.charAt(0);
+            }
+        }
+        _encoding = attrs.getValue("encoding");
+        final String ignore = attrs.getValue("ignoreFirstLines");
+        if (ignore != null) {
+            try {
+                _ignoreFirstLines = Integer.parseInt(ignore.trim());
+            }
+            catch (NumberFormatException ex) {
+                throw _error("Invalid number of lines '" + ignore + "'");
+            }
+        }
+    }
+
+    /**
+     * Starts an identity field, a name or an occurrence.
+     *
+     * @return {@code true} if the element is a field, otherwise {@code false}.
+     */
+    private boolean _startField(final String name, final Attributes attrs) throws SAXException {
+        _fieldType = null;
+        _fieldScope = _NO_REFS;
+        _fieldDatatype = null;
+        if ("subject-identifier".equals(name)) {
+            _fieldKind = Field.SUBJECT_IDENTIFIER;
+        }
+        else if ("subject-locator".equals(name)) {
+            _fieldKind = Field.SUBJECT_LOCATOR;
+        }
+        else if ("item-identifier".equals(name)) {
+            _fieldKind = Field.ITEM_IDENTIFIER;
+        }
+        else if ("topic-name".equals(name)) {
+            _fieldKind = Field.NAME;
+            final String type = attrs.getValue("type");
+            _fieldType = type != null ? _ref(type) : null;
+            _fieldScope = _refs(attrs.getValue("scope"));
+        }
+        else if ("occurrence".equals(name)) {
+            _fieldKind = Field.OCCURRENCE;
+            _fieldType = _ref(_required(attrs, "type"));
+            _fieldScope = _refs(attrs.getValue("scope"));
+            final String datatype = attrs.getValue("datatype");
+            _fieldDatatype = datatype != null ? _datatype(datatype) : XSD.STRING;
+        }
+        else {
+            return false;
+        }
+        _fieldColumn = attrs.getValue("column");
+        _text = new StringBuilder();
+        return true;
+    }
+
+    private void _endField() throws SAXException {
+        final Value value;
+        if (_fieldColumn != null) {
+            value = new Value(new String[] {"", ""}, new int[] {_column(_fieldColumn)});
+        }
+        else {
+            value = _template(_text.toString().trim(), _fieldKind <= Field.ITEM_IDENTIFIER);
+        }
+        final Field field = new Field(_fieldKind, _fieldType, _fieldScope, _fieldDatatype, value);
+        if (_fieldKind <= Field.ITEM_IDENTIFIER) {
+            _entity._identities.add(field);
+        }
+        else {
+            _entity._characteristics.add(field);
+        }
+        _text = null;
+    }
+
+    private Relation _buildRelation() throws SAXException {
+        final Map<String, Integer> ids = new HashMap<String, Integer>();
+        for (int i=0; i<_entities.size(); i++) {
+            final EntityBuilder entity = _entities.get(i);
+            if (entity._id != null && entity._isTopic) {
+                ids.put(entity._id, Integer.valueOf(i));
+            }
+        }
+        final Entity[] entities = new Entity[_entities.size()];
+        for (int i=0; i<entities.length; i++) {
+            final EntityBuilder entity = _entities.get(i);
+            final Player[] players = new Player[entity._players.size()];
+            for (int j=0; j<players.length; j++) {
+                final PlayerBuilder player = entity._players.get(j);
+                players[j] = new Player(player._type, player._roleType, player._scope, _roles(player._others, ids));
+            }
+            entities[i] = new Entity(entity._id, entity._isTopic,
+                    entity._types.toArray(new IRef[entity._types.size()]), entity._scope,
+                    entity._identities.toArray(new Field[entity._identities.size()]),
+                    entity._characteristics.toArray(new Field[entity._characteristics.size()]),
+                    players, _roles(entity._roles, ids));
+        }
+        return new Relation(_relationName, _columns, entities);
+    }
+
+    private Role[] _roles(final List<RoleBuilder> builders, final Map<String, Integer> ids) throws SAXException {
+        final Role[] roles = new Role[builders.size()];
+        for (int i=0; i<roles.length; i++) {
+            final RoleBuilder role = builders.get(i);
+            if (role._player.startsWith("#")) {
+                final Integer idx = ids.get(role._player.substring(1));
+                if (idx == null) {
+                    throw _error("The player '" + role._player + "' does not refer to a topic of the relation '" + _relationName + "'");
+                }
+                roles[i] = new Role(role._type, idx.intValue(), null, role._optional);
+            }
+            else {
+                roles[i] = new Role(role._type, -1, _ref(role._player), role._optional);
+            }
+        }
+        return roles;
+    }
+
+    private RoleBuilder _role(final Attributes attrs, final String typeAttr) throws SAXException {
+        return new RoleBuilder(_ref(_required(attrs, typeAttr)),
+                _required(attrs, "player"),
+                Boolean.parseBoolean(attrs.getValue("optional")));
+    }
+
+    /**
+     * Compiles a text with <tt>${column}</tt> references.
+     *
+     * @param text The text.
+     * @param iri Indicates if the text is an IRI, a leading QName is
+     *          expanded.
+     */
+    private Value _template(final String text, final boolean iri) throws SAXException {
+        final List<String> literals = new ArrayList<String>();
+        final List<Integer> columns = new ArrayList<Integer>();
+        int start = 0;
+        int idx;
+        while ((idx = text.indexOf("${", start)) != -1) {
+            final int end = text.indexOf('}', idx);
+            if (end == -1) {
+                throw _error("Unterminated column reference in '" + text + "'");
+            }
+            literals.add(text.substring(start, idx));
+            columns.add(Integer.valueOf(_column(text.substring(idx + 2, end).trim())));
+            start = end + 1;
+        }
+        literals.add(text.substring(start));
+        if (iri) {
+            final String first = literals.get(0);
+            final int colon = first.indexOf(':');
+            if (colon > 0 && _prefixes.containsKey(first.substring(0, colon))) {
+                literals.set(0, _prefixes.get(first.substring(0, colon)) + first.substring(colon + 1));
+            }
+        }
+        final int[] cols = new int[columns.size()];
+        for (int i=0; i<cols.length; i++) {
+            cols[i] = columns.get(i).intValue();
+        }
+        return new Value(literals.toArray(new String[literals.size()]), cols);
+    }
+
+    private int _column(final String name) throws SAXException {
+        for (int i=0; i<_columns.length; i++) {
+            if (_columns[i].equals(name)) {
+                return i;
+            }
+        }
+        throw _error("Unknown column '" + name + "' in relation '" + _relationName + "'");
+    }
+
+    /**
+     * Returns a topic reference for a QName or an absolute IRI.
+     */
+    private IRef _ref(final String reference) throws SAXException {
+        final String ref = reference.trim();
+        final int colon = ref.indexOf(':');
+        if (colon > 0) {
+            final String prefix = ref.substring(0, colon);
+            final String iri = _prefixes.get(prefix);
+            if (iri != null) {
+                final String local = iri + ref.substring(colon + 1);
+                switch (_prefixKinds.get(prefix).intValue()) {
+                    case IRef.ITEM_IDENTIFIER: return Ref.createItemIdentifier(local);
+                    case IRef.SUBJECT_LOCATOR: return Ref.createSubjectLocator(local);
+                    default: return Ref.createSubjectIdentifier(local);
+                }
+            }
+            if (ref.indexOf("//") == colon + 1) {
+                return Ref.createSubjectIdentifier(ref);
+            }
+        }
+        throw _error("Invalid topic reference '" + reference + "', expected a QName or an absolute IRI");
+    }
+
+    private IRef[] _refs(final String references) throws SAXException {
+        if (references == null || references.trim().isEmpty()) {
+            return _NO_REFS;
+        }
+        final String[] refs = references.trim().split("\\s+");
+        final IRef[] result = new IRef[refs.length];
+        for (int i=0; i<refs.length; i++) {
+            result[i] = _ref(refs[i]);
+        }
+        return result;
+    }
+
+    private String _datatype(final String datatype) throws SAXException {
+        final int colon = datatype.indexOf(':');
+        if (colon > 0) {
+            final String prefix = datatype.substring(0, colon);
+            if (_prefixes.containsKey(prefix)) {
+                return _prefixes.get(prefix) + datatype.substring(colon + 1);
+            }
+            if ("xsd".equals(prefix)) {
+                return _XSD + datatype.substring(colon + 1);
+            }
+            if (datatype.indexOf("//") == colon + 1) {
+                return datatype;
+            }
+        }
+        throw _error("Invalid datatype '" + datatype + "'");
+    }
+
+    private String _required(final Attributes attrs, final String name) throws SAXException {
+        final String value = attrs.getValue(name);
+        if (value == null) {
+            throw _error("The attribute '" + name + "' is required");
+        }
+        return value;
+    }
+
+    private SAXException _error(final String msg) {
+        return _locator != null
+                ? new SAXException(new MIOParseException(msg, _locator.getLineNumber(), _locator.getColumnNumber()))
+                : new SAXException(new MIOParseException(msg));
+    }
+
+
+    private static final class EntityBuilder {
+
+        final String _id;
+        final boolean _isTopic;
+        final List<IRef> _types = new ArrayList<IRef>();
+        IRef[] _scope = _NO_REFS;
+        final List<Field> _identities = new ArrayList<Field>();
+        final List<Field> _characteristics = new ArrayList<Field>();
+        final List<PlayerBuilder> _players = new ArrayList<PlayerBuilder>();
+        final List<RoleBuilder> _roles = new ArrayList<RoleBuilder>();
+
+        EntityBuilder(final String id, final boolean isTopic) {
+            _id = id;
+            _isTopic = isTopic;
+        }
+
+    }
+
+
+    private static final class PlayerBuilder {
+
+        final IRef _type;
+        final IRef _roleType;
+        final IRef[] _scope;
+        final List<RoleBuilder> _others = new ArrayList<RoleBuilder>();
+
+        PlayerBuilder(final IRef type, final IRef roleType, final IRef[] scope) {
+            _type = type;
+            _roleType = roleType;
+            _scope = scope;
+        }
+
+    }
+
+
+    private static final class RoleBuilder {
+
+        final IRef _type;
+        final String _player;
+        final boolean _optional;
+
+        RoleBuilder(final IRef type, final String player, final boolean optional) {
+            _type = type;
+            _player = player;
+            _optional = optional;
+        }
+
+    }
+
+}
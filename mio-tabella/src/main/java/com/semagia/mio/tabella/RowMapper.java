@@ -0,0 +1,249 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.tabella;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.helpers.Locator;
+import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.helpers.SimpleMapHandler;
+import com.semagia.mio.tabella.CSVMapping.Entity;
+import com.semagia.mio.tabella.CSVMapping.Field;
+import com.semagia.mio.tabella.CSVMapping.Player;
+import com.semagia.mio.tabella.CSVMapping.Relation;
+import com.semagia.mio.tabella.CSVMapping.Role;
+
+/**
+ * Issues the events for the rows of a {@link Relation}.
+ * <p>
+ * Instances of this class are not thread-safe.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class RowMapper {
+
+    private final Entity[] _entities;
+    private final Locator _base;
+
+    /**
+     * The identities of the topics of the current row.
+     */
+    private final IRef[] _identities;
+
+    /**
+     * The index of the identity field of the topics of the current row.
+     */
+    private final int[] _identityFields;
+
+    /**
+     * Creates a mapper.
+     *
+     * @param relation The relation.
+     * @param base The IRI to resolve relative IRIs against.
+     */
+    public RowMapper(final Relation relation, final Locator base) {
+        _entities = relation._entities;
+        _base = base;
+        _identities = new IRef[_entities.length];
+        _identityFields = new int[_entities.length];
+    }
+
+    /**
+     * Issues the events for the provided row.
+     *
+     * @param fields The fields of the row.
+     * @param count The number of fields.
+     * @param handler The handler which receives the events.
+     * @throws MIOException In case of an invalid IRI or if the handler
+     *          reports an error.
+     */
+    public void map(final String[] fields, final int count,
+            final SimpleMapHandler handler) throws MIOException {
+        final Entity[] entities = _entities;
+        for (int i=0; i<entities.length; i++) {
+            _identities[i] = entities[i]._isTopic ? _identity(i, fields, count) : null;
+        }
+        for (int i=0; i<entities.length; i++) {
+            final Entity entity = entities[i];
+            if (!entity._isTopic) {
+                _association(entity._types[0], entity._scope, null, null, entity._roles, handler);
+            }
+            else if (_identities[i] != null) {
+                _topic(entity, _identityFields[i], _identities[i], fields, count, handler);
+                for (Player player: entity._players) {
+                    _association(player._type, player._scope, player._roleType, _identities[i], player._others, handler);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the identity of the topic or {@code null} if all identity
+     * fields are empty.
+     */
+    private IRef _identity(final int idx, final String[] fields, final int count) throws MIOException {
+        final Field[] identities = _entities[idx]._identities;
+        for (int i=0; i<identities.length; i++) {
+            final Field field = identities[i];
+            final String value = field._value.evaluate(fields, count);
+            if (value != null) {
+                _identityFields[idx] = i;
+                final String iri = _resolve(value);
+                switch (field._kind) {
+                    case Field.SUBJECT_LOCATOR: return Ref.createSubjectLocator(iri);
+                    case Field.ITEM_IDENTIFIER: return Ref.createItemIdentifier(iri);
+                    default: return Ref.createSubjectIdentifier(iri);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void _topic(final Entity entity, final int identityField, final IRef identity,
+            final String[] fields, final int count, final SimpleMapHandler handler) throws MIOException {
+        handler.startTopic(identity);
+        final Field[] identities = entity._identities;
+        for (int i=identityField+1; i<identities.length; i++) {
+            final String value = identities[i]._value.evaluate(fields, count);
+            if (value == null) {
+                continue;
+            }
+            switch (identities[i]._kind) {
+                case Field.SUBJECT_IDENTIFIER: handler.subjectIdentifier(_resolve(value)); break;
+                case Field.SUBJECT_LOCATOR: handler.subjectLocator(_resolve(value)); break;
+                case Field.ITEM_IDENTIFIER: handler.itemIdentifier(_resolve(value)); break;
+            }
+        }
+        for (IRef type: entity._types) {
+            handler.isa(type);
+        }
+        for (Field field: entity._characteristics) {
+            final String value = field._value.evaluate(fields, count);
+            if (value == null) {
+                continue;
+            }
+            if (field._kind == Field.NAME) {
+                handler.startName();
+                if (field._type != null) {
+                    handler.type(field._type);
+                }
+                _scope(field._scope, handler);
+                handler.value(value);
+                handler.endName();
+            }
+            else {
+                handler.startOccurrence(field._type);
+                _scope(field._scope, handler);
+                handler.value(value, field._datatype);
+                handler.endOccurrence();
+            }
+        }
+        handler.endTopic();
+    }
+
+    /**
+     * Issues an association if all mandatory roles have a player.
+     *
+     * @param type The association type.
+     * @param scope The scope.
+     * @param roleType The type of the role played by <code>player</code> or {@code null}.
+     * @param player The player of <code>roleType</code> or {@code null}.
+     * @param roles The (other) roles.
+     * @param handler The handler.
+     */
+    private void _association(final IRef type, final IRef[] scope,
+            final IRef roleType, final IRef player, final Role[] roles,
+            final SimpleMapHandler handler) throws MIOException {
+        boolean hasRole = player != null;
+        for (Role role: roles) {
+            if (_player(role) == null) {
+                if (!role._optional) {
+                    return;
+                }
+            }
+            else {
+                hasRole = true;
+            }
+        }
+        if (!hasRole) {
+            return;
+        }
+        handler.startAssociation(type);
+        _scope(scope, handler);
+        if (player != null) {
+            handler.role(roleType, player);
+        }
+        for (Role role: roles) {
+            final IRef rolePlayer = _player(role);
+            if (rolePlayer != null) {
+                handler.role(role._type, rolePlayer);
+            }
+        }
+        handler.endAssociation();
+    }
+
+    private IRef _player(final Role role) {
+        return role._entity != -1 ? _identities[role._entity] : role._player;
+    }
+
+    private static void _scope(final IRef[] scope, final SimpleMapHandler handler) throws MIOException {
+        if (scope.length == 0) {
+            return;
+        }
+        handler.startScope();
+        for (IRef theme: scope) {
+            handler.theme(theme);
+        }
+        handler.endScope();
+    }
+
+    /**
+     * Resolves the provided IRI against the base IRI if the IRI is relative.
+     */
+    private String _resolve(final String iri) throws MIOException {
+        if (_isAbsolute(iri)) {
+            return iri;
+        }
+        try {
+            return _base.resolve(iri).getReference();
+        }
+        catch (IllegalArgumentException ex) {
+            throw new MIOException("Invalid IRI '" + iri + "'", ex);
+        }
+    }
+
+    /**
+     * Returns if the provided IRI starts with a scheme.
+     */
+    private static boolean _isAbsolute(final String iri) {
+        final int len = iri.length();
+        if (len == 0 || !Character.isLetter(iri.charAt(0))) {
+            return false;
+        }
+        for (int i=1; i<len; i++) {
+            final char c = iri.charAt(i);
+            if (c == ':') {
+                return true;
+            }
+            if (!(Character.isLetterOrDigit(c) || c == '+' || c == '-' || c == '.')) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+}
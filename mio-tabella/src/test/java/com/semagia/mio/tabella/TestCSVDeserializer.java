@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.tabella;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.MIOParseException;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.helpers.DefaultMapHandler;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link CSVDeserializer}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestCSVDeserializer extends TestCase {
+
+    private static final String _BASE = "http://www.example.org/data/people.csv";
+
+    private static final String _MAPPING = "<db2tm name='people'>"
+            + "<using prefix='ex' subject-identifier='http://psi.example.org/'/>"
+            + "<sources><csv path='.' ignoreFirstLines='1'/></sources>"
+            + "<relation name='people.csv' columns='id name homepage org'>"
+            + "  <topic id='person' type='ex:person'>"
+            + "    <subject-identifier>ex:person/${id}</subject-identifier>"
+            + "    <topic-name column='name'/>"
+            + "    <occurrence type='ex:homepage' datatype='xsd:anyURI' column='homepage'/>"
+            + "  </topic>"
+            + "  <topic id='org'>"
+            + "    <item-identifier>#org-${org}</item-identifier>"
+            + "  </topic>"
+            + "  <association type='ex:works-for'>"
+            + "    <role type='ex:employee' player='#person'/>"
+            + "    <role type='ex:employer' player='#org'/>"
+            + "  </association>"
+            + "</relation>"
+            + "</db2tm>";
+
+    private static CSVMapping _mapping(final String mapping) throws Exception {
+        return CSVMapping.read(new Source(new StringReader(mapping), "http://www.example.org/mapping.xml"));
+    }
+
+    private static List<String> _parse(final String csv, final int parallelism, final int chunkSize) throws Exception {
+        final List<String> events = new ArrayList<String>();
+        final CSVDeserializer deser = new CSVDeserializer();
+        deser.setChunkSize(chunkSize);
+        deser.setProperty(Property.TABELLA_MAPPING, _mapping(_MAPPING));
+        deser.setProperty(Property.PARALLELISM, Integer.valueOf(parallelism));
+        deser.setMapHandler(new EventHandler(events));
+        deser.parse(new Source(new ByteArrayInputStream(csv.getBytes("UTF-8")), _BASE));
+        return events;
+    }
+
+    private static List<String> _parse(final String csv) throws Exception {
+        return _parse(csv, 1, 1024);
+    }
+
+    public void testMapping() throws Exception {
+        final List<String> events = _parse("id,name,homepage,org\n"
+                + "1,Lars,http://www.semagia.com/,semagia\n");
+        assertEquals("[startTopic http://psi.example.org/person/1, isa http://psi.example.org/person, "
+                + "startName, value Lars, endName, "
+                + "startOccurrence, type http://psi.example.org/homepage, "
+                + "value http://www.semagia.com/^^http://www.w3.org/2001/XMLSchema#anyURI, endOccurrence, endTopic, "
+                + "startTopic http://www.example.org/data/people.csv#org-semagia, endTopic, "
+                + "startAssociation, type http://psi.example.org/works-for, "
+                + "startRole, type http://psi.example.org/employee, player http://psi.example.org/person/1, endRole, "
+                + "startRole, type http://psi.example.org/employer, player http://www.example.org/data/people.csv#org-semagia, endRole, "
+                + "endAssociation]", events.toString());
+    }
+
+    public void testEmptyColumns() throws Exception {
+        final List<String> events = _parse("id,name,homepage,org\n"
+                + "1,,,\n");
+        assertEquals("[startTopic http://psi.example.org/person/1, isa http://psi.example.org/person, endTopic]",
+                events.toString());
+    }
+
+    public void testQuotedFields() throws Exception {
+        final List<String> events = _parse("id,name,homepage,org\r\n"
+                + "1,\"Heuer, \"\"Lars\"\"\nSemagia\",,\r\n");
+        assertTrue(events.contains("value Heuer, \"Lars\"\nSemagia"));
+    }
+
+    public void testParallel() throws Exception {
+        final StringBuilder sb = new StringBuilder("id,name,homepage,org\n");
+        for (int i=0; i<2000; i++) {
+            sb.append(i).append(",\"Name\n").append(i).append("\",,org").append(i % 7).append('\n');
+        }
+        final String csv = sb.toString();
+        final List<String> expected = _parse(csv, 1, 64);
+        assertEquals(expected, _parse(csv, 4, 64));
+        assertEquals(expected, _parse(csv, 1, 1024 * 1024));
+    }
+
+    public void testUnterminatedQuote() throws Exception {
+        try {
+            _parse("id,name,homepage,org\n1,Lars,,\n2,\"Lutz,,\n");
+            fail("Expected an exception for an unterminated quote");
+        }
+        catch (MIOParseException ex) {
+            assertEquals(3, ex.getLineNumber());
+        }
+    }
+
+    public void testUnsupportedElement() throws Exception {
+        try {
+            _mapping("<db2tm name='x'><relation name='x' columns='a'><condition>a</condition></relation></db2tm>");
+            fail("Expected an exception for an unsupported element");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+    public void testUnknownColumn() throws Exception {
+        try {
+            _mapping("<db2tm name='x'><relation name='x' columns='a'><topic>"
+                    + "<subject-identifier>http://psi.example.org/${b}</subject-identifier>"
+                    + "</topic></relation></db2tm>");
+            fail("Expected an exception for an unknown column");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+
+    private static final class EventHandler extends DefaultMapHandler {
+
+        private final List<String> _events;
+
+        EventHandler(final List<String> events) {
+            _events = events;
+        }
+
+        private boolean _type;
+        private boolean _player;
+
+        @Override
+        public void startTopic(IRef identity) throws MIOException { _events.add("startTopic " + identity.getIRI()); }
+        @Override
+        public void endTopic() throws MIOException { _events.add("endTopic"); }
+        @Override
+        public void startAssociation() throws MIOException { _events.add("startAssociation"); }
+        @Override
+        public void endAssociation() throws MIOException { _events.add("endAssociation"); }
+        @Override
+        public void startRole() throws MIOException { _events.add("startRole"); }
+        @Override
+        public void endRole() throws MIOException { _events.add("endRole"); }
+        @Override
+        public void startName() throws MIOException { _events.add("startName"); }
+        @Override
+        public void endName() throws MIOException { _events.add("endName"); }
+        @Override
+        public void startOccurrence() throws MIOException { _events.add("startOccurrence"); }
+        @Override
+        public void endOccurrence() throws MIOException { _events.add("endOccurrence"); }
+        @Override
+        public void value(String value) throws MIOException { _events.add("value " + value); }
+        @Override
+        public void value(String value, String datatype) throws MIOException { _events.add("value " + value + "^^" + datatype); }
+        @Override
+        public void startType() throws MIOException { _type = true; }
+        @Override
+        public void endType() throws MIOException { _type = false; }
+        @Override
+        public void startPlayer() throws MIOException { _player = true; }
+        @Override
+        public void endPlayer() throws MIOException { _player = false; }
+        @Override
+        public void startIsa() throws MIOException { _events.add("isa"); }
+        @Override
+        public void topicRef(IRef identity) throws MIOException {
+            final String prefix = _type ? "type " : _player ? "player " : "";
+            if (prefix.isEmpty()) {
+                _events.set(_events.size() - 1, _events.get(_events.size() - 1) + " " + identity.getIRI());
+            }
+            else {
+                _events.add(prefix + identity.getIRI());
+            }
+        }
+
+    }
+
+}
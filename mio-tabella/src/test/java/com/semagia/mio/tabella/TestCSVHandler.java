@@ -0,0 +1,233 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.tabella;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.voc.XSD;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link CSVHandler}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestCSVHandler extends TestCase {
+
+    private static final String _NS = "http://psi.example.org/";
+
+    private File _dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _dir = File.createTempFile("mio-tabella-test", "");
+        _dir.delete();
+        _dir.mkdir();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file: _dir.listFiles()) {
+            file.delete();
+        }
+        _dir.delete();
+        super.tearDown();
+    }
+
+    private static IRef _sid(final String localName) {
+        return Ref.createSubjectIdentifier(_NS + localName);
+    }
+
+    private String _read(final String name) throws IOException {
+        final InputStream in = new FileInputStream(new File(_dir, name));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buff = new byte[1024];
+        int n;
+        while ((n = in.read(buff)) != -1) {
+            out.write(buff, 0, n);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    private static void _person(final CSVHandler handler, final String id,
+            final String name, final String homepage) throws MIOException {
+        handler.startTopic(_sid(id));
+        handler.startIsa();
+        handler.topicRef(_sid("person"));
+        handler.endIsa();
+        handler.startName();
+        handler.value(name);
+        handler.endName();
+        if (homepage != null) {
+            handler.startOccurrence();
+            handler.startType();
+            handler.topicRef(_sid("homepage"));
+            handler.endType();
+            handler.value(homepage, XSD.ANY_URI);
+            handler.endOccurrence();
+        }
+        handler.endTopic();
+    }
+
+    private static void _worksFor(final CSVHandler handler, final String employee,
+            final String employer) throws MIOException {
+        handler.startAssociation();
+        handler.startType();
+        handler.topicRef(_sid("works-for"));
+        handler.endType();
+        handler.startRole();
+        handler.startType();
+        handler.topicRef(_sid("employee"));
+        handler.endType();
+        handler.startPlayer();
+        handler.topicRef(_sid(employee));
+        handler.endPlayer();
+        handler.endRole();
+        handler.startRole();
+        handler.startType();
+        handler.topicRef(_sid("employer"));
+        handler.endType();
+        handler.startPlayer();
+        handler.topicRef(Ref.createItemIdentifier(employer));
+        handler.endPlayer();
+        handler.endRole();
+        handler.endAssociation();
+    }
+
+    public void testTables() throws Exception {
+        final CSVHandler handler = new CSVHandler(_dir);
+        handler.startTopicMap();
+        _person(handler, "lars", "Lars", "http://www.semagia.com/");
+        _person(handler, "lutz", "Lutz, \"Luddi\"", null);
+        handler.startTopic(Ref.createSubjectLocator("http://www.semagia.com/"));
+        handler.subjectIdentifier(_NS + "semagia");
+        handler.subjectIdentifier(_NS + "semagia-2");
+        handler.endTopic();
+        _worksFor(handler, "lars", "http://www.example.org/#semagia");
+        handler.endTopicMap();
+        assertEquals("file,kind,type\n"
+                + "topics-person.csv,topic," + _NS + "person\n"
+                + "topics.csv,topic,\n"
+                + "associations-works-for.csv,association," + _NS + "works-for\n",
+                _read("index.csv"));
+        assertEquals("si,name," + _NS + "homepage\n"
+                + _NS + "lars,Lars,http://www.semagia.com/\n"
+                + _NS + "lutz,\"Lutz, \"\"Luddi\"\"\",\n",
+                _read("topics-person.csv"));
+        assertEquals("sl,si,si#2\n"
+                + "http://www.semagia.com/," + _NS + "semagia," + _NS + "semagia-2\n",
+                _read("topics.csv"));
+        assertEquals(_NS + "employee," + _NS + "employer\n"
+                + _NS + "lars,ii:http://www.example.org/#semagia\n",
+                _read("associations-works-for.csv"));
+        assertEquals(4, _dir.listFiles().length);
+    }
+
+    public void testTemporaryFiles() throws Exception {
+        final CSVHandler expected = new CSVHandler(_dir);
+        final CSVHandler handler = new CSVHandler(_dir);
+        handler.setMaxBufferSize(64);
+        handler.setSeparator('\t');
+        expected.setSeparator('\t');
+        String result = null;
+        for (CSVHandler h: new CSVHandler[] {expected, handler}) {
+            h.startTopicMap();
+            for (int i=0; i<500; i++) {
+                _person(h, "p" + i, "Name\t" + i + " \u00e4\ud83d\ude00", i % 3 == 0 ? "http://www.example.org/" + i : null);
+                _worksFor(h, "p" + i, "http://www.example.org/#org" + (i % 5));
+            }
+            h.endTopicMap();
+            final String content = _read("topics-person.tsv") + _read("associations-works-for.tsv");
+            if (result == null) {
+                result = content;
+            }
+            else {
+                assertEquals(result, content);
+            }
+        }
+        assertTrue(result.contains("\"Name\t499 \u00e4\ud83d\ude00\"\t\n"));
+        assertEquals(3, _dir.listFiles().length);
+    }
+
+    public void testScope() throws Exception {
+        final CSVHandler handler = new CSVHandler(_dir);
+        handler.startTopicMap();
+        handler.startTopic(_sid("lars"));
+        handler.startName();
+        handler.startType();
+        handler.topicRef(_sid("nickname"));
+        handler.endType();
+        handler.startScope();
+        handler.startTheme();
+        handler.topicRef(_sid("en"));
+        handler.endTheme();
+        handler.startTheme();
+        handler.topicRef(_sid("de"));
+        handler.endTheme();
+        handler.endScope();
+        handler.value("Lars");
+        handler.endName();
+        handler.endTopic();
+        handler.endTopicMap();
+        assertEquals("si,name:" + _NS + "nickname@" + _NS + "de " + _NS + "en\n"
+                + _NS + "lars,Lars\n",
+                _read("topics.csv"));
+    }
+
+    public void testNoDuplicateIdentities() throws Exception {
+        final CSVHandler handler = new CSVHandler(_dir);
+        handler.startTopicMap();
+        handler.startTopic(_sid("lars"));
+        handler.subjectIdentifier(_NS + "lars");
+        handler.itemIdentifier("http://www.example.org/#lars");
+        handler.subjectIdentifier(_NS + "lars");
+        handler.endTopic();
+        handler.startTopic(Ref.createItemIdentifier("http://www.example.org/#lutz"));
+        handler.itemIdentifier("http://www.example.org/#lutz");
+        handler.endTopic();
+        handler.startTopic(Ref.createSubjectLocator("http://www.semagia.com/"));
+        handler.subjectLocator("http://www.semagia.com/");
+        handler.endTopic();
+        handler.endTopicMap();
+        assertEquals("si,ii,sl\n"
+                + _NS + "lars,http://www.example.org/#lars,\n"
+                + ",http://www.example.org/#lutz,\n"
+                + ",,http://www.semagia.com/\n",
+                _read("topics.csv"));
+    }
+
+    public void testIllegalSeparator() {
+        final CSVHandler handler = new CSVHandler(_dir);
+        try {
+            handler.setSeparator('"');
+            fail("Expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            // noop.
+        }
+    }
+
+}
@@ -23,6 +23,8 @@ import org.xml.sax.helpers.DefaultHandler;
 import com.semagia.mio.IRIContext;
 import com.semagia.mio.IMapHandler;
 import com.semagia.mio.MIOException;
+import com.semagia.mio.helpers.CharSequenceMapHandlerAdapter;
+import com.semagia.mio.helpers.FilteringMapHandler;
 import com.semagia.mio.helpers.Locator;
 import com.semagia.mio.helpers.SimpleMapHandler;
 
@@ -40,6 +42,17 @@ abstract class AbstractXTMContentHandler extends DefaultHandler implements IXTMC
      */
     protected SimpleMapHandler _handler;
 
+    /**
+     * The filter which discards excluded constructs or {@code null}.
+     */
+    private FilteringMapHandler _filter;
+
+    /**
+     * Indicates if the handler receives character sequences and readers
+     * without converting them into strings.
+     */
+    protected boolean _acceptsCharSequences;
+
     /**
      * Buffer for characters (name value, occurrence value etc.)
      */
@@ -67,6 +80,18 @@ abstract class AbstractXTMContentHandler extends DefaultHandler implements IXTMC
     @Override
     public void setMapHandler(IMapHandler handler) {
         _handler = SimpleMapHandler.create(handler);
+        _filter = handler instanceof FilteringMapHandler ? (FilteringMapHandler) handler : null;
+        _acceptsCharSequences = CharSequenceMapHandlerAdapter.isCharSequenceMapHandler(handler);
+    }
+
+    /**
+     * Returns if the events of the current construct are discarded, so
+     * values need not to be built.
+     *
+     * @return {@code true} if the current content is discarded, otherwise {@code false}.
+     */
+    protected final boolean _isSkipping() {
+        return _filter != null && _filter.isSkipping();
     }
 
     /* (non-Javadoc)
@@ -15,9 +15,15 @@
  */
 package com.semagia.mio.xtm;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
+import java.net.URL;
+import java.util.concurrent.Callable;
 
+import org.xml.sax.ContentHandler;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -25,6 +31,7 @@ import org.xml.sax.SAXParseException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
+import com.semagia.mio.IMapHandler;
 import com.semagia.mio.IRIContext;
 import com.semagia.mio.ISyntaxVersionAware;
 import com.semagia.mio.MIOException;
@@ -32,11 +39,25 @@ import com.semagia.mio.MIOParseException;
 import com.semagia.mio.Property;
 import com.semagia.mio.Source;
 import com.semagia.mio.base.AbstractDeserializer;
+import com.semagia.mio.helpers.RecordingMapHandler;
+import com.semagia.mio.helpers.ReplayQueue;
 import com.semagia.mio.utils.xml.RelaxNGValidatingContentHandler;
 import com.semagia.mio.utils.xml.XMLUtils;
 
 /**
  * Abstract superclass for all XTM-based deserializers.
+ * <p>
+ * If the {@link Property#PARALLELISM} property is set to a value greater
+ * than {@code 1} and the deserializer provides a content handler for
+ * fragments (see {@link #createFragmentContentHandler()}), the children of
+ * the root element are parsed concurrently. Each fragment is parsed as a 
+ * document which consists of the prolog and the start tag of the root 
+ * element (which provides the namespace declarations and 
+ * <tt>xml:base</tt>) and a sequence of <tt>topic</tt> and 
+ * <tt>association</tt> elements. All other elements (i.e. 
+ * <tt>mergeMap</tt>) are parsed in document order by the calling thread.
+ * The events are reported in document order.
+ * </p>
  * 
  * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
  * @version $Rev: 583 $ - $Date: 2010-10-18 23:31:34 +0200 (Mo, 18 Okt 2010) $
@@ -44,13 +65,40 @@ import com.semagia.mio.utils.xml.XMLUtils;
 abstract class AbstractXTMDeserializer<T extends IXTMContentHandler> extends
         AbstractDeserializer implements ISyntaxVersionAware {
 
+    /**
+     * Default min. number of bytes of a fragment.
+     */
+    private static final int _DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
     protected T _contentHandler;
+    private int _chunkSize;
 
     protected AbstractXTMDeserializer(T contentHandler) {
         _contentHandler = contentHandler;
+        _chunkSize = _DEFAULT_CHUNK_SIZE;
         setProperty(Property.VALIDATE, Boolean.TRUE);
     }
 
+    void setChunkSize(final int chunkSize) {
+        _chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns a new content handler which parses a fragment of the 
+     * document.
+     * <p>
+     * The content handler must be configured like the main content handler
+     * (document IRI, IRI context, properties). This method returns 
+     * {@code null} by default which indicates that the document cannot be
+     * parsed in fragments.
+     * </p>
+     *
+     * @return A content handler or {@code null}.
+     */
+    protected IXTMContentHandler createFragmentContentHandler() {
+        return null;
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.mio.base.AbstractDeserializer#_parse(org.xml.sax.InputSource, java.lang.String)
      */
@@ -58,28 +106,44 @@ abstract class AbstractXTMDeserializer<T extends IXTMContentHandler> extends
     protected void doParse(final Source src) throws IOException,
             MIOException {
         try {
-            XMLReader reader = _createXMLReader();
-            _contentHandler.setDocumentIRI(src.getBaseIRI());
-            _contentHandler.setMapHandler(super._handler);
-            _contentHandler.setSubordianate(_isSubordinate);
             if (src.getBaseIRI() != null) {
                 getIRIContext().addIRI(src.getBaseIRI());
             }
             if (src.getIRI() != null) {
                 getIRIContext().addIRI(src.getIRI());
             }
-            if (!Boolean.FALSE.equals(getProperty(Property.VALIDATE)) 
-                    // The XTMContentHandler handles the validation itself
-                    && !(_contentHandler instanceof XTMContentHandler)) {
-                reader.setContentHandler(RelaxNGValidatingContentHandler.create(_contentHandler, _contentHandler.getRelaxURL()));
+            final InputSource input = XMLUtils.asInputSource(src);
+            final Object parallelism = getProperty(Property.PARALLELISM);
+            if (parallelism instanceof Integer && ((Integer) parallelism).intValue() > 1
+                    && src.getCharacterStream() == null
+                    && createFragmentContentHandler() != null) {
+                final InputStream in = src.getByteStream() != null ? src.getByteStream() 
+                                                                   : new URL(src.getIRI()).openStream();
+                try {
+                    final TopLevelElementScanner scanner = new TopLevelElementScanner(in);
+                    if (scanner.readProlog()) {
+                        _parseFragments(src, scanner, ((Integer) parallelism).intValue());
+                    }
+                    else {
+                        input.setByteStream(scanner.getInputStream());
+                        _parse(src, input);
+                    }
+                }
+                finally {
+                    if (src.getByteStream() == null) {
+                        in.close();
+                    }
+                }
             }
             else {
-                reader.setContentHandler(_contentHandler);
+                _parse(src, input);
             }
-            reader.parse(XMLUtils.asInputSource(src));
             afterParse();
         }
         catch (SAXException ex) {
+            if (ex instanceof MIOParseException) {
+                throw (MIOParseException) ex;
+            }
             if (ex.getException() instanceof IOException) {
                 throw (IOException) ex.getException();
             }
@@ -93,6 +157,159 @@ abstract class AbstractXTMDeserializer<T extends IXTMContentHandler> extends
         }
     }
 
+    /**
+     * Parses the whole document.
+     *
+     * @param src The source.
+     * @param input The input to read the document from.
+     * @throws IOException In case of an I/O error.
+     * @throws SAXException In case of an error.
+     */
+    private void _parse(final Source src, final InputSource input) throws IOException, SAXException {
+        final XMLReader reader = _createXMLReader();
+        _contentHandler.setDocumentIRI(src.getBaseIRI());
+        _contentHandler.setMapHandler(super._handler);
+        _contentHandler.setSubordianate(_isSubordinate);
+        if (!Boolean.FALSE.equals(getProperty(Property.VALIDATE)) 
+                // The XTMContentHandler handles the validation itself
+                && !(_contentHandler instanceof XTMContentHandler)) {
+            reader.setContentHandler(RelaxNGValidatingContentHandler.create(_contentHandler, _contentHandler.getRelaxURL()));
+        }
+        else {
+            reader.setContentHandler(_contentHandler);
+        }
+        reader.parse(input);
+    }
+
+    /**
+     * Parses the children of the root element in fragments.
+     * <p>
+     * The first fragment contains the start tag of the root element with all
+     * attributes (i.e. the reifier) and the children up to the first topic or
+     * association. The other fragments use the start tag without the 
+     * reifier.
+     * </p>
+     *
+     * @param src The source.
+     * @param scanner The scanner which has read the prolog already.
+     * @param parallelism The number of worker threads.
+     * @throws IOException In case of an I/O error.
+     * @throws SAXException In case of an error.
+     */
+    private void _parseFragments(final Source src, final TopLevelElementScanner scanner, 
+            final int parallelism) throws IOException, SAXException {
+        _contentHandler.setDocumentIRI(src.getBaseIRI());
+        final byte[] prolog = scanner.getProlog();
+        final byte[] startTag = scanner.getRootStartTag("reifier");
+        final byte[] endTag = ("</" + scanner.getRootName() + ">").getBytes("iso-8859-1");
+        final ReplayQueue queue = new ReplayQueue(super._handler, parallelism);
+        ByteArrayOutputStream sequential = _startFragment(prolog, scanner.getRootStartTag(null));
+        ByteArrayOutputStream fragment = null;
+        boolean header = true;
+        try {
+            String name;
+            while ((name = scanner.nextElement()) != null) {
+                if (XTM10ContentHandler.TOPIC.equals(name) || XTM10ContentHandler.ASSOCIATION.equals(name)) {
+                    if (sequential != null) {
+                        queue.flush();
+                        _parseFragment(src, _endFragment(sequential, endTag), super._handler, _isSubordinate || !header);
+                        sequential = null;
+                        header = false;
+                    }
+                    if (fragment == null) {
+                        fragment = _startFragment(prolog, startTag);
+                    }
+                    scanner.readElement(fragment);
+                    if (fragment.size() >= _chunkSize) {
+                        queue.submit(_createTask(src, _endFragment(fragment, endTag)));
+                        fragment = null;
+                    }
+                }
+                else {
+                    if (fragment != null) {
+                        queue.submit(_createTask(src, _endFragment(fragment, endTag)));
+                        fragment = null;
+                    }
+                    if (sequential == null) {
+                        sequential = _startFragment(prolog, startTag);
+                    }
+                    scanner.readElement(sequential);
+                }
+            }
+            if (fragment != null) {
+                queue.submit(_createTask(src, _endFragment(fragment, endTag)));
+            }
+            queue.flush();
+            if (sequential != null) {
+                _parseFragment(src, _endFragment(sequential, endTag), super._handler, _isSubordinate || !header);
+            }
+        }
+        finally {
+            queue.close();
+        }
+    }
+
+    private static ByteArrayOutputStream _startFragment(final byte[] prolog, final byte[] startTag) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(prolog.length + startTag.length + 8192);
+        out.write(prolog);
+        out.write(startTag);
+        return out;
+    }
+
+    private static byte[] _endFragment(final ByteArrayOutputStream out, final byte[] endTag) throws IOException {
+        out.write(endTag);
+        return out.toByteArray();
+    }
+
+    private Callable<RecordingMapHandler> _createTask(final Source src, final byte[] fragment) {
+        return new Callable<RecordingMapHandler>() {
+            @Override
+            public RecordingMapHandler call() throws Exception {
+                final RecordingMapHandler handler = new RecordingMapHandler();
+                try {
+                    _parseFragment(src, fragment, handler, true);
+                }
+                catch (SAXParseException ex) {
+                    // Keep the location, the queue reports MIOExceptions unchanged
+                    throw new MIOParseException(ex.getMessage(), ex, ex.getLineNumber(), ex.getColumnNumber());
+                }
+                catch (SAXException ex) {
+                    if (ex.getException() instanceof IOException) {
+                        throw (IOException) ex.getException();
+                    }
+                    throw ex;
+                }
+                return handler;
+            }
+        };
+    }
+
+    /**
+     * Parses a fragment.
+     *
+     * @param src The source.
+     * @param fragment The fragment.
+     * @param handler The handler which receives the events.
+     * @param subordinate Indicates if the topic map reifier should be 
+     *          reported as reifier.
+     * @throws IOException In case of an I/O error.
+     * @throws SAXException In case of an error.
+     */
+    private void _parseFragment(final Source src, final byte[] fragment, 
+            final IMapHandler handler, final boolean subordinate) throws IOException, SAXException {
+        final IXTMContentHandler contentHandler = createFragmentContentHandler();
+        contentHandler.setMapHandler(handler);
+        contentHandler.setSubordianate(subordinate);
+        final XMLReader reader = _createXMLReader();
+        reader.setContentHandler(!Boolean.FALSE.equals(getProperty(Property.VALIDATE)) 
+                ? RelaxNGValidatingContentHandler.create(contentHandler, contentHandler.getRelaxURL())
+                : (ContentHandler) contentHandler);
+        final InputSource input = new InputSource(new ByteArrayInputStream(fragment));
+        input.setEncoding(src.getEncoding());
+        input.setSystemId(src.getIRI());
+        reader.parse(input);
+    }
+
     /**
      * Called after successfully parsing, does nothing by default.
      */
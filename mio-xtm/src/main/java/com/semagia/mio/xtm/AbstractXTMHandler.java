@@ -0,0 +1,1089 @@
+/*
+ * Copyright 2008 - 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.xtm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.helpers.AbstractHamsterMapHandler;
+import com.semagia.mio.helpers.IdentityIndex;
+import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.utils.xml.XMLWriter;
+import com.semagia.mio.voc.TMDM;
+import com.semagia.mio.voc.XSD;
+
+/**
+ * Common superclass of the streaming XTM writers.
+ * <p>
+ * This class keeps track of the topic which is currently written and merges
+ * subsequent events of the same topic into one <tt>topic</tt> element. The
+ * serialization of names, occurrences and associations follows XTM 2.x; the
+ * subclasses decide how topics are referenced and how reifiers are written.
+ * </p>
+ * <p>
+ * XTM versions which reference topics by item identifiers only use ids which
+ * are derived from the subject identifier / subject locator of the topic
+ * (see {@link #_referenceId(IRef)}). If a topic is referenced by an id
+ * which was not written yet, a topic element which declares the id and the
+ * identity is written after the current topic or association. The
+ * declared ids are kept in an {@link IdentityIndex} which spills them to
+ * disk, so an id is never declared twice, even in huge topic maps.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+abstract class AbstractXTMHandler extends AbstractHamsterMapHandler<IRef> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractXTMHandler.class);
+
+    static final IRef _DEFAULT_NAME = Ref.createSubjectIdentifier(TMDM.TOPIC_NAME);
+
+    static final int
+        _INITIAL = 1,
+        _CHARACTERISTIC = 2,
+        _INSTANCE_OF = 3,
+        _TM_IID = 4,
+        _TOPIC_MAP = 5,
+        _IDENTITY = 6;
+
+    private static final char[] _HEX = "0123456789abcdef".toCharArray();
+
+    protected final XMLWriter _out;
+    protected final AttributesImpl _attrs;
+    protected int _state;
+    private Topic _lastTopic;
+    private IRef _topicMapReifier;
+    private IdentityIndex _declaredIds;
+    private final List<PendingTopic> _pendingTopics;
+    private int _idCounter;
+
+    private String _title;
+    private String _author;
+    private String _license;
+    private String _comment;
+
+    protected AbstractXTMHandler(final OutputStream out) throws IOException {
+        _out = new XMLWriter(out, "UTF-8");
+        _attrs = new AttributesImpl();
+        _pendingTopics = new ArrayList<PendingTopic>();
+    }
+
+    /**
+     * Indicates if the XML should be prettified.
+     *
+     * @param prettify {@code true} to prettify the output, otherwise {@code false}.
+     */
+    public void setPrettify(final boolean prettify) {
+        _out.setPrettify(prettify);
+    }
+
+    /**
+     * Returns if the XML is prettified.
+     *
+     * @return {@code true} if the XML is prettified, otherwise {@code false}.
+     */
+    public boolean getPrettify() {
+        return _out.getPrettify();
+    }
+
+    /**
+     * Sets the title of the topic map which appears in the header comment of
+     * the file.
+     *
+     * @param title The title of the topic map.
+     */
+    public void setTitle(final String title) {
+        _title = title;
+    }
+
+    /**
+     * Returns the title of the topic map.
+     *
+     * @return The title or <tt>null</tt> if no title was set.
+     */
+    public String getTitle() {
+        return _title;
+    }
+
+    /**
+     * Sets the author which appears in the header comment of the file.
+     *
+     * @param author The author.
+     */
+    public void setAuthor(final String author) {
+        _author = author;
+    }
+
+    /**
+     * Returns the author.
+     *
+     * @return The author or <tt>null</tt> if no author was set.
+     */
+    public String getAuthor() {
+        return _author;
+    }
+
+    /**
+     * Sets the license which should appear in the header comment of the file.
+     * <p>
+     * The license of the topic map. This could be a name or an IRI or both, i.e.
+     * "Creative Commons-License <http://creativecommons.org/licenses/by-nc-sa/3.0/>".
+     * </p>
+     *
+     * @param license The license.
+     */
+    public void setLicense(final String license) {
+        _license = license;
+    }
+
+    /**
+     * Returns the license.
+     *
+     * @return The license or <tt>null</tt> if no license was set.
+     */
+    public String getLicense() {
+        return _license;
+    }
+
+    /**
+     * The an additional comment which appears in the header comment of the file.
+     * <p>
+     * The comment could describe the topic map, or provide an additional
+     * copyright notice, or SVN/CVS keywords etc.
+     * </p>
+     *
+     * @param comment The comment.
+     */
+    public void setComment(final String comment) {
+        _comment = comment;
+    }
+
+    /**
+     * Returns the comment.
+     *
+     * @return The comment or <tt>null</tt> if no comment was set.
+     */
+    public String getComment() {
+        return _comment;
+    }
+
+    /**
+     * Writes the start tag of the <tt>topicMap</tt> element.
+     * <p>
+     * The start tag is written as late as possible to be able to take
+     * the reifier of the topic map into account.
+     * </p>
+     *
+     * @param reifier The reifier of the topic map or {@code null}.
+     * @throws IOException In case of an error.
+     */
+    protected abstract void _startTopicMapElement(IRef reifier) throws IOException;
+
+    /**
+     * Writes the start tag of a topic map construct and its reifier.
+     *
+     * @param name The element name.
+     * @param reifier The reifier or {@code null}.
+     * @throws IOException In case of an error.
+     */
+    protected abstract void _startConstruct(String name, IRef reifier) throws IOException;
+
+    /**
+     * Writes a reference to a topic.
+     *
+     * @param ref The topic reference.
+     * @throws IOException In case of an error.
+     */
+    protected abstract void _writeTopicRef(IRef ref) throws IOException;
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#startTopicMap()
+     */
+    @Override
+    public void startTopicMap() throws MIOException {
+        super.startTopicMap();
+        _declaredIds = new IdentityIndex();
+        try {
+            _out.startDocument();
+            _writeHeader();
+            _state = _INITIAL;
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#endTopicMap()
+     */
+    @Override
+    public void endTopicMap() throws MIOException {
+        try {
+            super.endTopicMap();
+            _ensureTopicMapElement();
+            _finishPendingTopic();
+            _flushPendingTopics();
+            _out.endElement("topicMap");
+            _out.endDocument();
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+        finally {
+            _declaredIds.close();
+            _declaredIds = null;
+        }
+    }
+
+    private void _writeHeader() throws IOException {
+        if (_title != null || _author != null || _license != null || _comment != null) {
+            final StringBuffer buff = new StringBuffer();
+            buff.append('\n');
+            if (_title != null) {
+                buff.append("Title:   ")
+                    .append(_title)
+                    .append('\n');
+            }
+            if (_author != null) {
+                buff.append("Author:  ")
+                    .append(_author)
+                    .append('\n');
+            }
+            if (_license != null) {
+                buff.append("License: ")
+                    .append(_license)
+                    .append('\n');
+            }
+            if (_comment != null) {
+                buff.append('\n')
+                    .append(_comment)
+                    .append('\n');
+            }
+            buff.append('\n');
+            _out.comment(buff.toString());
+        }
+    }
+
+    private void _ensureTopicMapElement() throws IOException {
+        if (_state == _INITIAL) {
+            _startTopicMapElement(_topicMapReifier);
+            _state = _TM_IID;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.AbstractHamsterMapHandler#startTopic(com.semagia.mio.IRef)
+     */
+    @Override
+    public void startTopic(IRef identity) throws MIOException {
+        super.startTopic(identity);
+        try {
+            _startTopic(identity, _IDENTITY);
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createAssociation(java.lang.Object, java.util.Collection, java.lang.Object, java.util.Collection, java.util.Collection)
+     */
+    @Override
+    protected void createAssociation(final IRef type,
+            final Collection<IRef> scope,
+            final IRef reifier, final Collection<String> iids,
+            final Collection<IRole<IRef>> roles) throws MIOException {
+        try {
+            _ensureTopicMapElement();
+            _finishPendingTopic();
+            _state = _TOPIC_MAP;
+            _writeAssociation(type, scope, reifier, iids, roles);
+            _flushPendingTopics();
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createName(java.lang.Object, java.lang.Object, java.lang.String, java.util.Collection, java.lang.Object, java.util.Collection, java.util.Collection)
+     */
+    @Override
+    protected void createName(final IRef parent, final IRef type,
+            final String value, final Collection<IRef> scope,
+            final IRef reifier, final Collection<String> iids,
+            final Collection<IVariant<IRef>> variants) throws MIOException {
+        try {
+            _startTopic(parent, _CHARACTERISTIC);
+            _state =  _CHARACTERISTIC;
+            _writeName(type, value, scope, reifier, iids, variants);
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createOccurrence(java.lang.Object, java.lang.Object, java.lang.String, java.lang.String, java.util.Collection, java.lang.Object, java.util.Collection)
+     */
+    @Override
+    protected void createOccurrence(final IRef parent, final IRef type, final String value,
+            final String datatype, final Collection<IRef> scope, final IRef reifier,
+            final Collection<String> iids) throws MIOException {
+        try {
+            _startTopic(parent, _CHARACTERISTIC);
+            _state = _CHARACTERISTIC;
+            _writeOccurrence(type, value, datatype, scope, reifier, iids);
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /**
+     * Writes an association.
+     *
+     * @param type The association type.
+     * @param scope The scope.
+     * @param reifier The reifier or {@code null}.
+     * @param iids The item identifiers.
+     * @param roles The roles.
+     * @throws IOException In case of an error.
+     */
+    protected void _writeAssociation(final IRef type,
+            final Collection<IRef> scope,
+            final IRef reifier, final Collection<String> iids,
+            final Collection<IRole<IRef>> roles) throws IOException {
+        _startConstruct("association", reifier);
+        _writeItemIdentifiers(iids);
+        _writeType(type);
+        _writeScope(scope);
+        for (IRole<IRef> role: roles) {
+            _startConstruct("role", role.getReifier());
+            _writeItemIdentifiers(role.getItemIdentifiers());
+            _writeType(role.getType());
+            _writeTopicRef(role.getPlayer());
+            _out.endElement("role");
+        }
+        _out.endElement("association");
+    }
+
+    /**
+     * Writes a name.
+     *
+     * @param type The name type.
+     * @param value The value.
+     * @param scope The scope.
+     * @param reifier The reifier or {@code null}.
+     * @param iids The item identifiers.
+     * @param variants The variants.
+     * @throws IOException In case of an error.
+     */
+    protected void _writeName(final IRef type, final String value,
+            final Collection<IRef> scope, final IRef reifier,
+            final Collection<String> iids,
+            final Collection<IVariant<IRef>> variants) throws IOException {
+        _startConstruct("name", reifier);
+        _writeItemIdentifiers(iids);
+        if (type != null && !_DEFAULT_NAME.equals(type)) {
+            _writeType(type);
+        }
+        _writeScope(scope);
+        _out.dataElement("value", value);
+        for (IVariant<IRef> var: variants) {
+            _startConstruct("variant", var.getReifier());
+            _writeItemIdentifiers(var.getItemIdentifiers());
+            _writeScope(var.getScope());
+            _writeValueDatatype(var.getValue(), var.getDatatype());
+            _out.endElement("variant");
+        }
+        _out.endElement("name");
+    }
+
+    /**
+     * Writes an occurrence.
+     *
+     * @param type The occurrence type.
+     * @param value The value.
+     * @param datatype The datatype.
+     * @param scope The scope.
+     * @param reifier The reifier or {@code null}.
+     * @param iids The item identifiers.
+     * @throws IOException In case of an error.
+     */
+    protected void _writeOccurrence(final IRef type, final String value,
+            final String datatype, final Collection<IRef> scope,
+            final IRef reifier, final Collection<String> iids) throws IOException {
+        _startConstruct("occurrence", reifier);
+        _writeItemIdentifiers(iids);
+        _writeType(type);
+        _writeScope(scope);
+        _writeValueDatatype(value, datatype);
+        _out.endElement("occurrence");
+    }
+
+    /**
+     * Writes the <tt>resourceRef</tt> or <tt>resourceData</tt> element.
+     *
+     * @param value The value.
+     * @param datatype The datatype.
+     * @throws IOException In case of an error.
+     */
+    protected void _writeValueDatatype(final String value, final String datatype) throws IOException {
+        if (XSD.ANY_URI.equals(datatype)) {
+            _out.emptyElement("resourceRef", _href(value));
+        }
+        else if (XSD.STRING.equals(datatype)) {
+            _out.dataElement("resourceData", value);
+        }
+        else {
+            _attrs.clear();
+            _attrs.addAttribute("", "datatype", "", "CDATA", datatype);
+            _out.dataElement("resourceData", _attrs, value);
+        }
+    }
+
+    /**
+     * Writes the <tt>type</tt> element.
+     *
+     * @param type The type.
+     * @throws IOException In case of an error.
+     */
+    protected void _writeType(final IRef type) throws IOException {
+        _out.startElement("type");
+        _writeTopicRef(type);
+        _out.endElement("type");
+    }
+
+    /**
+     * Writes the <tt>scope</tt> element iff the scope is not empty.
+     *
+     * @param scope The scope or {@code null}.
+     * @throws IOException In case of an error.
+     */
+    protected void _writeScope(final Collection<IRef> scope) throws IOException {
+        if (scope != null && !scope.isEmpty()) {
+            _out.startElement("scope");
+            for (IRef theme: scope) {
+                _writeTopicRef(theme);
+            }
+            _out.endElement("scope");
+        }
+    }
+
+    /**
+     * Writes the item identifiers.
+     *
+     * @param iids The item identifiers.
+     * @throws IOException In case of an error.
+     */
+    protected void _writeItemIdentifiers(final Collection<String> iids) throws IOException {
+        for (String iid: iids) {
+            _writeItemIdentifier(iid);
+        }
+    }
+
+    /**
+     * Writes an <tt>itemIdentity</tt> element.
+     *
+     * @param iid The item identifier.
+     * @throws IOException In case of an error.
+     */
+    protected void _writeItemIdentifier(final String iid) throws IOException {
+        _out.emptyElement("itemIdentity", _href(iid));
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createTopicByItemIdentifier(java.lang.String)
+     */
+    @Override
+    protected IRef createTopicByItemIdentifier(final String iid) throws MIOException {
+        return Ref.createItemIdentifier(iid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createTopicBySubjectIdentifier(java.lang.String)
+     */
+    @Override
+    protected IRef createTopicBySubjectIdentifier(final String sid)
+            throws MIOException {
+        return Ref.createSubjectIdentifier(sid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#createTopicBySubjectLocator(java.lang.String)
+     */
+    @Override
+    protected IRef createTopicBySubjectLocator(final String slo) throws MIOException {
+        return Ref.createSubjectLocator(slo);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleItemIdentifier(java.lang.Object, java.lang.String)
+     */
+    @Override
+    protected void handleItemIdentifier(final IRef topic, final String iid)
+            throws MIOException {
+        _handleIdentity(topic, Ref.createItemIdentifier(iid));
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleSubjectIdentifier(java.lang.Object, java.lang.String)
+     */
+    @Override
+    protected void handleSubjectIdentifier(final IRef topic, final String sid)
+            throws MIOException {
+        _handleIdentity(topic, Ref.createSubjectIdentifier(sid));
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleSubjectLocator(java.lang.Object, java.lang.String)
+     */
+    @Override
+    protected void handleSubjectLocator(final IRef topic, final String slo)
+            throws MIOException {
+        _handleIdentity(topic, Ref.createSubjectLocator(slo));
+    }
+
+    /**
+     * Closes the current topic element (if any) and writes the pending
+     * topics.
+     *
+     * @throws IOException In case of an error.
+     */
+    private void _finishPendingTopic() throws IOException {
+        if (_lastTopic != null) {
+            _finishPendingInstanceOf();
+            _endTopicElement();
+            _lastTopic = null;
+            _state = _TOPIC_MAP;
+            _flushPendingTopics();
+        }
+    }
+
+    private void _finishPendingInstanceOf() throws IOException {
+        if (_state == _INSTANCE_OF) {
+            _endInstanceOf();
+        }
+    }
+
+    private void _handleIdentity(final IRef topic, final IRef identity) throws MIOException {
+        try {
+            boolean written = false;
+            if (_lastTopic != null && _state == _TOPIC_MAP) {
+                if (_lastTopic.hasIdentity(topic)) {
+                    if (_lastTopic.hasIdentity(identity)) {
+                        return;
+                    }
+                    _lastTopic.addIdentity(identity);
+                    _writeIdentity(identity);
+                    written = true;
+                }
+                else if (_lastTopic.hasIdentity(identity)) {
+                    _lastTopic.addIdentity(topic);
+                    _writeIdentity(topic);
+                    written = true;
+                }
+                else if (_lastTopic.shouldMergeWith(topic)
+                            || _lastTopic.shouldMergeWith(identity)) {
+                    _lastTopic.addIdentity(topic);
+                    _lastTopic.addIdentity(identity);
+                    _writeIdentity(topic);
+                    _writeIdentity(identity);
+                    written = true;
+                }
+            }
+            if (!written) {
+                _startTopic(topic, _IDENTITY);
+                _writeIdentity(identity);
+                _lastTopic.addIdentity(identity);
+            }
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /**
+     *
+     *
+     * @param identity The "main" identity of the topic.
+     * @param nextState The next state.
+     * @return If a new topic was started.
+     * @throws IOException In case of an error.
+     */
+    private boolean _startTopic(final IRef identity, final int nextState) throws IOException {
+        final boolean forceNewTopic = !_nextStateIsCompatible(nextState);
+        if (_lastTopic != null
+                && _lastTopic.hasIdentity(identity)
+                && !forceNewTopic) {
+            if (_state != nextState) {
+                _finishPendingInstanceOf();
+            }
+            return false;
+        }
+        final boolean shouldMerge = _lastTopic != null
+                                        && _lastTopic.shouldMergeWith(identity)
+                                        // if we're in state characteristic or
+                                        // in state instanceOf, we cannot write
+                                        // an additional identity.
+                                        && _state == _TOPIC_MAP;
+        final boolean newTopic = _lastTopic == null || forceNewTopic
+                                    || (_lastTopic != null && !(shouldMerge || _lastTopic.hasIdentity(identity)));
+        if (newTopic) {
+            _ensureTopicMapElement();
+            _finishPendingTopic();
+            _lastTopic = new Topic(identity);
+            _startTopicElement(identity);
+            _writeIdentity(identity);
+            _state = _TOPIC_MAP;
+            return true;
+        }
+        else if (shouldMerge) {
+            _lastTopic.addIdentity(identity);
+            _writeIdentity(identity);
+            _state = _TOPIC_MAP;
+            return false;
+        }
+        return false;
+    }
+
+    private boolean _nextStateIsCompatible(final int nextState) {
+        if (_state == _CHARACTERISTIC) {
+            return nextState == _CHARACTERISTIC;
+        }
+        else if (_state == _TOPIC_MAP) {
+            return nextState != _IDENTITY;
+        }
+        else if (_state == _INSTANCE_OF) {
+            return nextState == _CHARACTERISTIC || nextState == _INSTANCE_OF;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the start tag of a topic element. The identity is written by
+     * {@link #_writeIdentity(IRef)}.
+     *
+     * @param identity The "main" identity of the topic.
+     * @throws IOException In case of an error.
+     */
+    protected void _startTopicElement(final IRef identity) throws IOException {
+        _out.startElement("topic");
+    }
+
+    /**
+     * Writes the end tag of a topic element.
+     *
+     * @throws IOException In case of an error.
+     */
+    protected void _endTopicElement() throws IOException {
+        _out.endElement("topic");
+    }
+
+    /**
+     * Writes an identity of the current topic.
+     *
+     * @param identity The identity.
+     * @throws IOException In case of an error.
+     */
+    protected void _writeIdentity(final IRef identity) throws IOException {
+        _writeIdentityElement(identity);
+    }
+
+    /**
+     * Writes the <tt>itemIdentity</tt>, <tt>subjectIdentifier</tt>, or
+     * <tt>subjectLocator</tt> element.
+     *
+     * @param identity The identity.
+     * @throws IOException In case of an error.
+     */
+    protected final void _writeIdentityElement(final IRef identity) throws IOException {
+        if (identity.getType() == IRef.ITEM_IDENTIFIER) {
+            _writeItemIdentifier(identity.getIRI());
+        }
+        else {
+            final String el = identity.getType() == IRef.SUBJECT_IDENTIFIER
+                                                        ? "subjectIdentifier"
+                                                        : "subjectLocator";
+            _out.emptyElement(el, _href(identity));
+        }
+    }
+
+    /**
+     * Starts the <tt>instanceOf</tt> element.
+     *
+     * @throws IOException In case of an error.
+     */
+    protected void _startInstanceOf() throws IOException {
+        _out.startElement("instanceOf");
+    }
+
+    /**
+     * Writes a type of the current topic.
+     *
+     * @param type The type.
+     * @throws IOException In case of an error.
+     */
+    protected void _writeInstanceOf(final IRef type) throws IOException {
+        _writeTopicRef(type);
+    }
+
+    /**
+     * Ends the <tt>instanceOf</tt> element.
+     *
+     * @throws IOException In case of an error.
+     */
+    protected void _endInstanceOf() throws IOException {
+        _out.endElement("instanceOf");
+    }
+
+    /**
+     * Writes an item identifier of the topic map.
+     *
+     * @param iid The item identifier.
+     * @throws IOException In case of an error.
+     */
+    protected void _writeTopicMapItemIdentifier(final String iid) throws IOException {
+        _writeItemIdentifier(iid);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleTopicMapItemIdentifier(java.lang.String)
+     */
+    @Override
+    protected void handleTopicMapItemIdentifier(final String iid)
+            throws MIOException {
+        try {
+            if (_state != _INITIAL && _state != _TM_IID) {
+                _ignore("Ignoring topic map item identifier '" + iid + "' since it is not allowed to write it now according to the schema");
+            }
+            else {
+                _ensureTopicMapElement();
+                _writeTopicMapItemIdentifier(iid);
+            }
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleTopicMapReifier(java.lang.Object)
+     */
+    @Override
+    protected void handleTopicMapReifier(final IRef reifier) throws MIOException {
+        try {
+            if (_state != _INITIAL || _topicMapReifier != null) {
+                _ignore("Ignoring topic map reifier '" + reifier + "' since it is not allowed to write it now according to the schema");
+            }
+            else {
+                _topicMapReifier = reifier;
+            }
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.helpers.HamsterHandler#handleTypeInstance(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    protected void handleTypeInstance(final IRef instance, final IRef type) throws MIOException {
+        try {
+            if (_startTopic(instance, _INSTANCE_OF) || _state != _INSTANCE_OF) {
+                _startInstanceOf();
+                _state = _INSTANCE_OF;
+            }
+            _writeInstanceOf(type);
+        }
+        catch (IOException ex) {
+            throw new MIOException(ex);
+        }
+    }
+
+    /**
+     * Logs the message and writes it as comment.
+     *
+     * @param msg The message.
+     * @throws IOException In case of an error.
+     */
+    private void _ignore(final String msg) throws IOException {
+        LOG.warn(msg);
+        _out.comment(msg);
+    }
+
+    protected final Attributes _href(final IRef ref) {
+        return _href(ref.getIRI());
+    }
+
+    protected final Attributes _href(final String ref) {
+        _attrs.clear();
+        _attrs.addAttribute("", "href", "", "CDATA", ref);
+        return _attrs;
+    }
+
+    /**
+     * Returns a new, unique id.
+     *
+     * @return An id.
+     * @throws IOException In case of an error.
+     */
+    protected final String _generateId() throws IOException {
+        String id;
+        do {
+            id = "id" + (++_idCounter);
+        } while (!_declare(id));
+        return id;
+    }
+
+    /**
+     * Returns the id for the element of a topic with the provided
+     * "main" identity.
+     * <p>
+     * Topics with a subject identifier or subject locator get the id derived
+     * from the identity, topics with an item identifier reuse its fragment
+     * identifier (i.e. the id of the topic in the source document) unless
+     * that id was used already.
+     * </p>
+     *
+     * @param identity The identity of the topic.
+     * @return An id.
+     * @throws IOException In case of an error.
+     */
+    protected final String _createTopicId(final IRef identity) throws IOException {
+        final String id = identity.getType() == IRef.ITEM_IDENTIFIER
+                                ? _fragment(identity.getIRI())
+                                : _toId(identity);
+        return id != null && _declare(id) ? id : _generateId();
+    }
+
+    /**
+     * Returns the fragment identifier of the provided IRI if it is a valid
+     * XML id, otherwise {@code null}.
+     *
+     * @param iri The IRI.
+     * @return The fragment identifier or {@code null}.
+     */
+    private static String _fragment(final String iri) {
+        final int idx = iri.lastIndexOf('#');
+        if (idx == -1 || idx == iri.length() - 1) {
+            return null;
+        }
+        // Accept the ASCII subset of XML names only
+        final char first = iri.charAt(idx + 1);
+        if (!((first >= 'a' && first <= 'z') || (first >= 'A' && first <= 'Z') || first == '_')) {
+            return null;
+        }
+        for (int i=idx+2; i<iri.length(); i++) {
+            final char c = iri.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '_')) {
+                return null;
+            }
+        }
+        return iri.substring(idx + 1);
+    }
+
+    /**
+     * Returns the id which is used to reference the topic with the provided
+     * subject identifier or subject locator.
+     * <p>
+     * If the id is unknown, a topic element which declares the id is
+     * written after the current topic or association.
+     * </p>
+     *
+     * @param ref A subject identifier or subject locator.
+     * @return An id.
+     * @throws IOException In case of an error.
+     */
+    protected final String _referenceId(final IRef ref) throws IOException {
+        final String id = _toId(ref);
+        if (_declare(id)) {
+            _pendingTopics.add(new PendingTopic(id, ref, null));
+        }
+        return id;
+    }
+
+    /**
+     * Marks the id as used.
+     *
+     * @param id The id.
+     * @return {@code true} if the id was unknown, otherwise {@code false}.
+     * @throws IOException In case the index of the declared ids cannot be written.
+     */
+    protected final boolean _declare(final String id) throws IOException {
+        try {
+            if (_declaredIds.get(IRef.ITEM_IDENTIFIER, id) != IdentityIndex.NOT_FOUND) {
+                return false;
+            }
+            _declaredIds.put(IRef.ITEM_IDENTIFIER, id, 0);
+            return true;
+        }
+        catch (MIOException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Adds a topic which is written after the current topic or association.
+     *
+     * @param id The id of the topic element.
+     * @param identity The identity of the topic.
+     * @param additionalIdentity An additional identity or {@code null}.
+     */
+    protected final void _addPendingTopic(final String id, final IRef identity,
+            final IRef additionalIdentity) {
+        _pendingTopics.add(new PendingTopic(id, identity, additionalIdentity));
+    }
+
+    private void _flushPendingTopics() throws IOException {
+        if (_pendingTopics.isEmpty()) {
+            return;
+        }
+        for (PendingTopic topic: _pendingTopics) {
+            _writePendingTopic(topic.id, topic.identity, topic.additionalIdentity);
+        }
+        _pendingTopics.clear();
+    }
+
+    /**
+     * Writes a topic which consists of an id and identities only.
+     *
+     * @param id The id of the topic element.
+     * @param identity The identity.
+     * @param additionalIdentity An additional identity or {@code null}.
+     * @throws IOException In case of an error.
+     */
+    protected void _writePendingTopic(final String id, final IRef identity,
+            final IRef additionalIdentity) throws IOException {
+        _attrs.clear();
+        _attrs.addAttribute("", "id", "", "CDATA", id);
+        _out.startElement("topic", _attrs);
+        _writeIdentityElement(identity);
+        if (additionalIdentity != null) {
+            _writeIdentityElement(additionalIdentity);
+        }
+        _out.endElement("topic");
+    }
+
+    /**
+     * Returns an XML id which is derived from the provided reference.
+     * <p>
+     * The id starts with the kind of the reference; characters which are
+     * not allowed (or not safe) are escaped. Different references result
+     * in different ids.
+     * </p>
+     *
+     * @param ref The reference.
+     * @return An id.
+     */
+    static String _toId(final IRef ref) {
+        final String iri = ref.getIRI();
+        final StringBuilder buff = new StringBuilder(iri.length() + 16);
+        buff.append(ref.getType() == IRef.SUBJECT_IDENTIFIER ? "sid-"
+                        : ref.getType() == IRef.SUBJECT_LOCATOR ? "slo-" : "iid-");
+        for (int i=0; i<iri.length(); i++) {
+            final char c = iri.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '.' || c == '-') {
+                buff.append(c);
+            }
+            else if (c < 0x100) {
+                buff.append('_')
+                    .append(_HEX[c >> 4])
+                    .append(_HEX[c & 0xF]);
+            }
+            else {
+                // 'u' is no hex digit, so the escape sequences are unambiguous
+                buff.append('_')
+                    .append('u')
+                    .append(_HEX[c >> 12])
+                    .append(_HEX[(c >> 8) & 0xF])
+                    .append(_HEX[(c >> 4) & 0xF])
+                    .append(_HEX[c & 0xF]);
+            }
+        }
+        return buff.toString();
+    }
+
+
+    private static final class Topic {
+
+        private final List<IRef> _identities;
+
+        public Topic(final IRef identity) {
+            if (identity == null) {
+                throw new IllegalArgumentException("The main identity must not be null");
+            }
+            _identities = new ArrayList<IRef>(2);
+            addIdentity(identity);
+        }
+
+        public boolean shouldMergeWith(final IRef identity) {
+            final int identityType = identity.getType();
+            if (identityType == IRef.SUBJECT_LOCATOR) {
+                return hasIdentity(identity);
+            }
+            final String iri = identity.getIRI();
+            for (IRef ref: _identities) {
+                if (IRef.SUBJECT_LOCATOR == identityType) {
+                    continue;
+                }
+                if (ref.getIRI().equals(iri)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void addIdentity(final IRef identity) {
+            _identities.add(identity);
+        }
+
+        public boolean hasIdentity(final IRef identity) {
+            return _identities.contains(identity);
+        }
+
+    }
+
+
+    private static final class PendingTopic {
+
+        final String id;
+        final IRef identity;
+        final IRef additionalIdentity;
+
+        PendingTopic(final String id, final IRef identity, final IRef additionalIdentity) {
+            this.id = id;
+            this.identity = identity;
+            this.additionalIdentity = additionalIdentity;
+        }
+
+    }
+
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.xtm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Locale;
+
+import com.semagia.mio.MIOException;
+
+/**
+ * Scans the bytes of an XML document and splits the content of the root
+ * element into its child elements.
+ * <p>
+ * The scanner recognizes tags, comments, CDATA sections and processing
+ * instructions just good enough to find the element boundaries, it does not
+ * check the well-formedness of the document. Only documents which use an
+ * encoding where each byte less than <tt>0x80</tt> represents an ASCII
+ * character (UTF-8, US-ASCII, ISO-8859-*, windows-125*) are supported.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+final class TopLevelElementScanner {
+
+    private static final int _EOF = -1;
+
+    private final InputStream _in;
+    private final byte[] _buffer;
+    private int _pos;
+    private int _limit;
+
+    /**
+     * Number of bytes which were read before the current buffer content.
+     */
+    private long _offset;
+
+    /**
+     * Position of the current child element.
+     */
+    private long _elementOffset;
+
+    /**
+     * Start of the bytes which have not been written to {@link #_out} yet.
+     */
+    private int _mark;
+
+    /**
+     * Receives the consumed bytes or {@code null} if the bytes are discarded.
+     */
+    private OutputStream _out;
+
+    private final ByteArrayOutputStream _prolog;
+    private int _rootStart;
+    private String _rootName;
+    private String _encoding;
+    private byte[] _elementName;
+
+    /**
+     * Creates a scanner.
+     *
+     * @param in The stream to read the document from.
+     */
+    TopLevelElementScanner(final InputStream in) {
+        _in = in;
+        _buffer = new byte[8192];
+        _prolog = new ByteArrayOutputStream(512);
+    }
+
+    /**
+     * Reads the XML declaration, the document type declaration and the start
+     * tag of the root element.
+     *
+     * @return {@code true} if the document uses a supported encoding and
+     *          the root element is not empty, otherwise {@code false}.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException If the document has no root element.
+     */
+    boolean readProlog() throws IOException, MIOException {
+        _out = _prolog;
+        final int first = _peek();
+        if (first == 0x00 || first == 0xFE || first == 0xFF && _peekSecond() == 0xFE
+                || first != 0xEF && _peekSecond() == 0x00) {
+            // UTF-16, UTF-32
+            _flush();
+            return false;
+        }
+        int c;
+        while ((c = _read()) != _EOF) {
+            if (c != '<') {
+                continue;
+            }
+            final int start = _prolog.size() + _pos - 1 - _mark;
+            c = _read();
+            if (c == '?') {
+                final int declStart = start;
+                _skipUntil("?>");
+                if (declStart == 0 || declStart == 3) {
+                    _flush();
+                    _encoding = _pseudoAttribute(_prolog.toByteArray(), declStart, "encoding");
+                }
+            }
+            else if (c == '!') {
+                _skipDeclaration();
+            }
+            else if (c != _EOF) {
+                _rootStart = start;
+                _unread();
+                _rootName = _readName();
+                final boolean empty = _skipTag();
+                _flush();
+                _out = null;
+                return !empty && (_encoding == null || _isSupportedEncoding(_encoding));
+            }
+        }
+        _flush();
+        throw new MIOException("The document has no root element");
+    }
+
+    /**
+     * Returns the bytes before the start tag of the root element.
+     *
+     * @return The XML declaration, document type declaration etc.
+     */
+    byte[] getProlog() {
+        final byte[] prolog = new byte[_rootStart];
+        System.arraycopy(_prolog.toByteArray(), 0, prolog, 0, _rootStart);
+        return prolog;
+    }
+
+    /**
+     * Returns the start tag of the root element without the provided
+     * attribute.
+     *
+     * @param excludedAttribute The name of an attribute to remove or
+     *          {@code null}.
+     * @return The start tag.
+     */
+    byte[] getRootStartTag(final String excludedAttribute) {
+        final byte[] prolog = _prolog.toByteArray();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(prolog.length - _rootStart);
+        int i = _rootStart + 1 + _rootName.length();
+        out.write(prolog, _rootStart, i - _rootStart);
+        while (i < prolog.length) {
+            final int attrStart = i;
+            while (i < prolog.length && _isWhitespace(prolog[i])) {
+                i++;
+            }
+            final int nameStart = i;
+            while (i < prolog.length && prolog[i] != '=' && prolog[i] != '>'
+                    && prolog[i] != '/' && !_isWhitespace(prolog[i])) {
+                i++;
+            }
+            final String name = _string(prolog, nameStart, i);
+            while (i < prolog.length && prolog[i] != '"' && prolog[i] != '\'' && prolog[i] != '>') {
+                i++;
+            }
+            if (i < prolog.length && prolog[i] != '>') {
+                final byte quote = prolog[i];
+                i++;
+                while (i < prolog.length && prolog[i] != quote) {
+                    i++;
+                }
+                i++;
+            }
+            if (name.length() == 0) {
+                // The end of the tag
+                out.write(prolog, attrStart, prolog.length - attrStart);
+                break;
+            }
+            if (!name.equals(excludedAttribute)) {
+                out.write(prolog, attrStart, i - attrStart);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the name (including the prefix) of the root element.
+     *
+     * @return The name of the root element.
+     */
+    String getRootName() {
+        return _rootName;
+    }
+
+    /**
+     * Returns the declared encoding of the document.
+     *
+     * @return The encoding or {@code null} if the document does not declare
+     *          the encoding.
+     */
+    String getEncoding() {
+        return _encoding;
+    }
+
+    /**
+     * Returns a stream which provides the whole document, including the bytes
+     * which were consumed by {@link #readProlog()}.
+     *
+     * @return A stream to read the document from.
+     */
+    InputStream getInputStream() {
+        final byte[] consumed = _prolog.toByteArray();
+        final byte[] buffered = new byte[_limit - _pos];
+        System.arraycopy(_buffer, _pos, buffered, 0, buffered.length);
+        return new SequenceInputStream(new ByteArrayInputStream(consumed),
+                new SequenceInputStream(new ByteArrayInputStream(buffered), _in));
+    }
+
+    /**
+     * Reads the start of the next child element of the root element.
+     * <p>
+     * Comments, processing instructions and whitespace between the child
+     * elements are discarded. The child element must be read by
+     * {@link #readElement(OutputStream)} afterwards.
+     * </p>
+     *
+     * @return The local name of the child element or {@code null} if the
+     *          end of the root element was reached.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an unexpected end of the document.
+     */
+    String nextElement() throws IOException, MIOException {
+        _out = null;
+        while (true) {
+            int c = _read();
+            if (c == _EOF) {
+                throw new MIOException("Unexpected end of the document, the root element is not closed");
+            }
+            if (c != '<') {
+                continue;
+            }
+            final long offset = _offset + _pos - 1;
+            c = _read();
+            if (c == '/' || c == _EOF) {
+                return null;
+            }
+            else if (c == '!') {
+                _skipDeclaration();
+            }
+            else if (c == '?') {
+                _skipUntil("?>");
+            }
+            else {
+                _unread();
+                _elementOffset = offset;
+                final String name = _readName();
+                _elementName = name.getBytes("iso-8859-1");
+                final int idx = name.indexOf(':');
+                return idx == -1 ? name : name.substring(idx + 1);
+            }
+        }
+    }
+
+    /**
+     * Writes the child element which was announced by {@link #nextElement()}
+     * to the provided stream.
+     *
+     * @param out The stream to write the element to.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an unexpected end of the document.
+     */
+    void readElement(final OutputStream out) throws IOException, MIOException {
+        out.write('<');
+        out.write(_elementName);
+        // Discard the consumed bytes, the start of the tag was written already
+        _flush();
+        _out = out;
+        int depth = _skipTag() ? 0 : 1;
+        while (depth > 0) {
+            int c = _read();
+            if (c == _EOF) {
+                throw new MIOException("Unexpected end of the document, the element '" + new String(_elementName, "iso-8859-1") + "' is not closed");
+            }
+            if (c != '<') {
+                continue;
+            }
+            c = _read();
+            if (c == '/') {
+                _skipTag();
+                depth--;
+            }
+            else if (c == '!') {
+                _skipDeclaration();
+            }
+            else if (c == '?') {
+                _skipUntil("?>");
+            }
+            else {
+                _unread();
+                if (!_skipTag()) {
+                    depth++;
+                }
+            }
+        }
+        _flush();
+        _out = null;
+    }
+
+    /**
+     * Returns the byte position of the start tag of the child element which
+     * was announced by {@link #nextElement()}.
+     *
+     * @return The position of the <tt>&lt;</tt> of the start tag.
+     */
+    long getElementOffset() {
+        return _elementOffset;
+    }
+
+    /**
+     * Returns the number of bytes which were consumed so far. After
+     * {@link #readElement(OutputStream)}, this is the position after the
+     * end tag of the element.
+     *
+     * @return The current byte position.
+     */
+    long getPosition() {
+        return _offset + _pos;
+    }
+
+    /**
+     * Reads an element name.
+     */
+    private String _readName() throws IOException {
+        final StringBuilder name = new StringBuilder();
+        int c;
+        while ((c = _read()) != _EOF && c != '>' && c != '/' && !_isWhitespace(c)) {
+            name.append((char) c);
+        }
+        if (c != _EOF) {
+            _unread();
+        }
+        return name.toString();
+    }
+
+    /**
+     * Skips the remaining part of a tag.
+     *
+     * @return {@code true} if the tag is an empty element tag.
+     */
+    private boolean _skipTag() throws IOException {
+        int quote = 0;
+        int prev = 0;
+        int c;
+        while ((c = _read()) != _EOF) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            }
+            else if (c == '"' || c == '\'') {
+                quote = c;
+            }
+            else if (c == '>') {
+                return prev == '/';
+            }
+            prev = c;
+        }
+        return false;
+    }
+
+    /**
+     * Skips a comment, a CDATA section or a declaration (the
+     * <tt>&lt;!</tt> has been read already).
+     */
+    private void _skipDeclaration() throws IOException {
+        int c = _read();
+        if (c == '-') {
+            _skipUntil("-->");
+        }
+        else if (c == '[') {
+            _skipUntil("]]>");
+        }
+        else {
+            // Document type declaration, maybe with an internal subset
+            int quote = 0;
+            int depth = 0;
+            while (c != _EOF) {
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                }
+                else if (c == '"' || c == '\'') {
+                    quote = c;
+                }
+                else if (c == '[') {
+                    depth++;
+                }
+                else if (c == ']') {
+                    depth--;
+                }
+                else if (c == '>' && depth == 0) {
+                    return;
+                }
+                c = _read();
+            }
+        }
+    }
+
+    /**
+     * Skips all bytes until the terminator was read.
+     */
+    private void _skipUntil(final String terminator) throws IOException {
+        final int length = terminator.length();
+        int matched = 0;
+        int c;
+        while ((c = _read()) != _EOF) {
+            if (c == terminator.charAt(matched)) {
+                matched++;
+                if (matched == length) {
+                    return;
+                }
+            }
+            else if (c == terminator.charAt(0)) {
+                // "--->" and "]]]>" keep the match of the first two chars
+                if (matched < 2 || terminator.charAt(1) != c) {
+                    matched = 1;
+                }
+            }
+            else {
+                matched = 0;
+            }
+        }
+    }
+
+    private int _read() throws IOException {
+        if (_pos == _limit && !_fill()) {
+            return _EOF;
+        }
+        return _buffer[_pos++] & 0xFF;
+    }
+
+    /**
+     * Pushes the last read byte back.
+     */
+    private void _unread() {
+        if (_pos > 0 && _limit > 0) {
+            _pos--;
+        }
+    }
+
+    private int _peek() throws IOException {
+        final int c = _read();
+        _unread();
+        return c;
+    }
+
+    private int _peekSecond() throws IOException {
+        while (_limit - _pos < 2) {
+            final int read = _in.read(_buffer, _limit, _buffer.length - _limit);
+            if (read == -1) {
+                return _EOF;
+            }
+            _limit += read;
+        }
+        return _buffer[_pos + 1] & 0xFF;
+    }
+
+    private boolean _fill() throws IOException {
+        _flush();
+        _offset += _limit;
+        final int read = _in.read(_buffer, 0, _buffer.length);
+        _pos = 0;
+        _mark = 0;
+        _limit = read == -1 ? 0 : read;
+        return read > 0 || read == 0 && _fill();
+    }
+
+    /**
+     * Writes the consumed bytes to the current output stream.
+     */
+    private void _flush() throws IOException {
+        if (_out != null && _pos > _mark) {
+            _out.write(_buffer, _mark, _pos - _mark);
+        }
+        _mark = _pos;
+    }
+
+    /**
+     * Returns the value of a pseudo attribute of the XML declaration.
+     */
+    private static String _pseudoAttribute(final byte[] prolog, final int start, final String name) {
+        final String decl = _string(prolog, start, prolog.length);
+        final int idx = decl.indexOf(name);
+        if (idx == -1) {
+            return null;
+        }
+        int i = idx + name.length();
+        while (i < decl.length() && decl.charAt(i) != '"' && decl.charAt(i) != '\'') {
+            i++;
+        }
+        if (i == decl.length()) {
+            return null;
+        }
+        final int end = decl.indexOf(decl.charAt(i), i + 1);
+        return end == -1 ? null : decl.substring(i + 1, end);
+    }
+
+    private static boolean _isSupportedEncoding(final String encoding) {
+        final String enc = encoding.toLowerCase(Locale.ENGLISH);
+        return "utf-8".equals(enc) || "utf8".equals(enc)
+                || "us-ascii".equals(enc) || "ascii".equals(enc)
+                || enc.startsWith("iso-8859-") || enc.startsWith("latin")
+                || enc.startsWith("windows-125");
+    }
+
+    private static boolean _isWhitespace(final int c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private static String _string(final byte[] bytes, final int start, final int end) {
+        final StringBuilder sb = new StringBuilder(end - start);
+        for (int i=start; i<end; i++) {
+            sb.append((char) (bytes[i] & 0xFF));
+        }
+        return sb.toString();
+    }
+
+}
@@ -32,10 +32,13 @@ import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
 import com.semagia.mio.IRef;
+import com.semagia.mio.IResourceResolver;
 import com.semagia.mio.MIOException;
 import com.semagia.mio.Property;
+import com.semagia.mio.Source;
 import com.semagia.mio.helpers.Locator;
 import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.utils.xml.XMLUtils;
 import com.semagia.mio.voc.TMDM;
 import com.semagia.mio.voc.XSD;
 import com.semagia.mio.voc.XTM10;
@@ -263,7 +266,8 @@ final class XTM10ContentHandler extends AbstractXTMContentHandler {
         else if (BASENAME_STRING == qName 
                     || RESOURCE_DATA == qName) {
             _content.setLength(0);
-            _acceptContent = true;
+            // Characters of excluded constructs are not collected
+            _acceptContent = !_isSkipping();
         }
         else if (VARIANT == qName) {
             String id = attrs.getValue("", "id");
@@ -342,7 +346,7 @@ final class XTM10ContentHandler extends AbstractXTMContentHandler {
             _handler.endName();
         }
         else if (BASENAME_STRING == qName) {
-            _handler.value(_content.toString());
+            _handler.valueChars(_content);
             _acceptContent = false;
         }
         else if (RESOURCE_DATA == qName) {
@@ -775,11 +779,40 @@ final class XTM10ContentHandler extends AbstractXTMContentHandler {
                 scope.addAll(mergeMapScope);
             }
             contentHandler.setMergeMapScope(scope);
+            final Object resolver = _properties.get(Property.RESOURCE_RESOLVER);
+            contentHandler.setProperty(Property.RESOURCE_RESOLVER, resolver);
             xmlReader.setContentHandler(contentHandler);
-            final InputSource inputSource = new InputSource(_locator.toExternalForm());
+            final String iri = _locator.toExternalForm();
+            Source src = null;
             try {
+                if (resolver instanceof IResourceResolver) {
+                    src = ((IResourceResolver) resolver).resolve(iri);
+                }
+                final InputSource inputSource = src != null ? XMLUtils.asInputSource(src)
+                                                            : new InputSource(iri);
+                inputSource.setSystemId(iri);
                 xmlReader.parse(inputSource);
             } catch (IOException ex) {
+                throw new SAXException("I/O error while processing merge map " + iri, ex);
+            }
+            finally {
+                _close(src);
+            }
+        }
+
+        private void _close(final Source src) throws SAXException {
+            if (src == null) {
+                return;
+            }
+            try {
+                if (src.getByteStream() != null) {
+                    src.getByteStream().close();
+                }
+                if (src.getCharacterStream() != null) {
+                    src.getCharacterStream().close();
+                }
+            }
+            catch (IOException ex) {
                 throw new SAXException("I/O error while processing merge map " + _locator.toExternalForm() , ex);
             }
         }
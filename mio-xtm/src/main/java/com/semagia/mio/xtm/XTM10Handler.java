@@ -0,0 +1,439 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.xtm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.voc.XSD;
+
+/**
+ * {@link IMapHandler} implementation that translates all events into
+ * <a href="http://www.topicmaps.org/xtm/1.0/">XML Topic Maps (XTM) 1.0</a>.
+ * <p>
+ * XTM 1.0 cannot represent all information items of the TMDM:
+ * </p>
+ * <ul>
+ *   <li>Item identifiers of the topic map and of topic map constructs other
+ *       than topics are not written.</li>
+ *   <li>Datatypes other than <tt>xsd:string</tt> and <tt>xsd:anyURI</tt> are
+ *       lost.</li>
+ *   <li>Name types are written as <tt>instanceOf</tt> element of the
+ *       <tt>baseName</tt> which is not allowed by the XTM 1.0 DTD but
+ *       understood by the XTM 1.0 deserializer and other Topic Maps
+ *       engines.</li>
+ * </ul>
+ * <p>
+ * Reification is expressed by an id of the reified construct and a topic
+ * which has a subject indicator that points to this id. Since topics cannot
+ * be nested, these topics are buffered until the current topic or
+ * association was written.
+ * </p>
+ *
+ * @see XTM21Handler
+ * @see XTM20Handler
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class XTM10Handler extends AbstractXTMHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(XTM10Handler.class);
+
+    private static final String
+        _XTM_NS = "http://www.topicmaps.org/xtm/1.0/",
+        _XLINK_NS = "http://www.w3.org/1999/xlink";
+
+    /*
+     * Warnings which are reported only once.
+     */
+    private static final int
+        _WARN_ITEM_IDENTIFIER = 1,
+        _WARN_DATATYPE = 2;
+
+    /**
+     * The id of the current topic element.
+     */
+    private String _topicId;
+
+    /**
+     * The subject locator of the current topic element.
+     */
+    private IRef _subjectLocator;
+
+    /**
+     * The subject identifiers and item identifiers of the current topic
+     * element; the <tt>subjectIdentity</tt> element follows the
+     * <tt>instanceOf</tt> elements.
+     */
+    private final List<IRef> _identities;
+    private int _warnings;
+
+    public XTM10Handler(final OutputStream out) throws IOException {
+        super(out);
+        _identities = new ArrayList<IRef>();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_startTopicMapElement(com.semagia.mio.IRef)
+     */
+    @Override
+    protected void _startTopicMapElement(final IRef reifier) throws IOException {
+        _attrs.clear();
+        _attrs.addAttribute("", "xmlns", "", "CDATA", _XTM_NS);
+        _attrs.addAttribute("", "xmlns:xlink", "", "CDATA", _XLINK_NS);
+        if (reifier != null) {
+            _attrs.addAttribute("", "id", "", "CDATA", _reified(reifier));
+        }
+        _out.startElement("topicMap", _attrs);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_writeTopicMapItemIdentifier(java.lang.String)
+     */
+    @Override
+    protected void _writeTopicMapItemIdentifier(final String iid) throws IOException {
+        _warnItemIdentifiers();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_startConstruct(java.lang.String, com.semagia.mio.IRef)
+     */
+    @Override
+    protected void _startConstruct(final String name, final IRef reifier) throws IOException {
+        if (reifier == null) {
+            _out.startElement(name);
+            return;
+        }
+        final String id = _reified(reifier);
+        _attrs.clear();
+        _attrs.addAttribute("", "id", "", "CDATA", id);
+        _out.startElement(name, _attrs);
+    }
+
+    /**
+     * Returns a new id for a reified construct and adds a topic which
+     * reifies the construct to the pending topics.
+     *
+     * @param reifier The reifier.
+     * @return The id of the reified construct.
+     * @throws IOException In case of an error.
+     */
+    private String _reified(final IRef reifier) throws IOException {
+        final String id = _generateId();
+        _addPendingTopic(_createTopicId(reifier), reifier, Ref.createSubjectIdentifier('#' + id));
+        return id;
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_writeTopicRef(com.semagia.mio.IRef)
+     */
+    @Override
+    protected void _writeTopicRef(final IRef ref) throws IOException {
+        final int type = ref.getType();
+        if (type == IRef.SUBJECT_IDENTIFIER) {
+            _out.emptyElement("subjectIndicatorRef", _xlinkHref(ref.getIRI()));
+        }
+        else if (type == IRef.ITEM_IDENTIFIER) {
+            _out.emptyElement("topicRef", _xlinkHref(ref.getIRI()));
+        }
+        else {
+            _out.emptyElement("topicRef", _xlinkHref('#' + _referenceId(ref)));
+        }
+    }
+
+    /**
+     * Writes a topic reference within a <tt>scope</tt> or <tt>member</tt>
+     * element which may reference topics by their subject locator.
+     *
+     * @param ref The topic reference.
+     * @throws IOException In case of an error.
+     */
+    private void _writeSubjectLocatorAwareTopicRef(final IRef ref) throws IOException {
+        if (ref.getType() == IRef.SUBJECT_LOCATOR) {
+            _out.emptyElement("resourceRef", _xlinkHref(ref.getIRI()));
+        }
+        else {
+            _writeTopicRef(ref);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_startTopicElement(com.semagia.mio.IRef)
+     */
+    @Override
+    protected void _startTopicElement(final IRef identity) throws IOException {
+        _topicId = _createTopicId(identity);
+        _subjectLocator = null;
+        _identities.clear();
+        _attrs.clear();
+        _attrs.addAttribute("", "id", "", "CDATA", _topicId);
+        _out.startElement("topic", _attrs);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_writeIdentity(com.semagia.mio.IRef)
+     */
+    @Override
+    protected void _writeIdentity(final IRef identity) throws IOException {
+        if (identity.getType() == IRef.SUBJECT_LOCATOR) {
+            if (_subjectLocator != null) {
+                // XTM 1.0 permits one subject locator per topic element
+                _addPendingTopic(_createTopicId(identity), identity, Ref.createItemIdentifier('#' + _topicId));
+                return;
+            }
+            _subjectLocator = identity;
+        }
+        else {
+            _identities.add(identity);
+        }
+    }
+
+    /**
+     * Writes the <tt>subjectIdentity</tt> element iff the current topic has
+     * any subject identifiers, subject locators or item identifiers.
+     *
+     * @throws IOException In case of an error.
+     */
+    private void _writeSubjectIdentity() throws IOException {
+        if (_subjectLocator == null && _identities.isEmpty()) {
+            return;
+        }
+        _out.startElement("subjectIdentity");
+        if (_subjectLocator != null) {
+            _out.emptyElement("resourceRef", _xlinkHref(_subjectLocator.getIRI()));
+        }
+        for (IRef identity: _identities) {
+            _writeTopicRef(identity);
+        }
+        _out.endElement("subjectIdentity");
+        _subjectLocator = null;
+        _identities.clear();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_endTopicElement()
+     */
+    @Override
+    protected void _endTopicElement() throws IOException {
+        _writeSubjectIdentity();
+        super._endTopicElement();
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_writePendingTopic(java.lang.String, com.semagia.mio.IRef, com.semagia.mio.IRef)
+     */
+    @Override
+    protected void _writePendingTopic(final String id, final IRef identity,
+            final IRef additionalIdentity) throws IOException {
+        _attrs.clear();
+        _attrs.addAttribute("", "id", "", "CDATA", id);
+        _out.startElement("topic", _attrs);
+        _out.startElement("subjectIdentity");
+        if (identity.getType() == IRef.SUBJECT_LOCATOR) {
+            _out.emptyElement("resourceRef", _xlinkHref(identity.getIRI()));
+        }
+        else {
+            _writeTopicRef(identity);
+        }
+        if (additionalIdentity != null) {
+            _writeTopicRef(additionalIdentity);
+        }
+        _out.endElement("subjectIdentity");
+        _out.endElement("topic");
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_startInstanceOf()
+     */
+    @Override
+    protected void _startInstanceOf() throws IOException {
+        // noop, each type is written into its own instanceOf element
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_writeInstanceOf(com.semagia.mio.IRef)
+     */
+    @Override
+    protected void _writeInstanceOf(final IRef type) throws IOException {
+        _writeType(type);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_endInstanceOf()
+     */
+    @Override
+    protected void _endInstanceOf() throws IOException {
+        // noop
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_writeType(com.semagia.mio.IRef)
+     */
+    @Override
+    protected void _writeType(final IRef type) throws IOException {
+        _out.startElement("instanceOf");
+        _writeTopicRef(type);
+        _out.endElement("instanceOf");
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_writeScope(java.util.Collection)
+     */
+    @Override
+    protected void _writeScope(final Collection<IRef> scope) throws IOException {
+        if (scope != null && !scope.isEmpty()) {
+            _out.startElement("scope");
+            for (IRef theme: scope) {
+                _writeSubjectLocatorAwareTopicRef(theme);
+            }
+            _out.endElement("scope");
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_writeItemIdentifiers(java.util.Collection)
+     */
+    @Override
+    protected void _writeItemIdentifiers(final Collection<String> iids) throws IOException {
+        if (!iids.isEmpty()) {
+            _warnItemIdentifiers();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_writeAssociation(com.semagia.mio.IRef, java.util.Collection, com.semagia.mio.IRef, java.util.Collection, java.util.Collection)
+     */
+    @Override
+    protected void _writeAssociation(final IRef type,
+            final Collection<IRef> scope, final IRef reifier,
+            final Collection<String> iids,
+            final Collection<IRole<IRef>> roles) throws IOException {
+        _startConstruct("association", reifier);
+        _writeItemIdentifiers(iids);
+        _writeType(type);
+        _writeScope(scope);
+        for (IRole<IRef> role: roles) {
+            _startConstruct("member", role.getReifier());
+            _writeItemIdentifiers(role.getItemIdentifiers());
+            _out.startElement("roleSpec");
+            _writeTopicRef(role.getType());
+            _out.endElement("roleSpec");
+            _writeSubjectLocatorAwareTopicRef(role.getPlayer());
+            _out.endElement("member");
+        }
+        _out.endElement("association");
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_writeName(com.semagia.mio.IRef, java.lang.String, java.util.Collection, com.semagia.mio.IRef, java.util.Collection, java.util.Collection)
+     */
+    @Override
+    protected void _writeName(final IRef type, final String value,
+            final Collection<IRef> scope, final IRef reifier,
+            final Collection<String> iids,
+            final Collection<IVariant<IRef>> variants) throws IOException {
+        _writeSubjectIdentity();
+        _startConstruct("baseName", reifier);
+        _writeItemIdentifiers(iids);
+        if (type != null && !_DEFAULT_NAME.equals(type)) {
+            _writeType(type);
+        }
+        _writeScope(scope);
+        _out.dataElement("baseNameString", value);
+        for (IVariant<IRef> var: variants) {
+            _startConstruct("variant", var.getReifier());
+            _writeItemIdentifiers(var.getItemIdentifiers());
+            _out.startElement("parameters");
+            for (IRef theme: var.getScope()) {
+                _writeTopicRef(theme);
+            }
+            _out.endElement("parameters");
+            _out.startElement("variantName");
+            _writeValueDatatype(var.getValue(), var.getDatatype());
+            _out.endElement("variantName");
+            _out.endElement("variant");
+        }
+        _out.endElement("baseName");
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_writeOccurrence(com.semagia.mio.IRef, java.lang.String, java.lang.String, java.util.Collection, com.semagia.mio.IRef, java.util.Collection)
+     */
+    @Override
+    protected void _writeOccurrence(final IRef type, final String value,
+            final String datatype, final Collection<IRef> scope,
+            final IRef reifier, final Collection<String> iids) throws IOException {
+        _writeSubjectIdentity();
+        _startConstruct("occurrence", reifier);
+        _writeItemIdentifiers(iids);
+        _writeType(type);
+        _writeScope(scope);
+        _writeValueDatatype(value, datatype);
+        _out.endElement("occurrence");
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_writeValueDatatype(java.lang.String, java.lang.String)
+     */
+    @Override
+    protected void _writeValueDatatype(final String value, final String datatype) throws IOException {
+        if (XSD.ANY_URI.equals(datatype)) {
+            _out.emptyElement("resourceRef", _xlinkHref(value));
+        }
+        else {
+            if (!XSD.STRING.equals(datatype) && _warnOnce(_WARN_DATATYPE)) {
+                LOG.warn("XTM 1.0 does not support datatypes, writing values with the datatype '" + datatype + "' (and others) as strings");
+            }
+            _out.dataElement("resourceData", value);
+        }
+    }
+
+    private void _warnItemIdentifiers() {
+        if (_warnOnce(_WARN_ITEM_IDENTIFIER)) {
+            LOG.warn("XTM 1.0 cannot represent item identifiers of topic map constructs other than topics, ignoring them");
+        }
+    }
+
+    /**
+     * Returns if the warning was not reported yet.
+     *
+     * @param warning The warning.
+     * @return {@code true} if the warning should be reported, otherwise {@code false}.
+     */
+    private boolean _warnOnce(final int warning) {
+        if ((_warnings & warning) != 0) {
+            return false;
+        }
+        _warnings |= warning;
+        return true;
+    }
+
+    private Attributes _xlinkHref(final String ref) {
+        _attrs.clear();
+        _attrs.addAttribute(_XLINK_NS, "xlink:href", "xlink:href", "CDATA", ref);
+        return _attrs;
+    }
+
+}
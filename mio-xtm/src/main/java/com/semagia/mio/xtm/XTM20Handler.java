@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.xtm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.semagia.mio.IRef;
+
+/**
+ * {@link IMapHandler} implementation that translates all events into
+ * <a href="http://www.isotopicmaps.org/sam/sam-xtm/">XML Topic Maps (XTM) 2.0</a>.
+ * <p>
+ * XTM 2.0 references topics and reifiers by item identifiers only and
+ * requires an id for each topic. Topics with an item identifier reuse its
+ * fragment identifier as id. Topics with a subject identifier or subject
+ * locator get an id which is derived from that identity and this id is used
+ * to reference them. If a topic is referenced by an id which was not written
+ * yet, a topic element which consists of the id and the identity is written
+ * after the current topic or association, so only referenced topics get an
+ * additional item identifier (the id relative to the base IRI of the
+ * document).
+ * </p>
+ *
+ * @see XTM21Handler
+ * @see XTM10Handler
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class XTM20Handler extends AbstractXTMHandler {
+
+    private static final String _XTM_NS = "http://www.topicmaps.org/xtm/";
+
+    public XTM20Handler(final OutputStream out) throws IOException {
+        super(out);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_startTopicMapElement(com.semagia.mio.IRef)
+     */
+    @Override
+    protected void _startTopicMapElement(final IRef reifier) throws IOException {
+        final String reifierRef = reifier != null ? _reference(reifier) : null;
+        _attrs.clear();
+        _attrs.addAttribute("", "xmlns", "", "CDATA", _XTM_NS);
+        _attrs.addAttribute("", "version", "", "CDATA", "2.0");
+        if (reifierRef != null) {
+            _attrs.addAttribute("", "reifier", "", "CDATA", reifierRef);
+        }
+        _out.startElement("topicMap", _attrs);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_startConstruct(java.lang.String, com.semagia.mio.IRef)
+     */
+    @Override
+    protected void _startConstruct(final String name, final IRef reifier) throws IOException {
+        if (reifier == null) {
+            _out.startElement(name);
+            return;
+        }
+        final String reifierRef = _reference(reifier);
+        _attrs.clear();
+        _attrs.addAttribute("", "reifier", "", "CDATA", reifierRef);
+        _out.startElement(name, _attrs);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_writeTopicRef(com.semagia.mio.IRef)
+     */
+    @Override
+    protected void _writeTopicRef(final IRef ref) throws IOException {
+        _out.emptyElement("topicRef", _href(_reference(ref)));
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMHandler#_startTopicElement(com.semagia.mio.IRef)
+     */
+    @Override
+    protected void _startTopicElement(final IRef identity) throws IOException {
+        final String id = _createTopicId(identity);
+        _attrs.clear();
+        _attrs.addAttribute("", "id", "", "CDATA", id);
+        _out.startElement("topic", _attrs);
+    }
+
+    /**
+     * Returns the IRI which is used to reference the provided topic.
+     *
+     * @param ref The topic reference.
+     * @return An item identifier.
+     * @throws IOException In case of an error.
+     */
+    private String _reference(final IRef ref) throws IOException {
+        return ref.getType() == IRef.ITEM_IDENTIFIER ? ref.getIRI()
+                                                     : '#' + _referenceId(ref);
+    }
+
+}
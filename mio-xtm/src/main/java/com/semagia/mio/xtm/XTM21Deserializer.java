@@ -28,6 +28,14 @@ final class XTM21Deserializer extends AbstractXTMDeserializer<XTM2ContentHandler
         super(new XTM2ContentHandler());
     }
 
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.AbstractXTMDeserializer#createFragmentContentHandler()
+     */
+    @Override
+    protected IXTMContentHandler createFragmentContentHandler() {
+        return _contentHandler.copy();
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.mio.IVersionAwareDeserializer#getVersion()
      */
@@ -15,8 +15,13 @@
  */
 package com.semagia.mio.xtm;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
 
 import org.xml.sax.Attributes;
@@ -93,12 +98,13 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
 
     private boolean _acceptContent;
     private boolean _acceptXML;
+    private boolean _discardContent;
     private String _datatype;
     private SAXXMLWriter _xmlHandler;
     private boolean _seenType;
     private byte _state;
     private byte _nextState;
-    private ByteArrayOutputStream _xmlContent;
+    private XMLContentBuffer _xmlContent;
     private boolean _xtm20Mode;
     private boolean _seenIdentity;
     private boolean _ignoreMergeMap;
@@ -112,6 +118,20 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
         return _xtm20Mode ? "2.0" : "2.1";
     }
 
+    /**
+     * Returns a new content handler which uses the document IRI, the IRI
+     * context and the properties of this content handler.
+     *
+     * @return A new content handler.
+     */
+    XTM2ContentHandler copy() {
+        final XTM2ContentHandler handler = new XTM2ContentHandler();
+        handler._docLocator = _docLocator;
+        handler._context = _context;
+        handler._properties.putAll(_properties);
+        return handler;
+    }
+
     /* (non-Javadoc)
      * @see com.semagia.mio.xtm.IXTMContentHandler#getRelaxURL()
      */
@@ -125,8 +145,13 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
      */
     @Override
     public void startDocument() throws SAXException {
-        _xmlContent = new ByteArrayOutputStream();
-        _xmlHandler = new SAXXMLWriter(_xmlContent);
+        _xmlContent = new XMLContentBuffer();
+        try {
+            _xmlHandler = new SAXXMLWriter(new OutputStreamWriter(_xmlContent, XMLContentBuffer.ENCODING));
+        }
+        catch (UnsupportedEncodingException ex) {
+            _reportError(ex);
+        }
         _ignoreMergeMap =  Boolean.TRUE.equals(_properties.get(Property.IGNORE_MERGEMAP));
     }
 
@@ -135,6 +160,9 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
      */
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException {
+        if (_discardContent) {
+            return;
+        }
         if (_acceptXML) {
             _xmlHandler.characters(ch, start, length);
         }
@@ -149,7 +177,9 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
     @Override
     public void startElement(String uri, String name, String qName, Attributes attrs) throws SAXException {
         if (_acceptXML) {
-            _xmlHandler.startElement(uri, name, qName, attrs);
+            if (!_discardContent) {
+                _xmlHandler.startElement(uri, name, qName, attrs);
+            }
             return;
         }
         if (TOPIC_REF == name) {
@@ -223,6 +253,7 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
         else if (VALUE == name) {
             _content.setLength(0);
             _acceptContent = true;
+            _discardContent = _isSkipping();
         }
         else if (RESOURCE_DATA == name) {
             final String datatype = attrs.getValue("", "datatype");
@@ -230,6 +261,7 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
             _content.setLength(0);
             _acceptContent = true;
             _acceptXML = XSD.ANY_TYPE.equals(datatype);
+            _discardContent = _isSkipping();
         }
         else if (RESOURCE_REF == name) {
             _handler.value(_href(attrs), XSD.ANY_URI);
@@ -301,7 +333,9 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
     public void endElement(String uri, String name, String qName)
             throws SAXException {
         if (_acceptXML && !(RESOURCE_DATA == name || RESOURCE_REF == name)) {
-            _xmlHandler.endElement(uri, name, qName);
+            if (!_discardContent) {
+                _xmlHandler.endElement(uri, name, qName);
+            }
         }
         else if (TOPIC == name) {
             _state = _STATE_INITIAL;
@@ -346,14 +380,24 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
             _state = _STATE_NAME;
         }
         else if (RESOURCE_DATA == name) {
-            if (_acceptXML) {
+            if (_discardContent) {
+                // The occurrence / variant is excluded, the value is not needed
+                _discardContent = false;
+            }
+            else if (_acceptXML) {
                 try {
                     _xmlHandler.flush();
                 }
                 catch (IOException ex) {
                     _reportError(ex);
                 }
-                _handler.value(_xmlContent.toString(), XSD.ANY_TYPE);
+                if (_acceptsCharSequences) {
+                    // Read the markup from the buffer without copying it
+                    _handler.valueReader(_xmlContent.toReader(), XSD.ANY_TYPE);
+                }
+                else {
+                    _handler.value(_xmlContent.toValue(), XSD.ANY_TYPE);
+                }
                 _xmlContent.reset();
             }
             else {
@@ -361,15 +405,18 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
                     _handler.value(_createLocator(_content.toString()), XSD.ANY_URI);
                 }
                 else {
-                    _handler.value(_content.toString(), _datatype);
+                    _handler.valueChars(_content, _datatype);
                 }
             }
             _acceptContent = false;
             _acceptXML = false;
         }
         else if (VALUE == name) {
-            _handler.value(_content.toString());
+            if (!_discardContent) {
+                _handler.valueChars(_content);
+            }
             _acceptContent = false;
+            _discardContent = false;
         }
     }
 
@@ -379,7 +426,7 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
     @Override
     public void startPrefixMapping(String prefix, String uri)
             throws SAXException {
-        if (_acceptXML) {
+        if (_acceptXML && !_discardContent) {
             _xmlHandler.startPrefixMapping(prefix, uri);
         }
     }
@@ -389,7 +436,7 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
      */
     @Override
     public void endPrefixMapping(String prefix) throws SAXException {
-        if (_acceptXML) {
+        if (_acceptXML && !_discardContent) {
             _xmlHandler.endPrefixMapping(prefix);
         }
     }
@@ -400,7 +447,7 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
     @Override
     public void ignorableWhitespace(char[] ch, int start, int length)
             throws SAXException {
-        if (_acceptXML) {
+        if (_acceptXML && !_discardContent) {
             _xmlHandler.ignorableWhitespace(ch, start, length);
         }
     }
@@ -411,7 +458,7 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
     @Override
     public void processingInstruction(String target, String data)
             throws SAXException {
-        if (_acceptXML) {
+        if (_acceptXML && !_discardContent) {
             _xmlHandler.processingInstruction(target, data);
         }
     }
@@ -524,4 +571,37 @@ final class XTM2ContentHandler extends AbstractXTMContentHandler {
         }
     }
 
+
+    /**
+     * Buffer for the markup of XML occurrence / variant values which provides
+     * a {@link Reader} upon its internal buffer.
+     */
+    private static final class XMLContentBuffer extends ByteArrayOutputStream {
+
+        static final String ENCODING = "utf-8";
+
+        XMLContentBuffer() {
+            super(1024);
+        }
+
+        Reader toReader() throws MIOException {
+            try {
+                return new InputStreamReader(new ByteArrayInputStream(buf, 0, count), ENCODING);
+            }
+            catch (UnsupportedEncodingException ex) {
+                throw new MIOException(ex);
+            }
+        }
+
+        String toValue() throws MIOException {
+            try {
+                return toString(ENCODING);
+            }
+            catch (UnsupportedEncodingException ex) {
+                throw new MIOException(ex);
+            }
+        }
+
+    }
+
 }
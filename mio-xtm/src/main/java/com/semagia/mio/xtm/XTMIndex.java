@@ -0,0 +1,828 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.xtm;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.IMapHandler;
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.helpers.DefaultMapHandler;
+
+/**
+ * Random-access index for XTM documents which provides the topics and
+ * associations for given identities without parsing the whole document.
+ * <p>
+ * The index is stored in a sidecar file which is created by
+ * {@link #build(File, File)}. The indexing pass scans the children of the
+ * root element like the concurrent XTM deserializers and parses the
+ * <tt>topic</tt> and <tt>association</tt> elements in fragments. For each
+ * element, the byte position and length is recorded together with 64-bit
+ * hashes of the topic identities (item identifiers, subject identifiers and
+ * subject locators), of the item identifiers of associations and of the
+ * role players of associations. The hashes are sorted, a lookup is a binary
+ * search within the sidecar file. Other children of the root element (i.e.
+ * <tt>mergeMap</tt>) are not indexed.
+ * </p>
+ * <p>
+ * {@link #parse(IMapHandler, Collection)} reads the elements of the topics
+ * with the provided identities (and of topics which share an identity with
+ * them), the associations with the provided item identifiers and the
+ * associations in which these topics play a role. The elements are parsed
+ * as one topic map in document order. Hash collisions are ruled out by
+ * parsing the candidates before they are reported.
+ * </p>
+ * <p>
+ * The index refers to the document by byte positions, it must be rebuilt
+ * if the document was modified. Instances of this class are not
+ * thread-safe.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public final class XTMIndex implements Closeable {
+
+    private static final int _MAGIC = 0x4D494F58;
+    private static final int _FORMAT_VERSION = 1;
+
+    /**
+     * Default min. number of bytes of a fragment which is parsed by the
+     * indexing pass.
+     */
+    private static final int _DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Number of bytes of an element entry: position (long) and length (int).
+     */
+    private static final int _ELEMENT_SIZE = 12;
+
+    /**
+     * Number of bytes of a record: hash (long) and element number (int).
+     */
+    private static final int _RECORD_SIZE = 12;
+
+    private final RandomAccessFile _document;
+    private final RandomAccessFile _index;
+    private final String _baseIRI;
+    private final byte[] _prolog;
+    private final byte[] _startTag;
+    private final byte[] _endTag;
+    private final int _elementCount;
+    private final long _elementsStart;
+    private final int _recordCount;
+    private final long _recordsStart;
+
+    private XTMIndex(final RandomAccessFile document, final RandomAccessFile index) throws IOException, MIOException {
+        _document = document;
+        _index = index;
+        if (index.readInt() != _MAGIC || index.readInt() != _FORMAT_VERSION) {
+            throw new MIOException("The file is not an XTM index");
+        }
+        if (index.readLong() != document.length()) {
+            throw new MIOException("The index is outdated, the document was modified");
+        }
+        _baseIRI = index.readUTF();
+        _prolog = _readBytes(index);
+        _startTag = _readBytes(index);
+        _endTag = _readBytes(index);
+        _elementCount = index.readInt();
+        _elementsStart = index.getFilePointer();
+        index.seek(_elementsStart + (long) _elementCount * _ELEMENT_SIZE);
+        _recordCount = index.readInt();
+        _recordsStart = index.getFilePointer();
+    }
+
+    /**
+     * Creates an index of the provided document. The topics and
+     * associations are parsed by as many threads as processors are
+     * available.
+     *
+     * @param document The XTM document.
+     * @param index The file to write the index to.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    public static void build(final File document, final File index) throws IOException, MIOException {
+        build(document, document.toURI().toString(), index, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an index of the provided document.
+     *
+     * @param document The XTM document.
+     * @param baseIRI The base IRI to resolve the identities against.
+     * @param index The file to write the index to.
+     * @param parallelism The number of threads which parse the topics and
+     *          associations.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    public static void build(final File document, final String baseIRI, final File index,
+            final int parallelism) throws IOException, MIOException {
+        build(document, baseIRI, index, parallelism, _DEFAULT_CHUNK_SIZE);
+    }
+
+    static void build(final File document, final String baseIRI, final File index,
+            final int parallelism, final int chunkSize) throws IOException, MIOException {
+        if (baseIRI == null) {
+            throw new IllegalArgumentException("The base IRI must not be null");
+        }
+        final Builder builder = new Builder(baseIRI);
+        final InputStream in = new FileInputStream(document);
+        try {
+            builder.scan(new TopLevelElementScanner(in), Math.max(1, parallelism), chunkSize);
+        }
+        finally {
+            in.close();
+        }
+        builder.write(index, document.length());
+    }
+
+    /**
+     * Opens the index of the provided document.
+     *
+     * @param document The XTM document.
+     * @param index The index which was created by {@link #build(File, File)}.
+     * @return The index.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException If the file is not an index or if the index does
+     *          not match to the document.
+     */
+    public static XTMIndex open(final File document, final File index) throws IOException, MIOException {
+        final RandomAccessFile doc = new RandomAccessFile(document, "r");
+        RandomAccessFile idx = null;
+        try {
+            idx = new RandomAccessFile(index, "r");
+            return new XTMIndex(doc, idx);
+        }
+        catch (IOException ex) {
+            _close(doc, idx);
+            throw ex;
+        }
+        catch (MIOException ex) {
+            _close(doc, idx);
+            throw ex;
+        }
+    }
+
+    private static void _close(final RandomAccessFile doc, final RandomAccessFile idx) throws IOException {
+        doc.close();
+        if (idx != null) {
+            idx.close();
+        }
+    }
+
+    /**
+     * Returns the number of indexed topics and associations.
+     *
+     * @return The number of topic and association elements.
+     */
+    public int getElementCount() {
+        return _elementCount;
+    }
+
+    /**
+     * Parses the topics with the provided identities and the associations in
+     * which they play a role.
+     * <p>
+     * The handler receives a topic map which consists of the elements of
+     * the topics and associations in document order. If no topic with the
+     * provided identities exists, the topic map is empty.
+     * </p>
+     *
+     * @param handler The handler which receives the events.
+     * @param identities The identities of the topics (or the item
+     *          identifiers of associations).
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    public void parse(final IMapHandler handler, final Collection<? extends IRef> identities)
+            throws IOException, MIOException {
+        final Map<Integer, Element> candidates = new HashMap<Integer, Element>();
+        final TreeMap<Integer, Element> selected = new TreeMap<Integer, Element>();
+        final Set<String> topicIdentities = new HashSet<String>();
+        final LinkedList<String> keys = new LinkedList<String>();
+        for (IRef identity: identities) {
+            final String key = _key(identity.getType(), identity.getIRI());
+            if (topicIdentities.add(key)) {
+                keys.add(key);
+            }
+        }
+        // Topics which share an identity with a found topic are included as well
+        while (!keys.isEmpty()) {
+            final String key = keys.removeFirst();
+            for (Element element: _find(key, candidates)) {
+                if (!element.identities.contains(key)) {
+                    // Hash collision
+                    continue;
+                }
+                selected.put(Integer.valueOf(element.number), element);
+                if (element.topic) {
+                    for (String identity: element.identities) {
+                        if (topicIdentities.add(identity)) {
+                            keys.add(identity);
+                        }
+                    }
+                }
+            }
+        }
+        for (String key: topicIdentities) {
+            for (Element element: _find(key, candidates)) {
+                if (!element.topic && element.players.contains(key)) {
+                    selected.put(Integer.valueOf(element.number), element);
+                }
+            }
+        }
+        final ByteArrayOutputStream out = _startFragment(_prolog, _startTag);
+        for (Element element: selected.values()) {
+            out.write(element.data);
+        }
+        final IDeserializer deserializer = new XTMDeserializer();
+        // The elements were parsed by the indexing pass already
+        deserializer.setProperty(Property.VALIDATE, Boolean.FALSE);
+        deserializer.setMapHandler(handler);
+        deserializer.parse(new Source(new ByteArrayInputStream(_endFragment(out, _endTag)), _baseIRI));
+    }
+
+    /**
+     * Returns the elements which are indexed under the hash of the
+     * provided key.
+     *
+     * @param key The key.
+     * @param cache The elements which have been read already.
+     * @return A (maybe empty) list of elements.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    private List<Element> _find(final String key, final Map<Integer, Element> cache) throws IOException, MIOException {
+        final long hash = _hash(key);
+        int low = 0;
+        int high = _recordCount;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            _index.seek(_recordsStart + (long) mid * _RECORD_SIZE);
+            if (_index.readLong() < hash) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        final List<Element> result = new ArrayList<Element>();
+        for (int i=low; i<_recordCount; i++) {
+            _index.seek(_recordsStart + (long) i * _RECORD_SIZE);
+            if (_index.readLong() != hash) {
+                break;
+            }
+            final Integer number = Integer.valueOf(_index.readInt());
+            Element element = cache.get(number);
+            if (element == null) {
+                element = _readElement(number.intValue());
+                cache.put(number, element);
+            }
+            result.add(element);
+        }
+        return result;
+    }
+
+    /**
+     * Reads and parses the element with the provided number.
+     */
+    private Element _readElement(final int number) throws IOException, MIOException {
+        _index.seek(_elementsStart + (long) number * _ELEMENT_SIZE);
+        final long position = _index.readLong();
+        final byte[] data = new byte[_index.readInt()];
+        _document.seek(position);
+        _document.readFully(data);
+        final ByteArrayOutputStream out = _startFragment(_prolog, _startTag);
+        out.write(data);
+        final List<Element> elements = _collect(_endFragment(out, _endTag), _baseIRI);
+        if (elements.size() != 1) {
+            throw new MIOException("The index is outdated, expected a topic or association at position " + position);
+        }
+        final Element element = elements.get(0);
+        element.number = number;
+        element.data = data;
+        return element;
+    }
+
+    /**
+     * Closes the index and the document.
+     *
+     * @throws IOException In case of an I/O error.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            _index.close();
+        }
+        finally {
+            _document.close();
+        }
+    }
+
+    private static ByteArrayOutputStream _startFragment(final byte[] prolog, final byte[] startTag) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(prolog.length + startTag.length + 8192);
+        out.write(prolog);
+        out.write(startTag);
+        return out;
+    }
+
+    private static byte[] _endFragment(final ByteArrayOutputStream out, final byte[] endTag) throws IOException {
+        out.write(endTag);
+        return out.toByteArray();
+    }
+
+    /**
+     * Parses a fragment and returns the identities of the topics and
+     * associations.
+     *
+     * @param fragment The fragment.
+     * @param baseIRI The base IRI.
+     * @return The topics and associations in document order.
+     * @throws IOException In case of an I/O error.
+     * @throws MIOException In case of an error.
+     */
+    private static List<Element> _collect(final byte[] fragment, final String baseIRI) throws IOException, MIOException {
+        final IdentityCollector collector = new IdentityCollector();
+        final IDeserializer deserializer = new XTMDeserializer();
+        deserializer.setProperty(Property.VALIDATE, Boolean.FALSE);
+        deserializer.setMapHandler(collector);
+        deserializer.parse(new Source(new ByteArrayInputStream(fragment), baseIRI));
+        return collector.getElements();
+    }
+
+    private static byte[] _readBytes(final RandomAccessFile in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void _writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String _key(final int type, final String iri) {
+        return type + iri;
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the provided key.
+     */
+    private static long _hash(final String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i=0; i<key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+
+    /**
+     * A topic or association element.
+     */
+    private static final class Element {
+
+        final boolean topic;
+        /**
+         * The keys of the identities of a topic or the item identifiers of an
+         * association.
+         */
+        final Set<String> identities;
+        /**
+         * The keys of the role players of an association.
+         */
+        final Set<String> players;
+        int number;
+        byte[] data;
+
+        Element(final boolean topic) {
+            this.topic = topic;
+            identities = new HashSet<String>();
+            players = new HashSet<String>();
+        }
+
+    }
+
+
+    /**
+     * {@link IMapHandler} which collects the identities of the topics and
+     * associations.
+     */
+    private static final class IdentityCollector extends DefaultMapHandler {
+
+        private final List<Element> _elements;
+        private Element _current;
+        /**
+         * Nesting level of roles, occurrences, names and variants.
+         */
+        private int _level;
+        private boolean _player;
+
+        IdentityCollector() {
+            _elements = new ArrayList<Element>();
+        }
+
+        List<Element> getElements() {
+            return _elements;
+        }
+
+        private void _start(final boolean topic) {
+            _current = new Element(topic);
+            _elements.add(_current);
+            _level = 0;
+        }
+
+        private void _identity(final int type, final String iri) {
+            if (_current != null && _level == 0) {
+                _current.identities.add(_key(type, iri));
+            }
+        }
+
+        // Topics and associations are not nested, a start event begins a new
+        // element even if the end event of the previous element is missing
+
+        @Override
+        public void startTopic(final IRef identity) throws MIOException {
+            _start(true);
+            if (identity != null) {
+                _identity(identity.getType(), identity.getIRI());
+            }
+        }
+
+        @Override
+        public void startAssociation() throws MIOException {
+            _start(false);
+        }
+
+        @Override
+        public void endTopic() throws MIOException {
+            _current = null;
+        }
+
+        @Override
+        public void endAssociation() throws MIOException {
+            _current = null;
+        }
+
+        @Override
+        public void startRole() throws MIOException {
+            _level++;
+        }
+
+        @Override
+        public void startOccurrence() throws MIOException {
+            _level++;
+        }
+
+        @Override
+        public void startName() throws MIOException {
+            _level++;
+        }
+
+        @Override
+        public void startVariant() throws MIOException {
+            _level++;
+        }
+
+        @Override
+        public void endRole() throws MIOException {
+            _level--;
+        }
+
+        @Override
+        public void endOccurrence() throws MIOException {
+            _level--;
+        }
+
+        @Override
+        public void endName() throws MIOException {
+            _level--;
+        }
+
+        @Override
+        public void endVariant() throws MIOException {
+            _level--;
+        }
+
+        @Override
+        public void itemIdentifier(final String iid) throws MIOException {
+            _identity(IRef.ITEM_IDENTIFIER, iid);
+        }
+
+        @Override
+        public void subjectIdentifier(final String sid) throws MIOException {
+            _identity(IRef.SUBJECT_IDENTIFIER, sid);
+        }
+
+        @Override
+        public void subjectLocator(final String slo) throws MIOException {
+            _identity(IRef.SUBJECT_LOCATOR, slo);
+        }
+
+        @Override
+        public void startPlayer() throws MIOException {
+            _player = true;
+        }
+
+        @Override
+        public void endPlayer() throws MIOException {
+            _player = false;
+        }
+
+        @Override
+        public void topicRef(final IRef identity) throws MIOException {
+            if (_player && _current != null && !_current.topic) {
+                _current.players.add(_key(identity.getType(), identity.getIRI()));
+            }
+        }
+
+    }
+
+
+    /**
+     * Collects the positions and the identities of the elements and writes
+     * the sidecar file.
+     */
+    private static final class Builder {
+
+        private final String _baseIRI;
+        private byte[] _prolog;
+        private byte[] _startTag;
+        private byte[] _endTag;
+        private long[] _positions;
+        private int[] _lengths;
+        private int _elementCount;
+        /**
+         * Pairs of hash and element number.
+         */
+        private long[] _records;
+        private int _recordCount;
+
+        Builder(final String baseIRI) {
+            _baseIRI = baseIRI;
+            _positions = new long[1024];
+            _lengths = new int[1024];
+            _records = new long[4096];
+        }
+
+        /**
+         * Reads the topics and associations and parses them concurrently.
+         */
+        void scan(final TopLevelElementScanner scanner, final int parallelism,
+                final int chunkSize) throws IOException, MIOException {
+            if (!scanner.readProlog()) {
+                throw new MIOException("The document cannot be indexed, it uses an unsupported encoding or the topic map is empty");
+            }
+            _prolog = scanner.getProlog();
+            _startTag = scanner.getRootStartTag("reifier");
+            _endTag = ("</" + scanner.getRootName() + ">").getBytes("iso-8859-1");
+            final LinkedList<Future<List<Element>>> pending = new LinkedList<Future<List<Element>>>();
+            final LinkedList<Integer> pendingStarts = new LinkedList<Integer>();
+            final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            final ByteArrayOutputStream skipped = new ByteArrayOutputStream();
+            ByteArrayOutputStream fragment = null;
+            int fragmentStart = 0;
+            try {
+                String name;
+                while ((name = scanner.nextElement()) != null) {
+                    if (!XTM10ContentHandler.TOPIC.equals(name) && !XTM10ContentHandler.ASSOCIATION.equals(name)) {
+                        skipped.reset();
+                        scanner.readElement(skipped);
+                        continue;
+                    }
+                    if (fragment == null) {
+                        fragment = _startFragment(_prolog, _startTag);
+                        fragmentStart = _elementCount;
+                    }
+                    final long position = scanner.getElementOffset();
+                    scanner.readElement(fragment);
+                    _addElement(position, scanner.getPosition() - position);
+                    if (fragment.size() >= chunkSize) {
+                        pending.add(executor.submit(_createTask(_endFragment(fragment, _endTag))));
+                        pendingStarts.add(Integer.valueOf(fragmentStart));
+                        fragment = null;
+                        // Limit the number of fragments in memory
+                        _collect(pending, pendingStarts, parallelism * 2);
+                    }
+                }
+                if (fragment != null) {
+                    pending.add(executor.submit(_createTask(_endFragment(fragment, _endTag))));
+                    pendingStarts.add(Integer.valueOf(fragmentStart));
+                }
+                _collect(pending, pendingStarts, 0);
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+
+        private Callable<List<Element>> _createTask(final byte[] fragment) {
+            return new Callable<List<Element>>() {
+                @Override
+                public List<Element> call() throws Exception {
+                    return XTMIndex._collect(fragment, _baseIRI);
+                }
+            };
+        }
+
+        /**
+         * Adds the records of the oldest fragments until no more than
+         * <code>max</code> fragments are pending.
+         */
+        private void _collect(final LinkedList<Future<List<Element>>> pending,
+                final LinkedList<Integer> pendingStarts, final int max) throws IOException, MIOException {
+            while (pending.size() > max) {
+                final List<Element> elements;
+                try {
+                    elements = pending.removeFirst().get();
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new MIOException(ex);
+                }
+                catch (ExecutionException ex) {
+                    final Throwable cause = ex.getCause();
+                    if (cause instanceof MIOException) {
+                        throw (MIOException) cause;
+                    }
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new MIOException(cause);
+                }
+                final int start = pendingStarts.removeFirst().intValue();
+                final int end = pendingStarts.isEmpty() ? _elementCount : pendingStarts.getFirst().intValue();
+                if (elements.size() != end - start) {
+                    throw new MIOException("Expected " + (end - start) + " topics and associations, got " + elements.size());
+                }
+                for (int i=0; i<elements.size(); i++) {
+                    final Element element = elements.get(i);
+                    for (String key: element.identities) {
+                        _addRecord(_hash(key), start + i);
+                    }
+                    for (String key: element.players) {
+                        _addRecord(_hash(key), start + i);
+                    }
+                }
+            }
+        }
+
+        private void _addElement(final long position, final long length) throws MIOException {
+            if (length > Integer.MAX_VALUE) {
+                throw new MIOException("The element at position " + position + " is too large");
+            }
+            if (_elementCount == _positions.length) {
+                final int size = _positions.length * 2;
+                final long[] positions = new long[size];
+                final int[] lengths = new int[size];
+                System.arraycopy(_positions, 0, positions, 0, _elementCount);
+                System.arraycopy(_lengths, 0, lengths, 0, _elementCount);
+                _positions = positions;
+                _lengths = lengths;
+            }
+            _positions[_elementCount] = position;
+            _lengths[_elementCount] = (int) length;
+            _elementCount++;
+        }
+
+        private void _addRecord(final long hash, final int number) {
+            if (_recordCount * 2 == _records.length) {
+                final long[] records = new long[_records.length * 2];
+                System.arraycopy(_records, 0, records, 0, _recordCount * 2);
+                _records = records;
+            }
+            _records[_recordCount * 2] = hash;
+            _records[_recordCount * 2 + 1] = number;
+            _recordCount++;
+        }
+
+        /**
+         * Writes the sidecar file.
+         */
+        void write(final File file, final long documentLength) throws IOException {
+            _sort(_records, 0, _recordCount - 1);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            try {
+                out.writeInt(_MAGIC);
+                out.writeInt(_FORMAT_VERSION);
+                out.writeLong(documentLength);
+                out.writeUTF(_baseIRI);
+                _writeBytes(out, _prolog);
+                _writeBytes(out, _startTag);
+                _writeBytes(out, _endTag);
+                out.writeInt(_elementCount);
+                for (int i=0; i<_elementCount; i++) {
+                    out.writeLong(_positions[i]);
+                    out.writeInt(_lengths[i]);
+                }
+                out.writeInt(_recordCount);
+                for (int i=0; i<_recordCount; i++) {
+                    out.writeLong(_records[i * 2]);
+                    out.writeInt((int) _records[i * 2 + 1]);
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+
+        /**
+         * Sorts the pairs in the range <tt>[low, high]</tt> by hash and
+         * element number.
+         */
+        private static void _sort(final long[] pairs, final int low, final int high) {
+            int lo = low;
+            int hi = high;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                final long pivotHash = pairs[mid * 2];
+                final long pivotNumber = pairs[mid * 2 + 1];
+                int i = lo;
+                int j = hi;
+                while (i <= j) {
+                    while (_compare(pairs, i, pivotHash, pivotNumber) < 0) {
+                        i++;
+                    }
+                    while (_compare(pairs, j, pivotHash, pivotNumber) > 0) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        _swap(pairs, i++, j--);
+                    }
+                }
+                // Recurse into the smaller partition to limit the stack depth
+                if (j - lo < hi - i) {
+                    _sort(pairs, lo, j);
+                    lo = i;
+                }
+                else {
+                    _sort(pairs, i, hi);
+                    hi = j;
+                }
+            }
+        }
+
+        private static int _compare(final long[] pairs, final int idx, final long hash, final long number) {
+            final long h = pairs[idx * 2];
+            if (h != hash) {
+                return h < hash ? -1 : 1;
+            }
+            final long n = pairs[idx * 2 + 1];
+            return n < number ? -1 : n == number ? 0 : 1;
+        }
+
+        private static void _swap(final long[] pairs, final int a, final int b) {
+            final long hash = pairs[a * 2];
+            final long number = pairs[a * 2 + 1];
+            pairs[a * 2] = pairs[b * 2];
+            pairs[a * 2 + 1] = pairs[b * 2 + 1];
+            pairs[b * 2] = hash;
+            pairs[b * 2 + 1] = number;
+        }
+
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.xtm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.cxtm.CXTMHandler;
+
+/**
+ * Tests the {@link CXTMHandler} against the baseline files of the test suite.
+ * <p>
+ * The XTM 1.0 baselines expect a conversion of the XTM 1.0 PSIs to TMDM
+ * which is applied to the TMAPI topic map by the deserializer tests. The
+ * CXTM handler writes the events as they are, these tests are skipped.
+ * </p>
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+@RunWith(Parameterized.class)
+public class TestCXTMHandlerBaseline {
+
+    private final File _file;
+    private final String _inputDir;
+    private final String _referenceDir;
+    private final boolean _convertToTMDM;
+    private final boolean _ignoreMergemap;
+
+    public TestCXTMHandlerBaseline(File file, String inputDir, String referenceDir, 
+            boolean convertToTMDM, boolean ignoreMergemap) {
+        _file = file;
+        _inputDir = inputDir;
+        _referenceDir = referenceDir;
+        _convertToTMDM = convertToTMDM;
+        _ignoreMergemap = ignoreMergemap;
+    }
+
+    @Parameters
+    public static Collection<Object> makeTestCases() {
+        final Collection<Object> result = new ArrayList<Object>();
+        _addTestCases(result, TestXTMDeserializer.makeTestCases(), false);
+        _addTestCases(result, TestXTMDeserializerIgnoreMergemap.makeTestCases(), true);
+        return result;
+    }
+
+    private static void _addTestCases(final Collection<Object> result, 
+            final Collection<Object> testCases, final boolean ignoreMergemap) {
+        for (Object testCase: testCases) {
+            final Object[] params = (Object[]) testCase;
+            result.add(new Object[] {params[0], params[1], params[2], params[3], ignoreMergemap});
+        }
+    }
+
+    private static byte[] _read(final File file) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final InputStream in = new FileInputStream(file);
+        final byte[] buff = new byte[1024];
+        int n;
+        while ((n = in.read(buff)) != -1) {
+            out.write(buff, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testBaseline() throws Exception {
+        assumeTrue(!_convertToTMDM);
+        final String iri = _file.toURI().toURL().toExternalForm();
+        final File referenceFile = new File(_file.toURI().toURL().getFile().replace("/" + _inputDir + "/", "/" + _referenceDir + "/") + ".cxtm");
+        final IDeserializer deser = new XTMDeserializerFactory().createDeserializer();
+        deser.setProperty(Property.IGNORE_MERGEMAP, Boolean.valueOf(_ignoreMergemap));
+        deser.setProperty(Property.VALIDATE, Boolean.FALSE);
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final CXTMHandler handler = new CXTMHandler(result, iri);
+        handler.setMaxInMemory(1);
+        deser.setMapHandler(handler);
+        deser.parse(new Source(iri));
+        assertEquals(iri, new String(_read(referenceFile), "UTF-8"), result.toString("UTF-8"));
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2007 - 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.xtm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link TopLevelElementScanner}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestTopLevelElementScanner extends TestCase {
+
+    private static final String _PROLOG = "<?xml version='1.0' encoding='utf-8'?>\n"
+                                        + "<!DOCTYPE topicMap [ <!ENTITY x \"<topic>\"> ]>\n";
+
+    private static final String _START_TAG = "<tm:topicMap xmlns:tm='http://www.topicmaps.org/xtm/'"
+                                        + " xml:base=\"http://www.example.org/\" reifier=\"#r\" version='2.0'>";
+
+    private static TopLevelElementScanner _scanner(final String xml) throws Exception {
+        return new TopLevelElementScanner(new ByteArrayInputStream(xml.getBytes("utf-8")));
+    }
+
+    public void testProlog() throws Exception {
+        final TopLevelElementScanner scanner = _scanner(_PROLOG + _START_TAG + "</tm:topicMap>");
+        assertTrue(scanner.readProlog());
+        assertEquals("utf-8", scanner.getEncoding());
+        assertEquals("tm:topicMap", scanner.getRootName());
+        assertEquals(_PROLOG, new String(scanner.getProlog(), "utf-8"));
+        assertEquals(_START_TAG, new String(scanner.getRootStartTag(null), "utf-8"));
+        assertEquals("<tm:topicMap xmlns:tm='http://www.topicmaps.org/xtm/'"
+                + " xml:base=\"http://www.example.org/\" version='2.0'>",
+                new String(scanner.getRootStartTag("reifier"), "utf-8"));
+        assertNull(scanner.nextElement());
+    }
+
+    public void testElements() throws Exception {
+        final String topic = "<tm:topic id='a'><!-- </tm:topic> --><tm:name><tm:value>a&lt;</tm:value></tm:name>"
+                + "<tm:occurrence><tm:type><tm:topicRef href='#b'/></tm:type>"
+                + "<tm:resourceData datatype='http://www.w3.org/2001/XMLSchema#anyType'>"
+                + "<x a='/>'><![CDATA[</tm:topic>]]]></x><?pi </tm:topic>?></tm:resourceData>"
+                + "</tm:occurrence></tm:topic>";
+        final String assoc = "<tm:association><tm:type><tm:topicRef href='#b'/></tm:type></tm:association>";
+        final String mergeMap = "<tm:mergeMap href='x.xtm'/>";
+        final TopLevelElementScanner scanner = _scanner(_PROLOG + _START_TAG + "\n  " + topic
+                + "<!-- <tm:topic> -->" + assoc + "\n" + mergeMap + "\n</tm:topicMap>");
+        assertTrue(scanner.readProlog());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals("topic", scanner.nextElement());
+        scanner.readElement(out);
+        assertEquals(topic, out.toString("utf-8"));
+        out.reset();
+        assertEquals("association", scanner.nextElement());
+        scanner.readElement(out);
+        assertEquals(assoc, out.toString("utf-8"));
+        out.reset();
+        assertEquals("mergeMap", scanner.nextElement());
+        scanner.readElement(out);
+        assertEquals(mergeMap, out.toString("utf-8"));
+        assertNull(scanner.nextElement());
+    }
+
+    public void testLargeElement() throws Exception {
+        final StringBuilder buff = new StringBuilder("<topic id='a'>");
+        for (int i=0; i < 5000; i++) {
+            buff.append("<name><value>\u00e4").append(i).append("</value></name>");
+        }
+        buff.append("</topic>");
+        final String topic = buff.toString();
+        final String startTag = "<topicMap xmlns='http://www.topicmaps.org/xtm/' version='2.0'>";
+        final TopLevelElementScanner scanner = _scanner(startTag + topic + topic + "</topicMap>");
+        assertTrue(scanner.readProlog());
+        final int length = topic.getBytes("utf-8").length;
+        for (int i=0; i < 2; i++) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals("topic", scanner.nextElement());
+            assertEquals(startTag.length() + i * length, scanner.getElementOffset());
+            scanner.readElement(out);
+            assertEquals(topic, out.toString("utf-8"));
+            assertEquals(startTag.length() + (i + 1) * length, scanner.getPosition());
+        }
+        assertNull(scanner.nextElement());
+    }
+
+    public void testUnsupportedEncoding() throws Exception {
+        final String xml = "<?xml version='1.0' encoding='utf-16'?><topicMap version='2.0'><topic id='a'/></topicMap>";
+        TopLevelElementScanner scanner = _scanner(xml);
+        assertFalse(scanner.readProlog());
+        assertEquals(xml, _read(scanner.getInputStream()));
+        scanner = new TopLevelElementScanner(new ByteArrayInputStream(xml.getBytes("utf-16")));
+        assertFalse(scanner.readProlog());
+        assertEquals(xml, new String(_read(scanner.getInputStream()).getBytes("iso-8859-1"), "utf-16"));
+    }
+
+    public void testEmptyRoot() throws Exception {
+        final String xml = "<topicMap xmlns='http://www.topicmaps.org/xtm/' version='2.0'/>";
+        final TopLevelElementScanner scanner = _scanner(xml);
+        assertFalse(scanner.readProlog());
+        assertEquals(xml, _read(scanner.getInputStream()));
+    }
+
+    private static String _read(final InputStream in) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        return out.toString("iso-8859-1");
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.xtm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.IRef;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.helpers.SimpleMapHandler;
+import com.semagia.mio.voc.XSD;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link XTM10Handler}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestXTM10Handler extends TestCase {
+
+    private static final String _NS = "http://psi.example.org/";
+    private static final String _BASE = "http://www.example.org/map";
+
+    private static String _write() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SimpleMapHandler handler = SimpleMapHandler.create(new XTM10Handler(out));
+        final IRef lars = Ref.createSubjectIdentifier(_NS + "lars");
+        handler.startTopicMap();
+        handler.startTopic(lars);
+        handler.subjectLocator("http://www.example.org/lars");
+        handler.isa(Ref.createSubjectIdentifier(_NS + "person"));
+        handler.startName();
+        handler.value("Lars");
+        handler.endName();
+        handler.startOccurrence(Ref.createSubjectIdentifier(_NS + "homepage"));
+        handler.reifier(Ref.createSubjectIdentifier(_NS + "reifier"));
+        handler.value("http://www.semagia.com/", XSD.ANY_URI);
+        handler.endOccurrence();
+        handler.endTopic();
+        handler.startAssociation(Ref.createSubjectIdentifier(_NS + "member-of"));
+        handler.reifier(Ref.createItemIdentifier(_BASE + "#assoc-reifier"));
+        handler.role(Ref.createSubjectIdentifier(_NS + "member"), lars);
+        handler.role(Ref.createSubjectIdentifier(_NS + "group"), Ref.createSubjectLocator("http://www.example.org/group"));
+        handler.endAssociation();
+        handler.endTopicMap();
+        return new String(out.toByteArray(), "utf-8");
+    }
+
+    private static String _readAsXTM21(final String xtm) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final IDeserializer deser = new XTM10DeserializerFactory().createDeserializer();
+        deser.setProperty(Property.VALIDATE, Boolean.FALSE);
+        deser.setMapHandler(new XTM21Handler(out));
+        deser.parse(new Source(new ByteArrayInputStream(xtm.getBytes("utf-8")), _BASE));
+        return new String(out.toByteArray(), "utf-8");
+    }
+
+    public void testTopic() throws Exception {
+        final String xtm = _write();
+        assertTrue(xtm.contains("<topicMap xmlns=\"http://www.topicmaps.org/xtm/1.0/\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">"));
+        // instanceOf precedes subjectIdentity, the subject locator comes first
+        assertTrue(xtm.contains("<topic id=\"sid-http_3a_2f_2fpsi.example.org_2flars\">"
+                + "<instanceOf><subjectIndicatorRef xlink:href=\"" + _NS + "person\"/></instanceOf>"
+                + "<subjectIdentity><resourceRef xlink:href=\"http://www.example.org/lars\"/>"
+                + "<subjectIndicatorRef xlink:href=\"" + _NS + "lars\"/>"));
+        assertTrue(xtm.contains("<baseName><baseNameString>Lars</baseNameString></baseName>"));
+        assertTrue(xtm.contains("<member><roleSpec><subjectIndicatorRef xlink:href=\"" + _NS + "group\"/></roleSpec>"
+                + "<resourceRef xlink:href=\"http://www.example.org/group\"/></member>"));
+    }
+
+    public void testReification() throws Exception {
+        final String xtm = _write();
+        assertTrue(xtm.contains("<occurrence id=\"id1\">"));
+        assertTrue(xtm.contains("<subjectIdentity><subjectIndicatorRef xlink:href=\"" + _NS + "reifier\"/>"
+                + "<subjectIndicatorRef xlink:href=\"#id1\"/></subjectIdentity>"));
+        assertTrue(xtm.contains("<association id=\"id2\">"));
+        assertTrue(xtm.contains("<subjectIdentity><topicRef xlink:href=\"" + _BASE + "#assoc-reifier\"/>"
+                + "<subjectIndicatorRef xlink:href=\"#id2\"/></subjectIdentity>"));
+    }
+
+    public void testNoDuplicateIds() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SimpleMapHandler handler = SimpleMapHandler.create(new XTM10Handler(out));
+        handler.startTopicMap();
+        handler.startTopic(Ref.createItemIdentifier(_BASE + "#id3"));
+        handler.endTopic();
+        // More topics than ids were remembered formerly
+        for (int i=0; i<5000; i++) {
+            handler.startTopic(Ref.createSubjectIdentifier(_NS + "t" + i));
+            handler.endTopic();
+        }
+        // Invalid ids, the topics get generated ids
+        for (int i=0; i<5; i++) {
+            handler.startTopic(Ref.createItemIdentifier(_BASE + "#" + i + "bad"));
+            handler.endTopic();
+        }
+        handler.endTopicMap();
+        final Matcher matcher = Pattern.compile(" id=\"([^\"]+)\"").matcher(new String(out.toByteArray(), "utf-8"));
+        final Set<String> ids = new HashSet<String>();
+        int count = 0;
+        while (matcher.find()) {
+            assertTrue("Duplicate id: " + matcher.group(1), ids.add(matcher.group(1)));
+            count++;
+        }
+        assertEquals(5006, count);
+    }
+
+    public void testRoundtrip() throws Exception {
+        final String xtm = _readAsXTM21(_write());
+        assertTrue(xtm.contains("<subjectLocator href=\"http://www.example.org/lars\"/>"));
+        assertTrue(xtm.contains("<resourceRef href=\"http://www.semagia.com/\"/>"));
+        assertTrue(xtm.contains("<subjectIdentifier href=\"" + _BASE + "#id1\"/>"));
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.xtm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.IRef;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.helpers.Ref;
+import com.semagia.mio.helpers.SimpleMapHandler;
+import com.semagia.mio.voc.XSD;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link XTM20Handler}.
+ *
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestXTM20Handler extends TestCase {
+
+    private static final String _NS = "http://psi.example.org/";
+    private static final String _BASE = "http://www.example.org/map";
+
+    private static String _write() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SimpleMapHandler handler = SimpleMapHandler.create(new XTM20Handler(out));
+        final IRef lars = Ref.createSubjectIdentifier(_NS + "lars");
+        handler.startTopicMap();
+        handler.reifier(Ref.createSubjectIdentifier(_NS + "map"));
+        handler.startTopic(lars);
+        handler.isa(Ref.createSubjectIdentifier(_NS + "person"));
+        handler.startOccurrence(Ref.createSubjectIdentifier(_NS + "age"));
+        handler.reifier(Ref.createItemIdentifier(_BASE + "#age"));
+        handler.value("42", XSD.INTEGER);
+        handler.endOccurrence();
+        handler.endTopic();
+        handler.startTopic(Ref.createSubjectIdentifier(_NS + "person"));
+        handler.subjectLocator("http://www.example.org/person");
+        handler.endTopic();
+        handler.startAssociation(Ref.createSubjectIdentifier(_NS + "member-of"));
+        handler.role(Ref.createSubjectIdentifier(_NS + "member"), lars);
+        handler.role(Ref.createSubjectIdentifier(_NS + "group"), Ref.createSubjectLocator("http://www.example.org/group"));
+        handler.endAssociation();
+        handler.endTopicMap();
+        return new String(out.toByteArray(), "utf-8");
+    }
+
+    private static String _readAsXTM21(final String xtm) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final IDeserializer deser = new XTM20DeserializerFactory().createDeserializer();
+        deser.setProperty(Property.VALIDATE, Boolean.FALSE);
+        deser.setMapHandler(new XTM21Handler(out));
+        deser.parse(new Source(new ByteArrayInputStream(xtm.getBytes("utf-8")), _BASE));
+        return new String(out.toByteArray(), "utf-8");
+    }
+
+    public void testItemIdentifierReferences() throws Exception {
+        final String xtm = _write();
+        assertTrue(xtm.contains("<topicMap xmlns=\"http://www.topicmaps.org/xtm/\" version=\"2.0\" reifier=\"#sid-http_3a_2f_2fpsi.example.org_2fmap\">"));
+        assertTrue(xtm.contains("<topic id=\"sid-http_3a_2f_2fpsi.example.org_2flars\"><subjectIdentifier href=\"http://psi.example.org/lars\"/>"));
+        assertTrue(xtm.contains("<instanceOf><topicRef href=\"#sid-http_3a_2f_2fpsi.example.org_2fperson\"/></instanceOf>"));
+        assertTrue(xtm.contains("<occurrence reifier=\"" + _BASE + "#age\">"));
+        assertFalse(xtm.contains("subjectIdentifierRef"));
+        assertFalse(xtm.contains("subjectLocatorRef"));
+    }
+
+    public void testReferencedTopicsAreDeclared() throws Exception {
+        final String xtm = _write();
+        // The topic was referenced before it was written
+        assertTrue(xtm.contains("<topic id=\"sid-http_3a_2f_2fpsi.example.org_2fperson\"><subjectIdentifier href=\"" + _NS + "person\"/></topic>"));
+        assertTrue(xtm.contains("<topic id=\"id1\"><subjectIdentifier href=\"" + _NS + "person\"/><subjectLocator href=\"http://www.example.org/person\"/></topic>"));
+        assertTrue(xtm.contains("<topic id=\"slo-http_3a_2f_2fwww.example.org_2fgroup\"><subjectLocator href=\"http://www.example.org/group\"/></topic>"));
+    }
+
+    public void testItemIdentifierAsId() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SimpleMapHandler handler = SimpleMapHandler.create(new XTM20Handler(out));
+        handler.startTopicMap();
+        handler.startTopic(Ref.createItemIdentifier(_BASE + "#puccini"));
+        handler.subjectIdentifier(_NS + "puccini");
+        handler.subjectIdentifier(_NS + "giacomo-puccini");
+        handler.endTopic();
+        handler.startTopic(Ref.createItemIdentifier(_BASE + "#puccini"));
+        handler.endTopic();
+        handler.startTopic(Ref.createItemIdentifier("http://www.example.org/other#puccini"));
+        handler.endTopic();
+        handler.endTopicMap();
+        final String xtm = new String(out.toByteArray(), "utf-8");
+        assertTrue(xtm.contains("<topic id=\"puccini\"><itemIdentity href=\"" + _BASE + "#puccini\"/>"));
+        // The id "puccini" is declared already
+        assertTrue(xtm.contains("<topic id=\"id1\"><itemIdentity href=\"" + _BASE + "#puccini\"/></topic>"));
+        assertTrue(xtm.contains("<topic id=\"id2\"><itemIdentity href=\"http://www.example.org/other#puccini\"/></topic>"));
+        // Identities which are not referenced do not get an item identifier
+        assertFalse(xtm.contains("#sid-"));
+        final String xtm21 = _readAsXTM21(xtm);
+        assertTrue(xtm21.contains("<itemIdentity href=\"" + _BASE + "#puccini\"/>"));
+        assertFalse(xtm21.contains("#sid-"));
+    }
+
+    public void testNoDuplicateIds() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SimpleMapHandler handler = SimpleMapHandler.create(new XTM20Handler(out));
+        handler.startTopicMap();
+        handler.startTopic(Ref.createItemIdentifier(_BASE + "#id3"));
+        handler.endTopic();
+        // More topics than ids were remembered formerly
+        for (int i=0; i<5000; i++) {
+            handler.startTopic(Ref.createSubjectIdentifier(_NS + "t" + i));
+            handler.endTopic();
+        }
+        // Invalid ids, the topics get generated ids
+        for (int i=0; i<5; i++) {
+            handler.startTopic(Ref.createItemIdentifier(_BASE + "#" + i + "bad"));
+            handler.endTopic();
+        }
+        handler.endTopicMap();
+        final Matcher matcher = Pattern.compile(" id=\"([^\"]+)\"").matcher(new String(out.toByteArray(), "utf-8"));
+        final Set<String> ids = new HashSet<String>();
+        int count = 0;
+        while (matcher.find()) {
+            assertTrue("Duplicate id: " + matcher.group(1), ids.add(matcher.group(1)));
+            count++;
+        }
+        assertEquals(5006, count);
+    }
+
+    public void testRoundtrip() throws Exception {
+        final String xtm = _readAsXTM21(_write());
+        assertTrue(xtm.contains("<reifier><topicRef href=\"" + _BASE + "#sid-http_3a_2f_2fpsi.example.org_2fmap\"/></reifier>"));
+        assertTrue(xtm.contains("<resourceData datatype=\"" + XSD.INTEGER + "\">42</resourceData>"));
+        assertTrue(xtm.contains("<subjectLocator href=\"http://www.example.org/group\"/>"));
+    }
+
+}
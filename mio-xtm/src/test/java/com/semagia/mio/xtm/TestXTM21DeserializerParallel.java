@@ -0,0 +1,51 @@
+/*
+ * Copyright 2007 - 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.xtm;
+
+import java.io.File;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.Property;
+
+/**
+ * Tests against the {@link XTM21Deserializer} which parses the topics and
+ * associations concurrently.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+@RunWith(Parameterized.class)
+public class TestXTM21DeserializerParallel extends TestXTM21Deserializer {
+
+    public TestXTM21DeserializerParallel(File file, String inputDir, String referenceDir, boolean convertToTMDM) {
+        super(file, inputDir, referenceDir, convertToTMDM);
+    }
+
+    /* (non-Javadoc)
+     * @see com.semagia.mio.xtm.TestXTM21Deserializer#makeDeserializer()
+     */
+    @Override
+    protected IDeserializer makeDeserializer() throws Exception {
+        final XTM21Deserializer deser = (XTM21Deserializer) super.makeDeserializer();
+        deser.setProperty(Property.PARALLELISM, Integer.valueOf(4));
+        // Each topic / association becomes a fragment
+        deser.setChunkSize(1);
+        return deser;
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.xtm;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.helpers.DefaultMapHandler;
+import com.semagia.mio.helpers.Ref;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests against the {@link XTMIndex}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestXTMIndex extends TestCase {
+
+    private static final String _BASE = "http://www.example.org/map";
+
+    private static final String _XTM = "<?xml version='1.0' encoding='utf-8'?>\n"
+            + "<topicMap xmlns='http://www.topicmaps.org/xtm/' version='2.1' reifier='#map'>\n"
+            + "  <topic id='a'><subjectIdentifier href='http://psi.example.org/a'/></topic>\n"
+            + "  <topic id='b'><name><value>B \u00e4</value></name></topic>\n"
+            + "  <mergeMap href='other.xtm'/>\n"
+            + "  <association><itemIdentity href='#assoc'/><type><topicRef href='#t'/></type>"
+            + "<role><type><topicRef href='#r'/></type><topicRef href='#b'/></role></association>\n"
+            + "  <topic id='c'><subjectIdentifier href='http://psi.example.org/a'/>"
+            + "<subjectIdentifier href='http://psi.example.org/c'/></topic>\n"
+            + "  <association><type><topicRef href='#t'/></type>"
+            + "<role><type><topicRef href='#r'/></type><subjectIdentifierRef href='http://psi.example.org/c'/></role>"
+            + "<role><type><topicRef href='#r2'/></type><topicRef href='#b'/></role></association>\n"
+            + "</topicMap>";
+
+    private File _document;
+    private File _index;
+
+    /* (non-Javadoc)
+     * @see junit.framework.TestCase#setUp()
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _document = File.createTempFile("mio-index", ".xtm");
+        _index = File.createTempFile("mio-index", ".idx");
+        final OutputStream out = new FileOutputStream(_document);
+        try {
+            out.write(_XTM.getBytes("utf-8"));
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see junit.framework.TestCase#tearDown()
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        _document.delete();
+        _index.delete();
+        super.tearDown();
+    }
+
+    private List<String> _parse(final IRef... identities) throws Exception {
+        final XTMIndex index = XTMIndex.open(_document, _index);
+        try {
+            assertEquals(5, index.getElementCount());
+            final EventCollector collector = new EventCollector();
+            index.parse(collector, Arrays.asList(identities));
+            return collector.events;
+        }
+        finally {
+            index.close();
+        }
+    }
+
+    public void testTopic() throws Exception {
+        XTMIndex.build(_document, _BASE, _index, 1);
+        assertEquals(Arrays.asList("topic " + _BASE + "#b", "association", "association"),
+                _parse(Ref.createItemIdentifier(_BASE + "#b")));
+    }
+
+    public void testMergedTopics() throws Exception {
+        XTMIndex.build(_document, _BASE, _index, 4, 1);
+        assertEquals(Arrays.asList("topic " + _BASE + "#a", "topic " + _BASE + "#c", "association"),
+                _parse(Ref.createSubjectIdentifier("http://psi.example.org/a")));
+    }
+
+    public void testAssociation() throws Exception {
+        XTMIndex.build(_document, _BASE, _index, 4, 1);
+        assertEquals(Arrays.asList("association"),
+                _parse(Ref.createItemIdentifier(_BASE + "#assoc")));
+    }
+
+    public void testUnknownIdentity() throws Exception {
+        XTMIndex.build(_document, _BASE, _index, 2);
+        assertEquals(Collections.emptyList(),
+                _parse(Ref.createSubjectLocator("http://psi.example.org/a"),
+                        Ref.createItemIdentifier(_BASE + "#t")));
+    }
+
+    public void testOutdatedIndex() throws Exception {
+        XTMIndex.build(_document, _BASE, _index, 1);
+        final OutputStream out = new FileOutputStream(_document, true);
+        out.write('\n');
+        out.close();
+        try {
+            XTMIndex.open(_document, _index);
+            fail("Expected an exception for a modified document");
+        }
+        catch (MIOException ex) {
+            // noop.
+        }
+    }
+
+
+    private static final class EventCollector extends DefaultMapHandler {
+
+        final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void startTopic(final IRef identity) throws MIOException {
+            events.add("topic " + identity.getIRI());
+        }
+
+        @Override
+        public void startAssociation() throws MIOException {
+            events.add("association");
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Lars Heuer (heuer[at]semagia.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.semagia.mio.xtm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.semagia.mio.IDeserializer;
+import com.semagia.mio.IRef;
+import com.semagia.mio.MIOException;
+import com.semagia.mio.Property;
+import com.semagia.mio.Source;
+import com.semagia.mio.helpers.DefaultMapHandler;
+import com.semagia.mio.helpers.ResourceCatalog;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests if the XTM deserializers read the documents via the 
+ * {@link Property#RESOURCE_RESOLVER}.
+ * 
+ * @author Lars Heuer (heuer[at]semagia.com) <a href="http://www.semagia.com/">Semagia</a>
+ */
+public class TestXTMResourceResolver extends TestCase {
+
+    private static final String _BASE = "http://www.example.org/tm/";
+
+    private static ResourceCatalog _catalog() throws Exception {
+        final ResourceCatalog catalog = new ResourceCatalog();
+        catalog.addBytes(_BASE + "a.xtm", ("<topicMap xmlns='http://www.topicmaps.org/xtm/' version='2.0'>"
+                + "<mergeMap href='b.xtm'/><topic id='a'/></topicMap>").getBytes("utf-8"));
+        catalog.addBytes(_BASE + "b.xtm", ("<topicMap xmlns='http://www.topicmaps.org/xtm/' version='2.0'>"
+                + "<topic id='b'/></topicMap>").getBytes("utf-8"));
+        catalog.addBytes(_BASE + "c.xtm", ("<topicMap xmlns='http://www.topicmaps.org/xtm/1.0/' xmlns:xlink='http://www.w3.org/1999/xlink'>"
+                + "<mergeMap xlink:href='d.xtm'/><topic id='c'/></topicMap>").getBytes("utf-8"));
+        catalog.addBytes(_BASE + "d.xtm", ("<topicMap xmlns='http://www.topicmaps.org/xtm/1.0/'>"
+                + "<topic id='d'/></topicMap>").getBytes("utf-8"));
+        return catalog;
+    }
+
+    private static List<String> _parse(final String iri) throws Exception {
+        final IDeserializer deser = new XTMDeserializer();
+        deser.setProperty(Property.VALIDATE, Boolean.FALSE);
+        deser.setProperty(Property.RESOURCE_RESOLVER, _catalog());
+        final TopicCollector handler = new TopicCollector();
+        deser.setMapHandler(handler);
+        deser.parse(new Source(iri));
+        return handler.topics;
+    }
+
+    public void testXTM20MergeMap() throws Exception {
+        assertEquals(Arrays.asList(_BASE + "b.xtm#b", _BASE + "a.xtm#a"), _parse(_BASE + "a.xtm"));
+    }
+
+    public void testXTM10MergeMap() throws Exception {
+        final List<String> topics = _parse(_BASE + "c.xtm");
+        assertTrue(topics.contains(_BASE + "d.xtm#d"));
+        assertTrue(topics.contains(_BASE + "c.xtm#c"));
+    }
+
+
+    private static final class TopicCollector extends DefaultMapHandler {
+
+        final List<String> topics = new ArrayList<String>();
+
+        @Override
+        public void startTopic(final IRef identity) throws MIOException {
+            topics.add(identity.getIRI());
+        }
+
+    }
+
+}